@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.client.EJBMetaDataImpl;
+import org.apache.openejb.client.EJBRequest;
+import org.apache.openejb.client.InterfaceType;
+import org.apache.openejb.client.ProtocolMetaData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads the body of an ejb request with the compact values of OEJP 4.8+ and with the java
+ * serialization of OEJP 4.7.  The size of the written body is printed once per fork.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactFormatBenchmark {
+
+    @Param({ProtocolMetaData.VERSION, "4.7"})
+    public String protocol;
+
+    private EJBMetaDataImpl ejb;
+    private Method method;
+    private ProtocolMetaData metaData;
+    private byte[] written;
+
+    @Setup
+    public void setup() throws Exception {
+        ejb = new EJBMetaDataImpl(null, Catalog.class, null, "STATELESS", "CatalogBean", InterfaceType.BUSINESS_REMOTE, null, null);
+        method = Catalog.class.getMethod("find", String.class, int.class, long[].class);
+        metaData = new ProtocolMetaData(protocol);
+        written = write();
+        System.out.println("OEJP " + protocol + " body: " + written.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        final EJBRequest.Body body = new EJBRequest.Body(ejb);
+        body.setMetaData(metaData);
+        body.setMethodInstance(method);
+        body.setMethodParameters(new Object[]{"hola mundo", 42, new long[]{1, 2, 3, 4}});
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        body.writeExternal(out);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public Object[] read() throws IOException, ClassNotFoundException {
+        final EJBRequest.Body body = new EJBRequest.Body(ejb);
+        body.setMetaData(metaData);
+        body.readExternal(new ObjectInputStream(new ByteArrayInputStream(written)));
+        return body.getMethodParameters();
+    }
+
+    public interface Catalog {
+        String find(String name, int page, long[] ids);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.core.ivm.naming.IvmContext;
+import org.apache.openejb.core.ivm.naming.ParsedName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.naming.NamingException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up an ENC entry through the compiled slots of {@link IvmContext} and the way it was looked up
+ * before them: a name concatenation and a cache hit for a plain value, a full resolution of the node
+ * graph for a proxy which was never cached.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IvmContextBenchmark {
+
+    private static final String NAME = "comp/env/jdbc/orders";
+
+    private final Map<String, Object> fastCache = new ConcurrentHashMap<String, Object>();
+    private IvmContext context;
+
+    @Setup
+    public void setup() throws NamingException {
+        // built like the enc of IvmJndiFactory.createComponentContext
+        context = new IvmContext();
+        context.bind(NAME, "orders");
+        context.bind("comp/env/jdbc/customers", "customers");
+        context.bind("comp/env/jms/queue", "queue");
+        context.bind("comp/env/jms/connectionFactory", "connectionFactory");
+        context.bind("comp/env/ejb/cart", "cart");
+        context.bind("comp/env/ejb/catalog", "catalog");
+        context.bind("comp/env/maxItems", 10);
+        context.bind("comp/ORB", "orb");
+        context.bind("comp/TransactionManager", "transactionManager");
+        context.bind("comp/BeanManager", "beanManager");
+        context.compile();
+
+        final String compoundName = context.mynode.getAtomicName() + '/' + NAME;
+        fastCache.put(compoundName, context.mynode.resolve(new ParsedName(compoundName)));
+    }
+
+    @Benchmark
+    public Object slot() throws NamingException {
+        return context.lookup(NAME);
+    }
+
+    @Benchmark
+    public Object concatenatedCache() {
+        return fastCache.get(context.mynode.getAtomicName() + '/' + NAME);
+    }
+
+    @Benchmark
+    public Object resolve() throws NamingException {
+        return context.mynode.resolve(new ParsedName(context.mynode.getAtomicName() + '/' + NAME));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.core.interceptor.MethodInvoker;
+import org.apache.openejb.core.interceptor.MethodInvokerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls a business method with a generated {@link MethodInvoker} and with {@link Method#invoke(Object, Object...)},
+ * the way the interceptor stack calls the bean.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodInvokerBenchmark {
+
+    private final Calculator bean = new Calculator();
+    private Method method;
+    private MethodInvoker invoker;
+    private int value;
+
+    @Setup
+    public void setup() throws Exception {
+        method = Calculator.class.getMethod("add", int.class, long.class);
+        invoker = MethodInvokerFactory.create(method);
+        if (invoker == null) {
+            throw new IllegalStateException("No invoker generated for " + method);
+        }
+    }
+
+    @Benchmark
+    public Object generated() throws Exception {
+        return invoker.invoke(bean, new Object[]{value++, 42L});
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return method.invoke(bean, new Object[]{value++, 42L});
+    }
+
+    public static class Calculator {
+        public long add(final int a, final long b) {
+            return a + b;
+        }
+    }
+}
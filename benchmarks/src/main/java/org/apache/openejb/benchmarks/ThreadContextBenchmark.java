@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.benchmarks;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.ThreadContextListener;
+import org.apache.openejb.loader.SystemInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link ThreadContext} part of a business invocation: a new context carrying the invoked method,
+ * enter with a listener setting a security key like the security service, the lookups of the container
+ * and exit.  The baseline does the same with the former hashed data and listener list.  Run it with
+ * {@code -prof gc} to see the allocations of each.
+ *
+ * @version $Rev$ $Date$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThreadContextBenchmark {
+
+    private final Security security = new Security();
+    private final SecurityListener listener = new SecurityListener();
+    private BeanContext beanContext;
+    private Method method;
+
+    @Setup
+    public void setup() throws Exception {
+        final ClassLoader loader = ThreadContextBenchmark.class.getClassLoader();
+        final AppContext appContext = new AppContext("app", SystemInstance.get(), loader, null, null, false);
+        final ModuleContext moduleContext = new ModuleContext("module", null, "module", appContext, null, loader);
+        beanContext = new BeanContext("bean", null, moduleContext, Object.class, null, new HashMap<String, String>());
+        method = Object.class.getMethod("hashCode");
+
+        ThreadContext.addThreadContextListener(listener);
+        MapContext.listeners.add(listener);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ThreadContext.removeThreadContextListener(listener);
+        MapContext.listeners.remove(listener);
+    }
+
+    @Benchmark
+    public Object slots() {
+        final ThreadContext context = new ThreadContext(beanContext, null, Operation.BUSINESS);
+        context.set(Method.class, method);
+        final ThreadContext old = ThreadContext.enter(context);
+        try {
+            final ThreadContext current = ThreadContext.getThreadContext();
+            current.get(Method.class);
+            return current.get(Security.class);
+        } finally {
+            ThreadContext.exit(old);
+        }
+    }
+
+    @Benchmark
+    public Object hashed() {
+        final MapContext context = new MapContext(beanContext);
+        context.set(Method.class, method);
+        final MapContext old = MapContext.enter(context);
+        try {
+            final MapContext current = MapContext.threadStorage.get();
+            current.get(Method.class);
+            return current.get(Security.class);
+        } finally {
+            MapContext.exit(old);
+        }
+    }
+
+    public static class Security {
+    }
+
+    public static class ProvidedSecurity {
+    }
+
+    private class SecurityListener implements ThreadContextListener {
+        @Override
+        public void contextEntered(final ThreadContext oldContext, final ThreadContext newContext) {
+            if (newContext.get(ProvidedSecurity.class) == null) {
+                newContext.set(Security.class, security);
+            }
+        }
+
+        @Override
+        public void contextExited(final ThreadContext exitedContext, final ThreadContext reenteredContext) {
+            // no-op
+        }
+
+        public void contextEntered(final MapContext oldContext, final MapContext newContext) {
+            if (newContext.get(ProvidedSecurity.class) == null) {
+                newContext.set(Security.class, security);
+            }
+        }
+
+        public void contextExited(final MapContext exitedContext, final MapContext reenteredContext) {
+            // no-op
+        }
+    }
+
+    /**
+     * The data and listener handling of {@link ThreadContext} before the slots.
+     */
+    private static class MapContext {
+        private static final ThreadLocal<MapContext> threadStorage = new ThreadLocal<MapContext>();
+        private static final List<SecurityListener> listeners = new CopyOnWriteArrayList<SecurityListener>();
+
+        private final BeanContext beanContext;
+        private final HashMap<Class, Object> data = new HashMap<Class, Object>();
+        private ClassLoader oldClassLoader;
+
+        private MapContext(final BeanContext beanContext) {
+            this.beanContext = beanContext;
+        }
+
+        private static MapContext enter(final MapContext newContext) {
+            final Thread thread = Thread.currentThread();
+            newContext.oldClassLoader = thread.getContextClassLoader();
+            thread.setContextClassLoader(newContext.beanContext.getClassLoader());
+
+            final MapContext oldContext = threadStorage.get();
+            threadStorage.set(newContext);
+            for (final SecurityListener listener : listeners) {
+                listener.contextEntered(oldContext, newContext);
+            }
+            return oldContext;
+        }
+
+        private static void exit(final MapContext oldContext) {
+            final MapContext exitingContext = threadStorage.get();
+            Thread.currentThread().setContextClassLoader(exitingContext.oldClassLoader);
+            exitingContext.oldClassLoader = null;
+
+            threadStorage.set(oldContext);
+            for (final SecurityListener listener : listeners) {
+                listener.contextExited(exitingContext, oldContext);
+            }
+        }
+
+        @SuppressWarnings({"unchecked"})
+        private <T> T get(final Class<T> type) {
+            return (T) data.get(type);
+        }
+
+        @SuppressWarnings({"unchecked"})
+        private <T> T set(final Class<T> type, final T value) {
+            return (T) data.put(type, value);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.core.cmp.KeyGenerator;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorInstance;
 import org.apache.openejb.core.interceptor.InterceptorStack;
@@ -242,6 +243,14 @@ public class BeanContext extends DeploymentContext {
         void $$remove();
     }
 
+    /**
+     * Deploys the bean to its container the first time it is used.
+     */
+    public interface Materializer {
+
+        void materialize(BeanContext beanContext) throws OpenEJBException;
+    }
+
     public interface ServiceEndpoint {
 
     }
@@ -278,6 +287,9 @@ public class BeanContext extends DeploymentContext {
     private boolean isBeanManagedTransaction;
     private boolean isBeanManagedConcurrency;
     private Container container;
+    private volatile Materializer materializer;
+    private final Object materializerLock = new Object();
+    private boolean materializing;
 
     private String ejbName;
     private String runAs;
@@ -298,6 +310,7 @@ public class BeanContext extends DeploymentContext {
     private final Set<InterceptorData> instanceScopedInterceptors = new HashSet<InterceptorData>();
     private final List<InterceptorInstance> systemInterceptors = new ArrayList<InterceptorInstance>();
     private final List<InterceptorInstance> userInterceptors = new ArrayList<InterceptorInstance>();
+    private volatile int interceptorsRevision;
     private final List<Injection> injections = new ArrayList<Injection>();
     private final Map<Class, InterfaceType> interfaces = new HashMap<Class, InterfaceType>();
     private final Map<Class, ExceptionType> exceptions = new ConcurrentHashMap<Class, ExceptionType>();
@@ -815,9 +828,42 @@ public class BeanContext extends DeploymentContext {
     }
 
     public Container getContainer() {
+        if (materializer != null) {
+            materialize();
+        }
         return container;
     }
 
+    private void materialize() {
+        synchronized (materializerLock) {
+            final Materializer current = materializer;
+            if (current == null || materializing) { // the container calls getContainer() while deploying the bean
+                return;
+            }
+
+            materializing = true;
+            try {
+                current.materialize(this);
+            } catch (final OpenEJBException e) {
+                throw new OpenEJBRuntimeException("Can't deploy " + getDeploymentID(), e);
+            } finally {
+                materializing = false;
+                materializer = null;
+            }
+        }
+    }
+
+    /**
+     * @return false while the deployment of the bean to its container is deferred to its first use
+     */
+    public boolean isMaterialized() {
+        return materializer == null;
+    }
+
+    public void setMaterializer(final Materializer materializer) {
+        this.materializer = materializer;
+    }
+
     public Object getDeploymentID() {
         return getId();
     }
@@ -1096,14 +1142,25 @@ public class BeanContext extends DeploymentContext {
 
     public void addSystemInterceptor(final Object interceptor) {
         systemInterceptors.add(new InterceptorInstance(interceptor));
+        interceptorsRevision++;
     }
 
     public void addFirstSystemInterceptor(final Object interceptor) {
         systemInterceptors.add(0, new InterceptorInstance(interceptor));
+        interceptorsRevision++;
     }
 
     public void addUserInterceptor(final Object interceptor) {
         userInterceptors.add(new InterceptorInstance(interceptor));
+        interceptorsRevision++;
+    }
+
+    /**
+     * @return a number changing each time an interceptor applying to all the methods is added
+     * so that the {@link MethodContext} know when to recompute their interceptor chains
+     */
+    public int getInterceptorsRevision() {
+        return interceptorsRevision;
     }
 
     public List<InterceptorInstance> getUserAndSystemInterceptors() {
@@ -1136,12 +1193,17 @@ public class BeanContext extends DeploymentContext {
         this.cdiInterceptors.clear();
         this.cdiInterceptors.addAll(cdiInterceptors);
         this.instanceScopedInterceptors.addAll(cdiInterceptors);
+        interceptorsRevision++;
     }
 
     public List<InterceptorData> getMethodInterceptors(final Method method) {
         return getMethodContext(method).getInterceptors();
     }
 
+    public InterceptorChain getMethodInterceptorChain(final Method method, final Operation operation) {
+        return getMethodContext(method).getInterceptorChain(operation);
+    }
+
     public List<InterceptorData> getInterceptorData() {
         final List<InterceptorData> datas = new ArrayList<InterceptorData>();
         for (final InterceptorInstance instance : getUserAndSystemInterceptors()) {
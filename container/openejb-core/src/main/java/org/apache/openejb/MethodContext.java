@@ -17,7 +17,11 @@
 
 package org.apache.openejb;
 
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
+import org.apache.openejb.core.interceptor.MethodInvoker;
+import org.apache.openejb.core.interceptor.MethodInvokerFactory;
 import org.apache.openejb.core.timer.ScheduleData;
 import org.apache.openejb.core.transaction.TransactionType;
 import org.apache.openejb.util.Duration;
@@ -25,14 +29,24 @@ import org.apache.openejb.util.Duration;
 import javax.ejb.LockType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @version $Rev$ $Date$
  */
 public class MethodContext {
+    private static final MethodInvoker NO_INVOKER = new MethodInvoker() {
+        @Override
+        public Object invoke(final Object target, final Object[] args) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    };
+
     private final BeanContext beanContext;
     private final Method beanMethod;
     private final List<ScheduleData> schedules = new ArrayList<ScheduleData>();
@@ -44,6 +58,12 @@ public class MethodContext {
     private Duration accessTimeout;
     private boolean asynchronous;
 
+    // computed on the first invocation, reset when the interceptors of the method or of the bean change
+    private volatile Interceptors resolved;
+
+    // generated once, NO_INVOKER if the method is invoked by reflection
+    private volatile MethodInvoker invoker;
+
     public MethodContext(final BeanContext beanContext, final Method beanMethod) {
         this.beanContext = beanContext;
         this.beanMethod = beanMethod;
@@ -51,6 +71,7 @@ public class MethodContext {
 
     public void setSelfInterception(final InterceptorData data) {
         self = data;
+        resolved = null;
     }
 
     public void setAccessTimeout(final Duration accessTimeout) {
@@ -71,22 +92,65 @@ public class MethodContext {
 
     public void addCdiInterceptor(final InterceptorData data) {
         cdiInterceptors.add(data);
+        resolved = null;
     }
 
     public void setInterceptors(final List<InterceptorData> interceptors) {
         this.interceptors.clear();
         this.interceptors.addAll(interceptors);
+        resolved = null;
     }
 
+    /**
+     * @return the interceptors of the method in invocation order, the list must not be modified
+     */
     public List<InterceptorData> getInterceptors() {
-        final List<InterceptorData> datas = beanContext.getInterceptorData();
-        datas.addAll(interceptors);
-        datas.addAll(beanContext.getCdiInterceptors());
-        datas.addAll(cdiInterceptors);
-        if (self != null) {
-            datas.add(self); // always last, that's why putting it in interceptors doesn't work
+        return resolve().datas;
+    }
+
+    /**
+     * @param operation BUSINESS, TIMEOUT, REMOVE...
+     * @return the interceptor methods called for the operation on this method, computed once
+     */
+    public InterceptorChain getInterceptorChain(final Operation operation) {
+        final Interceptors interceptors = resolve();
+        InterceptorChain chain = interceptors.chains.get(operation);
+        if (chain == null) {
+            chain = new InterceptorChain(operation, interceptors.datas, beanMethod, getInvoker());
+            final InterceptorChain existing = interceptors.chains.putIfAbsent(operation, chain);
+            if (existing != null) {
+                chain = existing;
+            }
+        }
+        return chain;
+    }
+
+    private MethodInvoker getInvoker() {
+        if (invoker == null) {
+            MethodInvoker generated = null;
+            if (MethodInvokerFactory.isActive()) {
+                generated = MethodInvokerFactory.create(beanMethod);
+            }
+            invoker = generated != null ? generated : NO_INVOKER;
+        }
+        return invoker != NO_INVOKER ? invoker : null;
+    }
+
+    private Interceptors resolve() {
+        final int revision = beanContext.getInterceptorsRevision();
+        Interceptors current = resolved;
+        if (current == null || current.revision != revision) {
+            final List<InterceptorData> datas = beanContext.getInterceptorData();
+            datas.addAll(interceptors);
+            datas.addAll(beanContext.getCdiInterceptors());
+            datas.addAll(cdiInterceptors);
+            if (self != null) {
+                datas.add(self); // always last, that's why putting it in interceptors doesn't work
+            }
+            current = new Interceptors(revision, Collections.unmodifiableList(datas));
+            resolved = current;
         }
-        return datas;
+        return current;
     }
 
     public LockType getLockType() {
@@ -117,6 +181,17 @@ public class MethodContext {
         this.asynchronous = asynchronous;
     }
 
+    private static final class Interceptors {
+        private final int revision;
+        private final List<InterceptorData> datas;
+        private final ConcurrentMap<Operation, InterceptorChain> chains = new ConcurrentHashMap<Operation, InterceptorChain>();
+
+        private Interceptors(final int revision, final List<InterceptorData> datas) {
+            this.revision = revision;
+            this.datas = datas;
+        }
+    }
+
     /**
      * Currently (and as a matter of legacy) only EJB 2.x style
      * interfaces may have different transaction attributes for an
@@ -1288,6 +1288,12 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
                 try {
                     final Class<?> clazz = beanContext.getClassLoader().loadClass(timerStoreClass);
+                    try {
+                        final Constructor<?> constructor = clazz.getConstructor(TransactionManager.class, Properties.class);
+                        return TimerStore.class.cast(constructor.newInstance(EjbTimerServiceImpl.getDefaultTransactionManager(), context.getProperties()));
+                    } catch (final NoSuchMethodException noProperties) {
+                        // the stores configured by the system properties only
+                    }
                     try {
                         final Constructor<?> constructor = clazz.getConstructor(TransactionManager.class);
                         return TimerStore.class.cast(constructor.newInstance(EjbTimerServiceImpl.getDefaultTransactionManager()));
@@ -1309,12 +1315,22 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             SystemInstance.get().fireEvent(new BeforeStartEjbs(allDeployments));
 
             final Collection<BeanContext> toStart = new ArrayList<BeanContext>();
+            final Collection<Object> deferred = new ArrayList<Object>();
 
             // deploy
             for (final BeanContext deployment : allDeployments) {
                 try {
                     final Container container = deployment.getContainer();
                     if (container.getBeanContext(deployment.getDeploymentID()) == null) {
+                        if (LazyBeanDeployment.isDeferred(deployment)) {
+                            deployment.setMaterializer(LazyBeanDeployment.INSTANCE);
+                            deferred.add(deployment.getDeploymentID());
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("createApplication.deferredEjb", deployment.getDeploymentID(), deployment.getEjbName(), container.getContainerID());
+                            }
+                            continue;
+                        }
+
                         container.deploy(deployment);
                         if (!((String) deployment.getDeploymentID()).endsWith(".Comp")
                             && !deployment.isHidden()) {
@@ -1345,6 +1361,10 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                     throw new OpenEJBException("Error starting '" + deployment.getEjbName() + "'.  Exception: " + t.getClass() + ": " + t.getMessage(), t);
                 }
             }
+
+            if (!deferred.isEmpty()) {
+                logger.info("createApplication.lazyReport", toStart.size(), toStart.size() + deferred.size(), deferred);
+            }
         }
     }
 
@@ -1832,6 +1852,17 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             // reverse that to get the stopping order
             Collections.reverse(deployments);
 
+            // beans deferred to their first use and never used are not in their container
+            for (final Iterator<BeanContext> it = deployments.iterator(); it.hasNext(); ) {
+                final BeanContext deployment = it.next();
+                if (!deployment.isMaterialized()) {
+                    deployment.setMaterializer(null);
+                    deployment.setContainer(null);
+                    deployment.setDestroyed(true);
+                    it.remove();
+                }
+            }
+
             // stop
             for (final BeanContext deployment : deployments) {
                 final String deploymentID = String.valueOf(deployment.getDeploymentID());
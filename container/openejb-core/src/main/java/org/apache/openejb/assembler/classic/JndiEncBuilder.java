@@ -27,6 +27,7 @@ import org.apache.openejb.core.TransactionSynchronizationRegistryWrapper;
 import org.apache.openejb.core.ivm.naming.ClassReference;
 import org.apache.openejb.core.ivm.naming.CrossClassLoaderJndiReference;
 import org.apache.openejb.core.ivm.naming.IntraVmJndiReference;
+import org.apache.openejb.core.ivm.naming.IvmContext;
 import org.apache.openejb.core.ivm.naming.JaxWsServiceReference;
 import org.apache.openejb.core.ivm.naming.JndiReference;
 import org.apache.openejb.core.ivm.naming.JndiUrlReference;
@@ -168,7 +169,11 @@ public class JndiEncBuilder {
             return jndiFactory.createComponentContext(new HashMap());
         }
 
-        return jndiFactory.createComponentContext(bindings);
+        final Context context = jndiFactory.createComponentContext(bindings);
+        if (context instanceof IvmContext) {
+            ((IvmContext) context).compile();
+        }
+        return context;
     }
 
     public Map<String, Object> buildBindings(final JndiScope type) throws OpenEJBException {
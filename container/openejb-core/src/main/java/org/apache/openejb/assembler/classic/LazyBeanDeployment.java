@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.BeanType;
+import org.apache.openejb.Container;
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.core.timer.EjbTimerService;
+import org.apache.openejb.core.timer.NullEjbTimerServiceImpl;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deploys a bean to its container the first time it is looked up or invoked instead of
+ * when the application starts, enabled with openejb.deployment.lazy=true for the server,
+ * an application, a module or a bean.
+ * <p/>
+ * The container deployment is what creates the instance pool, adds the StatsInterceptor
+ * and registers the MBeans of the bean.  Message driven beans, startup singletons and beans
+ * with timers have to run without being called so they are always deployed at startup.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LazyBeanDeployment implements BeanContext.Materializer {
+
+    public static final String LAZY = "openejb.deployment.lazy";
+
+    public static final LazyBeanDeployment INSTANCE = new LazyBeanDeployment();
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP, LazyBeanDeployment.class);
+
+    public static boolean isDeferred(final BeanContext beanContext) {
+        if (!beanContext.getOptions().get(LAZY, false) || beanContext.isHidden()) {
+            return false;
+        }
+
+        final BeanType type = beanContext.getComponentType();
+        if (type == BeanType.SINGLETON) {
+            if (beanContext.isLoadOnStartup()) {
+                return false;
+            }
+        } else if (type != BeanType.STATELESS && type != BeanType.STATEFUL) {
+            return false;
+        }
+
+        final EjbTimerService timerService = beanContext.getEjbTimerService();
+        return timerService == null || timerService instanceof NullEjbTimerServiceImpl;
+    }
+
+    @Override
+    public void materialize(final BeanContext beanContext) throws OpenEJBException {
+        if (beanContext.isDestroyed()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final Container container = beanContext.getContainer();
+        if (container.getBeanContext(beanContext.getDeploymentID()) == null) {
+            container.deploy(beanContext);
+            container.start(beanContext);
+            logger.info("createApplication.materializedEjb", beanContext.getDeploymentID(), beanContext.getEjbName(), container.getContainerID(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+}
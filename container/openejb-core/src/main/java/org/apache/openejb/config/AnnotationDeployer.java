@@ -367,11 +367,16 @@ public class AnnotationDeployer implements DynamicDeployer {
         Thread.currentThread().setContextClassLoader(appModule.getClassLoader());
         setModule(appModule);
         try {
+            final DeploymentPhases phases = appModule.getPhases();
+            long start = System.nanoTime();
             appModule = discoverAnnotatedBeans.deploy(appModule);
+            phases.add("DiscoverAnnotatedBeans", System.nanoTime() - start);
             appModule = envEntriesPropertiesDeployer.deploy(appModule);
             appModule = mergeWebappJndiContext.deploy(appModule);
             appModule = builtInEnvironmentEntries.deploy(appModule);
+            start = System.nanoTime();
             appModule = processAnnotatedBeans.deploy(appModule);
+            phases.add("ProcessAnnotatedBeans", System.nanoTime() - start);
             appModule = mergeWebappJndiContext.deploy(appModule);
             appModule = mBeanDeployer.deploy(appModule);
             return appModule;
@@ -440,7 +445,12 @@ public class AnnotationDeployer implements DynamicDeployer {
 
     public static class DiscoverAnnotatedBeans implements DynamicDeployer {
         public AppModule deploy(AppModule appModule) throws OpenEJBException {
-            if (!appModule.isWebapp() && !appModule.getWebModules().isEmpty()) { // need to scan for jsf stuff at least
+            final long start = System.nanoTime();
+            if (FinderFactory.createFinders(appModule)) {
+                appModule.getPhases().add("ParallelScanning", System.nanoTime() - start);
+            }
+
+            if (!appModule.isWebapp() && !appModule.getWebModules().isEmpty() && appModule.getEarLibFinder() == null) { // need to scan for jsf stuff at least
                 try {
                     appModule.setEarLibFinder(FinderFactory.createFinder(appModule));
                 } catch (final Exception e) {
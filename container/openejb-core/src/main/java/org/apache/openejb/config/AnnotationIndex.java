@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.HexConverter;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.xbean.asm5.ClassReader;
+import org.apache.xbean.asm5.ClassWriter;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Annotation index of a jar or a directory, enabled with openejb.finder.index=true.
+ * <p/>
+ * The index holds the bytecode of all the classes of the archive stripped down to what
+ * the annotation finder reads: the class hierarchy, the fields, the method signatures
+ * and the annotations, without the code and the debug information.  It is keyed by a
+ * checksum of the classes, computed from the CRC of the entries for a jar, so an archive
+ * whose index is valid is scanned from the index instead of being unzipped.
+ * <p/>
+ * The index is packaged in the archive as {@link #RESOURCE} (see {@link #generate(File)})
+ * or written on the first scan under openejb.finder.index.dir, by default the work
+ * directory of the server.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class AnnotationIndex {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, AnnotationIndex.class);
+
+    public static final String ENABLED = "openejb.finder.index";
+    public static final String DIRECTORY = "openejb.finder.index.dir";
+    public static final String RESOURCE = "META-INF/openejb-annotation.idx";
+
+    private static final int MAGIC = 0x4f414958;
+    private static final int VERSION = 1;
+    private static final String CLASS = ".class";
+
+    private AnnotationIndex() {
+        // no-op
+    }
+
+    /**
+     * @return the archive of the location, reading and writing its index if enabled
+     */
+    public static Archive archive(final ClassLoader loader, final URL location) {
+        final Archive archive = ClasspathArchive.archive(loader, location);
+        if (!SystemInstance.get().getOptions().get(ENABLED, false)) {
+            return archive;
+        }
+
+        final File file = toFile(location);
+        if (file == null || !file.exists()) {
+            return archive;
+        }
+        return new IndexedArchive(archive, location, file);
+    }
+
+    private static File toFile(final URL location) {
+        if ("jar".equals(location.getProtocol())) {
+            final String spec = location.getFile();
+            final int separator = spec.indexOf("!/");
+            if (separator < 0 || separator + 2 < spec.length()) {
+                return null; // a folder of a jar
+            }
+        } else if (!"file".equals(location.getProtocol())) {
+            return null;
+        }
+
+        try {
+            return Files.toFile(location);
+        } catch (final RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index of a directory of classes in its {@link #RESOURCE}, to be packaged with them.
+     *
+     * @return the number of classes indexed
+     */
+    public static int generate(final File classes) throws IOException {
+        final Map<String, byte[]> index = new LinkedHashMap<String, byte[]>();
+        final SortedMap<String, Long> crcs = new TreeMap<String, Long>();
+        readDirectory(classes, "", crcs, index);
+
+        final File file = new File(classes, RESOURCE);
+        Files.mkdirs(file.getParentFile());
+        write(file, checksum(crcs), index);
+        return index.size();
+    }
+
+    /**
+     * Checksum of the classes of a jar or a directory, the same once the directory is packaged.
+     */
+    public static String checksum(final File file) throws IOException {
+        final SortedMap<String, Long> crcs = new TreeMap<String, Long>();
+        if (file.isDirectory()) {
+            readDirectory(file, "", crcs, null);
+        } else {
+            final ZipFile zip = new ZipFile(file);
+            try {
+                final Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(CLASS)) {
+                        crcs.put(entry.getName(), entry.getCrc());
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        }
+        return checksum(crcs);
+    }
+
+    private static String checksum(final SortedMap<String, Long> crcs) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (final Map.Entry<String, Long> crc : crcs.entrySet()) {
+            digest.update(crc.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(Long.toHexString(crc.getValue()).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexConverter.bytesToHex(digest.digest());
+    }
+
+    private static void readDirectory(final File directory, final String path, final SortedMap<String, Long> crcs, final Map<String, byte[]> index) throws IOException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File file : files) {
+            final String name = path + file.getName();
+            if (file.isDirectory()) {
+                readDirectory(file, name + "/", crcs, index);
+            } else if (name.endsWith(CLASS)) {
+                final byte[] bytecode = readBytes(new FileInputStream(file));
+                final CRC32 crc = new CRC32();
+                crc.update(bytecode);
+                crcs.put(name, crc.getValue());
+                if (index != null) {
+                    index.put(className(name), strip(bytecode));
+                }
+            }
+        }
+    }
+
+    private static String className(final String path) {
+        return path.substring(0, path.length() - CLASS.length()).replace('/', '.');
+    }
+
+    private static byte[] readBytes(final InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IO.copy(in, out);
+            return out.toByteArray();
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    /**
+     * @return the bytecode without the code and the debug information of the methods
+     */
+    public static byte[] strip(final byte[] bytecode) {
+        try {
+            final ClassWriter writer = new ClassWriter(0);
+            new ClassReader(bytecode).accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return writer.toByteArray();
+        } catch (final RuntimeException e) {
+            return bytecode;
+        }
+    }
+
+    static void write(final File file, final String checksum, final Map<String, byte[]> index) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(checksum);
+            out.writeInt(index.size());
+            for (final Map.Entry<String, byte[]> entry : index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            Files.delete(tmp);
+            throw new IOException("Can't write " + file);
+        }
+    }
+
+    /**
+     * @return the classes of the index or null if it is not the one of the checksum
+     */
+    static Map<String, byte[]> read(final InputStream stream, final String checksum) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !checksum.equals(in.readUTF())) {
+                return null;
+            }
+
+            final int size = in.readInt();
+            final Map<String, byte[]> index = new LinkedHashMap<String, byte[]>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                final String name = in.readUTF();
+                final byte[] bytecode = new byte[in.readInt()];
+                in.readFully(bytecode);
+                index.put(name, bytecode);
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File cacheDirectory() throws IOException {
+        final String directory = SystemInstance.get().getOptions().get(DIRECTORY, (String) null);
+        if (directory != null) {
+            return Files.mkdirs(new File(directory));
+        }
+        if (SystemInstance.get().getConf(null).exists()) {
+            return SystemInstance.get().getBase().getDirectory("work/annotation-index", true);
+        }
+        return Files.mkdirs(new File(Files.tmpdir(), "openejb-annotation-index"));
+    }
+
+    private static final class IndexedArchive implements Archive {
+        private final Archive archive;
+        private final URL location;
+        private final File file;
+
+        private IndexedArchive(final Archive archive, final URL location, final File file) {
+            this.archive = archive;
+            this.location = location;
+            this.file = file;
+        }
+
+        @Override
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return archive.loadClass(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            String checksum = null;
+            File cache = null;
+            try {
+                checksum = checksum(file);
+
+                final Map<String, byte[]> packaged = readPackaged(checksum);
+                if (packaged != null) {
+                    return new IndexIterator(packaged);
+                }
+
+                final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                final String name = HexConverter.bytesToHex(digest.digest(location.toExternalForm().getBytes(StandardCharsets.UTF_8)));
+                cache = new File(cacheDirectory(), name + ".idx");
+                if (cache.isFile()) {
+                    final Map<String, byte[]> index = read(new FileInputStream(cache), checksum);
+                    if (index != null) {
+                        return new IndexIterator(index);
+                    }
+                }
+            } catch (final Exception e) {
+                logger.debug("Can't read the annotation index of " + location, e);
+            }
+
+            if (checksum == null || cache == null) {
+                return archive.iterator();
+            }
+            return new IndexingIterator(archive.iterator(), checksum, cache);
+        }
+
+        private Map<String, byte[]> readPackaged(final String checksum) throws IOException {
+            if (file.isDirectory()) {
+                final File index = new File(file, RESOURCE);
+                return index.isFile() ? read(new FileInputStream(index), checksum) : null;
+            }
+
+            final ZipFile zip = new ZipFile(file);
+            try {
+                final ZipEntry entry = zip.getEntry(RESOURCE);
+                return entry == null ? null : read(zip.getInputStream(entry), checksum);
+            } finally {
+                zip.close();
+            }
+        }
+
+        /**
+         * Reads the archive, recording the stripped bytecode, and writes the index once all read.
+         */
+        private final class IndexingIterator implements Iterator<Entry> {
+            private final Iterator<Entry> entries;
+            private final String checksum;
+            private final File cache;
+            private final Map<String, byte[]> index = new LinkedHashMap<String, byte[]>();
+            private final Map<String, Entry> skipped = new LinkedHashMap<String, Entry>();
+            private boolean written;
+
+            private IndexingIterator(final Iterator<Entry> entries, final String checksum, final File cache) {
+                this.entries = entries;
+                this.checksum = checksum;
+                this.cache = cache;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (entries.hasNext()) {
+                    return true;
+                }
+                if (!written) {
+                    written = true;
+                    writeIndex();
+                }
+                return false;
+            }
+
+            @Override
+            public Entry next() {
+                final Entry entry = entries.next();
+                final String name = entry.getName();
+                skipped.put(name, entry);
+                return new Entry() {
+                    @Override
+                    public String getName() {
+                        return name;
+                    }
+
+                    @Override
+                    public InputStream getBytecode() throws IOException {
+                        final byte[] bytecode = readBytes(entry.getBytecode());
+                        skipped.remove(name);
+                        index.put(name, strip(bytecode));
+                        return new ByteArrayInputStream(bytecode);
+                    }
+                };
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private void writeIndex() {
+                try {
+                    // the classes filtered by the caller, the index is shared by all the scans of the archive
+                    for (final Map.Entry<String, Entry> entry : skipped.entrySet()) {
+                        index.put(entry.getKey(), strip(readBytes(entry.getValue().getBytecode())));
+                    }
+                    write(cache, checksum, index);
+                } catch (final Exception e) {
+                    logger.debug("Can't write the annotation index of " + location, e);
+                }
+            }
+        }
+    }
+
+    private static final class IndexIterator implements Iterator<Archive.Entry> {
+        private final Iterator<Map.Entry<String, byte[]>> classes;
+
+        private IndexIterator(final Map<String, byte[]> index) {
+            this.classes = index.entrySet().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return classes.hasNext();
+        }
+
+        @Override
+        public Archive.Entry next() {
+            if (!classes.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            final Map.Entry<String, byte[]> entry = classes.next();
+            return new Archive.Entry() {
+                @Override
+                public String getName() {
+                    return entry.getKey();
+                }
+
+                @Override
+                public InputStream getBytecode() {
+                    return new ByteArrayInputStream(entry.getValue());
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
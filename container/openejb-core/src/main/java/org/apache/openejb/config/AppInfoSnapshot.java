@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ContainerInfo;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.HexConverter;
+import org.apache.openejb.util.OpenEjbVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Result of the configuration of an application archive, enabled with openejb.config.snapshot=true.
+ * <p/>
+ * The snapshot holds the AppInfo built for the archive with the containers and resources
+ * installed while configuring it, and the server extensions found in it.  It is written
+ * under openejb.config.snapshot.dir, by default the work directory of the server, and
+ * used instead of configuring the archive again while its fingerprint is unchanged.
+ * <p/>
+ * The fingerprint covers the entries of the archive (name and CRC for a jar, name, size and
+ * date for a directory), the server configuration file, the system properties and the
+ * version of the server.
+ *
+ * @version $Rev$ $Date$
+ */
+public class AppInfoSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ENABLED = "openejb.config.snapshot";
+    public static final String DIRECTORY = "openejb.config.snapshot.dir";
+
+    private final String fingerprint;
+    private AppInfo appInfo;
+    private final List<ContainerInfo> containers = new ArrayList<ContainerInfo>();
+    private final List<ResourceInfo> resources = new ArrayList<ResourceInfo>();
+    private final List<String> extensions = new ArrayList<String>();
+
+    public AppInfoSnapshot(final String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public static boolean isEnabled() {
+        return SystemInstance.get().getOptions().get(ENABLED, false);
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public AppInfo getAppInfo() {
+        return appInfo;
+    }
+
+    public void setAppInfo(final AppInfo appInfo) {
+        this.appInfo = appInfo;
+    }
+
+    public List<ContainerInfo> getContainers() {
+        return containers;
+    }
+
+    public List<ResourceInfo> getResources() {
+        return resources;
+    }
+
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * @return the snapshot of the archive if it has the fingerprint, null otherwise
+     */
+    public static AppInfoSnapshot read(final File archive, final String fingerprint) {
+        try {
+            final File file = file(archive);
+            if (!file.isFile()) {
+                return null;
+            }
+
+            final ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+            try {
+                final AppInfoSnapshot snapshot = (AppInfoSnapshot) in.readObject();
+                return fingerprint.equals(snapshot.fingerprint) && snapshot.appInfo != null ? snapshot : null;
+            } finally {
+                in.close();
+            }
+        } catch (final Exception e) {
+            // unreadable or from another version, configured again
+            return null;
+        }
+    }
+
+    public void write(final File archive) throws IOException {
+        final File file = file(archive);
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        final ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))));
+        try {
+            out.writeObject(this);
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            Files.delete(tmp);
+            throw new IOException("Can't write " + file);
+        }
+    }
+
+    private static File file(final File archive) throws IOException {
+        final String directory = SystemInstance.get().getOptions().get(DIRECTORY, (String) null);
+        final File snapshots;
+        if (directory != null) {
+            snapshots = Files.mkdirs(new File(directory));
+        } else if (SystemInstance.get().getConf(null).exists()) {
+            snapshots = SystemInstance.get().getBase().getDirectory("work/app-snapshots", true);
+        } else {
+            snapshots = Files.mkdirs(new File(Files.tmpdir(), "openejb-app-snapshots"));
+        }
+        return new File(snapshots, HexConverter.bytesToHex(digest().digest(archive.getAbsolutePath().getBytes(StandardCharsets.UTF_8))) + ".snapshot");
+    }
+
+    public static String fingerprint(final File archive, final String configLocation) throws IOException {
+        final MessageDigest digest = digest();
+        update(digest, OpenEjbVersion.get().getVersion());
+        update(digest, archive.getAbsolutePath());
+
+        if (configLocation != null) {
+            final File config = new File(configLocation);
+            update(digest, configLocation + ':' + config.length() + ':' + config.lastModified());
+        }
+
+        for (final Map.Entry<String, String> property : sorted(SystemInstance.get().getProperties()).entrySet()) {
+            update(digest, property.getKey() + '=' + property.getValue());
+        }
+
+        if (archive.isDirectory()) {
+            updateDirectory(digest, archive, "");
+        } else {
+            final ZipFile zip = new ZipFile(archive);
+            try {
+                final Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    update(digest, entry.getName() + ':' + entry.getCrc());
+                }
+            } finally {
+                zip.close();
+            }
+        }
+        return HexConverter.bytesToHex(digest.digest());
+    }
+
+    private static Map<String, String> sorted(final Properties properties) {
+        final Map<String, String> map = new TreeMap<String, String>();
+        for (final String name : properties.stringPropertyNames()) {
+            map.put(name, properties.getProperty(name));
+        }
+        return map;
+    }
+
+    private static void updateDirectory(final MessageDigest digest, final File directory, final String path) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final Map<String, File> sorted = new TreeMap<String, File>();
+        for (final File file : files) {
+            sorted.put(file.getName(), file);
+        }
+        for (final File file : sorted.values()) {
+            final String name = path + file.getName();
+            if (file.isDirectory()) {
+                updateDirectory(digest, file, name + "/");
+            } else {
+                update(digest, name + ':' + file.length() + ':' + file.lastModified());
+            }
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -71,6 +71,7 @@ public class AppModule implements DeploymentModule {
     private final Collection<String> jaxRsProviders = new TreeSet<String>();
     private final Map<String, PojoConfiguration> pojoConfigurations = new HashMap<String, PojoConfiguration>();
     private IAnnotationFinder earLibFinder;
+    private final DeploymentPhases phases = new DeploymentPhases();
 
     private ID id;
     private boolean webapp;
@@ -431,4 +432,8 @@ public class AppModule implements DeploymentModule {
     public void setEarLibFinder(final IAnnotationFinder earLibFinder) {
         this.earLibFinder = earLibFinder;
     }
+
+    public DeploymentPhases getPhases() {
+        return phases;
+    }
 }
@@ -140,6 +140,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     private static final boolean WSDL4J_AVAILABLE = exists("javax.wsdl.xml.WSDLLocator");
 
     private String configLocation;
+    private final ThreadLocal<AppInfoSnapshot> snapshot = new ThreadLocal<AppInfoSnapshot>();
     private OpenEjbConfiguration sys;
     private Openejb openejb;
     private final DynamicDeployer deployer;
@@ -403,8 +404,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
 
         @Override
         public AppModule deploy(AppModule appModule) throws OpenEJBException {
+            final DeploymentPhases phases = appModule.getPhases();
             for (final DynamicDeployer deployer : chain) {
+                final long start = System.nanoTime();
                 appModule = deployer.deploy(appModule);
+                phases.add(deployer.getClass().getSimpleName(), System.nanoTime() - start);
             }
             return appModule;
         }
@@ -426,6 +430,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ContainerInfo serviceInfo) throws OpenEJBException {
+        final AppInfoSnapshot recording = snapshot.get();
+        if (recording != null) {
+            recording.getContainers().add(serviceInfo);
+        }
+
         if (sys != null) {
             sys.containerSystem.containers.add(serviceInfo);
         } else if (!offline) {
@@ -435,6 +444,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ResourceInfo serviceInfo) throws OpenEJBException {
+        final AppInfoSnapshot recording = snapshot.get();
+        if (recording != null) {
+            recording.getResources().add(serviceInfo);
+        }
+
         if (sys != null) {
             sys.facilities.resources.add(serviceInfo);
         } else if (!offline) {
@@ -811,13 +825,33 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     public AppInfo configureApplication(final File jarFile) throws OpenEJBException {
         logger.debug("Beginning load: " + jarFile.getAbsolutePath());
 
+        final AppInfoSnapshot recording = newSnapshot(jarFile);
+        if (recording != null) {
+            final AppInfo appInfo = restoreSnapshot(jarFile, recording.getFingerprint());
+            if (appInfo != null) {
+                return appInfo;
+            }
+            snapshot.set(recording);
+        }
+
         try {
+            final long start = System.nanoTime();
             final AppModule appModule = deploymentLoader.load(jarFile, null);
+            appModule.getPhases().add("DeploymentLoader", System.nanoTime() - start);
             final AppInfo appInfo = configureApplication(appModule);
 
             // TODO This is temporary -- we need to do this in AppInfoBuilder
             appInfo.paths.add(appInfo.path);
             appInfo.paths.add(jarFile.getAbsolutePath());
+
+            if (recording != null) {
+                recording.setAppInfo(appInfo);
+                try {
+                    recording.write(jarFile);
+                } catch (final IOException e) {
+                    logger.warning("Can't write the configuration snapshot of " + jarFile.getAbsolutePath(), e);
+                }
+            }
             return appInfo;
         } catch (final ValidationFailedException e) {
             logger.warning("configureApplication.loadFailed", jarFile.getAbsolutePath(), e.getMessage()); // DO not include the stacktrace in the message
@@ -827,9 +861,45 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             // removing this message causes NO messages to be printed when embedded
             logger.warning("configureApplication.loadFailed", e, jarFile.getAbsolutePath(), e.getMessage());
             throw e;
+        } finally {
+            snapshot.remove();
+        }
+    }
+
+    private AppInfoSnapshot newSnapshot(final File jarFile) {
+        if (!AppInfoSnapshot.isEnabled() || !jarFile.exists()) {
+            return null;
+        }
+
+        try {
+            return new AppInfoSnapshot(AppInfoSnapshot.fingerprint(jarFile, configLocation));
+        } catch (final IOException e) {
+            logger.debug("Can't fingerprint " + jarFile.getAbsolutePath(), e);
+            return null;
         }
     }
 
+    /**
+     * Installs the containers and resources of the configuration snapshot of the archive
+     * and returns its application, or returns null if the archive changed since the snapshot.
+     */
+    private AppInfo restoreSnapshot(final File jarFile, final String fingerprint) throws OpenEJBException {
+        final AppInfoSnapshot restored = AppInfoSnapshot.read(jarFile, fingerprint);
+        if (restored == null) {
+            return null;
+        }
+
+        logger.info("Using the configuration snapshot of " + jarFile.getAbsolutePath());
+        for (final ContainerInfo containerInfo : restored.getContainers()) {
+            install(containerInfo);
+        }
+        for (final ResourceInfo resourceInfo : restored.getResources()) {
+            install(resourceInfo);
+        }
+        Extensions.addExtensions(Thread.currentThread().getContextClassLoader(), restored.getExtensions());
+        return restored.getAppInfo();
+    }
+
     /**
      * embedded usage
      *
@@ -873,7 +943,9 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             logger.info("Beginning load: " + jarFile.getAbsolutePath());
 
             try {
+                final long start = System.nanoTime();
                 final AppModule module = deploymentLoader.load(jarFile, null);
+                collection.getPhases().add("DeploymentLoader", System.nanoTime() - start);
 
                 collection.getAdditionalLibraries().addAll(module.getAdditionalLibraries());
                 collection.getClientModules().addAll(module.getClientModules());
@@ -980,13 +1052,29 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
             // add it as early as possible, the ones needing the app classloader will be added later
             Extensions.addExtensions(extensions);
 
+            final AppInfoSnapshot recording = snapshot.get();
+            if (recording != null) {
+                for (final Class<?> extension : extensions) {
+                    recording.getExtensions().add(extension.getName());
+                }
+            }
+
             final String location = appModule.getJarLocation();
             logger.info("config.configApp", null != location ? location : appModule.getModuleId());
             deployer.deploy(appModule);
             final AppInfoBuilder appInfoBuilder = new AppInfoBuilder(this);
 
+            final long start = System.nanoTime();
             final AppInfo info = appInfoBuilder.build(appModule);
             info.eventClassesNeedingAppClassloader.addAll(notLoaded);
+            appModule.getPhases().add("AppInfoBuilder", System.nanoTime() - start);
+
+            final String timings = "Configuration phases of " + appModule.getModuleId() + ": " + appModule.getPhases();
+            if (SystemInstance.get().getOptions().get(DeploymentPhases.LOG_TIMINGS, false)) {
+                logger.info(timings);
+            } else {
+                logger.debug(timings);
+            }
 
             return info;
         } finally {
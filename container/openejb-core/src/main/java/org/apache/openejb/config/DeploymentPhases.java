@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in each phase of the configuration of an application, in the order
+ * the phases first ran.  A phase running several times is summed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class DeploymentPhases {
+
+    public static final String LOG_TIMINGS = "openejb.deployer.timings";
+
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    public synchronized void add(final String phase, final long nanos) {
+        final Long time = phases.get(phase);
+        phases.put(phase, time == null ? nanos : time + nanos);
+    }
+
+    /**
+     * @return the time spent in the phase in milliseconds
+     */
+    public synchronized long get(final String phase) {
+        final Long time = phases.get(phase);
+        return time == null ? 0 : TimeUnit.NANOSECONDS.toMillis(time);
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+        final Map<String, Long> millis = new LinkedHashMap<String, Long>();
+        for (final Map.Entry<String, Long> phase : phases.entrySet()) {
+            millis.put(phase.getKey(), TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+        }
+        return millis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, Long> phase : getPhases().entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(phase.getKey()).append('=').append(phase.getValue()).append("ms");
+        }
+        return sb.toString();
+    }
+}
@@ -27,6 +27,8 @@ import org.apache.openejb.jee.Servlet;
 import org.apache.openejb.jee.SessionBean;
 import org.apache.openejb.jee.WebserviceDescription;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 import org.apache.xbean.finder.Annotated;
 import org.apache.xbean.finder.AnnotationFinder;
 import org.apache.xbean.finder.IAnnotationFinder;
@@ -51,13 +53,18 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.apache.openejb.util.Classes.ancestors;
 
 public class FinderFactory {
 
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, FinderFactory.class);
     private static final FinderFactory factory = new FinderFactory();
     public static final String FORCE_LINK = "openejb.finder.force.link";
+    public static final String PARALLEL = "openejb.finder.parallel";
+    public static final String PARALLEL_THREADS = "openejb.finder.parallel.threads";
     private static volatile boolean MODULE_LIMITED = "true".equalsIgnoreCase(SystemInstance.get().getProperty("openejb.finder.module-scoped", "false"));
 
     private static FinderFactory get() {
@@ -69,6 +76,87 @@ public class FinderFactory {
         return get().create(module);
     }
 
+    /**
+     * Creates at once the finders of the modules of the application which will be scanned,
+     * each module on its own thread.  A module failing here is left without finder so it
+     * is scanned again, and reported, by the annotation deployer.
+     *
+     * @return false if the parallel scanning is not enabled
+     */
+    public static boolean createFinders(final AppModule appModule) {
+        if (!SystemInstance.get().getOptions().get(PARALLEL, false)) {
+            return false;
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        if (!appModule.isWebapp() && !appModule.getWebModules().isEmpty() && appModule.getEarLibFinder() == null) {
+            tasks.add(new FinderTask(appModule) {
+                @Override
+                protected void set(final IAnnotationFinder finder) {
+                    appModule.setEarLibFinder(finder);
+                }
+            });
+        }
+        for (final EjbModule ejbModule : appModule.getEjbModules()) {
+            ejbModule.initAppModule(appModule);
+            if (ejbModule.getFinder() == null && (ejbModule.getEjbJar() == null || !ejbModule.getEjbJar().isMetadataComplete())) {
+                tasks.add(new FinderTask(ejbModule) {
+                    @Override
+                    protected void set(final IAnnotationFinder finder) {
+                        ejbModule.setFinder(finder);
+                    }
+                });
+            }
+        }
+        for (final WebModule webModule : appModule.getWebModules()) {
+            if (webModule.getFinder() == null && (webModule.getWebApp() == null || !webModule.getWebApp().isMetadataComplete())) {
+                tasks.add(new FinderTask(webModule) {
+                    @Override
+                    protected void set(final IAnnotationFinder finder) {
+                        webModule.setFinder(finder);
+                    }
+                });
+            }
+        }
+        if (tasks.size() < 2) {
+            return true;
+        }
+
+        final int threads = SystemInstance.get().getOptions().get(PARALLEL_THREADS, Runtime.getRuntime().availableProcessors());
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+        return true;
+    }
+
+    private abstract static class FinderTask implements Callable<Void> {
+        private final DeploymentModule module;
+
+        private FinderTask(final DeploymentModule module) {
+            this.module = module;
+        }
+
+        protected abstract void set(IAnnotationFinder finder);
+
+        @Override
+        public Void call() {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader loader = thread.getContextClassLoader();
+            thread.setContextClassLoader(module.getClassLoader());
+            try {
+                set(createFinder(module));
+            } catch (final Throwable e) {
+                logger.debug("Can't create the finder of " + module.getModuleId() + " in parallel", e);
+            } finally {
+                thread.setContextClassLoader(loader);
+            }
+            return null;
+        }
+    }
+
     public static AnnotationFinder getFinder(final ClassLoader classLoader, final URL url) {
         return newFinder(ClasspathArchive.archive(classLoader, url));
     }
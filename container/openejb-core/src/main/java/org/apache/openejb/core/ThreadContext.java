@@ -22,18 +22,51 @@ import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ThreadContext {
 
     private static final Logger log = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
     private static final ThreadLocal<ThreadContext> threadStorage = new ThreadLocal<ThreadContext>();
-    private static final List<ThreadContextListener> listeners = new CopyOnWriteArrayList<ThreadContextListener>();
     private static final ThreadLocal<AtomicBoolean> asynchronousCancelled = new ThreadLocal<AtomicBoolean>();
 
+    // copied on write, iterated by index on each invocation to not create an iterator
+    private static volatile ThreadContextListener[] listeners = new ThreadContextListener[0];
+
+    /**
+     * Gives each class of the container used as a data key a fixed index in the data array of the contexts,
+     * the key lookup of an invocation is then an array access instead of a hashing.  The keys of the
+     * applications, which come and go with their class loader, are hashed so the indexes stay bounded.
+     */
+    private static final AtomicInteger slotCount = new AtomicInteger();
+    private static final ClassValue<Integer> slots = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(final Class<?> type) {
+            return isContainerClass(type) ? slotCount.getAndIncrement() : -1;
+        }
+    };
+
+    private static boolean isContainerClass(final Class<?> type) {
+        final ClassLoader loader = type.getClassLoader();
+        if (loader == null) {
+            return true;
+        }
+        for (ClassLoader parent = ThreadContext.class.getClassLoader(); parent != null; parent = parent.getParent()) {
+            if (parent == loader) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int getSlotCount() {
+        return slotCount.get();
+    }
+
     public static ThreadContext getThreadContext() {
         return threadStorage.get();
     }
@@ -53,7 +86,9 @@ public class ThreadContext {
         threadStorage.set(newContext);
 
         // notify listeners
-        for (final ThreadContextListener listener : listeners) {
+        final ThreadContextListener[] listeners = ThreadContext.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            final ThreadContextListener listener = listeners[i];
             try {
                 listener.contextEntered(oldContext, newContext);
             } catch (final Throwable e) {
@@ -79,7 +114,9 @@ public class ThreadContext {
         threadStorage.set(oldContext);
 
         // notify listeners
-        for (final ThreadContextListener listener : listeners) {
+        final ThreadContextListener[] listeners = ThreadContext.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            final ThreadContextListener listener = listeners[i];
             try {
                 listener.contextExited(exitingContext, oldContext);
             } catch (final Throwable e) {
@@ -100,17 +137,28 @@ public class ThreadContext {
         asynchronousCancelled.remove();
     }
 
-    public static void addThreadContextListener(final ThreadContextListener listener) {
-        listeners.add(listener);
+    public static synchronized void addThreadContextListener(final ThreadContextListener listener) {
+        final ThreadContextListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+        copy[listeners.length] = listener;
+        listeners = copy;
     }
 
-    public static void removeThreadContextListener(final ThreadContextListener listener) {
-        listeners.remove(listener);
+    public static synchronized void removeThreadContextListener(final ThreadContextListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                final ThreadContextListener[] copy = new ThreadContextListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, copy, 0, i);
+                System.arraycopy(listeners, i + 1, copy, i, copy.length - i);
+                listeners = copy;
+                return;
+            }
+        }
     }
 
     private final BeanContext beanContext;
     private final Object primaryKey;
-    private final HashMap<Class, Object> data = new HashMap<Class, Object>();
+    private Object[] data;
+    private Map<Class<?>, Object> applicationData;
     private ClassLoader oldClassLoader;
     private Operation currentOperation;
     private Class invokedInterface;
@@ -138,7 +186,8 @@ public class ThreadContext {
     public ThreadContext(final ThreadContext that) {
         this.beanContext = that.beanContext;
         this.primaryKey = that.primaryKey;
-        this.data.putAll(that.data);
+        this.data = that.data == null ? null : that.data.clone();
+        this.applicationData = that.applicationData == null ? null : new HashMap<Class<?>, Object>(that.applicationData);
         this.oldClassLoader = that.oldClassLoader;
     }
 
@@ -184,17 +233,48 @@ public class ThreadContext {
 
     @SuppressWarnings({"unchecked"})
     public <T> T get(final Class<T> type) {
-        return (T) data.get(type);
+        final int slot = slots.get(type);
+        if (slot < 0) {
+            return applicationData == null ? null : (T) applicationData.get(type);
+        }
+        if (data == null || slot >= data.length) {
+            return null;
+        }
+        return (T) data[slot];
     }
 
     @SuppressWarnings({"unchecked"})
     public <T> T set(final Class<T> type, final T value) {
-        return (T) data.put(type, value);
+        final int slot = slots.get(type);
+        if (slot < 0) {
+            return setApplicationData(type, value);
+        }
+        if (data == null || slot >= data.length) {
+            if (value == null) {
+                return null;
+            }
+            // sized for all the keys known so far, most contexts never grow
+            final int length = Math.max(slotCount.get(), slot + 1);
+            data = data == null ? new Object[length] : Arrays.copyOf(data, length);
+        }
+        final Object old = data[slot];
+        data[slot] = value;
+        return (T) old;
     }
 
-    @SuppressWarnings({"unchecked"})
     public <T> T remove(final Class<T> type) {
-        return (T) data.remove(type);
+        return set(type, null);
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private <T> T setApplicationData(final Class<T> type, final T value) {
+        if (value == null) {
+            return applicationData == null ? null : (T) applicationData.remove(type);
+        }
+        if (applicationData == null) {
+            applicationData = new HashMap<Class<?>, Object>();
+        }
+        return (T) applicationData.put(type, value);
     }
 
     public boolean isDiscardInstance() {
@@ -205,12 +285,27 @@ public class ThreadContext {
         this.discardInstance = discardInstance;
     }
 
+    private int dataSize() {
+        int size = 0;
+        if (data != null) {
+            for (final Object value : data) {
+                if (value != null) {
+                    size++;
+                }
+            }
+        }
+        if (applicationData != null) {
+            size += applicationData.size();
+        }
+        return size;
+    }
+
     @Override
     public String toString() {
         return "ThreadContext{" +
             "beanContext=" + beanContext.getId() +
             ", primaryKey=" + primaryKey +
-            ", data=" + data.size() +
+            ", data=" + dataSize() +
             ", oldClassLoader=" + oldClassLoader +
             ", currentOperation=" + currentOperation +
             ", invokedInterface=" + invokedInterface +
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The interceptor methods to call for one operation, resolved once from the
+ * {@link InterceptorData} so that an invocation only has to look up the
+ * interceptor instances of the bean instance it runs on.
+ * <p/>
+ * A chain is immutable and can be shared by concurrent invocations.
+ *
+ * @version $Rev$ $Date$
+ */
+public class InterceptorChain {
+    private final Operation operation;
+    private final String[] interceptorClasses;
+    private final Method[] methods;
+    private final boolean[] invocationContextParameter;
+    private final Method targetMethod;
+    private final MethodInvoker targetInvoker;
+
+    public InterceptorChain(final Operation operation, final List<InterceptorData> interceptorDatas) {
+        this(operation, interceptorDatas, null, null);
+    }
+
+    /**
+     * @param targetMethod  the bean method the chain ends with, can be null
+     * @param targetInvoker calls the target method without reflection, can be null
+     */
+    public InterceptorChain(final Operation operation, final List<InterceptorData> interceptorDatas, final Method targetMethod, final MethodInvoker targetInvoker) {
+        if (operation == null) {
+            throw new NullPointerException("operation is null");
+        }
+        if (interceptorDatas == null) {
+            throw new NullPointerException("interceptorDatas is null");
+        }
+        this.operation = operation;
+        this.targetMethod = targetMethod;
+        this.targetInvoker = targetInvoker;
+
+        final List<String> classes = new ArrayList<String>(interceptorDatas.size());
+        final List<Method> links = new ArrayList<Method>(interceptorDatas.size());
+        for (final InterceptorData interceptorData : interceptorDatas) {
+            final String interceptorClass = interceptorData.getInterceptorClass().getName();
+            for (final Method method : interceptorData.getMethods(operation)) {
+                classes.add(interceptorClass);
+                links.add(method);
+            }
+        }
+
+        this.interceptorClasses = classes.toArray(new String[classes.size()]);
+        this.methods = links.toArray(new Method[links.size()]);
+        this.invocationContextParameter = new boolean[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            invocationContextParameter[i] = isInvocationContextParameter(methods[i]);
+        }
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int size() {
+        return methods.length;
+    }
+
+    /**
+     * @param interceptorInstances the interceptor instances of a bean instance by class name
+     * @return the instance to call each interceptor method on
+     * @throws IllegalArgumentException if an interceptor instance is missing
+     */
+    public Object[] bind(final Map<String, Object> interceptorInstances) {
+        if (interceptorInstances == null) {
+            throw new NullPointerException("interceptorInstances is null");
+        }
+
+        final Object[] instances = new Object[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            final Object interceptorInstance = interceptorInstances.get(interceptorClasses[i]);
+            if (interceptorInstance == null) {
+                throw new IllegalArgumentException("No interceptor of type " + interceptorClasses[i]);
+            }
+
+            final Object handler = DynamicProxyImplFactory.realHandler(interceptorInstance);
+            if (handler != null && methods[i].getDeclaringClass().equals(handler.getClass())) { // dynamic impl
+                instances[i] = handler;
+            } else {
+                instances[i] = interceptorInstance;
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * @param method the method invoked at the end of the chain
+     * @return the generated invoker of the method if any
+     */
+    MethodInvoker getInvoker(final Method method) {
+        if (targetInvoker != null && method != null && (method == targetMethod || method.equals(targetMethod))) {
+            return targetInvoker;
+        }
+        return null;
+    }
+
+    Method[] getMethods() {
+        return methods;
+    }
+
+    boolean[] getInvocationContextParameter() {
+        return invocationContextParameter;
+    }
+
+    static boolean isInvocationContextParameter(final Method method) {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        return parameterTypes.length == 1 && parameterTypes[0] == InvocationContext.class;
+    }
+}
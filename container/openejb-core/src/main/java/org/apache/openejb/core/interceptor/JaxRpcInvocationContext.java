@@ -36,4 +36,9 @@ public class JaxRpcInvocationContext extends ReflectionInvocationContext {
         super(operation, interceptors, target, method, parameters);
         getContextData().put(MessageContext.class.getName(), messageContext);
     }
+
+    public JaxRpcInvocationContext(final InterceptorChain chain, final Object[] instances, final Object target, final Method method, final MessageContext messageContext, final Object... parameters) {
+        super(chain, instances, target, method, parameters);
+        getContextData().put(MessageContext.class.getName(), messageContext);
+    }
 }
@@ -35,6 +35,11 @@ public class JaxWsInvocationContext extends ReflectionInvocationContext {
         this.messageContext = messageContext;
     }
 
+    public JaxWsInvocationContext(final InterceptorChain chain, final Object[] instances, final Object target, final Method method, final MessageContext messageContext, final Object... parameters) {
+        super(chain, instances, target, method, parameters);
+        this.messageContext = messageContext;
+    }
+
     public Map<String, Object> getContextData() {
         return messageContext;
     }
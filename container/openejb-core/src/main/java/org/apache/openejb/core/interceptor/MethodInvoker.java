@@ -0,0 +1,33 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+/**
+ * Calls one bean method directly, see {@link MethodInvokerFactory}.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface MethodInvoker {
+
+    /**
+     * @param target the bean instance
+     * @param args   the method parameters, extra parameters are ignored
+     * @return the result of the method, boxed, or null for a void method
+     * @throws Exception anything the method throws, not wrapped
+     */
+    Object invoke(Object target, Object[] args) throws Exception;
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.proxy.LocalBeanProxyFactory;
+import org.apache.xbean.asm5.ClassWriter;
+import org.apache.xbean.asm5.MethodVisitor;
+import org.apache.xbean.asm5.Opcodes;
+import org.apache.xbean.asm5.Type;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a {@link MethodInvoker} class per bean method so the container calls the
+ * bean with a plain virtual call instead of {@link Method#invoke(Object, Object...)}:
+ * no access check, no argument array copy and no InvocationTargetException to unwrap.
+ * <p/>
+ * The invoker is defined in the package and class loader of the class declaring the method,
+ * so it can call public, protected and package visible methods.  When a method can't be
+ * called that way (private, static, bootstrap class, a parameter or return type the invoker
+ * can't see...) no invoker is generated and the container keeps on using reflection.
+ * <p/>
+ * Disabled by default, set {@link #OPENEJB_INVOKER_GENERATED} to true to activate it.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class MethodInvokerFactory implements Opcodes {
+
+    public static final String OPENEJB_INVOKER_GENERATED = "openejb.invoker.generated";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB, MethodInvokerFactory.class);
+    private static final AtomicInteger ID = new AtomicInteger();
+
+    private static final String INVOKER = Type.getInternalName(MethodInvoker.class);
+    private static final String OBJECT = Type.getInternalName(Object.class);
+
+    private MethodInvokerFactory() {
+        // no-op
+    }
+
+    public static boolean isActive() {
+        return SystemInstance.get().getOptions().get(OPENEJB_INVOKER_GENERATED, false);
+    }
+
+    /**
+     * @param method the bean method
+     * @return a generated invoker or null if the method can only be called reflectively
+     */
+    public static MethodInvoker create(final Method method) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        final ClassLoader loader = declaringClass.getClassLoader();
+        final int modifiers = method.getModifiers();
+        if (loader == null || Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || declaringClass.getName().startsWith("java.")) {
+            return null;
+        }
+
+        // the casts of the invoker would fail with an IllegalAccessError on the first call
+        if (!isAccessible(method.getReturnType(), declaringClass)) {
+            return null;
+        }
+        for (final Class<?> type : method.getParameterTypes()) {
+            if (!isAccessible(type, declaringClass)) {
+                return null;
+            }
+        }
+
+        final String name = declaringClass.getName() + "$$Invoker" + ID.incrementAndGet();
+        try {
+            final byte[] bytes = generate(method, name.replace('.', '/'));
+            final Class<?> invokerClass = LocalBeanProxyFactory.Unsafe.defineClass(loader, declaringClass, name, bytes);
+            return MethodInvoker.class.cast(invokerClass.newInstance());
+        } catch (final Throwable e) {
+            // sealed or signed package, MethodInvoker not visible from the loader...
+            LOGGER.debug("Can't generate an invoker for " + method + ", using reflection", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param type a parameter or return type
+     * @param from the class the invoker is generated next to
+     * @return true if a class of the package of {@code from} can cast to the type
+     */
+    static boolean isAccessible(final Class<?> type, final Class<?> from) {
+        Class<?> component = type;
+        while (component.isArray()) {
+            component = component.getComponentType();
+        }
+        if (component.isPrimitive()) {
+            return true;
+        }
+
+        // a member type is only as visible as the types enclosing it
+        for (Class<?> c = component; c != null; c = c.getDeclaringClass()) {
+            if (!Modifier.isPublic(c.getModifiers()) && !isSamePackage(c, from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSamePackage(final Class<?> type, final Class<?> from) {
+        return type.getClassLoader() == from.getClassLoader() && packageName(type).equals(packageName(from));
+    }
+
+    private static String packageName(final Class<?> type) {
+        final String name = type.getName();
+        final int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(0, dot);
+    }
+
+    static byte[] generate(final Method method, final String invokerName) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, invokerName, null, OBJECT, new String[]{INVOKER});
+
+        final MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", null, new String[]{Type.getInternalName(Exception.class)});
+        mv.visitCode();
+
+        final Class<?> declaringClass = method.getDeclaringClass();
+        final String owner = Type.getInternalName(declaringClass);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, owner);
+
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            unbox(mv, parameterTypes[i]);
+        }
+
+        if (declaringClass.isInterface()) {
+            mv.visitMethodInsn(INVOKEINTERFACE, owner, method.getName(), Type.getMethodDescriptor(method), true);
+        } else {
+            mv.visitMethodInsn(INVOKEVIRTUAL, owner, method.getName(), Type.getMethodDescriptor(method), false);
+        }
+
+        box(mv, method.getReturnType());
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void unbox(final MethodVisitor mv, final Class<?> type) {
+        if (!type.isPrimitive()) {
+            if (type != Object.class) {
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+            }
+            return;
+        }
+
+        final Type primitive = Type.getType(type);
+        final String wrapper = Type.getInternalName(wrapper(type));
+        mv.visitTypeInsn(CHECKCAST, wrapper);
+        mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getName() + "Value", "()" + primitive.getDescriptor(), false);
+    }
+
+    private static void box(final MethodVisitor mv, final Class<?> type) {
+        if (type == Void.TYPE) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (type.isPrimitive()) {
+            final String wrapper = Type.getInternalName(wrapper(type));
+            mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + Type.getType(type).getDescriptor() + ")L" + wrapper + ";", false);
+        }
+    }
+
+    private static Class<?> wrapper(final Class<?> type) {
+        if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Double.TYPE) {
+            return Double.class;
+        } else if (type == Float.TYPE) {
+            return Float.class;
+        } else if (type == Short.TYPE) {
+            return Short.class;
+        } else if (type == Byte.TYPE) {
+            return Byte.class;
+        } else if (type == Character.TYPE) {
+            return Character.class;
+        }
+        throw new IllegalStateException("Type: " + type.getName() + " is not a primitive type");
+    }
+}
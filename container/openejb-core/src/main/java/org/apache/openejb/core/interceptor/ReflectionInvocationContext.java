@@ -24,7 +24,6 @@ import javax.interceptor.InvocationContext;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -33,12 +32,18 @@ import java.util.TreeMap;
  * @version $Rev$ $Date$
  */
 public class ReflectionInvocationContext implements InvocationContext {
-    private final Iterator<Interceptor> interceptors;
+    private static final Class<?>[] NO_PARAMETER_TYPES = new Class<?>[0];
+
+    private final Object[] instances;
+    private final Method[] interceptorMethods;
+    private final boolean[] invocationContextParameter;
+    private int position;
     private final Object target;
     private final Method method;
+    private final MethodInvoker invoker;
     private final Object[] parameters;
-    private final Map<String, Object> contextData = new TreeMap<String, Object>();
-    private final Class<?>[] parameterTypes;
+    private Map<String, Object> contextData;
+    private Class<?>[] parameterTypes;
 
     private final Operation operation;
 
@@ -54,16 +59,53 @@ public class ReflectionInvocationContext implements InvocationContext {
         }
 
         this.operation = operation;
-        this.interceptors = interceptors.iterator();
         this.target = target;
         this.method = method;
+        this.invoker = null;
         this.parameters = parameters;
 
-        if (method == null) {
-            parameterTypes = new Class[0];
-        } else {
-            parameterTypes = method.getParameterTypes();
+        final int size = interceptors.size();
+        this.instances = new Object[size];
+        this.interceptorMethods = new Method[size];
+        this.invocationContextParameter = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            final Interceptor interceptor = interceptors.get(i);
+            instances[i] = interceptor.getInstance();
+            interceptorMethods[i] = interceptor.getMethod();
+            invocationContextParameter[i] = InterceptorChain.isInvocationContextParameter(interceptorMethods[i]);
+        }
+    }
+
+    /**
+     * @param chain     the interceptor methods, shared between invocations
+     * @param instances the instances of the interceptors of the chain, see {@link InterceptorChain#bind(Map)}
+     */
+    public ReflectionInvocationContext(final InterceptorChain chain, final Object[] instances, final Object target, final Method method, final Object... parameters) {
+        if (chain == null) {
+            throw new NullPointerException("chain is null");
+        }
+        if (instances == null || instances.length != chain.size()) {
+            throw new IllegalArgumentException("instances do not match the interceptor chain");
         }
+        if (target == null) {
+            throw new NullPointerException("target is null");
+        }
+
+        this.operation = chain.getOperation();
+        this.instances = instances;
+        this.interceptorMethods = chain.getMethods();
+        this.invocationContextParameter = chain.getInvocationContextParameter();
+        this.target = target;
+        this.method = method;
+        this.invoker = chain.getInvoker(method);
+        this.parameters = parameters;
+    }
+
+    private Class<?>[] getParameterTypes() {
+        if (parameterTypes == null) {
+            parameterTypes = method == null ? NO_PARAMETER_TYPES : method.getParameterTypes();
+        }
+        return parameterTypes;
     }
 
     @Override
@@ -122,6 +164,7 @@ public class ReflectionInvocationContext implements InvocationContext {
         if (parameters.length != this.parameters.length) {
             throw new IllegalArgumentException("Expected " + this.parameters.length + " parameters, but only got " + parameters.length + " parameters");
         }
+        final Class<?>[] parameterTypes = getParameterTypes();
         for (int i = 0; i < parameters.length; i++) {
             final Object parameter = parameters[i];
             final Class<?> parameterType = parameterTypes[i];
@@ -147,32 +190,37 @@ public class ReflectionInvocationContext implements InvocationContext {
 
     @Override
     public Map<String, Object> getContextData() {
+        // most invocations never look at it
+        if (contextData == null) {
+            contextData = new TreeMap<String, Object>();
+        }
         return contextData;
     }
 
-    private Invocation next() {
-        if (interceptors.hasNext()) {
-            final Interceptor interceptor = interceptors.next();
-            final Object nextInstance = interceptor.getInstance();
-            final Method nextMethod = interceptor.getMethod();
-
-            if (nextMethod.getParameterTypes().length == 1 && nextMethod.getParameterTypes()[0] == InvocationContext.class) {
-                return new InterceptorInvocation(nextInstance, nextMethod, this);
-            } else {
-                return new LifecycleInvocation(nextInstance, nextMethod, this, parameters);
+    private Object invokeNext() throws Exception {
+        if (position < interceptorMethods.length) {
+            final int i = position++;
+            if (invocationContextParameter[i]) {
+                return interceptorMethods[i].invoke(instances[i], this);
             }
+
+            // invoke the callback
+            interceptorMethods[i].invoke(instances[i], parameters);
+
+            // we need to call proceed so callbacks in subclasses get invoked
+            return proceed();
+        } else if (invoker != null) {
+            // generated code, exceptions are not wrapped and extra timer parameter is ignored
+            return invoker.invoke(target, parameters);
         } else if (method != null) {
             //EJB 3.1, it is allowed that timeout method does not have parameter Timer.class,
             //However, while invoking the timeout method, the timer value is passed, as it is also required by InnvocationContext.getTimer() method
-            final Object[] methodParameters;
-            if (operation.equals(Operation.TIMEOUT) && method.getParameterTypes().length == 0) {
-                methodParameters = new Object[0];
-            } else {
-                methodParameters = parameters;
+            if (operation.equals(Operation.TIMEOUT) && getParameterTypes().length == 0) {
+                return method.invoke(target);
             }
-            return new BeanInvocation(target, method, methodParameters);
+            return method.invoke(target, parameters);
         } else {
-            return new NoOpInvocation();
+            return null;
         }
     }
 
@@ -180,78 +228,14 @@ public class ReflectionInvocationContext implements InvocationContext {
     public Object proceed() throws Exception {
         // The bulk of the logic of this method has intentionally been moved
         // out so stepping through a large stack in a debugger can be done quickly.
-        // Simply put one break point on 'next.invoke()' or one inside that method.
+        // Simply put one break point on 'invokeNext()' or one inside that method.
         try {
-            final Invocation next = next();
-            return next.invoke();
+            return invokeNext();
         } catch (final InvocationTargetException e) {
             throw unwrapInvocationTargetException(e);
         }
     }
 
-    private abstract static class Invocation {
-        private final Method method;
-        private final Object[] args;
-        private final Object target;
-
-        public Invocation(final Object target, final Method method, final Object[] args) {
-            this.target = target;
-            this.method = method;
-            this.args = args;
-        }
-
-        public Object invoke() throws Exception {
-
-            final Object value = method.invoke(target, args);
-            return value;
-        }
-
-
-        public String toString() {
-            return method.getDeclaringClass().getName() + "." + method.getName();
-        }
-    }
-
-    private static class BeanInvocation extends Invocation {
-        public BeanInvocation(final Object target, final Method method, final Object[] args) {
-            super(target, method, args);
-        }
-    }
-
-    private static class InterceptorInvocation extends Invocation {
-        public InterceptorInvocation(final Object target, final Method method, final InvocationContext invocationContext) {
-            super(target, method, new Object[]{invocationContext});
-        }
-    }
-
-    private static class LifecycleInvocation extends Invocation {
-        private final InvocationContext invocationContext;
-
-        public LifecycleInvocation(final Object target, final Method method, final InvocationContext invocationContext, final Object[] args) {
-            super(target, method, args);
-            this.invocationContext = invocationContext;
-        }
-
-        public Object invoke() throws Exception {
-            // invoke the callback
-            super.invoke();
-
-            // we need to call proceed so callbacks in subclasses get invoked
-            final Object value = invocationContext.proceed();
-            return value;
-        }
-    }
-
-    private static class NoOpInvocation extends Invocation {
-        public NoOpInvocation() {
-            super(null, null, null);
-        }
-
-        public Object invoke() throws IllegalAccessException, InvocationTargetException {
-            return null;
-        }
-    }
-
     // todo verify excpetion types
 
     /**
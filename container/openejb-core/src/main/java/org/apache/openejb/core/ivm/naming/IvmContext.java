@@ -48,6 +48,7 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Map;
@@ -68,9 +69,13 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class IvmContext implements Context, Serializable {
     private static final long serialVersionUID = -626353930051783641L;
+    private static final int MAX_SLOTS = Integer.getInteger("openejb.jndi.slots.max", 1024);
     Hashtable<String, Object> myEnv;
     boolean readOnly;
     Map<String, Object> fastCache = new ConcurrentHashMap<String, Object>();
+    Map<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+    // revision of the tree the slots were created for, they are all dropped once it changed
+    private volatile long slotsRevision;
     public NameNode mynode;
 
     public static IvmContext createRootContext() {
@@ -105,7 +110,6 @@ public class IvmContext implements Context, Serializable {
             return this;
         }
 
-        final String compoundName;
         final int index = compositName.indexOf(":");
         if (index > -1) {
 
@@ -129,31 +133,56 @@ public class IvmContext implements Context, Serializable {
                 // we don't know what the prefix means, throw an exception
                 throw new NamingException("Unknown JNDI name prefix '" + prefix + ":'");
             }
+        }
+
+        /*
+           A name already resolved from this context, or compiled with the context, has a slot
+           pointing to the node holding the binding.  The slot is valid as long as the tree
+           didn't change since, so the node graph is not perused and no name is parsed.
+        */
+        Object obj;
+        final long revision = mynode.getRevision();
+        if (slotsRevision != revision) {
+            slots.clear();
+            slotsRevision = revision;
+        }
+        final Slot slot = slots.get(compositName);
+        if (slot != null && slot.revision == revision) {
+            obj = slot.node.getBinding();
         } else {
             /*
               the resolve method always starts with the comparison assuming that the first
               component of the name is a context of a peer node or the same node, so we have
               to prepend the current context name to the relative lookup path.
             */
-            compoundName = mynode.getAtomicName() + '/' + compositName;
-        }
+            final String compoundName = mynode.getAtomicName() + '/' + compositName;
 
-        /*
-           If the object has been resolved in the past from this context and the specified path (name)
-           it will be in the fastCache which is significantly faster then peruse the Node graph.
-           80 ms compared to 300 ms for a full node path search.
-        */
-        Object obj = fastCache.get(compoundName);
-        if (obj == null) {
-            try {
-                obj = mynode.resolve(new ParsedName(compoundName));
-            } catch (final NameNotFoundException nnfe) {
-                obj = federate(compositName);
-            }
+            /*
+               Names resolved through a federated context are kept in the fastCache
+               which is significantly faster then peruse the Node graph.
+            */
+            obj = fastCache.get(compoundName);
+            if (obj == null) {
+                NameNode node = null;
+                try {
+                    node = mynode.resolveNode(new ParsedName(compoundName));
+                    if (node != null) {
+                        // a stale slot is replaced in place, the looked up names are bounded
+                        if (slot != null || slots.size() < MAX_SLOTS) {
+                            slots.put(compositName, new Slot(node, revision));
+                        }
+                        obj = node.getBinding();
+                    } else {
+                        obj = mynode.resolve(new ParsedName(compoundName));
+                    }
+                } catch (final NameNotFoundException nnfe) {
+                    obj = federate(compositName);
+                }
 
-            // don't cache proxies
-            if (!(obj instanceof IntraVmProxy) && !(obj instanceof ContextualJndiReference)) {
-                fastCache.put(compoundName, obj);
+                // don't cache proxies, a federated context can create a new one per lookup
+                if (node == null && !(obj instanceof IntraVmProxy) && !(obj instanceof ContextualJndiReference)) {
+                    fastCache.put(compoundName, obj);
+                }
             }
         }
 
@@ -179,6 +208,21 @@ public class IvmContext implements Context, Serializable {
         return obj;
     }
 
+    /**
+     * Creates the slots of all the names bound below this context so that
+     * the first lookup of a name doesn't have to resolve it either.
+     */
+    public void compile() {
+        final long revision = mynode.getRevision();
+        final Map<String, NameNode> nodes = new HashMap<String, NameNode>();
+        mynode.collect(nodes);
+        slots.clear();
+        slotsRevision = revision;
+        for (final Map.Entry<String, NameNode> entry : nodes.entrySet()) {
+            slots.put(entry.getKey(), new Slot(entry.getValue(), revision));
+        }
+    }
+
     protected Object federate(final String compositName) throws NamingException {
         final ObjectFactory[] factories = getFederatedFactories();
         for (final ObjectFactory factory : factories) {
@@ -337,6 +381,7 @@ public class IvmContext implements Context, Serializable {
             name = name.substring(indx + 1);
         }
         fastCache.clear();
+        slots.clear();
         mynode.clearCache();
 
         mynode.unbind(new ParsedName(name));
@@ -570,6 +615,16 @@ public class IvmContext implements Context, Serializable {
         }
     }
 
+    private static final class Slot implements Serializable {
+        private final NameNode node;
+        private final long revision;
+
+        private Slot(final NameNode node, final long revision) {
+            this.node = node;
+            this.revision = revision;
+        }
+    }
+
     public void tree(final PrintStream out) {
         mynode.tree("", out);
     }
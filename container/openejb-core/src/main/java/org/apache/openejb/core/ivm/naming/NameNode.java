@@ -26,6 +26,8 @@ import javax.naming.NamingException;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NameNode implements Serializable {
     private final String atomicName;
@@ -39,11 +41,18 @@ public class NameNode implements Serializable {
     private transient IvmContext myContext;
     private boolean unbound;
 
+    /**
+     * Shared by all the nodes of a tree, incremented each time the tree changes
+     * so that the slots compiled by the contexts on top of it can be checked.
+     */
+    private final AtomicLong revision;
+
     public NameNode(final NameNode parent, final ParsedName name, final Object obj, final NameNode parentTree) {
         atomicName = name.getComponent();
         atomicHash = name.getComponentHashCode();
         this.parent = parent;
         this.parentTree = parentTree;
+        this.revision = parentTree != null ? parentTree.revision : new AtomicLong();
         if (name.next()) {
             subTree = new NameNode(this, name, obj, this);
         } else if (obj instanceof Context) {
@@ -69,7 +78,24 @@ public class NameNode implements Serializable {
         }
     }
 
+    public long getRevision() {
+        return revision.get();
+    }
+
     public Object resolve(final ParsedName name) throws NameNotFoundException {
+        return resolve(name, false);
+    }
+
+    /**
+     * Same as {@link #resolve(ParsedName)} but returns the node holding the binding.
+     *
+     * @return the node or null if the name goes through a federated context
+     */
+    public NameNode resolveNode(final ParsedName name) throws NameNotFoundException {
+        return (NameNode) resolve(name, true);
+    }
+
+    private Object resolve(final ParsedName name, final boolean nodeOnly) throws NameNotFoundException {
         final int compareResult = name.compareTo(atomicHash);
         NameNotFoundException n = null;
         final int pos = name.getPos();
@@ -78,27 +104,31 @@ public class NameNode implements Serializable {
             if (name.next()) {
                 if (subTree != null) {
                     try {
-                        return subTree.resolve(name);
+                        return subTree.resolve(name, nodeOnly);
                     } catch (final NameNotFoundException e) {
                         n = e;
                     }
                 }
             } else if (!unbound) {
-                return getBinding();
+                return nodeOnly ? this : getBinding();
             }
         } else if (compareResult == ParsedName.IS_LESS) {
             // parsed hash is less than
             if (lessTree != null) {
-                return lessTree.resolve(name);
+                return lessTree.resolve(name, nodeOnly);
             }
 
         } else {
             //ParsedName.IS_GREATER
             if (grtrTree != null) {
-                return grtrTree.resolve(name);
+                return grtrTree.resolve(name, nodeOnly);
             }
         }
         if (myObject instanceof Federation) {
+            if (nodeOnly) {
+                // federated lookups can return a new object each time
+                return null;
+            }
             name.reset(pos);
             final String nameInContext = name.remaining().path();
             Federation f = null;
@@ -175,6 +205,7 @@ public class NameNode implements Serializable {
                 grtrTree.bind(name, obj);
             }
         }
+        revision.incrementAndGet();
     }
 
     public void tree(final String indent, final PrintStream out) {
@@ -277,6 +308,7 @@ public class NameNode implements Serializable {
             lessTree = null;
         }
         rebalance(this, node);
+        revision.incrementAndGet();
     }
 
     private void rebalance(final NameNode tree, final NameNode node) {
@@ -348,6 +380,42 @@ public class NameNode implements Serializable {
         }
     }
 
+    /**
+     * Collects the nodes below this one with their name relative to it.
+     */
+    protected void collect(final Map<String, NameNode> nodes) {
+        if (atomicName.length() == 0) {
+            // an unnamed node resolves the first component of a name among its peers
+            collectPeers("", nodes);
+        } else {
+            collectChildren("", nodes);
+        }
+    }
+
+    private void collectChildren(final String prefix, final Map<String, NameNode> nodes) {
+        if (subTree != null) {
+            subTree.collect(prefix, nodes);
+        }
+    }
+
+    private void collect(final String prefix, final Map<String, NameNode> nodes) {
+        if (!unbound) {
+            final String name = prefix + atomicName;
+            nodes.put(name, this);
+            collectChildren(name + '/', nodes);
+        }
+        collectPeers(prefix, nodes);
+    }
+
+    private void collectPeers(final String prefix, final Map<String, NameNode> nodes) {
+        if (lessTree != null) {
+            lessTree.collect(prefix, nodes);
+        }
+        if (grtrTree != null) {
+            grtrTree.collect(prefix, nodes);
+        }
+    }
+
     public IvmContext createSubcontext(final ParsedName name) throws NameAlreadyBoundException {
         try {
             bind(name, null);
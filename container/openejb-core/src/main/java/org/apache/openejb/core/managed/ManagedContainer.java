@@ -31,6 +31,7 @@ import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.managed.Cache.CacheFilter;
@@ -611,8 +612,8 @@ public class ManagedContainer implements RpcContainer {
                 callContext.set(Method.class, runMethod);
 
                 // Initialize interceptor stack
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS, interceptors, instance.interceptors);
+                final InterceptorChain interceptors = beanContext.getMethodInterceptorChain(runMethod, Operation.BUSINESS);
+                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, interceptors, instance.interceptors);
 
                 // Invoke
                 returnValue = interceptorStack.invoke(args);
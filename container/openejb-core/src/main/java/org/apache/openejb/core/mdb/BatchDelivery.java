@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.mdb;
+
+import org.apache.openejb.SystemException;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.util.Duration;
+
+import javax.transaction.Status;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import javax.transaction.xa.XAResource;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers several messages of an endpoint in a single transaction.
+ * <p/>
+ * The transaction of a batch is started by the container on the first message,
+ * the next messages are delivered in it as in a transaction imported from the
+ * resource adapter.  Between two messages the transaction is suspended.  It is
+ * committed once the batch is full, once the batch timeout is reached or when
+ * the endpoint is released, whatever comes first.
+ * <p/>
+ * When a batch is rolled back the resource adapter redelivers its messages, the
+ * endpoint then delivers the next messages one per transaction so that a failing
+ * message only rolls back itself.
+ * <p/>
+ * Also keeps the delivery statistics of the message driven bean.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BatchDelivery {
+
+    /**
+     * Activation property giving the maximum number of messages per transaction, 1 disables the batching.
+     */
+    public static final String BATCH_SIZE = "deliveryBatchSize";
+
+    /**
+     * Activation property giving how long a batch can stay open, in milliseconds by default.
+     */
+    public static final String BATCH_TIMEOUT = "deliveryBatchTimeout";
+
+    private final int size;
+    private final long timeout;
+    private final TransactionManager transactionManager;
+    private final ScheduledExecutorService flusher;
+
+    private final long start = System.nanoTime();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedMessages = new AtomicLong();
+    private final AtomicLong rolledBackBatches = new AtomicLong();
+    private final AtomicLong lagCount = new AtomicLong();
+    private final AtomicLong lagTime = new AtomicLong();
+
+    public BatchDelivery(final int size, final long timeout, final TransactionManager transactionManager, final ScheduledExecutorService flusher) {
+        this.size = Math.max(1, size);
+        this.timeout = timeout;
+        this.transactionManager = transactionManager;
+        this.flusher = flusher;
+    }
+
+    /**
+     * Reads the batch settings of the activation properties, they are not
+     * passed to the activation spec.
+     */
+    public static int size(final Map<String, String> activationProperties) {
+        final String value = activationProperties.get(BATCH_SIZE);
+        return value == null ? 1 : Integer.parseInt(value.trim());
+    }
+
+    public static long timeout(final Map<String, String> activationProperties) {
+        final String value = activationProperties.get(BATCH_TIMEOUT);
+        if (value == null) {
+            return 1000;
+        }
+
+        final Duration duration = Duration.parse(value.trim());
+        return duration.getUnit() == null ? duration.getTime() : duration.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return size > 1 && transactionManager != null;
+    }
+
+    /**
+     * Starts the transaction of a new batch and associates it with the current thread.
+     *
+     * @return the batch or null if the thread already has a transaction
+     */
+    public Batch begin(final XAResource xaResource) throws SystemException {
+        try {
+            if (transactionManager.getTransaction() != null) {
+                // the resource adapter imported a transaction
+                return null;
+            }
+
+            transactionManager.begin();
+            final Transaction transaction = transactionManager.getTransaction();
+            if (xaResource != null) {
+                transaction.enlistResource(xaResource);
+            }
+            return new Batch(transaction, System.currentTimeMillis() + timeout);
+        } catch (final Exception e) {
+            throw new SystemException("Unable to start the transaction of a message batch", e);
+        }
+    }
+
+    public void resume(final Batch batch) throws SystemException {
+        try {
+            transactionManager.resume(batch.transaction);
+        } catch (final Exception e) {
+            throw new SystemException("Unable to resume the transaction of a message batch", e);
+        }
+    }
+
+    /**
+     * Dissociates the transaction of the batch from the current thread after a message delivery.
+     *
+     * @return true if the batch can take more messages, false if it must be completed
+     */
+    public boolean suspend(final Batch batch, final boolean failed) throws SystemException {
+        messages.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        batch.messages++;
+
+        try {
+            transactionManager.suspend();
+            return batch.transaction.getStatus() == Status.STATUS_ACTIVE
+                && batch.messages < size
+                && System.currentTimeMillis() < batch.deadline;
+        } catch (final Exception e) {
+            throw new SystemException("Unable to suspend the transaction of a message batch", e);
+        }
+    }
+
+    /**
+     * Commits or rolls back the suspended transaction of the batch.
+     *
+     * @return true if the batch was committed
+     */
+    public boolean complete(final Batch batch) throws SystemException {
+        if (batch.flush != null) {
+            batch.flush.cancel(false);
+        }
+
+        final Transaction transaction = batch.transaction;
+        try {
+            if (transaction.getStatus() == Status.STATUS_ACTIVE) {
+                transaction.commit();
+                batches.incrementAndGet();
+                batchedMessages.addAndGet(batch.messages);
+                return true;
+            }
+            transaction.rollback();
+        } catch (final javax.transaction.RollbackException e) {
+            // no-op: the transaction rolled back
+        } catch (final Exception e) {
+            rolledBackBatches.incrementAndGet();
+            throw new SystemException("Unable to complete the transaction of a message batch", e);
+        }
+
+        rolledBackBatches.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Rolls back the transaction of a batch which could not be delivered,
+     * whether it is still associated with the current thread or not.
+     */
+    public void abort(final Batch batch) {
+        if (batch.flush != null) {
+            batch.flush.cancel(false);
+        }
+
+        try {
+            if (transactionManager.getTransaction() == batch.transaction) {
+                transactionManager.suspend();
+            }
+            batch.transaction.rollback();
+        } catch (final Exception e) {
+            // no-op: the transaction is rolled back by its timeout
+        }
+        rolledBackBatches.incrementAndGet();
+    }
+
+    /**
+     * Completes the batch once its timeout is reached if no message was delivered meanwhile.
+     */
+    public void scheduleFlush(final Batch batch, final Runnable task) {
+        if (batch.flush == null && flusher != null) {
+            batch.flush = flusher.schedule(task, Math.max(0, batch.deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Counts a message delivered in its own transaction.
+     */
+    public void delivered(final boolean failed) {
+        messages.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts the time a message waited before being delivered.
+     */
+    public void lag(final long millis) {
+        lagCount.incrementAndGet();
+        lagTime.addAndGet(millis);
+    }
+
+    public long getLagCount() {
+        return lagCount.get();
+    }
+
+    public long getLagTime() {
+        return lagTime.get();
+    }
+
+    @Managed
+    public int getBatchSize() {
+        return size;
+    }
+
+    @Managed
+    public long getBatchTimeout() {
+        return timeout;
+    }
+
+    @Managed
+    public long getMessages() {
+        return messages.get();
+    }
+
+    @Managed
+    public long getFailedMessages() {
+        return failures.get();
+    }
+
+    @Managed
+    public long getCommittedBatches() {
+        return batches.get();
+    }
+
+    @Managed
+    public long getRolledBackBatches() {
+        return rolledBackBatches.get();
+    }
+
+    @Managed
+    public double getAverageBatchSize() {
+        final long count = batches.get();
+        return count == 0 ? 0 : (double) batchedMessages.get() / count;
+    }
+
+    @Managed(description = "Average time in milliseconds between the sending and the delivery of a message")
+    public double getAverageLag() {
+        final long count = lagCount.get();
+        return count == 0 ? 0 : (double) lagTime.get() / count;
+    }
+
+    @Managed
+    public double getMessagesPerSecond() {
+        final long elapsed = System.nanoTime() - start;
+        return elapsed <= 0 ? 0 : messages.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    public static final class Batch {
+        private final Transaction transaction;
+        private final long deadline;
+        private int messages;
+        private ScheduledFuture<?> flush;
+
+        private Batch(final Transaction transaction, final long deadline) {
+            this.transaction = transaction;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.mdb;
+
+/**
+ * Implemented by the resource adapters which can tell how many messages
+ * wait in a destination, used to scale the message driven beans.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface DestinationBacklog {
+
+    /**
+     * @param destination     the destination activation property of the bean
+     * @param destinationType the destinationType activation property of the bean, can be null
+     * @return the number of pending messages or -1 if unknown
+     */
+    long getBacklog(String destination, String destinationType);
+}
@@ -42,10 +42,18 @@ public class EndpointFactory implements MessageEndpointFactory {
     private final Class[] interfaces;
     private final XAResourceWrapper xaResourceWrapper;
     protected final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
+    protected EndpointScaler scaler;
     private final Class<?> proxy;
+    private final BatchDelivery batchDelivery;
 
     public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper) {
+        this(activationSpec, container, beanContext, instanceFactory, xaResourceWrapper, null);
+    }
+
+    public EndpointFactory(final ActivationSpec activationSpec, final MdbContainer container, final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final XAResourceWrapper xaResourceWrapper,
+                           final BatchDelivery batchDelivery) {
         this.activationSpec = activationSpec;
+        this.batchDelivery = batchDelivery;
         this.container = container;
         this.beanContext = beanContext;
         this.instanceFactory = instanceFactory;
@@ -70,12 +78,16 @@ public class EndpointFactory implements MessageEndpointFactory {
         return instanceFactory;
     }
 
+    public BatchDelivery getBatchDelivery() {
+        return batchDelivery;
+    }
+
     @Override
     public MessageEndpoint createEndpoint(XAResource xaResource) throws UnavailableException {
         if (xaResource != null && xaResourceWrapper != null) {
             xaResource = xaResourceWrapper.wrap(xaResource, container.getContainerID().toString());
         }
-        final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource);
+        final EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource, batchDelivery);
         try {
             return (MessageEndpoint) LocalBeanProxyFactory.constructProxy(proxy, endpointHandler);
         } catch (final InternalError e) { // should be useless
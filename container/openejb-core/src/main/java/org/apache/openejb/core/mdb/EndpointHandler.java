@@ -20,8 +20,13 @@ package org.apache.openejb.core.mdb;
 import org.apache.openejb.ApplicationException;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.SystemException;
+import org.apache.openejb.core.transaction.TransactionType;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
 import javax.ejb.EJBException;
+import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.resource.spi.ApplicationServerInternalException;
 import javax.resource.spi.UnavailableException;
 import javax.resource.spi.endpoint.MessageEndpoint;
@@ -31,6 +36,8 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 
 public class EndpointHandler implements InvocationHandler, MessageEndpoint {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
     private static enum State {
         /**
          * The handler has been initialized and is ready for invoation
@@ -66,15 +73,32 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
     private final BeanContext deployment;
     private final MdbInstanceFactory instanceFactory;
     private final XAResource xaResource;
+    private final BatchDelivery batchDelivery;
 
     private State state = State.NONE;
     private Object instance;
+    private boolean failed;
+
+    // the batch of the message being delivered
+    private BatchDelivery.Batch batch;
+
+    // the suspended batch waiting for the next message, guarded by this
+    private BatchDelivery.Batch pending;
+
+    // number of messages to deliver one per transaction after a batch rolled back
+    private volatile int failover;
 
     public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource) throws UnavailableException {
+        this(container, deployment, instanceFactory, xaResource, null);
+    }
+
+    public EndpointHandler(final MdbContainer container, final BeanContext deployment, final MdbInstanceFactory instanceFactory, final XAResource xaResource,
+                           final BatchDelivery batchDelivery) throws UnavailableException {
         this.container = container;
         this.deployment = deployment;
         this.instanceFactory = instanceFactory;
         this.xaResource = xaResource;
+        this.batchDelivery = batchDelivery;
         instance = instanceFactory.createInstance(false);
     }
 
@@ -185,9 +209,25 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         }
 
         // call beforeDelivery on the container
+        failed = false;
         try {
-            container.beforeDelivery(deployment, instance, method, xaResource);
+            if (isBatched(method)) {
+                // continue the pending batch or start a new one
+                batch = takePending();
+                if (batch != null) {
+                    batchDelivery.resume(batch);
+                } else {
+                    batch = batchDelivery.begin(xaResource);
+                }
+            }
+
+            // the xa resource is already enlisted in the transaction of a batch
+            container.beforeDelivery(deployment, instance, method, batch == null ? xaResource : null);
         } catch (final SystemException se) {
+            if (batch != null) {
+                batchDelivery.abort(batch);
+                batch = null;
+            }
             final Throwable throwable = se.getRootCause() != null ? se.getRootCause() : se;
             throw new ApplicationServerInternalException(throwable);
         }
@@ -196,6 +236,70 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         state = State.BEFORE_CALLED;
     }
 
+    private boolean isBatched(final Method method) {
+        if (batchDelivery == null || !batchDelivery.isEnabled()) {
+            return false;
+        }
+        if (failover > 0) {
+            failover--;
+            return false;
+        }
+        return deployment.getTransactionType(method) == TransactionType.Required;
+    }
+
+    private synchronized BatchDelivery.Batch takePending() {
+        final BatchDelivery.Batch taken = pending;
+        pending = null;
+        return taken;
+    }
+
+    private void endBatchDelivery() throws SystemException {
+        final BatchDelivery.Batch delivered = batch;
+        final boolean open = batchDelivery.suspend(delivered, failed);
+        batch = null;
+
+        if (open) {
+            synchronized (this) {
+                pending = delivered;
+            }
+            batchDelivery.scheduleFlush(delivered, new Runnable() {
+                @Override
+                public void run() {
+                    flush(delivered);
+                }
+            });
+        } else {
+            complete(delivered);
+        }
+    }
+
+    private synchronized void flush(final BatchDelivery.Batch expired) {
+        // holding the lock keeps the next message out until the batch is completed
+        if (pending != expired) {
+            // already taken by the next message or completed
+            return;
+        }
+        pending = null;
+
+        try {
+            complete(expired);
+        } catch (final SystemException e) {
+            logger.error("Unable to complete a message batch of " + deployment.getDeploymentID(), e);
+        }
+    }
+
+    private void complete(final BatchDelivery.Batch completed) throws SystemException {
+        boolean committed = false;
+        try {
+            committed = batchDelivery.complete(completed);
+        } finally {
+            if (!committed) {
+                // the messages of the batch are redelivered, isolate them
+                failover = batchDelivery.getBatchSize();
+            }
+        }
+    }
+
     public Object deliverMessage(final Method method, final Object[] args) throws Throwable {
 
         boolean callBeforeAfter = false;
@@ -221,6 +325,10 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
                 throw new IllegalStateException("The last message delivery must be completed with an afterDeliver before another message can be delivered");
         }
 
+        if (batchDelivery != null && args != null && args.length == 1 && args[0] instanceof Message) {
+            lag((Message) args[0]);
+        }
+
         Throwable throwable = null;
         Object value = null;
         try {
@@ -229,8 +337,10 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         } catch (final SystemException se) {
             throwable = se.getRootCause() != null ? se.getRootCause() : se;
             state = State.SYSTEM_EXCEPTION;
+            failed = true;
         } catch (final ApplicationException ae) {
             throwable = ae.getRootCause() != null ? ae.getRootCause() : ae;
+            failed = true;
         } finally {
             // if the adapter is not using before/after, we must call afterDelivery to clean up
             if (callBeforeAfter) {
@@ -268,9 +378,13 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
 
 
         // call afterDelivery on the container
+        final boolean batched = batch != null;
         boolean exceptionThrown = false;
         try {
             container.afterDelivery(instance);
+            if (batched) {
+                endBatchDelivery();
+            }
         } catch (final SystemException se) {
             exceptionThrown = true;
 
@@ -278,6 +392,14 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             throwable.printStackTrace();
             throw new ApplicationServerInternalException(throwable);
         } finally {
+            if (batch != null) {
+                // the transaction of the batch could not be suspended
+                batchDelivery.abort(batch);
+                batch = null;
+                failover = batchDelivery.getBatchSize();
+            } else if (!batched && batchDelivery != null) {
+                batchDelivery.delivered(failed || exceptionThrown);
+            }
             if (state == State.SYSTEM_EXCEPTION) {
                 recreateInstance(exceptionThrown);
             }
@@ -311,11 +433,40 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         try {
             container.release(deployment, instance);
         } finally {
+            releaseBatches();
             instanceFactory.freeInstance((Instance) instance, false);
             instance = null;
         }
     }
 
+    private void releaseBatches() {
+        if (batch != null) {
+            // released in the middle of a delivery
+            batchDelivery.abort(batch);
+            batch = null;
+        }
+
+        final BatchDelivery.Batch remaining = takePending();
+        if (remaining != null) {
+            try {
+                complete(remaining);
+            } catch (final SystemException e) {
+                logger.error("Unable to complete a message batch of " + deployment.getDeploymentID(), e);
+            }
+        }
+    }
+
+    private void lag(final Message message) {
+        try {
+            final long timestamp = message.getJMSTimestamp();
+            if (timestamp > 0) {
+                batchDelivery.lag(Math.max(0, System.currentTimeMillis() - timestamp));
+            }
+        } catch (final JMSException e) {
+            // no-op
+        }
+    }
+
     private boolean isValidException(final Method method, final Throwable throwable) {
         if (throwable instanceof RuntimeException || throwable instanceof Error) {
             return true;
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.mdb;
+
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.jms.Queue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grows and shrinks the number of endpoint activations of a message driven bean.
+ * <p/>
+ * Each activation brings its own sessions, up to the maxSessions of the activation
+ * spec, so the bean consumes with more threads when it is activated several times.
+ * At a fixed interval the scaler looks at the backlog of the destination, when the
+ * resource adapter can tell it, and at the lag of the messages delivered meanwhile.
+ * An activation is added when one of them is over its threshold and one is removed
+ * after three quiet intervals in a row.
+ * <p/>
+ * Only the beans consuming a queue are scaled, each activation on a topic would
+ * get its own copy of the messages.
+ *
+ * @version $Rev$ $Date$
+ */
+public class EndpointScaler {
+
+    public static final String MIN_ACTIVATIONS = "minEndpointActivations";
+    public static final String MAX_ACTIVATIONS = "maxEndpointActivations";
+    public static final String SCALE_UP_BACKLOG = "scaleUpBacklog";
+    public static final String SCALE_UP_LAG = "scaleUpLag";
+    public static final String SCALE_INTERVAL = "scaleInterval";
+
+    public static final Collection<String> PROPERTIES = Arrays.asList(MIN_ACTIVATIONS, MAX_ACTIVATIONS, SCALE_UP_BACKLOG, SCALE_UP_LAG, SCALE_INTERVAL);
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+    private static final int QUIET_INTERVALS = 3;
+
+    /**
+     * Activates and deactivates the additional endpoints of the bean.
+     */
+    public interface Activator {
+        Object activate() throws Exception;
+
+        void deactivate(Object activation) throws Exception;
+    }
+
+    private final String name;
+    private final int min;
+    private final int max;
+    private final long backlogThreshold;
+    private final long lagThreshold;
+    private final long interval;
+    private final Activator activator;
+    private final DestinationBacklog backlog;
+    private final String destination;
+    private final String destinationType;
+    private final BatchDelivery stats;
+
+    // the activation done at deployment is not in this list
+    private final LinkedList<Object> activations = new LinkedList<Object>();
+    private ScheduledFuture<?> task;
+
+    private long lastLagCount;
+    private long lastLagTime;
+    private int quietIntervals;
+
+    private volatile long lastBacklog = -1;
+    private volatile long lastLag = -1;
+    private volatile String lastDecision = "none";
+    private volatile long scaleUps;
+    private volatile long scaleDowns;
+
+    public EndpointScaler(final String name, final Map<String, String> activationProperties, final Activator activator,
+                          final DestinationBacklog backlog, final BatchDelivery stats) {
+        this.name = name;
+        this.activator = activator;
+        this.backlog = backlog;
+        this.stats = stats;
+        min = Math.max(1, integer(activationProperties, MIN_ACTIVATIONS, 1));
+        max = Math.max(min, integer(activationProperties, MAX_ACTIVATIONS, min));
+        backlogThreshold = integer(activationProperties, SCALE_UP_BACKLOG, 100);
+        lagThreshold = millis(activationProperties, SCALE_UP_LAG, 1000);
+        interval = Math.max(1, millis(activationProperties, SCALE_INTERVAL, 10000));
+        destination = activationProperties.get("destination");
+        destinationType = activationProperties.get("destinationType");
+
+        if (max > 1 && !isQueue()) {
+            logger.warning("Endpoint scaling of " + name + " ignored, its destination type is " + destinationType + " and only the consumers of a "
+                + Queue.class.getName() + " can be scaled");
+        }
+    }
+
+    private boolean isQueue() {
+        return Queue.class.getName().equals(destinationType);
+    }
+
+    private static int integer(final Map<String, String> properties, final String key, final int defaultValue) {
+        final String value = properties.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static long millis(final Map<String, String> properties, final String key, final long defaultValue) {
+        final String value = properties.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        final Duration duration = Duration.parse(value.trim());
+        return duration.getUnit() == null ? duration.getTime() : duration.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the bean consumes a queue and has other settings than a single activation
+     */
+    public boolean isEnabled() {
+        return max > 1 && isQueue();
+    }
+
+    /**
+     * Activates the minimum number of endpoints and starts to watch the bean.
+     */
+    public synchronized void start(final ScheduledExecutorService scheduler) throws Exception {
+        while (getActivations() < min) {
+            activations.add(activator.activate());
+        }
+
+        if (max > min) {
+            task = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        evaluate();
+                    } catch (final Throwable e) {
+                        logger.error("Unable to scale the endpoints of " + name, e);
+                    }
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Deactivates all the endpoints added by the scaler.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+
+        while (!activations.isEmpty()) {
+            deactivate(activations.removeLast());
+        }
+    }
+
+    public synchronized void evaluate() throws Exception {
+        if (task == null) {
+            return;
+        }
+
+        final long pending = backlog == null ? -1 : backlog.getBacklog(destination, destinationType);
+
+        final long count = stats.getLagCount();
+        final long time = stats.getLagTime();
+        final long lag = count == lastLagCount ? -1 : (time - lastLagTime) / (count - lastLagCount);
+        lastLagCount = count;
+        lastLagTime = time;
+
+        lastBacklog = pending;
+        lastLag = lag;
+
+        final int current = getActivations();
+        if (pending > backlogThreshold || lag > lagThreshold) {
+            quietIntervals = 0;
+            if (current < max) {
+                activations.add(activator.activate());
+                scaleUps++;
+                decide("up to " + (current + 1) + ", backlog " + pending + ", lag " + lag + "ms");
+            }
+        } else if (pending <= backlogThreshold / 4 && lag <= lagThreshold / 2) {
+            if (++quietIntervals >= QUIET_INTERVALS && current > min) {
+                quietIntervals = 0;
+                deactivate(activations.removeLast());
+                scaleDowns++;
+                decide("down to " + (current - 1) + ", backlog " + pending + ", lag " + lag + "ms");
+            }
+        } else {
+            quietIntervals = 0;
+        }
+    }
+
+    private void decide(final String decision) {
+        lastDecision = decision;
+        logger.info("Scaled the endpoints of " + name + " " + decision);
+    }
+
+    private void deactivate(final Object activation) {
+        try {
+            activator.deactivate(activation);
+        } catch (final Exception e) {
+            logger.error("Unable to deactivate an endpoint of " + name, e);
+        }
+    }
+
+    @Managed
+    public synchronized int getActivations() {
+        return activations.size() + 1;
+    }
+
+    @Managed
+    public int getMinActivations() {
+        return min;
+    }
+
+    @Managed
+    public int getMaxActivations() {
+        return max;
+    }
+
+    @Managed
+    public long getScaleUpBacklog() {
+        return backlogThreshold;
+    }
+
+    @Managed
+    public long getScaleUpLag() {
+        return lagThreshold;
+    }
+
+    @Managed(description = "Pending messages at the last evaluation, -1 if unknown")
+    public long getLastBacklog() {
+        return lastBacklog;
+    }
+
+    @Managed(description = "Average lag in milliseconds at the last evaluation, -1 without message")
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    @Managed
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    @Managed
+    public long getScaleUps() {
+        return scaleUps;
+    }
+
+    @Managed
+    public long getScaleDowns() {
+        return scaleDowns;
+    }
+}
@@ -27,7 +27,7 @@ import org.apache.openejb.SystemException;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
-import org.apache.openejb.core.interceptor.InterceptorData;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.transaction.TransactionPolicy;
@@ -39,6 +39,7 @@ import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.resource.XAResourceWrapper;
 import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 import org.apache.xbean.recipe.ObjectRecipe;
@@ -51,18 +52,20 @@ import javax.resource.ResourceException;
 import javax.resource.spi.ActivationSpec;
 import javax.resource.spi.ResourceAdapter;
 import javax.resource.spi.UnavailableException;
+import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Validator;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.afterInvoke;
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.createTransactionPolicy;
@@ -84,6 +87,7 @@ public class MdbContainer implements RpcContainer {
     private final ConcurrentMap<Object, BeanContext> deployments = new ConcurrentHashMap<Object, BeanContext>();
     private final XAResourceWrapper xaResourceWrapper;
     private final InboundRecovery inboundRecovery;
+    private ScheduledExecutorService scheduler;
 
     public MdbContainer(final Object containerID, final SecurityService securityService, final ResourceAdapter resourceAdapter,
                         final Class messageListenerInterface, final Class activationSpecClass, final int instanceLimit,
@@ -146,7 +150,9 @@ public class MdbContainer implements RpcContainer {
         final int instanceLimit = options.get("InstanceLimit", this.instanceLimit);
         // create the message endpoint
         final MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit);
-        final EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper);
+        final BatchDelivery batchDelivery = createBatchDelivery(beanContext);
+        final EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper, batchDelivery);
+        final EndpointScaler scaler = createEndpointScaler(beanContext, instanceFactory, batchDelivery);
 
         // update the data structures
         // this must be done before activating the endpoint since the ra may immedately begin delivering messages
@@ -182,6 +188,26 @@ public class MdbContainer implements RpcContainer {
             }
         }
 
+        // register the delivery statistics
+        final ObjectNameBuilder deliveryName = new ObjectNameBuilder("openejb.management");
+        deliveryName.set("J2EEServer", "openejb");
+        deliveryName.set("J2EEApplication", null);
+        deliveryName.set("EJBModule", beanContext.getModuleID());
+        deliveryName.set("MessageDrivenBean", beanContext.getEjbName());
+        deliveryName.set("j2eeType", "MessageDelivery");
+        deliveryName.set("name", beanContext.getEjbName());
+        try {
+            final ObjectName objectName = deliveryName.build();
+            final MBeanServer server = LocalMBeanServer.get();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new ManagedMBean(batchDelivery), objectName);
+            endpointFactory.jmxNames.add(objectName);
+        } catch (final Exception e) {
+            logger.error("Unable to register MBean ", e);
+        }
+
         // activate the endpoint
         try {
             resourceAdapter.endpointActivation(endpointFactory, activationSpec);
@@ -189,10 +215,90 @@ public class MdbContainer implements RpcContainer {
             // activation failed... clean up
             beanContext.setContainer(null);
             beanContext.setContainerData(null);
-            deployments.remove(deploymentId);
+            removeDeployment(deploymentId);
 
             throw new OpenEJBException(e);
         }
+
+        // activate the additional endpoints
+        if (scaler.isEnabled()) {
+            endpointFactory.scaler = scaler;
+            try {
+                scaler.start(getScheduler());
+            } catch (final Exception e) {
+                logger.error("Unable to activate the minimum endpoints of " + deploymentId, e);
+            }
+
+            deliveryName.set("j2eeType", "EndpointScaling");
+            try {
+                final ObjectName objectName = deliveryName.build();
+                final MBeanServer server = LocalMBeanServer.get();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(new ManagedMBean(scaler), objectName);
+                endpointFactory.jmxNames.add(objectName);
+            } catch (final Exception e) {
+                logger.error("Unable to register MBean ", e);
+            }
+        }
+    }
+
+    private BatchDelivery createBatchDelivery(final BeanContext beanContext) throws OpenEJBException {
+        final Map<String, String> activationProperties = beanContext.getActivationProperties();
+        final int size;
+        final long timeout;
+        try {
+            size = BatchDelivery.size(activationProperties);
+            timeout = BatchDelivery.timeout(activationProperties);
+        } catch (final IllegalArgumentException e) {
+            throw new OpenEJBException("Invalid batch delivery settings for " + beanContext.getDeploymentID(), e);
+        }
+
+        if (size <= 1) {
+            return new BatchDelivery(1, timeout, null, null);
+        }
+
+        final TransactionManager transactionManager = SystemInstance.get().getComponent(TransactionManager.class);
+        if (transactionManager == null) {
+            logger.warning("No TransactionManager available, messages of " + beanContext.getDeploymentID() + " are delivered one per transaction");
+        }
+        return new BatchDelivery(size, timeout, transactionManager, getScheduler());
+    }
+
+    private EndpointScaler createEndpointScaler(final BeanContext beanContext, final MdbInstanceFactory instanceFactory, final BatchDelivery batchDelivery) throws OpenEJBException {
+        final EndpointScaler.Activator activator = new EndpointScaler.Activator() {
+            @Override
+            public Object activate() throws Exception {
+                final EndpointFactory endpointFactory = new EndpointFactory(createActivationSpec(beanContext), MdbContainer.this, beanContext, instanceFactory, xaResourceWrapper, batchDelivery);
+                resourceAdapter.endpointActivation(endpointFactory, endpointFactory.getActivationSpec());
+                return endpointFactory;
+            }
+
+            @Override
+            public void deactivate(final Object activation) throws Exception {
+                final EndpointFactory endpointFactory = (EndpointFactory) activation;
+                resourceAdapter.endpointDeactivation(endpointFactory, endpointFactory.getActivationSpec());
+            }
+        };
+
+        final DestinationBacklog backlog = resourceAdapter instanceof DestinationBacklog ? (DestinationBacklog) resourceAdapter : null;
+        try {
+            return new EndpointScaler(beanContext.getDeploymentID().toString(), beanContext.getActivationProperties(), activator, backlog, batchDelivery);
+        } catch (final IllegalArgumentException e) {
+            throw new OpenEJBException("Invalid endpoint scaling settings for " + beanContext.getDeploymentID(), e);
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("MdbScheduler", containerID));
+        }
+        return scheduler;
+    }
+
+    private static boolean isContainerProperty(final String name) {
+        return BatchDelivery.BATCH_SIZE.equals(name) || BatchDelivery.BATCH_TIMEOUT.equals(name) || EndpointScaler.PROPERTIES.contains(name);
     }
 
     private ActivationSpec createActivationSpec(final BeanContext beanContext) throws OpenEJBException {
@@ -205,6 +311,10 @@ public class MdbContainer implements RpcContainer {
             final Map<String, String> beanContextActivationProperties = beanContext.getActivationProperties();
             final Map<String, String> activationProperties = beanContextActivationProperties;
             for (final Map.Entry<String, String> entry : activationProperties.entrySet()) {
+                if (isContainerProperty(entry.getKey())) {
+                    // handled by the container
+                    continue;
+                }
                 objectRecipe.setMethodProperty(entry.getKey(), entry.getValue());
             }
             objectRecipe.setMethodProperty("beanClass", beanContext.getBeanClass());
@@ -274,6 +384,9 @@ public class MdbContainer implements RpcContainer {
         try {
             final EndpointFactory endpointFactory = (EndpointFactory) beanContext.getContainerData();
             if (endpointFactory != null) {
+                if (endpointFactory.scaler != null) {
+                    endpointFactory.scaler.stop();
+                }
                 resourceAdapter.endpointDeactivation(endpointFactory, endpointFactory.getActivationSpec());
 
                 final MBeanServer server = LocalMBeanServer.get();
@@ -288,7 +401,17 @@ public class MdbContainer implements RpcContainer {
         } finally {
             beanContext.setContainer(null);
             beanContext.setContainerData(null);
-            deployments.remove(beanContext.getDeploymentID());
+            removeDeployment(beanContext.getDeploymentID());
+        }
+    }
+
+    private synchronized void removeDeployment(final Object deploymentId) {
+        deployments.remove(deploymentId);
+
+        // the endpoints are released, nothing is left to flush or to scale
+        if (deployments.isEmpty() && scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
         }
     }
 
@@ -403,9 +526,8 @@ public class MdbContainer implements RpcContainer {
         ApplicationException {
         final Object returnValue;
         try {
-            final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-            final InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, runMethod, interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS,
-                interceptors, ((Instance) instance).interceptors);
+            final InterceptorChain interceptors = beanContext.getMethodInterceptorChain(runMethod, interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
+            final InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, runMethod, interceptors, ((Instance) instance).interceptors);
             returnValue = interceptorStack.invoke(args);
             return returnValue;
         } catch (Throwable e) {
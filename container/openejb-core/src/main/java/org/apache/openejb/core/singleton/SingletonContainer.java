@@ -27,6 +27,7 @@ import org.apache.openejb.cdi.CurrentCreationalContext;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
@@ -89,6 +90,10 @@ public class SingletonContainer implements RpcContainer {
         this.accessTimeout = duration;
     }
 
+    public void setStripedReadLock(final boolean striped) {
+        instanceManager.setStripedReadLock(striped);
+    }
+
     @Override
     public synchronized BeanContext[] getBeanContexts() {
         return deploymentRegistry.values().toArray(new BeanContext[deploymentRegistry.size()]);
@@ -247,10 +252,10 @@ public class SingletonContainer implements RpcContainer {
                     callContext.setCurrentOperation(Operation.BUSINESS_WS);
                     returnValue = invokeWebService(args, beanContext, runMethod, instance);
                 } else {
-                    final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
+                    final InterceptorChain interceptors = beanContext.getMethodInterceptorChain(runMethod,
+                        callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
                     final InterceptorStack interceptorStack = new InterceptorStack(instance.bean,
                         runMethod,
-                        callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS,
                         interceptors,
                         instance.interceptors);
                     returnValue = interceptorStack.invoke(args);
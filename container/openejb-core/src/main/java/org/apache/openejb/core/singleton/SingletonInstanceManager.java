@@ -31,6 +31,7 @@ import org.apache.openejb.core.timer.TimerServiceWrapper;
 import org.apache.openejb.core.transaction.EjbTransactionUtil;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionType;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.ManagedMBean;
@@ -40,6 +41,7 @@ import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.spi.SecurityService;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.StripedReadWriteLock;
 
 import javax.ejb.EJBContext;
 import javax.ejb.NoSuchEJBException;
@@ -72,6 +74,7 @@ public class SingletonInstanceManager {
     private final SecurityService securityService;
     private final SingletonContext sessionContext;
     private final WebServiceContext webServiceContext;
+    private boolean stripedReadLock;
 
     public SingletonInstanceManager(final SecurityService securityService) {
         this.securityService = securityService;
@@ -79,6 +82,10 @@ public class SingletonInstanceManager {
         webServiceContext = new EjbWsContext(sessionContext);
     }
 
+    public void setStripedReadLock(final boolean stripedReadLock) {
+        this.stripedReadLock = stripedReadLock;
+    }
+
     protected void start(final BeanContext beanContext) throws OpenEJBException {
         if (beanContext.isLoadOnStartup()) {
             initialize(beanContext);
@@ -160,6 +167,9 @@ public class SingletonInstanceManager {
                 throw new OpenEJBException("Deployment does not exist. Deployment(id='" + dependencyContext + "')");
             }
 
+            // deploys a dependency deferred to its first use
+            dependencyContext.getContainer();
+
             final Object containerData = dependencyContext.getContainerData();
 
             // Bean may not be a singleton or may be a singleton
@@ -195,6 +205,10 @@ public class SingletonInstanceManager {
             if (beanContext.isBeanManagedConcurrency()) {
                 // Bean-Managed Concurrency
                 lock = new BeanManagedLock();
+            } else if (new Options(beanContext.getProperties()).get("StripedReadLock", stripedReadLock)) {
+                // Container-Managed Concurrency for read mostly beans
+                lock = new StripedReadWriteLock();
+                registerLockMBean(beanContext, (StripedReadWriteLock) lock);
             } else {
                 // Container-Managed Concurrency
                 lock = new ReentrantReadWriteLock();
@@ -211,6 +225,33 @@ public class SingletonInstanceManager {
         }
     }
 
+    private void registerLockMBean(final BeanContext beanContext, final StripedReadWriteLock lock) {
+        final Data data = (Data) beanContext.getContainerData();
+        if (data == null) {
+            return;
+        }
+
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("J2EEServer", "openejb");
+        jmxName.set("J2EEApplication", null);
+        jmxName.set("EJBModule", beanContext.getModuleID());
+        jmxName.set("SingletonSessionBean", beanContext.getEjbName());
+        jmxName.set("name", beanContext.getEjbName());
+        jmxName.set("j2eeType", "Lock");
+
+        final MBeanServer server = LocalMBeanServer.get();
+        try {
+            final ObjectName objectName = jmxName.build();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new ManagedMBean(lock), objectName);
+            data.add(objectName);
+        } catch (final Exception e) {
+            logger.error("Unable to register MBean ", e);
+        }
+    }
+
     public void freeInstance(final ThreadContext callContext) {
         final BeanContext beanContext = callContext.getBeanContext();
         final Data data = (Data) beanContext.getContainerData();
@@ -0,0 +1,431 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.SystemException;
+import org.apache.openejb.core.EnvProps;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passivates beans in append only segment files mapped in memory.
+ * <p/>
+ * A passivating thread reserves its slot in the current segment with a CAS and
+ * copies the serialized bean there, so several threads passivate in parallel and
+ * no file is opened per bean or per batch.  A concurrent index keeps the location
+ * of each bean until it is activated.
+ * <p/>
+ * Activated beans leave holes in their segment.  A full segment is deleted as soon
+ * as all of its beans are activated, and a background task moves the remaining
+ * beans of mostly empty segments to the current one so their files can go too.
+ * <p/>
+ * The store lives in a directory of its own, created with the compaction task on the
+ * first passivation and removed by {@link #close()} or when the JVM exits, like
+ * {@link SimplePassivater} passivated beans do not survive a restart.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MappedPassivater implements PassivationStrategy {
+
+    /**
+     * Size in bytes of a segment file, a bigger bean gets a segment of its own.
+     */
+    public static final String SEGMENT_SIZE = "openejb.passivation.segment-size";
+
+    /**
+     * Delay in seconds between two compactions, 0 to disable the compaction.
+     */
+    public static final String COMPACTION_INTERVAL = "openejb.passivation.compaction-interval";
+
+    /**
+     * Percentage of live bytes under which a full segment is compacted.
+     */
+    public static final String COMPACTION_THRESHOLD = "openejb.passivation.compaction-threshold";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+    private static final AtomicInteger STORES = new AtomicInteger();
+
+    private final ConcurrentMap<Object, Pointer> index = new ConcurrentHashMap<Object, Pointer>();
+    private final CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<Segment>();
+    private final AtomicInteger segmentIds = new AtomicInteger();
+    private final Object rollLock = new Object();
+
+    private volatile Segment current;
+    private File directory;
+    private String directoryPrefix;
+    private int segmentSize;
+    private int compactionThreshold;
+    private int compactionInterval;
+    private ScheduledExecutorService compactor;
+
+    public MappedPassivater() throws SystemException {
+        init(null);
+    }
+
+    /**
+     * Starts a new empty store, the beans passivated in a previous store are dropped.
+     * Nothing is created on disk until a bean is passivated.
+     */
+    @Override
+    public synchronized void init(final Properties props) throws SystemException {
+        close();
+
+        final Options options = new Options(props == null ? new Properties() : props, SystemInstance.get().getOptions());
+        segmentSize = Math.max(1024, options.get(SEGMENT_SIZE, 16 * 1024 * 1024));
+        compactionThreshold = options.get(COMPACTION_THRESHOLD, 50);
+        compactionInterval = options.get(COMPACTION_INTERVAL, 30);
+        directoryPrefix = props == null ? null : props.getProperty(EnvProps.IM_PASSIVATOR_PATH_PREFIX);
+    }
+
+    private synchronized void open() throws SystemException {
+        if (current != null) {
+            return;
+        }
+
+        final String dir = directoryPrefix;
+        try {
+            final File parent;
+            if (dir != null) {
+                parent = SystemInstance.get().getBase().getDirectory(dir);
+            } else {
+                parent = new File(System.getProperty("java.io.tmpdir", File.separator + "tmp"));
+            }
+
+            directory = new File(parent, "openejb-passivation-" + System.currentTimeMillis() + "-" + STORES.incrementAndGet());
+            if (!directory.mkdirs()) {
+                throw new IOException("Failed to create session directory: " + directory.getAbsolutePath());
+            }
+            // only the directory, the segments are deleted as they are emptied or by close()
+            directory.deleteOnExit();
+
+            current = newSegment(segmentSize);
+        } catch (final IOException e) {
+            throw new SystemException(getClass().getName() + ".init(): can't use directory prefix " + dir + ":" + e, e);
+        }
+
+        final int interval = compactionInterval;
+        if (interval > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(MappedPassivater.class));
+            compactor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (final Throwable e) {
+                        logger.error("Compaction of the passivated beans failed", e);
+                    }
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+
+        logger.info("Using directory " + directory + " for stateful session passivation");
+    }
+
+    @Override
+    public void passivate(final Map stateTable) throws SystemException {
+        for (final Object o : stateTable.entrySet()) {
+            final Map.Entry entry = (Map.Entry) o;
+            passivate(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void passivate(final Object primaryKey, final Object state) throws SystemException {
+        final byte[] bytes;
+        try {
+            bytes = serialize(state);
+        } catch (final NotSerializableException nse) {
+            logger.error("Passivation failed ", nse);
+            throw (SystemException) new SystemException("The type " + nse.getMessage() + " is not serializable as mandated by the EJB specification.").initCause(nse);
+        } catch (final Exception t) {
+            logger.error("Passivation failed ", t);
+            throw new SystemException(t);
+        }
+
+        if (current == null) {
+            open();
+        }
+
+        final Pointer previous = index.put(primaryKey, append(bytes));
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    @Override
+    public Object activate(final Object primaryKey) throws SystemException {
+        final Pointer pointer = index.remove(primaryKey);
+        if (pointer == null) {
+            return null;
+        }
+
+        try {
+            final ObjectInputStream ois = new EjbObjectInputStream(new ByteArrayInputStream(pointer.read()));
+            try {
+                return ois.readObject();
+            } finally {
+                IO.close(ois);
+            }
+        } catch (final Exception t) {
+            logger.info("Activation failed ", t);
+            throw new SystemException(t);
+        } finally {
+            pointer.release();
+        }
+    }
+
+    /**
+     * @return the number of passivated beans
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Moves the beans of the full segments which are mostly activated to the current segment.
+     */
+    public void compact() {
+        for (final Segment segment : segments) {
+            if (!segment.sealed || segment.deleted.get()) {
+                continue;
+            }
+
+            final long live = segment.live.get();
+            if (live * 100 >= (long) segment.capacity * compactionThreshold) {
+                continue;
+            }
+
+            for (final Map.Entry<Object, Pointer> entry : index.entrySet()) {
+                final Pointer pointer = entry.getValue();
+                if (pointer.segment != segment) {
+                    continue;
+                }
+
+                final Pointer moved = append(pointer.read());
+                if (index.replace(entry.getKey(), pointer, moved)) {
+                    pointer.release();
+                } else {
+                    // activated or passivated again meanwhile
+                    moved.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the store and stops its compaction, the passivated beans are dropped.
+     */
+    public synchronized void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor = null;
+        }
+
+        index.clear();
+        for (final Segment segment : segments) {
+            segment.delete();
+        }
+        current = null;
+
+        if (directory != null && !directory.delete()) {
+            logger.debug("Can't delete the passivation directory " + directory.getAbsolutePath());
+        }
+        directory = null;
+    }
+
+    private Pointer append(final byte[] bytes) {
+        while (true) {
+            final Segment segment = current;
+            final int offset = segment.reserve(bytes.length);
+            if (offset >= 0) {
+                segment.write(offset, bytes);
+                return new Pointer(segment, offset, bytes.length);
+            }
+            roll(segment, bytes.length);
+        }
+    }
+
+    private void roll(final Segment full, final int length) {
+        synchronized (rollLock) {
+            if (current != full) {
+                // another thread already rolled it
+                return;
+            }
+
+            try {
+                current = newSegment(Math.max(segmentSize, length));
+            } catch (final IOException e) {
+                throw new IllegalStateException("Can't create a passivation segment in " + directory, e);
+            }
+            full.seal();
+        }
+    }
+
+    private Segment newSegment(final int capacity) throws IOException {
+        final File file = new File(directory, "segment" + segmentIds.incrementAndGet() + ".log");
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            final Segment segment = new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+            segments.add(segment);
+            return segment;
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+
+    private static byte[] serialize(final Object state) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+        try {
+            oos.writeObject(state);
+        } finally {
+            IO.close(oos);
+        }
+        return baos.toByteArray();
+    }
+
+    private static final class Pointer {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Pointer(final Segment segment, final int offset, final int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private byte[] read() {
+            final byte[] bytes = new byte[length];
+            final ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset);
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        private void release() {
+            segment.release(length);
+        }
+    }
+
+    private final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final AtomicInteger position = new AtomicInteger();
+        private final AtomicInteger live = new AtomicInteger();
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        private volatile boolean sealed;
+
+        private Segment(final File file, final MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        /**
+         * @return the offset of the reserved bytes or -1 if the segment is full
+         */
+        private int reserve(final int length) {
+            // count the bytes before taking them so that the segment can't be deleted under a writer
+            live.addAndGet(length);
+            if (sealed) {
+                release(length);
+                return -1;
+            }
+
+            while (true) {
+                final int offset = position.get();
+                if (offset + length > capacity) {
+                    release(length);
+                    return -1;
+                }
+                if (position.compareAndSet(offset, offset + length)) {
+                    return offset;
+                }
+            }
+        }
+
+        private void write(final int offset, final byte[] bytes) {
+            final ByteBuffer target = buffer.duplicate();
+            target.position(offset);
+            target.put(bytes);
+        }
+
+        private void release(final int length) {
+            if (live.addAndGet(-length) == 0 && sealed) {
+                delete();
+            }
+        }
+
+        private void seal() {
+            sealed = true;
+            if (live.get() == 0) {
+                delete();
+            }
+        }
+
+        private void delete() {
+            if (!deleted.compareAndSet(false, true)) {
+                return;
+            }
+
+            segments.remove(this);
+            // the mapping itself is released by the garbage collector
+            if (!file.delete()) {
+                logger.debug("Can't delete the passivation segment " + file.getAbsolutePath());
+            }
+        }
+    }
+}
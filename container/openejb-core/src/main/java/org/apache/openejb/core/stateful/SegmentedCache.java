@@ -0,0 +1,898 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.OpenEJBRuntimeException;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stateful cache splitting its least recently used list in segments.
+ * <p/>
+ * Unlike {@link SimpleCache}, which keeps all the idle entries in one queue where
+ * removing an entry is a linear scan under a single lock, each key belongs to a
+ * segment with its own lock and linked map, so checking an entry in and out is
+ * constant time and concurrent requests mostly touch different segments.  The
+ * configuration is read without locking.
+ * <p/>
+ * Each segment gets its share of the capacity, and optionally of a size budget.
+ * The size of an entry is estimated per bean from the serialized size of one
+ * passivated instance of that bean, measured again once the sample is older than
+ * the size refresh period.  Until an instance is passivated the estimated entry
+ * size is used.
+ * <p/>
+ * Hits, misses, passivations, activations and time outs are counted per segment
+ * and exposed as a j2eeType=StatefulCache MBean.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SegmentedCache<K, V> implements Cache<K, V> {
+    public static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    /**
+     * Map of all known values by key
+     */
+    private final ConcurrentHashMap<K, Entry> cache = new ConcurrentHashMap<K, Entry>();
+
+    /**
+     * Measured size of an entry by bean
+     */
+    private final ConcurrentMap<Object, Sample> sizes = new ConcurrentHashMap<Object, Sample>();
+
+    private volatile Segment[] segments;
+    private volatile CacheListener<V> listener;
+    private volatile PassivationStrategy passivator;
+    private volatile int capacity = 1000;
+    private volatile int bulkPassivate = 100;
+    private volatile long timeOut = -1;
+    private volatile long frequency = 60 * 1000;
+    private volatile int segmentCount = Runtime.getRuntime().availableProcessors();
+    private volatile long maxSize = -1;
+    private volatile long estimatedEntrySize = 1024;
+    private volatile long sizeRefresh = 10 * 60 * 1000;
+    private volatile Object containerId;
+
+    private ScheduledExecutorService executor;
+    private boolean ownExecutor;
+    private ScheduledFuture<?> future;
+    private ObjectName objectName;
+
+    public SegmentedCache() {
+        segments = newSegments(segmentCount);
+    }
+
+    public SegmentedCache(final CacheListener<V> listener, final PassivationStrategy passivator, final int capacity, final int bulkPassivate, final Duration timeOut) {
+        this();
+        this.listener = listener;
+        this.passivator = passivator;
+        this.capacity = capacity;
+        this.bulkPassivate = bulkPassivate;
+        this.timeOut = timeOut.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void init() {
+        if (cache.isEmpty() && segments.length != segmentCount) {
+            segments = newSegments(segmentCount);
+        }
+
+        if (frequency > 0 && future == null) {
+            if (executor == null) {
+                executor = Executors.newScheduledThreadPool(1, new DaemonThreadFactory("Stateful cache"));
+                ownExecutor = true;
+            }
+
+            // start any thread in container loader to avoid leaks
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(SegmentedCache.class.getClassLoader());
+            try {
+                future = executor.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        processLRU();
+                    }
+                }, frequency, frequency, TimeUnit.MILLISECONDS);
+            } finally {
+                Thread.currentThread().setContextClassLoader(loader);
+            }
+        }
+
+        registerMBean();
+    }
+
+    public synchronized void destroy() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+
+        // an executor given to the cache belongs to the caller
+        if (ownExecutor) {
+            executor.shutdownNow();
+            executor = null;
+            ownExecutor = false;
+        }
+
+        if (objectName != null) {
+            try {
+                LocalMBeanServer.get().unregisterMBean(objectName);
+            } catch (final Exception e) {
+                logger.error("Unable to unregister MBean " + objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    private void registerMBean() {
+        if (objectName != null) {
+            return;
+        }
+
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("J2EEServer", "openejb");
+        jmxName.set("J2EEApplication", null);
+        jmxName.set("j2eeType", "StatefulCache");
+        jmxName.set("name", containerId != null ? containerId.toString() : Integer.toString(System.identityHashCode(this)));
+
+        final MBeanServer server = LocalMBeanServer.get();
+        try {
+            final ObjectName name = jmxName.build();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new ManagedMBean(this), name);
+            objectName = name;
+        } catch (final Exception e) {
+            logger.error("Unable to register MBean ", e);
+        }
+    }
+
+    public CacheListener<V> getListener() {
+        return listener;
+    }
+
+    public void setListener(final CacheListener<V> listener) {
+        this.listener = listener;
+    }
+
+    public PassivationStrategy getPassivator() {
+        return passivator;
+    }
+
+    public void setPassivator(final PassivationStrategy passivator) {
+        this.passivator = passivator;
+    }
+
+    public void setPassivator(final Class<? extends PassivationStrategy> passivatorClass) throws Exception {
+        this.passivator = passivatorClass.newInstance();
+    }
+
+    @Managed
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Old configurations use "PoolSize" to configure max cache size
+    public void setPoolSize(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Managed
+    public int getBulkPassivate() {
+        return bulkPassivate;
+    }
+
+    public void setBulkPassivate(final int bulkPassivate) {
+        this.bulkPassivate = bulkPassivate;
+    }
+
+    @Managed
+    public long getTimeOut() {
+        return timeOut;
+    }
+
+    public void setTimeOut(final String timeOut) {
+        this.timeOut = ms(timeOut, TimeUnit.MINUTES);
+    }
+
+    public synchronized void setScheduledExecutorService(final ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return executor;
+    }
+
+    public void setFrequency(final String frequency) {
+        this.frequency = ms(frequency, TimeUnit.SECONDS);
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    @Managed
+    public int getSegments() {
+        return segments.length;
+    }
+
+    /**
+     * Takes effect on {@link #init()} if the cache is empty.
+     */
+    public void setSegments(final int segments) {
+        this.segmentCount = Math.max(1, segments);
+    }
+
+    @Managed
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize estimated bytes the idle entries can use, for instance "64 MB", -1 for no limit
+     */
+    public void setMaxSize(final String maxSize) {
+        this.maxSize = bytes(maxSize);
+    }
+
+    @Managed
+    public long getEstimatedEntrySize() {
+        return estimatedEntrySize;
+    }
+
+    public void setEstimatedEntrySize(final String estimatedEntrySize) {
+        this.estimatedEntrySize = Math.max(1, bytes(estimatedEntrySize));
+    }
+
+    @Managed
+    public long getSizeRefresh() {
+        return sizeRefresh;
+    }
+
+    /**
+     * @param sizeRefresh age after which the measured size of a bean is measured again, for instance "10 minutes"
+     */
+    public void setSizeRefresh(final String sizeRefresh) {
+        this.sizeRefresh = ms(sizeRefresh, TimeUnit.MINUTES);
+    }
+
+    public void setContainerId(final Object containerId) {
+        this.containerId = containerId;
+    }
+
+    @Managed
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Managed
+    public int getIdle() {
+        int idle = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                idle += segment.lru.size();
+            }
+        }
+        return idle;
+    }
+
+    @Managed
+    public long getEstimatedIdleSize() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.bytes;
+            }
+        }
+        return size;
+    }
+
+    @Managed
+    public long getHits() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.hits.get();
+        }
+        return count;
+    }
+
+    @Managed
+    public long getMisses() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.misses.get();
+        }
+        return count;
+    }
+
+    @Managed
+    public long getPassivations() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.passivations.get();
+        }
+        return count;
+    }
+
+    @Managed
+    public long getActivations() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.activations.get();
+        }
+        return count;
+    }
+
+    @Managed
+    public long getTimeOuts() {
+        long count = 0;
+        for (final Segment segment : segments) {
+            count += segment.timeOuts.get();
+        }
+        return count;
+    }
+
+    public void add(final K key, final V value) {
+        // find the existing entry
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            entry.lock.lock();
+            try {
+                if (entry.state != EntryState.REMOVED) {
+                    throw new IllegalStateException("An entry for the key " + key + " already exists");
+                }
+                // Entry has been removed between get and lock, simply remove the garbage entry
+                cache.remove(key);
+                entry.segment.unlink(entry);
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        entry = new Entry(key, value, EntryState.CHECKED_OUT);
+        cache.put(key, entry);
+    }
+
+    public V checkOut(final K key, final boolean loadEntryIfNotFound) throws Exception {
+        final Segment segment = segment(key);
+
+        // attempt (up to 10 times) to obtain the entry from the cache
+        for (int i = 0; i < 10; i++) {
+            // find the entry
+            Entry entry = cache.get(key);
+            if (entry == null) {
+                segment.misses.incrementAndGet();
+                if (!loadEntryIfNotFound) {
+                    return null;
+                }
+                entry = loadEntry(key);
+                if (entry == null) {
+                    return null;
+                }
+            } else {
+                segment.hits.incrementAndGet();
+            }
+
+            entry.lock.lock();
+            try {
+                // verify state
+                switch (entry.state) {
+                    case AVAILABLE:
+                        break;
+                    case CHECKED_OUT:
+                        return entry.value;
+                    case PASSIVATED:
+                        // Entry was passivated between get and lock, we need to load the Entry again
+                        cache.remove(key, entry);
+                        continue;
+                    case REMOVED:
+                        // Entry has been removed between get and lock (most likely by undeploying the EJB), simply drop the instance
+                        return null;
+                }
+
+                // mark entry as in-use, it is removed from the lru while in use
+                entry.state = EntryState.CHECKED_OUT;
+                segment.unlink(entry);
+
+                return entry.value;
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        // something is really messed up with this entry, try to cleanup before throwing an exception
+        final Entry entry = cache.remove(key);
+        if (entry != null) {
+            entry.segment.unlink(entry);
+        }
+        throw new OpenEJBRuntimeException("Cache is corrupted: the entry " + key + " in the Map 'cache' is in state PASSIVATED");
+    }
+
+    public void checkIn(final K key) {
+        // find the entry
+        final Entry entry = cache.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        entry.lock.lock();
+        try {
+            // verify state
+            switch (entry.state) {
+                case AVAILABLE:
+                    entry.resetTimeOut();
+                    return;
+                case PASSIVATED:
+                    // An entry in-use should not be passivated so we can only assume
+                    // that the caller never checked out the bean in the first place
+                    throw new IllegalStateException("The entry " + key + " is not checked-out");
+                case REMOVED:
+                    // Entry has been removed between get and lock (most likely by undeploying the EJB), simply drop the instance
+                    return;
+            }
+
+            // mark entry as available and add it to the lru
+            entry.state = EntryState.AVAILABLE;
+            entry.resetTimeOut();
+            entry.segment.link(entry, estimateSize(entry.value));
+        } finally {
+            entry.lock.unlock();
+        }
+
+        if (frequency == 0) {
+            evict(entry.segment);
+        }
+    }
+
+    public V remove(final K key) {
+        // find the entry
+        final Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        entry.lock.lock();
+        try {
+            // remove the entry from the cache and lru
+            cache.remove(key);
+            entry.segment.unlink(entry);
+
+            // mark the entry as removed
+            entry.state = EntryState.REMOVED;
+
+            return entry.value;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    public void removeAll(final CacheFilter<V> filter) {
+        for (final Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+
+            entry.lock.lock();
+            try {
+                if (filter.matches(entry.value)) {
+                    // remove the entry from the cache and lru
+                    iterator.remove();
+                    entry.segment.unlink(entry);
+
+                    // mark the entry as removed
+                    entry.state = EntryState.REMOVED;
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    public void processLRU() {
+        for (final Segment segment : segments) {
+            removeTimedOut(segment);
+            evict(segment);
+        }
+    }
+
+    private void removeTimedOut(final Segment segment) {
+        // entries are in least recently used order but might have different timeouts
+        final List<Entry> entries;
+        synchronized (segment) {
+            entries = new ArrayList<Entry>(segment.lru.values());
+        }
+
+        for (final Entry entry : entries) {
+            entry.lock.lock();
+            try {
+                if (entry.state == EntryState.AVAILABLE && entry.isTimedOut()) {
+                    cache.remove(entry.key);
+                    segment.unlink(entry);
+                    entry.state = EntryState.REMOVED;
+                    timedOut(entry);
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Passivates the least recently used entries of the segment while it is over its share of
+     * the capacity or of the size budget, bulkPassivate entries at most per segment.
+     */
+    private void evict(final Segment segment) {
+        final int count = segments.length;
+        final int segmentCapacity = Math.max(1, (capacity + count - 1) / count);
+        final long segmentMaxSize = maxSize < 0 ? -1 : Math.max(1, maxSize / count);
+        final int bulk = Math.max(1, (bulkPassivate + count - 1) / count);
+
+        final List<Entry> candidates = new ArrayList<Entry>(bulk);
+        synchronized (segment) {
+            int size = segment.lru.size();
+            long bytes = segment.bytes;
+            for (final Iterator<Entry> iterator = segment.lru.values().iterator(); iterator.hasNext() && candidates.size() < bulk; ) {
+                if (size <= segmentCapacity && (segmentMaxSize < 0 || bytes <= segmentMaxSize)) {
+                    break;
+                }
+                final Entry entry = iterator.next();
+                candidates.add(entry);
+                size--;
+                bytes -= entry.size;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        final Map<K, V> valuesToStore = new LinkedHashMap<K, V>();
+        final List<Entry> locked = new ArrayList<Entry>();
+        for (final Entry entry : candidates) {
+            if (!entry.lock.tryLock()) {
+                // skip entries in use to avoid gathering locks in a different order than other threads
+                continue;
+            }
+            try {
+                if (entry.state != EntryState.AVAILABLE) {
+                    // checked out, passivated or removed meanwhile
+                    continue;
+                }
+
+                cache.remove(entry.key);
+                segment.unlink(entry);
+
+                // if the entry is actually timed out we just destroy it; otherwise it is written to disk
+                if (entry.isTimedOut()) {
+                    entry.state = EntryState.REMOVED;
+                    timedOut(entry);
+                } else {
+                    // entry will be passivated, so we need to obtain an additional lock until the passivation is complete
+                    entry.lock.lock();
+                    locked.add(entry);
+
+                    entry.state = EntryState.PASSIVATED;
+                    valuesToStore.put(entry.key, entry.value);
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        if (!valuesToStore.isEmpty()) {
+            try {
+                storeEntries(valuesToStore);
+                segment.passivations.addAndGet(valuesToStore.size());
+            } finally {
+                for (final Entry entry : locked) {
+                    // release the extra passivation lock
+                    entry.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void timedOut(final Entry entry) {
+        entry.segment.timeOuts.incrementAndGet();
+
+        // notify listener that the entry has been removed
+        final CacheListener<V> listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.timedOut(entry.value);
+            } catch (final Exception e) {
+                logger.error("An unexpected exception occured from timedOut callback", e);
+            }
+        }
+    }
+
+    private Entry loadEntry(final K key) throws Exception {
+        final PassivationStrategy passivator = this.passivator;
+        if (passivator == null) {
+            return null;
+        }
+
+        V value = null;
+        try {
+            value = (V) passivator.activate(key);
+        } catch (final Exception e) {
+            logger.error("An unexpected exception occured while reading entries from disk", e);
+        }
+
+        if (value == null) {
+            return null;
+        }
+        segment(key).activations.incrementAndGet();
+
+        final CacheListener<V> listener = this.listener;
+        if (listener != null) {
+            listener.afterLoad(value);
+        }
+        final Entry entry = new Entry(key, value, EntryState.AVAILABLE);
+        cache.put(key, entry);
+        return entry;
+    }
+
+    private void storeEntries(final Map<K, V> entriesToStore) {
+        final CacheListener<V> listener = this.listener;
+        for (final Iterator<Map.Entry<K, V>> iterator = entriesToStore.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<K, V> entry = iterator.next();
+
+            if (listener != null) {
+                try {
+                    listener.beforeStore(entry.getValue());
+                } catch (final Exception e) {
+                    iterator.remove();
+                    logger.error("An unexpected exception occured from beforeStore callback", e);
+                }
+            }
+        }
+
+        if (maxSize >= 0) {
+            measureSizes(entriesToStore);
+        }
+
+        final PassivationStrategy passivator = this.passivator;
+        if (passivator == null) {
+            return;
+        }
+
+        try {
+            passivator.passivate(entriesToStore);
+        } catch (final Exception e) {
+            logger.error("An unexpected exception occured while writting the entries to disk", e);
+        }
+    }
+
+    /**
+     * Measures one passivated value of the beans never measured, or measured more than
+     * sizeRefresh ago, so most batches don't serialize anything besides the passivator.
+     * The values are ready to be serialized since their passivation callbacks were invoked.
+     */
+    private void measureSizes(final Map<K, V> entriesToStore) {
+        final long now = System.currentTimeMillis();
+        final Map<Object, V> samples = new LinkedHashMap<Object, V>();
+        for (final V value : entriesToStore.values()) {
+            final Object key = sizeKey(value);
+            final Sample sample = sizes.get(key);
+            if ((sample == null || now - sample.measured >= sizeRefresh) && !samples.containsKey(key)) {
+                samples.put(key, value);
+            }
+        }
+
+        for (final Map.Entry<Object, V> sample : samples.entrySet()) {
+            final CountingOutputStream counter = new CountingOutputStream();
+            long size = 0;
+            try {
+                final ObjectOutputStream oos = new ObjectOutputStream(counter);
+                oos.writeObject(sample.getValue());
+                oos.close();
+                size = Math.max(1, counter.count);
+            } catch (final Exception e) {
+                // the passivator will report it, the estimate is used until the next refresh
+            }
+            sizes.put(sample.getKey(), new Sample(size, now));
+        }
+    }
+
+    private long estimateSize(final V value) {
+        if (maxSize < 0) {
+            return 0;
+        }
+        final Sample sample = sizes.get(sizeKey(value));
+        return sample != null && sample.size > 0 ? sample.size : estimatedEntrySize;
+    }
+
+    private static final class Sample {
+        private final long size;
+        private final long measured;
+
+        private Sample(final long size, final long measured) {
+            this.size = size;
+            this.measured = measured;
+        }
+    }
+
+    private static Object sizeKey(final Object value) {
+        if (value instanceof Instance && ((Instance) value).beanContext != null) {
+            return ((Instance) value).beanContext;
+        }
+        return value.getClass();
+    }
+
+    private Segment segment(final Object key) {
+        final Segment[] segments = this.segments;
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Segment[] newSegments(final int count) {
+        final Segment[] segments = new SegmentedCache.Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        return segments;
+    }
+
+    private static long ms(final String durationValue, final TimeUnit defaultTU) {
+        final Duration duration = new Duration(durationValue.trim());
+        if (duration.getUnit() == null) {
+            duration.setUnit(defaultTU);
+        }
+        return duration.getUnit().toMillis(duration.getTime());
+    }
+
+    private static long bytes(final String value) {
+        final String size = value.trim().toLowerCase();
+        final int unit = size.indexOf(' ') > 0 ? size.indexOf(' ') : size.length();
+        final long number = Long.parseLong(size.substring(0, unit).trim());
+        final String suffix = size.substring(unit).trim();
+        if (suffix.isEmpty() || suffix.equals("b") || suffix.startsWith("byte")) {
+            return number;
+        } else if (suffix.startsWith("k")) {
+            return number * 1024;
+        } else if (suffix.startsWith("m")) {
+            return number * 1024 * 1024;
+        } else if (suffix.startsWith("g")) {
+            return number * 1024 * 1024 * 1024;
+        }
+        throw new IllegalArgumentException("Unknown size unit: " + value);
+    }
+
+    private enum EntryState {
+        AVAILABLE, CHECKED_OUT, PASSIVATED, REMOVED
+    }
+
+    private final class Segment {
+        /**
+         * Values not in use in least recently used order, guarded by the segment
+         */
+        private final LinkedHashMap<K, Entry> lru = new LinkedHashMap<K, Entry>();
+        private long bytes;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong passivations = new AtomicLong();
+        private final AtomicLong activations = new AtomicLong();
+        private final AtomicLong timeOuts = new AtomicLong();
+
+        private synchronized void link(final Entry entry, final long size) {
+            unlink(entry);
+            entry.size = size;
+            lru.put(entry.key, entry);
+            bytes += size;
+        }
+
+        private synchronized void unlink(final Entry entry) {
+            if (lru.get(entry.key) == entry) {
+                lru.remove(entry.key);
+                bytes -= entry.size;
+            }
+        }
+    }
+
+    private final class Entry {
+        private final K key;
+        private final V value;
+        private final Segment segment;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long timeOut;
+
+        // guarded by the lock
+        private EntryState state;
+        private long lastAccess;
+
+        // guarded by the segment
+        private long size;
+
+        private Entry(final K key, final V value, final EntryState state) {
+            this.key = key;
+            this.value = value;
+            this.state = state;
+            this.segment = segment(key);
+
+            if (value instanceof Cache.TimeOut) {
+                final Duration duration = ((Cache.TimeOut) value).getTimeOut();
+                this.timeOut = duration != null ? duration.getTime(TimeUnit.MILLISECONDS) : getTimeOut();
+            } else {
+                this.timeOut = getTimeOut();
+            }
+
+            lastAccess = System.currentTimeMillis();
+        }
+
+        private boolean isTimedOut() {
+            if (timeOut < 0) {
+                return false;
+            } else if (timeOut == 0) {
+                return true;
+            } else {
+                return System.currentTimeMillis() - lastAccess > timeOut;
+            }
+        }
+
+        private void resetTimeOut() {
+            if (timeOut > 0) {
+                lastAccess = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) throws IOException {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            count += len;
+        }
+    }
+}
@@ -90,6 +90,22 @@ public class StatefulContainerFactory {
         properties.put("Frequency", s);
     }
 
+    public void setSegments(final String s) {
+        properties.put("Segments", s);
+    }
+
+    public void setMaxSize(final String s) {
+        properties.put("MaxSize", s);
+    }
+
+    public void setEstimatedEntrySize(final String s) {
+        properties.put("EstimatedEntrySize", s);
+    }
+
+    public void setSizeRefresh(final String s) {
+        properties.put("SizeRefresh", s);
+    }
+
     public void setPreventExtendedEntityManagerSerialization(final boolean preventExtendedEntityManagerSerialization) {
         properties.put("PreventExtendedEntityManagerSerialization", Boolean.toString(preventExtendedEntityManagerSerialization));
     }
@@ -107,6 +123,9 @@ public class StatefulContainerFactory {
         if (cache == null) {
             buildCache();
         }
+        if (cache instanceof SegmentedCache) {
+            ((SegmentedCache<Object, Instance>) cache).setContainerId(id);
+        }
         cache.init();
         return new StatefulContainer(
             id, securityService,
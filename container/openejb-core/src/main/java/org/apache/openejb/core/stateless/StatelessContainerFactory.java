@@ -92,6 +92,10 @@ public class StatelessContainerFactory {
         pool.setStrictPooling(strict);
     }
 
+    public void setStripedPooling(final boolean striped) {
+        pool.setStripedPooling(striped);
+    }
+
     public void setMaxAge(final Duration maxAge) {
         pool.setMaxAge(maxAge);
     }
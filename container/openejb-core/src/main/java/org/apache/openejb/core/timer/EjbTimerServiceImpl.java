@@ -84,6 +84,7 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
     public static final String EJB_TIMER_RETRY_ATTEMPTS = "EjbTimer.RetryAttempts";
     public static final String OPENEJB_QUARTZ_USE_TCCL = "openejb.quartz.use-TCCL";
+    public static final String OPENEJB_TIMER_ENGINE = "openejb.timer.engine";
 
     private boolean transacted;
     private int retryAttempts;
@@ -166,6 +167,23 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
 
             final SystemInstance systemInstance = SystemInstance.get();
 
+            if (TimingWheelScheduler.ENGINE.equalsIgnoreCase(properties.getProperty(OPENEJB_TIMER_ENGINE, "quartz"))) {
+                // a single wheel for all the beans whatever their quartz settings
+                TimingWheelScheduler wheel = systemInstance.getComponent(TimingWheelScheduler.class);
+                if (wheel == null) {
+                    try {
+                        wheel = new TimingWheelScheduler(properties);
+                    } catch (final SchedulerException e) {
+                        throw new OpenEJBRuntimeException("Fail to initialize the timing wheel scheduler", e);
+                    }
+                    systemInstance.setComponent(TimingWheelScheduler.class, wheel);
+                }
+
+                thisScheduler = wheel.getScheduler();
+                deployment.set(Scheduler.class, thisScheduler);
+                return thisScheduler;
+            }
+
             scheduler = systemInstance.getComponent(Scheduler.class);
 
             if (scheduler == null || newInstance) {
@@ -317,6 +335,9 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     @Override
     public void stop() {
         cleanTimerData();
+        if (timerStore instanceof SharedTimerStore && deployment != null) {
+            ((SharedTimerStore) timerStore).release(deployment.getDeploymentID().toString());
+        }
         shutdownMyScheduler();
     }
 
@@ -353,7 +374,8 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         boolean defaultScheduler = false;
         final Scheduler ds = SystemInstance.get().getComponent(Scheduler.class);
         try { // == is the faster way to test, we rely on name (key in quartz registry) only for serialization
-            defaultScheduler = ds == scheduler || scheduler.getSchedulerName().equals(ds.getSchedulerName());
+            defaultScheduler = TimingWheelScheduler.NAME.equals(scheduler.getSchedulerName()) // shared
+                || ds == scheduler || scheduler.getSchedulerName().equals(ds.getSchedulerName());
         } catch (final Exception e) {
             // no-op: default should be fine
         }
@@ -365,6 +387,10 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     }
 
     public static void shutdown() {
+        final TimingWheelScheduler wheel = SystemInstance.get().removeComponent(TimingWheelScheduler.class);
+        if (wheel != null) {
+            wheel.shutdown(true);
+        }
         shutdown(SystemInstance.get().getComponent(Scheduler.class));
     }
 
@@ -755,6 +781,10 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
      */
     @SuppressWarnings("ReturnInsideFinallyBlock")
     public void ejbTimeout(final TimerData timerData) {
+        if (timerStore instanceof SharedTimerStore && !((SharedTimerStore) timerStore).acquire(timerData)) {
+            return; // delivered by another server
+        }
+
         final Thread thread = Thread.currentThread();
         final ClassLoader loader = thread.getContextClassLoader(); // container loader
         try {
@@ -803,6 +833,10 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
                         ejbTimeout,
                         new Object[]{timer},
                         timerData.getPrimaryKey());
+
+                    if (timerStore instanceof SharedTimerStore) {
+                        ((SharedTimerStore) timerStore).delivered(timerData);
+                    }
                 } catch (final RuntimeException e) {
                     retry = true;
                     // exception from a timer does not necessairly mean failure
@@ -0,0 +1,722 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.MethodContext;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.ejb.ScheduleExpression;
+import javax.ejb.TimerConfig;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer store keeping the persistent timers in a database table, selected with
+ * timerStore.class=org.apache.openejb.core.timer.JdbcTimerStore.
+ * <p/>
+ * The timers are still held in memory, the table is written when they are created
+ * or removed.  The rows of a transaction are written in one batch when it commits,
+ * with the connection of the transaction if the datasource is JTA managed.
+ * <p/>
+ * Several servers can share the table.  The timers of a deployment are spread in
+ * shards and each shard is leased by one server at a time, only this server delivers
+ * the timeouts of the shard.  The leases are renewed in the background, a lease of a
+ * stopped server is taken over once expired.  The clocks of the servers must not drift
+ * by more than a tenth of the lease duration.
+ * <p/>
+ * A single action timer is claimed for a lease duration before its timeout is delivered
+ * and its row is deleted in the transaction of the timeout.  If this transaction rolls
+ * back after the last retry, or the server stops during the delivery, the row stays and
+ * the timer fires again once the claim expired.  A timeout running for longer than the
+ * lease can be delivered twice if its shard changes hands meanwhile.
+ * <p/>
+ * Non persistent timers stay on the server which created them and automatic timers
+ * are delivered by the owner of the first shard of their deployment.
+ *
+ * @version $Rev$ $Date$
+ */
+public class JdbcTimerStore extends MemoryTimerStore implements SharedTimerStore {
+
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    public static final String OPENEJB_TIMER_STORE_DATASOURCE = "openejb.timer.store.jdbc.datasource";
+    public static final String OPENEJB_TIMER_STORE_TABLE_PREFIX = "openejb.timer.store.jdbc.table-prefix";
+    public static final String OPENEJB_TIMER_STORE_CREATE_TABLES = "openejb.timer.store.jdbc.create-tables";
+    public static final String OPENEJB_TIMER_STORE_BLOB_TYPE = "openejb.timer.store.jdbc.blob-type";
+    public static final String OPENEJB_TIMER_STORE_SHARDS = "openejb.timer.store.jdbc.shards";
+    public static final String OPENEJB_TIMER_STORE_LEASE = "openejb.timer.store.jdbc.lease";
+    public static final String OPENEJB_TIMER_STORE_NODE = "openejb.timer.store.jdbc.node";
+
+    private static final String COLUMNS = "ID, TIMER_TYPE, TIMEOUT_METHOD, EXPIRATION, TIMER_INTERVAL, TIMER_DATA";
+
+    private static ScheduledExecutorService leaseExecutor;
+
+    private final TransactionManager transactionManager;
+    private final String dataSourceId;
+    private final String timers;
+    private final String leases;
+    private final boolean createTables;
+    private final String blobType;
+    private final int shards;
+    private final long leaseDuration;
+    private final String node;
+
+    private final Map<String, Long> ownedLeases = new ConcurrentHashMap<String, Long>();
+    // the single action timers being delivered, by the delivering thread
+    private final Map<Long, Thread> claimed = new ConcurrentHashMap<Long, Thread>();
+
+    private volatile DataSource dataSource;
+    private EjbTimerServiceImpl timerService;
+    private String deploymentId;
+    private ScheduledFuture<?> renewal;
+    private long lastRefresh;
+
+    public JdbcTimerStore(final TransactionManager transactionManager) {
+        this(transactionManager, new Properties());
+    }
+
+    public JdbcTimerStore(final TransactionManager transactionManager, final Properties properties) {
+        super(transactionManager);
+        this.transactionManager = transactionManager;
+
+        final Options options = new Options(properties, SystemInstance.get().getOptions());
+        dataSourceId = options.get(OPENEJB_TIMER_STORE_DATASOURCE, (String) null);
+        final String prefix = options.get(OPENEJB_TIMER_STORE_TABLE_PREFIX, "OPENEJB_");
+        timers = prefix + "TIMERS";
+        leases = prefix + "TIMER_LEASES";
+        createTables = options.get(OPENEJB_TIMER_STORE_CREATE_TABLES, true);
+        blobType = options.get(OPENEJB_TIMER_STORE_BLOB_TYPE, "BLOB");
+        shards = Math.max(1, options.get(OPENEJB_TIMER_STORE_SHARDS, 4));
+        node = options.get(OPENEJB_TIMER_STORE_NODE, ManagementFactory.getRuntimeMXBean().getName());
+
+        final Duration lease = Duration.parse(options.get(OPENEJB_TIMER_STORE_LEASE, "30 seconds"));
+        leaseDuration = Math.max(1000, lease.getUnit() == null ? lease.getTime() : lease.getTime(TimeUnit.MILLISECONDS));
+    }
+
+    private static synchronized ScheduledExecutorService getLeaseExecutor() {
+        if (leaseExecutor == null) {
+            leaseExecutor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("OpenEJB-JdbcTimerStore"));
+        }
+        return leaseExecutor;
+    }
+
+    @Override
+    protected long newId() {
+        // unique among the servers sharing the table
+        return UUID.randomUUID().getMostSignificantBits() & Long.MAX_VALUE;
+    }
+
+    @Override
+    public Collection<TimerData> loadTimers(final EjbTimerServiceImpl timerService, final String deploymentId) throws TimerStoreException {
+        synchronized (this) {
+            this.timerService = timerService;
+            this.deploymentId = deploymentId;
+
+            final Transaction transaction = suspend();
+            try {
+                final Connection connection = getConnection();
+                try {
+                    if (createTables) {
+                        createTables(connection);
+                    }
+                    lastRefresh = System.currentTimeMillis();
+                    for (final TimerData timerData : select(connection, "DEPLOYMENT_ID = ?", deploymentId)) {
+                        taskStore.put(timerData.getId(), timerData);
+                    }
+                    for (int shard = 0; shard < shards; shard++) {
+                        renewLease(connection, deploymentId + "#" + shard);
+                    }
+                } finally {
+                    connection.close();
+                }
+            } catch (final SQLException e) {
+                throw new TimerStoreException("Unable to load the timers of " + deploymentId, e);
+            } finally {
+                resume(transaction);
+            }
+
+            if (renewal == null) {
+                renewal = getLeaseExecutor().scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh();
+                    }
+                }, leaseDuration / 3, leaseDuration / 3, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return super.loadTimers(timerService, deploymentId);
+    }
+
+    @Override
+    public void release(final String deploymentId) {
+        synchronized (this) {
+            if (renewal != null) {
+                renewal.cancel(false);
+                renewal = null;
+            }
+        }
+
+        if (ownedLeases.isEmpty() || dataSource == null) {
+            return;
+        }
+
+        // lets the other servers take the shards over right away
+        try {
+            final Connection connection = getConnection();
+            try {
+                final PreparedStatement statement = connection.prepareStatement("UPDATE " + leases + " SET EXPIRATION = 0 WHERE SHARD_KEY = ? AND OWNER = ?");
+                try {
+                    for (final String key : ownedLeases.keySet()) {
+                        statement.setString(1, key);
+                        statement.setString(2, node);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final Exception e) {
+            log.warning("Unable to release the timer leases of " + deploymentId, e);
+        }
+        ownedLeases.clear();
+    }
+
+    @Override
+    public boolean acquire(final TimerData timerData) {
+        final boolean auto = isAutoCreated(timerData);
+        if (!auto && !timerData.isPersistent()) {
+            return true;
+        }
+
+        if (!ownsLease(shardKey(timerData))) {
+            if (timerData.getType() == TimerType.SingleAction) {
+                // delivered by the owner of the shard
+                taskStore.remove(timerData.getId());
+            }
+            return false;
+        }
+
+        if (auto) {
+            return true;
+        }
+
+        final Transaction transaction = suspend();
+        try {
+            final Connection connection = getConnection();
+            try {
+                if (timerData.getType() == TimerType.SingleAction) {
+                    // committed right away, the row itself is deleted with the timeout transaction
+                    final long now = System.currentTimeMillis();
+                    final PreparedStatement statement = connection.prepareStatement("UPDATE " + timers + " SET CLAIMED_BY = ?, CLAIM_EXPIRATION = ?"
+                        + " WHERE ID = ? AND (CLAIM_EXPIRATION IS NULL OR CLAIM_EXPIRATION < ?)");
+                    final boolean acquired;
+                    try {
+                        statement.setString(1, node);
+                        statement.setLong(2, now + leaseDuration);
+                        statement.setLong(3, timerData.getId());
+                        statement.setLong(4, now);
+                        acquired = statement.executeUpdate() == 1;
+                    } finally {
+                        statement.close();
+                    }
+                    if (!connection.getAutoCommit()) {
+                        connection.commit();
+                    }
+
+                    if (acquired) {
+                        claimed.put(timerData.getId(), Thread.currentThread());
+                        return true;
+                    }
+
+                    // delivered or being delivered by another server
+                    taskStore.remove(timerData.getId());
+                    return false;
+                }
+
+                final PreparedStatement statement = connection.prepareStatement("SELECT ID FROM " + timers + " WHERE ID = ?");
+                try {
+                    statement.setLong(1, timerData.getId());
+                    final ResultSet result = statement.executeQuery();
+                    try {
+                        if (result.next()) {
+                            return true;
+                        }
+                    } finally {
+                        result.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final Exception e) {
+            log.error("Unable to acquire the timer " + timerData.getId() + " of " + timerData.getDeploymentId(), e);
+            return false;
+        } finally {
+            resume(transaction);
+        }
+
+        // cancelled by another server
+        taskStore.remove(timerData.getId());
+        timerData.stop();
+        return false;
+    }
+
+    @Override
+    public void delivered(final TimerData timerData) {
+        if (claimed.get(timerData.getId()) != Thread.currentThread()) {
+            return;
+        }
+
+        try {
+            final Connection connection = getConnection();
+            try {
+                final PreparedStatement statement = connection.prepareStatement("DELETE FROM " + timers + " WHERE ID = ? AND CLAIMED_BY = ?");
+                try {
+                    statement.setLong(1, timerData.getId());
+                    statement.setString(2, node);
+                    statement.executeUpdate();
+                } finally {
+                    statement.close();
+                }
+                if (!connection.getAutoCommit() && !isTransactionActive()) {
+                    connection.commit();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Unable to remove the delivered timer " + timerData.getId() + " of " + timerData.getDeploymentId(), e);
+        }
+    }
+
+    @Override
+    public void removeTimer(final long id) {
+        final boolean delivering = claimed.get(id) == Thread.currentThread();
+        super.removeTimer(id);
+
+        // the end of the delivery, the row was deleted with the timeout or is kept for a retry
+        if (delivering && !isTransactionActive()) {
+            claimed.remove(id);
+        }
+    }
+
+    @Override
+    protected void persist(final Collection<TimerData> added, final Collection<Long> removed) throws TimerStoreException {
+        final List<TimerData> inserts = new ArrayList<TimerData>(added.size());
+        for (final TimerData timerData : added) {
+            // a known timer is only given back to the store, by a rolled back cancellation for instance
+            if (timerData.isPersistent() && !isAutoCreated(timerData) && !taskStore.containsKey(timerData.getId())) {
+                inserts.add(timerData);
+            }
+        }
+
+        final List<Long> deletes = new ArrayList<Long>(removed.size());
+        for (final Long id : removed) {
+            if (claimed.get(id) == Thread.currentThread()) {
+                // consumed by delivered() if the timeout commits
+                continue;
+            }
+            final TimerData timerData = taskStore.get(id);
+            if (timerData != null && timerData.isPersistent() && !isAutoCreated(timerData)) {
+                deletes.add(id);
+            }
+        }
+
+        if (inserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        try {
+            final Connection connection = getConnection();
+            try {
+                if (!inserts.isEmpty()) {
+                    insert(connection, inserts);
+                }
+                if (!deletes.isEmpty()) {
+                    final PreparedStatement statement = connection.prepareStatement("DELETE FROM " + timers + " WHERE ID = ?");
+                    try {
+                        for (final Long id : deletes) {
+                            statement.setLong(1, id);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    } finally {
+                        statement.close();
+                    }
+                }
+                if (!connection.getAutoCommit() && !isTransactionActive()) {
+                    connection.commit();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final SQLException e) {
+            throw new TimerStoreException("Unable to store the timers", e);
+        } catch (final IOException e) {
+            throw new TimerStoreException("Unable to serialize the timers", e);
+        }
+    }
+
+    private void insert(final Connection connection, final List<TimerData> inserts) throws SQLException, IOException {
+        final long now = System.currentTimeMillis();
+        final PreparedStatement statement = connection.prepareStatement("INSERT INTO " + timers
+            + " (ID, DEPLOYMENT_ID, SHARD, NODE, CREATED, TIMER_TYPE, TIMEOUT_METHOD, EXPIRATION, TIMER_INTERVAL, TIMER_DATA)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            for (final TimerData timerData : inserts) {
+                statement.setLong(1, timerData.getId());
+                statement.setString(2, timerData.getDeploymentId());
+                statement.setInt(3, shard(timerData));
+                statement.setString(4, node);
+                statement.setLong(5, now);
+                statement.setString(6, timerData.getType().name());
+                statement.setString(7, timerData.getTimeoutMethod() == null ? null : timerData.getTimeoutMethod().getName());
+
+                ScheduleExpression schedule = null;
+                switch (timerData.getType()) {
+                    case SingleAction:
+                        statement.setLong(8, ((SingleActionTimerData) timerData).getExpiration().getTime());
+                        statement.setNull(9, Types.BIGINT);
+                        break;
+                    case Interval:
+                        final IntervalTimerData interval = (IntervalTimerData) timerData;
+                        statement.setLong(8, interval.getInitialExpiration().getTime());
+                        statement.setLong(9, interval.getIntervalDuration());
+                        break;
+                    default:
+                        schedule = ((CalendarTimerData) timerData).getSchedule();
+                        statement.setNull(8, Types.BIGINT);
+                        statement.setNull(9, Types.BIGINT);
+                        break;
+                }
+
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(timerData.getPrimaryKey());
+                out.writeObject(timerData.getInfo());
+                out.writeObject(schedule);
+                out.close();
+                statement.setBytes(10, bytes.toByteArray());
+
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private List<TimerData> select(final Connection connection, final String where, final Object... parameters) throws SQLException {
+        final BeanContext beanContext = SystemInstance.get().getComponent(ContainerSystem.class).getBeanContext(deploymentId);
+        final List<TimerData> loaded = new ArrayList<TimerData>();
+
+        final PreparedStatement statement = connection.prepareStatement("SELECT " + COLUMNS + " FROM " + timers + " WHERE " + where);
+        try {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            final ResultSet result = statement.executeQuery();
+            try {
+                while (result.next()) {
+                    final long id = result.getLong(1);
+                    if (taskStore.containsKey(id) || claimed.containsKey(id)) {
+                        continue;
+                    }
+
+                    try {
+                        loaded.add(newTimerData(beanContext, id, result));
+                    } catch (final Exception e) {
+                        log.error("Unable to load the timer " + id + " of " + deploymentId, e);
+                    }
+                }
+            } finally {
+                result.close();
+            }
+        } finally {
+            statement.close();
+        }
+        return loaded;
+    }
+
+    private TimerData newTimerData(final BeanContext beanContext, final long id, final ResultSet result) throws Exception {
+        final TimerType type = TimerType.valueOf(result.getString(2));
+        final Method timeoutMethod = timeoutMethod(beanContext, result.getString(3));
+
+        final Object primaryKey;
+        final Object info;
+        final ScheduleExpression schedule;
+        final Thread thread = Thread.currentThread();
+        final ClassLoader loader = thread.getContextClassLoader();
+        thread.setContextClassLoader(beanContext.getClassLoader());
+        try {
+            final ObjectInputStream in = new EjbObjectInputStream(new ByteArrayInputStream(result.getBytes(6)));
+            primaryKey = in.readObject();
+            info = in.readObject();
+            schedule = (ScheduleExpression) in.readObject();
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+
+        final TimerConfig config = new TimerConfig(info, true);
+        switch (type) {
+            case SingleAction:
+                return new SingleActionTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, config, new Date(result.getLong(4)));
+            case Interval:
+                return new IntervalTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, config, new Date(result.getLong(4)), result.getLong(5));
+            default:
+                return new CalendarTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, config, schedule, false);
+        }
+    }
+
+    private static Method timeoutMethod(final BeanContext beanContext, final String name) {
+        final Method ejbTimeout = beanContext.getEjbTimeout();
+        if (name == null || ejbTimeout != null && ejbTimeout.getName().equals(name)) {
+            return ejbTimeout;
+        }
+
+        for (final Iterator<Map.Entry<Method, MethodContext>> it = beanContext.iteratorMethodContext(); it.hasNext(); ) {
+            final Method method = it.next().getValue().getBeanMethod();
+            if (method != null && method.getName().equals(name)) {
+                return method;
+            }
+        }
+        return ejbTimeout;
+    }
+
+    /**
+     * Renews the leases of the deployment and loads the timers created by the other servers.
+     */
+    private void refresh() {
+        final String deploymentId;
+        synchronized (this) {
+            deploymentId = this.deploymentId;
+        }
+
+        final List<TimerData> created = new ArrayList<TimerData>();
+        try {
+            final Connection connection = getConnection();
+            try {
+                final long now = System.currentTimeMillis();
+                for (int shard = 0; shard < shards; shard++) {
+                    final String key = deploymentId + "#" + shard;
+                    if (renewLease(connection, key)) {
+                        // taking over the shard of another server
+                        created.addAll(select(connection, "DEPLOYMENT_ID = ? AND SHARD = ?", deploymentId, shard));
+                    } else if (ownsLease(key)) {
+                        // deliveries which failed or never completed
+                        created.addAll(select(connection, "DEPLOYMENT_ID = ? AND SHARD = ? AND CLAIM_EXPIRATION < ?", deploymentId, shard, now));
+                    }
+                }
+
+                created.addAll(select(connection, "DEPLOYMENT_ID = ? AND CREATED >= ? AND NODE <> ?", deploymentId, lastRefresh - leaseDuration, node));
+                lastRefresh = now;
+            } finally {
+                connection.close();
+            }
+        } catch (final Exception e) {
+            log.warning("Unable to refresh the timers of " + deploymentId, e);
+        }
+
+        for (final TimerData timerData : created) {
+            if (!taskStore.containsKey(timerData.getId())) {
+                taskStore.put(timerData.getId(), timerData);
+                timerData.newTimer();
+            }
+        }
+    }
+
+    /**
+     * @return true if the lease was just taken over
+     */
+    private boolean renewLease(final Connection connection, final String key) throws SQLException {
+        final long now = System.currentTimeMillis();
+        final long expiration = now + leaseDuration;
+
+        boolean acquired;
+        final PreparedStatement update = connection.prepareStatement("UPDATE " + leases + " SET OWNER = ?, EXPIRATION = ? WHERE SHARD_KEY = ? AND (OWNER = ? OR EXPIRATION < ?)");
+        try {
+            update.setString(1, node);
+            update.setLong(2, expiration);
+            update.setString(3, key);
+            update.setString(4, node);
+            update.setLong(5, now);
+            acquired = update.executeUpdate() == 1;
+        } finally {
+            update.close();
+        }
+
+        if (!acquired) {
+            final PreparedStatement insert = connection.prepareStatement("INSERT INTO " + leases + " (SHARD_KEY, OWNER, EXPIRATION) VALUES (?, ?, ?)");
+            try {
+                insert.setString(1, key);
+                insert.setString(2, node);
+                insert.setLong(3, expiration);
+                acquired = insert.executeUpdate() == 1;
+            } catch (final SQLException e) {
+                // leased by another server
+                acquired = false;
+            } finally {
+                insert.close();
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+
+        if (!acquired) {
+            ownedLeases.remove(key);
+            return false;
+        }
+
+        final boolean takenOver = !ownsLease(key);
+        ownedLeases.put(key, expiration);
+        return takenOver;
+    }
+
+    private boolean ownsLease(final String key) {
+        final Long expiration = ownedLeases.get(key);
+        return expiration != null && expiration - leaseDuration / 10 > System.currentTimeMillis();
+    }
+
+    private String shardKey(final TimerData timerData) {
+        return timerData.getDeploymentId() + "#" + shard(timerData);
+    }
+
+    private int shard(final TimerData timerData) {
+        if (isAutoCreated(timerData)) {
+            return 0;
+        }
+        return (int) (timerData.getId() % shards);
+    }
+
+    private static boolean isAutoCreated(final TimerData timerData) {
+        return timerData instanceof CalendarTimerData && ((CalendarTimerData) timerData).isAutoCreated();
+    }
+
+    private void createTables(final Connection connection) throws SQLException {
+        final Statement statement = connection.createStatement();
+        try {
+            try {
+                statement.executeQuery("SELECT ID FROM " + timers + " WHERE ID = -1").close();
+                return;
+            } catch (final SQLException e) {
+                // not created yet
+            }
+
+            statement.executeUpdate("CREATE TABLE " + timers + " (ID BIGINT NOT NULL PRIMARY KEY, DEPLOYMENT_ID VARCHAR(255) NOT NULL,"
+                + " SHARD INTEGER NOT NULL, NODE VARCHAR(255) NOT NULL, CREATED BIGINT NOT NULL, TIMER_TYPE VARCHAR(32) NOT NULL,"
+                + " TIMEOUT_METHOD VARCHAR(255), EXPIRATION BIGINT, TIMER_INTERVAL BIGINT, TIMER_DATA " + blobType + ","
+                + " CLAIMED_BY VARCHAR(255), CLAIM_EXPIRATION BIGINT)");
+            statement.executeUpdate("CREATE INDEX " + timers + "_DEPLOYMENT ON " + timers + " (DEPLOYMENT_ID, CREATED)");
+            statement.executeUpdate("CREATE TABLE " + leases + " (SHARD_KEY VARCHAR(255) NOT NULL PRIMARY KEY,"
+                + " OWNER VARCHAR(255) NOT NULL, EXPIRATION BIGINT NOT NULL)");
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        if (dataSource == null) {
+            if (dataSourceId == null) {
+                throw new SQLException(OPENEJB_TIMER_STORE_DATASOURCE + " is not set");
+            }
+
+            try {
+                final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+                dataSource = (DataSource) containerSystem.getJNDIContext().lookup("openejb/Resource/" + dataSourceId);
+            } catch (final NamingException e) {
+                throw new SQLException("Data source " + dataSourceId + " not found", e);
+            }
+        }
+        return dataSource.getConnection();
+    }
+
+    private boolean isTransactionActive() {
+        try {
+            return transactionManager != null && transactionManager.getTransaction() != null;
+        } catch (final Exception e) {
+            return false;
+        }
+    }
+
+    private Transaction suspend() {
+        try {
+            return transactionManager == null ? null : transactionManager.suspend();
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+    private void resume(final Transaction transaction) {
+        if (transaction == null) {
+            return;
+        }
+
+        try {
+            transactionManager.resume(transaction);
+        } catch (final Exception e) {
+            log.warning("Unable to resume the transaction", e);
+        }
+    }
+}
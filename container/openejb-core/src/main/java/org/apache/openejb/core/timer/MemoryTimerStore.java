@@ -20,6 +20,7 @@ package org.apache.openejb.core.timer;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
+import javax.ejb.EJBException;
 import javax.ejb.ScheduleExpression;
 import javax.ejb.TimerConfig;
 import javax.transaction.RollbackException;
@@ -47,7 +48,7 @@ import java.util.concurrent.locks.ReentrantLock;
 public class MemoryTimerStore implements TimerStore {
     private static final long serialVersionUID = 1L;
     private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
-    private final Map<Long, TimerData> taskStore = new ConcurrentHashMap<Long, TimerData>();
+    protected final Map<Long, TimerData> taskStore = new ConcurrentHashMap<Long, TimerData>();
     private final Map<Transaction, TimerDataView> tasksByTransaction = new ConcurrentHashMap<Transaction, TimerDataView>();
     private final AtomicLong counter = new AtomicLong(0);
 
@@ -57,11 +58,24 @@ public class MemoryTimerStore implements TimerStore {
         this.transactionManager = transactionManager;
     }
 
+    protected long newId() {
+        return counter.incrementAndGet();
+    }
+
+    /**
+     * Extension point for the stores keeping the timers outside of the memory.  Called with
+     * the timers added and removed outside of a transaction, or with all the timers added and
+     * removed by a transaction before it commits.  The memory is updated afterwards.
+     */
+    protected void persist(final Collection<TimerData> added, final Collection<Long> removed) throws TimerStoreException {
+        // no-op
+    }
+
     @Override
     public TimerData getTimer(final String deploymentId, final long timerId) {
         try {
             final TimerDataView tasks = getTasks();
-            return tasks.getTasks().get(timerId);
+            return tasks.getTask(timerId);
         } catch (final TimerStoreException e) {
             return null;
         }
@@ -98,7 +112,7 @@ public class MemoryTimerStore implements TimerStore {
     @Override
     public TimerData createCalendarTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final ScheduleExpression scheduleExpression, final TimerConfig timerConfig, final boolean auto)
         throws TimerStoreException {
-        final long id = counter.incrementAndGet();
+        final long id = newId();
         final TimerData timerData = new CalendarTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, scheduleExpression, auto);
         getTasks().addTimerData(timerData);
         return timerData;
@@ -107,7 +121,7 @@ public class MemoryTimerStore implements TimerStore {
     @Override
     public TimerData createIntervalTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final Date initialExpiration, final long intervalDuration, final TimerConfig timerConfig)
         throws TimerStoreException {
-        final long id = counter.incrementAndGet();
+        final long id = newId();
         final TimerData timerData = new IntervalTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, initialExpiration, intervalDuration);
         getTasks().addTimerData(timerData);
         return timerData;
@@ -115,7 +129,7 @@ public class MemoryTimerStore implements TimerStore {
 
     @Override
     public TimerData createSingleActionTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final Date expiration, final TimerConfig timerConfig) throws TimerStoreException {
-        final long id = counter.incrementAndGet();
+        final long id = newId();
         final TimerData timerData = new SingleActionTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, expiration);
         getTasks().addTimerData(timerData);
         return timerData;
@@ -161,9 +175,11 @@ public class MemoryTimerStore implements TimerStore {
     private interface TimerDataView {
         Map<Long, TimerData> getTasks();
 
-        void addTimerData(TimerData timerData);
+        TimerData getTask(Long timerId);
+
+        void addTimerData(TimerData timerData) throws TimerStoreException;
 
-        void removeTimerData(Long timerId);
+        void removeTimerData(Long timerId) throws TimerStoreException;
     }
 
     private class LiveTimerDataView implements TimerDataView {
@@ -173,13 +189,23 @@ public class MemoryTimerStore implements TimerStore {
         }
 
         @Override
-        public void addTimerData(final TimerData timerData) {
+        public TimerData getTask(final Long timerId) {
+            return taskStore.get(timerId);
+        }
+
+        @Override
+        public void addTimerData(final TimerData timerData) throws TimerStoreException {
+            persist(Collections.singletonList(timerData), Collections.<Long>emptyList());
             taskStore.put(timerData.getId(), timerData);
         }
 
         @Override
-        public void removeTimerData(final Long timerId) {
-            taskStore.remove(timerId);
+        public void removeTimerData(final Long timerId) throws TimerStoreException {
+            try {
+                persist(Collections.<TimerData>emptyList(), Collections.singletonList(timerId));
+            } finally {
+                taskStore.remove(timerId);
+            }
         }
     }
 
@@ -234,6 +260,16 @@ public class MemoryTimerStore implements TimerStore {
             return Collections.unmodifiableMap(allTasks);
         }
 
+        @Override
+        public TimerData getTask(final Long timerId) {
+            checkThread();
+            final TimerData added = add.get(timerId);
+            if (added != null) {
+                return added;
+            }
+            return remove.contains(timerId) ? null : taskStore.get(timerId);
+        }
+
         @Override
         public void addTimerData(final TimerData timerData) {
             checkThread();
@@ -260,6 +296,17 @@ public class MemoryTimerStore implements TimerStore {
         @Override
         public void beforeCompletion() {
             checkThread();
+
+            try {
+                final Transaction transaction = tansactionReference.get();
+                if (transaction != null && transaction.getStatus() == Status.STATUS_ACTIVE) {
+                    persist(add.values(), remove);
+                }
+            } catch (final SystemException e) {
+                throw new EJBException("Unable to get the status of the transaction", e);
+            } catch (final TimerStoreException e) {
+                throw new EJBException("Unable to store the timers of the transaction", e);
+            }
         }
 
         @Override
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+/**
+ * A timer store shared by several servers, each of them schedules all the
+ * timers but a timeout is only delivered by the server acquiring it.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface SharedTimerStore extends TimerStore {
+
+    /**
+     * Called when a timer expires, before its timeout is delivered.
+     *
+     * @return true if this server must deliver the timeout
+     */
+    boolean acquire(TimerData timerData);
+
+    /**
+     * Called in the transaction of the timeout once the timeout method returned,
+     * the timer is only consumed if this transaction commits.
+     */
+    void delivered(TimerData timerData);
+
+    /**
+     * Called when the timer service of the deployment stops.
+     */
+    void release(String deploymentId);
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel.
+ * <p/>
+ * The time is cut in ticks, the first wheel has one bucket per tick and each
+ * next wheel has one bucket per turn of the previous one.  A timeout is linked
+ * in the bucket of the lowest wheel able to hold its deadline so scheduling and
+ * cancelling are constant time whatever the number of timeouts.  When the clock
+ * enters the bucket of an upper wheel its timeouts cascade to the lower wheels,
+ * the timeouts of the first wheel bucket of the current tick are expired.
+ * <p/>
+ * The deadlines are rounded up to the next tick, a timeout can be late of one
+ * tick but is never early and a passed deadline expires on the next tick.  All
+ * the timeouts expired by a tick are given at once to the {@link Expiration},
+ * on the thread of the wheel.  The wheel size is rounded up to a power of two.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TimingWheel {
+
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    public interface Expiration {
+        void expired(List<Timeout> timeouts);
+    }
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final Expiration expiration;
+    private final List<Timeout[]> wheels = new ArrayList<Timeout[]>();
+
+    // last tick processed
+    private long current;
+    private int size;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public TimingWheel(final long tickMillis, final int wheelSize, final Expiration expiration) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tick must be positive: " + tickMillis);
+        }
+        if (wheelSize < 2) {
+            throw new IllegalArgumentException("wheel size must be at least 2: " + wheelSize);
+        }
+
+        this.tickMillis = tickMillis;
+        this.bits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.mask = (1 << bits) - 1;
+        this.expiration = expiration;
+        this.current = System.currentTimeMillis() / tickMillis;
+    }
+
+    public synchronized void start(final String name) {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new DaemonThreadFactory(name).newThread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        waitNextTick();
+                        if (running) {
+                            advance(System.currentTimeMillis());
+                        }
+                    } catch (final InterruptedException e) {
+                        // stopped
+                    } catch (final Throwable e) {
+                        log.error("Timing wheel tick failed", e);
+                    }
+                }
+            }
+        });
+        thread.start();
+    }
+
+    public void stop() {
+        final Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+            for (final Timeout[] wheel : wheels) {
+                for (final Timeout bucket : wheel) {
+                    bucket.next = bucket;
+                    bucket.previous = bucket;
+                }
+            }
+            size = 0;
+        }
+
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private void waitNextTick() throws InterruptedException {
+        final long next;
+        synchronized (this) {
+            next = (current + 1) * tickMillis;
+        }
+
+        final long wait = next - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Schedules a task, the task expires on the next tick if its deadline is passed.
+     *
+     * @param deadline the expiration time in milliseconds since the epoch
+     */
+    public synchronized Timeout schedule(final long deadline, final Object task) {
+        final Timeout timeout = new Timeout(deadline, task);
+        timeout.tick = Math.max(timeout.tick, current + 1);
+        add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return true if the timeout was waiting, false if it already expired or was cancelled
+     */
+    public synchronized boolean cancel(final Timeout timeout) {
+        if (timeout.next == null) {
+            return false;
+        }
+
+        timeout.unlink();
+        size--;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Moves the clock, processing all the ticks up to the given time.
+     */
+    void advance(final long now) {
+        final List<Timeout> expired = new ArrayList<Timeout>();
+        synchronized (this) {
+            final long target = now / tickMillis;
+            if (size == 0) {
+                current = Math.max(current, target);
+            }
+            while (current < target) {
+                tick(++current, expired);
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            expiration.expired(expired);
+        }
+    }
+
+    private void tick(final long tick, final List<Timeout> expired) {
+        // cascade the upper wheels entering a new bucket, the highest first
+        for (int level = wheels.size() - 1; level > 0; level--) {
+            final int shift = level * bits;
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                final Timeout bucket = wheels.get(level)[(int) ((tick >>> shift) & mask)];
+                Timeout timeout = bucket.next;
+                while (timeout != bucket) {
+                    final Timeout next = timeout.next;
+                    timeout.unlink();
+                    size--;
+                    if (!add(timeout)) {
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+        }
+
+        if (wheels.isEmpty()) {
+            return;
+        }
+
+        final Timeout bucket = wheels.get(0)[(int) (tick & mask)];
+        Timeout timeout = bucket.next;
+        while (timeout != bucket) {
+            final Timeout next = timeout.next;
+            timeout.unlink();
+            size--;
+            expired.add(timeout);
+            timeout = next;
+        }
+    }
+
+    private boolean add(final Timeout timeout) {
+        if (timeout.tick <= current) {
+            return false;
+        }
+
+        // lowest wheel where the deadline is less than a turn ahead
+        int level = 0;
+        long deadline = timeout.tick;
+        long now = current;
+        while (deadline - now > mask) {
+            deadline >>>= bits;
+            now >>>= bits;
+            level++;
+        }
+
+        while (wheels.size() <= level) {
+            final Timeout[] wheel = new Timeout[mask + 1];
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = new Timeout(0, null);
+                wheel[i].next = wheel[i];
+                wheel[i].previous = wheel[i];
+            }
+            wheels.add(wheel);
+        }
+
+        final Timeout bucket = wheels.get(level)[(int) (deadline & mask)];
+        timeout.previous = bucket.previous;
+        timeout.next = bucket;
+        bucket.previous.next = timeout;
+        bucket.previous = timeout;
+        size++;
+        return true;
+    }
+
+    public final class Timeout {
+        private final long deadline;
+        private long tick;
+        private final Object task;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(final long deadline, final Object task) {
+            this.deadline = deadline;
+            this.tick = deadline / tickMillis + (deadline % tickMillis == 0 ? 0 : 1);
+            this.task = task;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public Object getTask() {
+            return task;
+        }
+
+        private void unlink() {
+            previous.next = next;
+            next.previous = previous;
+            previous = null;
+            next = null;
+        }
+    }
+}
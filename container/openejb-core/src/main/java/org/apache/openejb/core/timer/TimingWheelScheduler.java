@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.quartz.JobDataMap;
+import org.apache.openejb.quartz.Scheduler;
+import org.apache.openejb.quartz.SchedulerException;
+import org.apache.openejb.quartz.Trigger;
+import org.apache.openejb.quartz.TriggerKey;
+import org.apache.openejb.quartz.impl.triggers.AbstractTrigger;
+import org.apache.openejb.quartz.spi.ThreadPool;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * EJB timer engine scheduling the quartz triggers of the timers on a {@link TimingWheel}
+ * instead of a quartz scheduler, selected with openejb.timer.engine=timing-wheel.
+ * <p/>
+ * The triggers still compute the fire times, this class only implements the part of
+ * the {@link Scheduler} contract used by {@link EjbTimerServiceImpl} and {@link TimerData}
+ * so it is exposed as a proxy of the interface.  The timeouts expired by a tick are
+ * fired in batches on the EJB timer thread pool.
+ * <p/>
+ * Timers are held in memory only, the quartz job store settings are ignored.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TimingWheelScheduler implements InvocationHandler, TimingWheel.Expiration {
+
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    public static final String ENGINE = "timing-wheel";
+    public static final String NAME = "OpenEJB-TimerService-TimingWheel";
+
+    public static final String OPENEJB_TIMER_WHEEL_TICK = "openejb.timer.wheel.tick";
+    public static final String OPENEJB_TIMER_WHEEL_SIZE = "openejb.timer.wheel.size";
+    public static final String OPENEJB_TIMER_WHEEL_BATCH = "openejb.timer.wheel.batch";
+
+    // same default as quartz org.quartz.jobStore.misfireThreshold
+    private static final long MISFIRE_THRESHOLD = 60000;
+
+    private final TimingWheel wheel;
+    private final ThreadPool threadPool;
+    private final int batch;
+    private final Scheduler scheduler;
+    private final ConcurrentMap<TriggerKey, Entry> triggers = new ConcurrentHashMap<TriggerKey, Entry>();
+    private volatile boolean shutdown;
+
+    public TimingWheelScheduler(final Properties properties) throws SchedulerException {
+        final Options options = new Options(properties);
+        wheel = new TimingWheel(options.get(OPENEJB_TIMER_WHEEL_TICK, 100L), options.get(OPENEJB_TIMER_WHEEL_SIZE, 512), this);
+        batch = Math.max(1, options.get(OPENEJB_TIMER_WHEEL_BATCH, 32));
+
+        final DefaultTimerThreadPoolAdapter pool = new DefaultTimerThreadPoolAdapter();
+        pool.setInstanceName(NAME);
+        pool.initialize();
+        threadPool = pool;
+
+        scheduler = (Scheduler) Proxy.newProxyInstance(TimingWheelScheduler.class.getClassLoader(), new Class<?>[]{Scheduler.class}, this);
+        wheel.start(NAME);
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public int getTimerCount() {
+        return triggers.size();
+    }
+
+    public synchronized void shutdown(final boolean waitForJobsToComplete) {
+        if (shutdown) {
+            return;
+        }
+
+        shutdown = true;
+        wheel.stop();
+        triggers.clear();
+        threadPool.shutdown(waitForJobsToComplete);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return NAME + "[" + triggers.size() + " timers]";
+            }
+            try {
+                return method.invoke(this, args);
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        if ("getSchedulerName".equals(name) || "getSchedulerInstanceId".equals(name)) {
+            return NAME;
+        } else if ("isShutdown".equals(name)) {
+            return shutdown;
+        } else if ("isStarted".equals(name)) {
+            return !shutdown;
+        } else if ("isInStandbyMode".equals(name)) {
+            return false;
+        } else if ("start".equals(name) || "startDelayed".equals(name) || "standby".equals(name) || "addJob".equals(name)) {
+            // the timeout job is built in
+            return null;
+        } else if ("shutdown".equals(name)) {
+            shutdown(args != null && (Boolean) args[0]);
+            return null;
+        } else if ("checkExists".equals(name)) {
+            return !(args[0] instanceof TriggerKey) || triggers.containsKey(args[0]);
+        } else if ("scheduleJob".equals(name) && args[args.length - 1] instanceof Trigger) {
+            return schedule(trigger(args[args.length - 1]));
+        } else if ("rescheduleJob".equals(name)) {
+            unschedule((TriggerKey) args[0]);
+            return schedule(trigger(args[1]));
+        } else if ("unscheduleJob".equals(name)) {
+            return unschedule((TriggerKey) args[0]);
+        } else if ("getTrigger".equals(name)) {
+            final Entry entry = triggers.get(args[0]);
+            return entry == null ? null : entry.trigger;
+        } else if ("getTriggerState".equals(name)) {
+            final Entry entry = triggers.get(args[0]);
+            if (entry == null) {
+                return Trigger.TriggerState.NONE;
+            }
+            return entry.paused ? Trigger.TriggerState.PAUSED : Trigger.TriggerState.NORMAL;
+        } else if ("pauseTrigger".equals(name)) {
+            final Entry entry = triggers.get(args[0]);
+            if (entry != null) {
+                pause(entry);
+            }
+            return null;
+        } else if ("resumeTrigger".equals(name)) {
+            final Entry entry = triggers.get(args[0]);
+            if (entry != null) {
+                resume(entry);
+            }
+            return null;
+        } else if ("pauseAll".equals(name)) {
+            for (final Entry entry : triggers.values()) {
+                pause(entry);
+            }
+            return null;
+        } else if ("resumeAll".equals(name)) {
+            for (final Entry entry : triggers.values()) {
+                resume(entry);
+            }
+            return null;
+        }
+
+        throw new UnsupportedOperationException(name + " is not supported by the " + ENGINE + " timer engine");
+    }
+
+    private static AbstractTrigger<?> trigger(final Object trigger) {
+        if (trigger instanceof AbstractTrigger) {
+            return (AbstractTrigger<?>) trigger;
+        }
+        throw new IllegalArgumentException("the trigger was not an AbstractTrigger: " + trigger);
+    }
+
+    private Date schedule(final AbstractTrigger<?> trigger) throws SchedulerException {
+        if (shutdown) {
+            throw new SchedulerException("The " + ENGINE + " timer engine is shut down");
+        }
+
+        Date next = trigger.getNextFireTime();
+        if (next == null) {
+            next = trigger.computeFirstFireTime(null);
+        }
+
+        final Entry entry = new Entry(trigger);
+        final Entry old = triggers.put(trigger.getKey(), entry);
+        if (old != null) {
+            cancel(old);
+        }
+
+        if (next != null) {
+            synchronized (entry) {
+                entry.timeout = wheel.schedule(next.getTime(), entry);
+            }
+        } else {
+            triggers.remove(trigger.getKey(), entry);
+        }
+        return next;
+    }
+
+    private boolean unschedule(final TriggerKey key) {
+        final Entry entry = triggers.remove(key);
+        if (entry == null) {
+            return false;
+        }
+
+        cancel(entry);
+        return true;
+    }
+
+    private void cancel(final Entry entry) {
+        synchronized (entry) {
+            entry.paused = true;
+            if (entry.timeout != null) {
+                wheel.cancel(entry.timeout);
+                entry.timeout = null;
+            }
+        }
+    }
+
+    private void pause(final Entry entry) {
+        cancel(entry);
+    }
+
+    private void resume(final Entry entry) {
+        synchronized (entry) {
+            if (!entry.paused || shutdown) {
+                return;
+            }
+
+            entry.paused = false;
+            final Date next = entry.trigger.getNextFireTime();
+            if (next != null) {
+                entry.timeout = wheel.schedule(next.getTime(), entry);
+            }
+        }
+    }
+
+    @Override
+    public void expired(final List<TimingWheel.Timeout> timeouts) {
+        for (int i = 0; i < timeouts.size(); i += batch) {
+            final List<TimingWheel.Timeout> fired = new ArrayList<TimingWheel.Timeout>(timeouts.subList(i, Math.min(timeouts.size(), i + batch)));
+            threadPool.runInThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (final TimingWheel.Timeout timeout : fired) {
+                        fire((Entry) timeout.getTask(), timeout);
+                    }
+                }
+            });
+        }
+    }
+
+    private void fire(final Entry entry, final TimingWheel.Timeout timeout) {
+        final AbstractTrigger<?> trigger = entry.trigger;
+        synchronized (entry) {
+            if (entry.paused || entry.timeout != timeout || shutdown) {
+                // cancelled after its expiration
+                return;
+            }
+            entry.timeout = null;
+
+            final Date scheduled = trigger.getNextFireTime();
+            if (scheduled != null && scheduled.getTime() < System.currentTimeMillis() - MISFIRE_THRESHOLD
+                && trigger.getMisfireInstruction() != Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY) {
+                trigger.updateAfterMisfire(null);
+                final Date next = trigger.getNextFireTime();
+                if (next == null) {
+                    triggers.remove(trigger.getKey(), entry);
+                    return;
+                }
+                if (next.getTime() > System.currentTimeMillis()) {
+                    entry.timeout = wheel.schedule(next.getTime(), entry);
+                    return;
+                }
+            }
+
+            // as quartz the next fire time is computed before the job runs
+            trigger.triggered(null);
+            final Date next = trigger.getNextFireTime();
+            if (next != null) {
+                entry.timeout = wheel.schedule(next.getTime(), entry);
+            } else {
+                triggers.remove(trigger.getKey(), entry);
+            }
+        }
+
+        final JobDataMap data = trigger.getJobDataMap();
+        final EjbTimerServiceImpl timerService = (EjbTimerServiceImpl) data.get(EjbTimeoutJob.EJB_TIMERS_SERVICE);
+        final TimerData timerData = (TimerData) data.get(EjbTimeoutJob.TIMER_DATA);
+        if (timerService == null || timerData == null) {
+            return;
+        }
+
+        try {
+            timerService.ejbTimeout(timerData);
+        } catch (final Throwable e) {
+            log.warning("Timer " + trigger.getKey() + " failed", e);
+        }
+    }
+
+    private static final class Entry {
+        private final AbstractTrigger<?> trigger;
+        private TimingWheel.Timeout timeout;
+        private boolean paused;
+
+        private Entry(final AbstractTrigger<?> trigger) {
+            this.trigger = trigger;
+        }
+    }
+}
@@ -18,6 +18,11 @@
 package org.apache.openejb.resource.activemq;
 
 import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.openejb.core.mdb.DestinationBacklog;
 import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -34,7 +39,7 @@ import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings("UnusedDeclaration")
-public class ActiveMQResourceAdapter extends org.apache.activemq.ra.ActiveMQResourceAdapter {
+public class ActiveMQResourceAdapter extends org.apache.activemq.ra.ActiveMQResourceAdapter implements DestinationBacklog {
 
     private String dataSource;
     private String useDatabaseLock;
@@ -142,6 +147,35 @@ public class ActiveMQResourceAdapter extends org.apache.activemq.ra.ActiveMQReso
         }
     }
 
+    /**
+     * Only the destinations of the brokers started by this adapter are known.
+     */
+    @Override
+    public long getBacklog(final String destination, final String destinationType) {
+        if (destination == null) {
+            return -1;
+        }
+
+        final ActiveMQDestination key;
+        if (destinationType != null && destinationType.endsWith("Topic")) {
+            key = new ActiveMQTopic(destination);
+        } else {
+            key = new ActiveMQQueue(destination);
+        }
+
+        try {
+            for (final BrokerService broker : ActiveMQFactory.getBrokers()) {
+                final Destination found = broker.getRegionBroker().getDestinationMap().get(key);
+                if (found != null) {
+                    return found.getDestinationStatistics().getMessages().getCount();
+                }
+            }
+        } catch (final Exception e) {
+            // no-op: unknown
+        }
+        return -1;
+    }
+
     @Override
     public BootstrapContext getBootstrapContext() {
         return this.bootstrapContext;
@@ -61,6 +61,7 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 public class Pool<T> {
 
     private final LinkedList<Entry> pool = new LinkedList<Entry>();
+    private final StripedStack<Entry> stripedPool;
     private final Semaphore instances;
     private final Semaphore available;
     private final Semaphore minimum;
@@ -100,8 +101,12 @@ public class Pool<T> {
         this(max, min, strict, 0, 0, 0, null, null, false, -1, false, false);
     }
 
+    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, final long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed) {
+        this(max, min, strict, maxAge, idleTimeout, sweepInterval, executor, supplier, replaceAged, maxAgeOffset, garbageCollection, replaceFlushed, false);
+    }
+
     @SuppressWarnings("unchecked")
-    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed) {
+    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed, final boolean striped) {
         if (min > max) {
             greater("max", max, "min", min);
         }
@@ -124,6 +129,7 @@ public class Pool<T> {
         this.sweeper = new Sweeper(idleTimeout, max);
         this.stats = new Stats(min, max, idleTimeout);
         this.garbageCollection = garbageCollection;
+        this.stripedPool = striped ? new StripedStack<Entry>(max) : null;
     }
 
     public Pool start() {
@@ -230,12 +236,9 @@ public class Pool<T> {
 
         Entry entry;
         do {
-            synchronized (pool) {
-                try {
-                    entry = pool.removeFirst();
-                } catch (final NoSuchElementException e) {
-                    return null;
-                }
+            entry = popIdle();
+            if (entry == null) {
+                return null;
             }
 
             final Pool<T>.Entry.Instance instance = entry.soft.get();
@@ -378,9 +381,7 @@ public class Pool<T> {
                     entry.hard.set(obj);
                 }
 
-                synchronized (pool) {
-                    pool.addFirst(entry);
-                }
+                pushIdle(entry);
                 added = true;
             }
         } finally {
@@ -418,6 +419,31 @@ public class Pool<T> {
 //        }
 //    }
 
+    private Entry popIdle() {
+        if (stripedPool != null) {
+            return stripedPool.pop();
+        }
+
+        synchronized (pool) {
+            try {
+                return pool.removeFirst();
+            } catch (final NoSuchElementException e) {
+                return null;
+            }
+        }
+    }
+
+    private void pushIdle(final Entry entry) {
+        if (stripedPool != null) {
+            stripedPool.push(entry);
+            return;
+        }
+
+        synchronized (pool) {
+            pool.addFirst(entry);
+        }
+    }
+
     /**
      * Used when a call to pop() was made that returned null
      * indicating that the caller has a permit to create an
@@ -1050,6 +1076,11 @@ public class Pool<T> {
             return !(available instanceof Overdraft);
         }
 
+        @Managed
+        private boolean getStripedPooling() {
+            return stripedPool != null;
+        }
+
         @Managed
         private int getAvailablePermits() {
             return available.availablePermits();
@@ -1096,6 +1127,7 @@ public class Pool<T> {
         private boolean replaceAged;
         private boolean replaceFlushed;
         private boolean garbageCollection = true;
+        private boolean striped;
 
         public Builder(final Builder<T> that) {
             this.max = that.max;
@@ -1110,6 +1142,7 @@ public class Pool<T> {
             this.replaceAged = that.replaceAged;
             this.replaceFlushed = that.replaceFlushed;
             this.garbageCollection = that.garbageCollection;
+            this.striped = that.striped;
         }
 
         public Builder() {
@@ -1156,6 +1189,20 @@ public class Pool<T> {
             this.strict = strict;
         }
 
+        /**
+         * Keeps idle instances in per thread stripes instead of
+         * a single synchronized list, see {@link StripedStack}
+         *
+         * @param striped boolean
+         */
+        public void setStripedPooling(final boolean striped) {
+            this.striped = striped;
+        }
+
+        public boolean isStripedPooling() {
+            return striped;
+        }
+
         public void setMaxAge(final Duration maxAge) {
             this.maxAge = maxAge;
         }
@@ -1206,7 +1253,7 @@ public class Pool<T> {
 
         public Pool<T> build() {
             //noinspection unchecked
-            return new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed);
+            return new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed, striped);
         }
     }
 
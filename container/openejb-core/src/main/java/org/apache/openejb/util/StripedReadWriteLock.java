@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import org.apache.openejb.monitoring.Managed;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read write lock split in several {@link ReentrantReadWriteLock} stripes.
+ * <p/>
+ * A reader only locks the stripe of its thread, so readers running on different
+ * cores mostly update different read counts.  A writer locks every stripe, always
+ * in the same order, which keeps it exclusive with all readers and other writers.
+ * Reads are cheap and writes cost one lock per stripe, so this is meant for read
+ * mostly beans.
+ * <p/>
+ * Both locks are reentrant and a thread holding the write lock can take the read
+ * lock, like with a {@link ReentrantReadWriteLock}.  Conditions are not supported.
+ * <p/>
+ * Only the acquisitions which could not get the lock right away are counted, the
+ * uncontended path does not touch any shared counter.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StripedReadWriteLock implements ReadWriteLock {
+
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+    private final Lock readLock = new ReadLock();
+    private final Lock writeLock = new WriteLock();
+
+    private final AtomicLong readContentions = new AtomicLong();
+    private final AtomicLong writeContentions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public StripedReadWriteLock() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedReadWriteLock(final int concurrency) {
+        // keep a power of two to select the stripe with a mask
+        final int count = powerOfTwo(Math.max(1, concurrency));
+        this.stripes = new ReentrantReadWriteLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = count - 1;
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    @Managed
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    @Managed
+    public long getReadContentions() {
+        return readContentions.get();
+    }
+
+    @Managed
+    public long getWriteContentions() {
+        return writeContentions.get();
+    }
+
+    @Managed
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Managed
+    public boolean isWriteLocked() {
+        return stripes[mask].isWriteLocked();
+    }
+
+    private Lock readStripe() {
+        // spread the thread id bits since ids are sequential, a thread always uses the same stripe
+        final long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return stripes[h & mask].readLock();
+    }
+
+    private static int powerOfTwo(final int value) {
+        final int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    private final class ReadLock implements Lock {
+        @Override
+        public void lock() {
+            final Lock lock = readStripe();
+            if (!lock.tryLock()) {
+                readContentions.incrementAndGet();
+                lock.lock();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            final Lock lock = readStripe();
+            if (!lock.tryLock()) {
+                readContentions.incrementAndGet();
+                lock.lockInterruptibly();
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            return readStripe().tryLock();
+        }
+
+        @Override
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            final Lock lock = readStripe();
+            if (lock.tryLock()) {
+                return true;
+            }
+
+            readContentions.incrementAndGet();
+            if (lock.tryLock(time, unit)) {
+                return true;
+            }
+            timeouts.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            readStripe().unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("newCondition()");
+        }
+    }
+
+    private final class WriteLock implements Lock {
+        @Override
+        public void lock() {
+            boolean contended = false;
+            for (final ReentrantReadWriteLock stripe : stripes) {
+                final Lock lock = stripe.writeLock();
+                if (!lock.tryLock()) {
+                    contended = true;
+                    lock.lock();
+                }
+            }
+            if (contended) {
+                writeContentions.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            boolean contended = false;
+            for (int i = 0; i < stripes.length; i++) {
+                final Lock lock = stripes[i].writeLock();
+                if (!lock.tryLock()) {
+                    contended = true;
+                    try {
+                        lock.lockInterruptibly();
+                    } catch (final InterruptedException e) {
+                        release(i);
+                        throw e;
+                    }
+                }
+            }
+            if (contended) {
+                writeContentions.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            for (int i = 0; i < stripes.length; i++) {
+                if (!stripes[i].writeLock().tryLock()) {
+                    release(i);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(time);
+            boolean contended = false;
+            for (int i = 0; i < stripes.length; i++) {
+                final Lock lock = stripes[i].writeLock();
+                if (lock.tryLock()) {
+                    continue;
+                }
+
+                if (!contended) {
+                    contended = true;
+                    writeContentions.incrementAndGet();
+                }
+
+                final boolean acquired;
+                try {
+                    acquired = lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (final InterruptedException e) {
+                    release(i);
+                    throw e;
+                }
+                if (!acquired) {
+                    release(i);
+                    timeouts.incrementAndGet();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            release(stripes.length);
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("newCondition()");
+        }
+
+        /**
+         * Unlocks the write lock of the first stripes, in reverse order.
+         *
+         * @param count the number of stripes locked by the current thread
+         */
+        private void release(final int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                stripes[i].writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free LIFO free list split in several stripes.
+ * <p/>
+ * A thread pushes to and pops from its own stripe first so that, under load,
+ * threads mostly touch different memory and an instance tends to go back to
+ * the thread that released it.  When a stripe is full the item goes to a
+ * shared overflow stack.  When both the home stripe and the overflow are empty
+ * the other stripes are scanned, so an item is never lost to a thread
+ * which is not running anymore.
+ * <p/>
+ * The per stripe sizes are approximate, they only decide when to overflow.
+ *
+ * @version $Rev$ $Date$
+ */
+public class StripedStack<E> {
+
+    private final Stripe<E>[] stripes;
+    private final int mask;
+    private final int stripeCapacity;
+    private final ConcurrentLinkedDeque<E> overflow = new ConcurrentLinkedDeque<E>();
+
+    public StripedStack(final int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings("unchecked")
+    public StripedStack(final int capacity, final int concurrency) {
+        // no need of more stripes than items, keep a power of two to select the stripe with a mask
+        final int count = powerOfTwo(Math.max(1, Math.min(concurrency, capacity)));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<E>();
+        }
+        this.mask = count - 1;
+        this.stripeCapacity = Math.max(1, (capacity + count - 1) / count);
+    }
+
+    public void push(final E e) {
+        if (e == null) {
+            throw new NullPointerException("e");
+        }
+
+        final Stripe<E> stripe = stripes[index()];
+        if (stripe.size.incrementAndGet() <= stripeCapacity) {
+            stripe.items.addFirst(e);
+            return;
+        }
+        stripe.size.decrementAndGet();
+        overflow.addFirst(e);
+    }
+
+    /**
+     * @return the last item pushed by this thread if any, else an overflowed one, else any stolen item or null if empty
+     */
+    public E pop() {
+        final int home = index();
+
+        E e = stripes[home].poll();
+        if (e != null) {
+            return e;
+        }
+
+        e = overflow.pollFirst();
+        if (e != null) {
+            return e;
+        }
+
+        for (int i = 1; i < stripes.length; i++) {
+            e = stripes[(home + i) & mask].poll();
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        int size = overflow.size();
+        for (final Stripe<E> stripe : stripes) {
+            size += stripe.items.size();
+        }
+        return size;
+    }
+
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    private int index() {
+        // spread the thread id bits since ids are sequential
+        final long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & mask;
+    }
+
+    private static int powerOfTwo(final int value) {
+        final int highest = Integer.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+
+    private static final class Stripe<E> {
+        private final ConcurrentLinkedDeque<E> items = new ConcurrentLinkedDeque<E>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private E poll() {
+            final E e = items.pollFirst();
+            if (e != null) {
+                size.decrementAndGet();
+            }
+            return e;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.Container;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import java.util.Properties;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class LazyBeanDeploymentTest {
+
+    @Configuration
+    public Properties config() {
+        final Properties p = new Properties();
+        p.setProperty(LazyBeanDeployment.LAZY, "true");
+        return p;
+    }
+
+    @Module
+    public EjbJar jar() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(Lemon.class));
+        ejbJar.addEnterpriseBean(new SingletonBean(Orange.class));
+        return ejbJar;
+    }
+
+    @Test
+    public void deferredUntilFirstUse() {
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+
+        final BeanContext orange = containerSystem.getBeanContext("Orange");
+        assertNotNull(orange);
+        assertTrue("startup singletons are deployed with the application", orange.isMaterialized());
+
+        final BeanContext lemon = containerSystem.getBeanContext("Lemon");
+        assertNotNull(lemon);
+        assertFalse(lemon.isMaterialized());
+
+        final Container container = lemon.getContainer();
+        assertTrue(lemon.isMaterialized());
+        assertSame(lemon, container.getBeanContext("Lemon"));
+        assertNotNull("pool created", lemon.getContainerData());
+    }
+
+    public static class Lemon {
+        public String color() {
+            return "yellow";
+        }
+    }
+
+    @Singleton
+    @Startup
+    public static class Orange {
+    }
+}
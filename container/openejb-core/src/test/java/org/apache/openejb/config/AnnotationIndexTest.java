@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Stateless;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationIndexTest {
+
+    private File base;
+    private File classes;
+
+    @Before
+    public void copyClasses() throws Exception {
+        base = Files.mkdirs(new File("target/AnnotationIndexTest"));
+        classes = Files.mkdirs(new File(base, "classes"));
+        for (final Class<?> clazz : new Class<?>[]{Indexed.class, Plain.class}) {
+            final String path = clazz.getName().replace('.', '/') + ".class";
+            final File file = new File(classes, path);
+            Files.mkdirs(file.getParentFile());
+            IO.copy(clazz.getClassLoader().getResourceAsStream(path), file);
+        }
+
+        SystemInstance.get().setProperty(AnnotationIndex.ENABLED, "true");
+        SystemInstance.get().setProperty(AnnotationIndex.DIRECTORY, new File(base, "cache").getAbsolutePath());
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+        Files.delete(base);
+    }
+
+    @Test
+    public void packaged() throws Exception {
+        assertEquals(2, AnnotationIndex.generate(classes));
+
+        final String checksum = AnnotationIndex.checksum(classes);
+        final File jar = jar();
+        assertEquals("the checksum of the classes is the one of the jar", checksum, AnnotationIndex.checksum(jar));
+
+        final Map<String, byte[]> index = AnnotationIndex.read(new FileInputStream(new File(classes, AnnotationIndex.RESOURCE)), checksum);
+        assertNotNull(index);
+        assertEquals(2, index.size());
+        assertTrue(index.get(Indexed.class.getName()).length > 0);
+        assertNull("stale index", AnnotationIndex.read(new FileInputStream(new File(classes, AnnotationIndex.RESOURCE)), "other"));
+
+        final Archive archive = AnnotationIndex.archive(getClass().getClassLoader(), jar.toURI().toURL());
+        assertEquals(Collections.<Class<?>>singletonList(Indexed.class), new AnnotationFinder(archive).findAnnotatedClasses(Stateless.class));
+    }
+
+    @Test
+    public void cached() throws Exception {
+        final Archive archive = AnnotationIndex.archive(getClass().getClassLoader(), classes.toURI().toURL());
+        assertEquals(Collections.<Class<?>>singletonList(Indexed.class), new AnnotationFinder(archive).findAnnotatedClasses(Stateless.class));
+
+        final File[] cache = new File(base, "cache").listFiles();
+        assertNotNull(cache);
+        assertEquals(1, cache.length);
+        assertNotNull(AnnotationIndex.read(new FileInputStream(cache[0]), AnnotationIndex.checksum(classes)));
+
+        // a second scan reads the index
+        assertEquals(Collections.<Class<?>>singletonList(Indexed.class), new AnnotationFinder(archive).findAnnotatedClasses(Stateless.class));
+    }
+
+    private File jar() throws Exception {
+        final File jar = new File(base, "classes.jar");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            add(out, classes, "");
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+
+    private static void add(final ZipOutputStream out, final File directory, final String path) throws Exception {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                add(out, file, path + file.getName() + "/");
+                continue;
+            }
+
+            out.putNextEntry(new ZipEntry(path + file.getName()));
+            final InputStream in = new FileInputStream(file);
+            try {
+                IO.copy(in, out);
+            } finally {
+                in.close();
+            }
+            out.closeEntry();
+        }
+    }
+
+    @Stateless
+    public static class Indexed {
+        public String hello() {
+            return "hello";
+        }
+    }
+
+    public static class Plain {
+    }
+}
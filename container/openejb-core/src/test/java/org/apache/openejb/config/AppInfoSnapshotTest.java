@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.Archives;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.Singleton;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AppInfoSnapshotTest extends Assert {
+
+    private File snapshots;
+
+    @Before
+    public void enable() {
+        snapshots = new File("target/AppInfoSnapshotTest");
+        Files.delete(snapshots);
+        SystemInstance.get().setProperty(AppInfoSnapshot.ENABLED, "true");
+        SystemInstance.get().setProperty(AppInfoSnapshot.DIRECTORY, snapshots.getAbsolutePath());
+    }
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+        Files.delete(snapshots);
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+        final Map<String, String> map = new HashMap<String, String>();
+        map.put("META-INF/ejb-jar.xml", "<ejb-jar/>");
+        final File file = Archives.jarArchive(map, "snapshot", LemonBean.class);
+
+        new Assembler();
+        final ConfigurationFactory factory = new ConfigurationFactory();
+        final AppInfo configured = factory.configureApplication(file);
+
+        final String fingerprint = AppInfoSnapshot.fingerprint(file, null);
+        final AppInfoSnapshot snapshot = AppInfoSnapshot.read(file, fingerprint);
+        assertNotNull(snapshot);
+        assertEquals(configured.appId, snapshot.getAppInfo().appId);
+
+        final AppInfo restored = factory.configureApplication(file);
+        assertNotSame(configured, restored);
+        assertEquals(configured.appId, restored.appId);
+        assertEquals(configured.paths, restored.paths);
+        assertEquals(1, restored.ejbJars.size());
+        assertEquals(LemonBean.class.getName(), restored.ejbJars.get(0).enterpriseBeans.get(0).ejbClass);
+
+        SystemInstance.get().setProperty("snapshot.changed", "true");
+        assertNull("stale snapshot", AppInfoSnapshot.read(file, AppInfoSnapshot.fingerprint(file, null)));
+    }
+
+    @Singleton
+    public static class LemonBean {
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ejb.Singleton;
+import javax.ejb.Stateless;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelScanningTest {
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        final AppModule appModule = application();
+        assertFalse(FinderFactory.createFinders(appModule));
+        assertNull(appModule.getEjbModules().get(0).getFinder());
+    }
+
+    @Test
+    public void finders() throws Exception {
+        SystemInstance.get().setProperty(FinderFactory.PARALLEL, "true");
+
+        final AppModule appModule = application();
+        assertTrue(FinderFactory.createFinders(appModule));
+
+        final EjbModule red = appModule.getEjbModules().get(0);
+        final EjbModule blue = appModule.getEjbModules().get(1);
+        assertNotNull(red.getFinder());
+        assertNotNull(blue.getFinder());
+        assertEquals(Collections.<Class<?>>singletonList(Red.class), red.getFinder().findAnnotatedClasses(Singleton.class));
+        assertEquals(Collections.<Class<?>>singletonList(Blue.class), blue.getFinder().findAnnotatedClasses(Stateless.class));
+
+        final DeploymentPhases phases = new DeploymentPhases();
+        phases.add("scan", 3000000);
+        phases.add("scan", 2000000);
+        phases.add("build", 1000000);
+        assertEquals(5, phases.get("scan"));
+        assertEquals("scan=5ms, build=1ms", phases.toString());
+    }
+
+    private static AppModule application() {
+        final AppModule appModule = new AppModule(ParallelScanningTest.class.getClassLoader(), "parallel");
+
+        final EjbModule red = new EjbModule(new EjbJar("red"));
+        red.getEjbJar().addEnterpriseBean(new SingletonBean(Red.class));
+        appModule.getEjbModules().add(red);
+
+        final EjbModule blue = new EjbModule(new EjbJar("blue"));
+        blue.getEjbJar().addEnterpriseBean(new StatelessBean(Blue.class));
+        appModule.getEjbModules().add(blue);
+        return appModule;
+    }
+
+    @Singleton
+    public static class Red {
+    }
+
+    @Stateless
+    public static class Blue {
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core;
+
+import org.apache.openejb.AppContext;
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.ModuleContext;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ThreadContextTest {
+
+    private static BeanContext beanContext;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        SystemInstance.init(new Properties());
+        beanContext = new BeanContext("foo", null, new ModuleContext("foo", null, "bar", new AppContext("foo", SystemInstance.get(), null, null, null, false), null, null), Object.class, null, new HashMap<String, String>());
+    }
+
+    @Test
+    public void keyRegisteredAfterTheDataWasSized() {
+        final ThreadContext context = new ThreadContext(beanContext, null);
+        context.set(First.class, new First());
+
+        // a key class never seen before gets a slot past the end of the data
+        final Grown grown = new Grown();
+        assertNull(context.get(Grown.class));
+        assertNull(context.set(Grown.class, grown));
+        assertSame(grown, context.get(Grown.class));
+        assertEquals(First.class, context.get(First.class).getClass());
+    }
+
+    @Test
+    public void removeReturnsThePreviousValue() {
+        final ThreadContext context = new ThreadContext(beanContext, null);
+        assertNull(context.remove(Removed.class));
+
+        final Removed first = new Removed();
+        final Removed second = new Removed();
+        assertNull(context.set(Removed.class, first));
+        assertSame(first, context.set(Removed.class, second));
+        assertSame(second, context.remove(Removed.class));
+        assertNull(context.get(Removed.class));
+        assertNull(context.remove(Removed.class));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        final Class<Runnable> applicationKey = applicationClass();
+        final Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        final ThreadContext context = new ThreadContext(beanContext, null);
+        final First first = new First();
+        context.set(First.class, first);
+        context.set(applicationKey, runnable);
+
+        final ThreadContext copy = new ThreadContext(context);
+        assertSame(first, copy.get(First.class));
+        assertSame(runnable, copy.get(applicationKey));
+
+        copy.set(First.class, new First());
+        copy.remove(applicationKey);
+        copy.set(Later.class, new Later());
+
+        assertSame(first, context.get(First.class));
+        assertSame(runnable, context.get(applicationKey));
+        assertNull(context.get(Later.class));
+    }
+
+    @Test
+    public void applicationKeysDoNotTakeSlots() {
+        final ThreadContext context = new ThreadContext(beanContext, null);
+        context.set(First.class, new First());
+
+        final int slots = ThreadContext.getSlotCount();
+        for (int i = 0; i < 10; i++) {
+            final Class<Runnable> key = applicationClass();
+            final Runnable value = new Runnable() {
+                @Override
+                public void run() {
+                }
+            };
+            assertNull(context.set(key, value));
+            assertSame(value, context.get(key));
+            assertSame(value, context.remove(key));
+        }
+        assertEquals(slots, ThreadContext.getSlotCount());
+    }
+
+    @Test
+    public void listenersChangedWhileNotified() {
+        final List<String> calls = new ArrayList<String>();
+        final RecordingListener added = new RecordingListener("added", calls);
+        final RecordingListener last = new RecordingListener("last", calls);
+        final RecordingListener first = new RecordingListener("first", calls) {
+            @Override
+            public void contextEntered(final ThreadContext oldContext, final ThreadContext newContext) {
+                super.contextEntered(oldContext, newContext);
+                ThreadContext.removeThreadContextListener(this);
+                ThreadContext.addThreadContextListener(added);
+            }
+        };
+
+        ThreadContext.addThreadContextListener(first);
+        ThreadContext.addThreadContextListener(last);
+        try {
+            // the listeners registered when the notification started are all called, once
+            enterAndExit();
+            assertEquals("[first, last]", calls.toString());
+
+            calls.clear();
+            enterAndExit();
+            assertEquals("[last, added]", calls.toString());
+        } finally {
+            ThreadContext.removeThreadContextListener(first);
+            ThreadContext.removeThreadContextListener(last);
+            ThreadContext.removeThreadContextListener(added);
+        }
+    }
+
+    private static void enterAndExit() {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            final ThreadContext old = ThreadContext.enter(new ThreadContext(beanContext, null));
+            ThreadContext.exit(old);
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+    }
+
+    /**
+     * @return a class of another class loader, like the ones of an application
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<Runnable> applicationClass() {
+        final ClassLoader loader = new ClassLoader(null) {
+        };
+        return (Class<Runnable>) Proxy.getProxyClass(loader, Runnable.class);
+    }
+
+    public static class First {
+    }
+
+    public static class Later {
+    }
+
+    // only used by keyRegisteredAfterTheDataWasSized
+    public static class Grown {
+    }
+
+    public static class Removed {
+    }
+
+    public static class RecordingListener implements ThreadContextListener {
+        private final String name;
+        private final List<String> calls;
+
+        public RecordingListener(final String name, final List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+        }
+
+        @Override
+        public void contextEntered(final ThreadContext oldContext, final ThreadContext newContext) {
+            calls.add(name);
+        }
+
+        @Override
+        public void contextExited(final ThreadContext exitedContext, final ThreadContext reenteredContext) {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import junit.framework.TestCase;
+import org.apache.openejb.core.Operation;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class InterceptorChainTest extends TestCase {
+
+    public void testChainIsSharedBetweenInstances() throws Exception {
+        final InterceptorChain chain = new InterceptorChain(Operation.BUSINESS, Arrays.asList(data(First.class), data(Second.class)));
+        assertEquals(2, chain.size());
+
+        final Method echo = Bean.class.getMethod("echo", String.class);
+        for (int i = 0; i < 3; i++) {
+            final List<String> calls = new ArrayList<String>();
+            final Bean bean = new Bean(calls);
+
+            final Map<String, Object> instances = new HashMap<String, Object>();
+            instances.put(First.class.getName(), new First(calls));
+            instances.put(Second.class.getName(), new Second(calls));
+
+            final Object result = new InterceptorStack(bean, echo, chain, instances).invoke(new Object[]{"hello"});
+
+            assertEquals("hello", result);
+            assertEquals(Arrays.asList("First", "Second", "Bean"), calls);
+        }
+    }
+
+    public void testMissingInstance() throws Exception {
+        final InterceptorChain chain = new InterceptorChain(Operation.BUSINESS, Arrays.asList(data(First.class)));
+        try {
+            chain.bind(new HashMap<String, Object>());
+            fail("missing interceptor instance not detected");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testContextDataAndParameters() throws Exception {
+        final InterceptorChain chain = new InterceptorChain(Operation.BUSINESS, new ArrayList<InterceptorData>());
+        final List<String> calls = new ArrayList<String>();
+        final Method echo = Bean.class.getMethod("echo", String.class);
+
+        final InvocationContext context = new ReflectionInvocationContext(chain, chain.bind(new HashMap<String, Object>()), new Bean(calls), echo, "hello");
+        assertTrue(context.getContextData().isEmpty());
+        context.getContextData().put("key", "value");
+        assertEquals("value", context.getContextData().get("key"));
+
+        context.setParameters(new Object[]{"bye"});
+        assertEquals("bye", context.proceed());
+
+        try {
+            context.setParameters(new Object[]{1});
+            fail("wrong parameter type not detected");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static InterceptorData data(final Class<?> interceptor) throws Exception {
+        final InterceptorData data = new InterceptorData(interceptor);
+        data.getAroundInvoke().add(interceptor.getMethod("invoke", InvocationContext.class));
+        return data;
+    }
+
+    public static class Bean {
+        private final List<String> calls;
+
+        public Bean(final List<String> calls) {
+            this.calls = calls;
+        }
+
+        public String echo(final String value) {
+            calls.add("Bean");
+            return value;
+        }
+    }
+
+    public static class First {
+        private final List<String> calls;
+
+        public First(final List<String> calls) {
+            this.calls = calls;
+        }
+
+        public Object invoke(final InvocationContext context) throws Exception {
+            calls.add(getClass().getSimpleName());
+            return context.proceed();
+        }
+    }
+
+    public static class Second extends First {
+        public Second(final List<String> calls) {
+            super(calls);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.IO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MethodInvokerFactoryTest extends TestCase {
+
+    public void testObjectParameters() throws Exception {
+        final MethodInvoker invoker = invoker(Bean.class, "join", String.class, List.class);
+        assertEquals("a[b, c]", invoker.invoke(new Bean(), new Object[]{"a", Arrays.asList("b", "c")}));
+    }
+
+    public void testPrimitives() throws Exception {
+        final MethodInvoker invoker = invoker(Bean.class, "add", int.class, long.class, double.class, boolean.class, char.class);
+        assertEquals(6.5d, invoker.invoke(new Bean(), new Object[]{1, 2L, 3.5d, true, 'x'}));
+    }
+
+    public void testVoid() throws Exception {
+        final Bean bean = new Bean();
+        final MethodInvoker invoker = invoker(Bean.class, "touch");
+        assertNull(invoker.invoke(bean, new Object[0]));
+        assertEquals(1, bean.touched);
+    }
+
+    public void testExtraParametersAreIgnored() throws Exception {
+        final Bean bean = new Bean();
+        // timeout methods without a Timer parameter still get the timer
+        assertNull(invoker(Bean.class, "touch").invoke(bean, new Object[]{"timer"}));
+        assertEquals(1, bean.touched);
+    }
+
+    public void testExceptionIsNotWrapped() throws Exception {
+        final MethodInvoker invoker = invoker(Bean.class, "fail");
+        try {
+            invoker.invoke(new Bean(), new Object[0]);
+            fail("exception expected");
+        } catch (final AppException e) {
+            // expected
+        }
+    }
+
+    public void testInheritedAndInterfaceMethods() throws Exception {
+        assertEquals("sub", invoker(Bean.class, "name").invoke(new SubBean(), new Object[0]));
+        assertEquals("sub", invoker(Named.class, "name").invoke(new SubBean(), new Object[0]));
+    }
+
+    public void testPrivateMethodIsNotGenerated() throws Exception {
+        assertNull(MethodInvokerFactory.create(Bean.class.getDeclaredMethod("hidden")));
+    }
+
+    public void testPackageTypesAreGenerated() throws Exception {
+        final MethodInvoker invoker = invoker(SplitBean.class, "count", Local[].class);
+        assertEquals(1, invoker.invoke(new SplitBean(), new Object[]{new Local[]{new Local()}}));
+    }
+
+    public void testPackageTypesOfAnotherLoaderAreNotGenerated() throws Exception {
+        // same package name but not the same runtime package, the casts of an invoker would fail with an IllegalAccessError
+        final Class<?> split = new SplitLoader(SplitBean.class).loadClass(SplitBean.class.getName());
+        assertNotSame(SplitBean.class, split);
+
+        assertNull(MethodInvokerFactory.create(split.getMethod("count", Local[].class)));
+        assertNull(MethodInvokerFactory.create(split.getMethod("create")));
+        assertNotNull(MethodInvokerFactory.create(split.getMethod("count", String[].class)));
+    }
+
+    private static MethodInvoker invoker(final Class<?> type, final String name, final Class<?>... parameterTypes) throws Exception {
+        final MethodInvoker invoker = MethodInvokerFactory.create(type.getMethod(name, parameterTypes));
+        assertNotNull(invoker);
+        return invoker;
+    }
+
+    public interface Named {
+        String name();
+    }
+
+    public static class Bean implements Named {
+        private int touched;
+
+        public String join(final String prefix, final List<String> values) {
+            return prefix + values;
+        }
+
+        public double add(final int i, final long l, final double d, final boolean b, final char c) {
+            return i + l + d + (b ? c - 'x' : 0);
+        }
+
+        public void touch() {
+            touched++;
+        }
+
+        public void fail() throws AppException {
+            throw new AppException();
+        }
+
+        public String name() {
+            return "bean";
+        }
+
+        private void hidden() {
+            // no-op
+        }
+    }
+
+    public static class SubBean extends Bean {
+        @Override
+        public String name() {
+            return "sub";
+        }
+    }
+
+    public static class AppException extends Exception {
+    }
+
+    static class Local {
+    }
+
+    public static class SplitBean {
+        public int count(final Local[] locals) {
+            return locals.length;
+        }
+
+        public int count(final String[] values) {
+            return values.length;
+        }
+
+        public Local create() {
+            return new Local();
+        }
+    }
+
+    /**
+     * Defines its own copy of a class, like a webapp loader splitting a package with its parent.
+     */
+    private static class SplitLoader extends ClassLoader {
+        private final Class<?> split;
+
+        private SplitLoader(final Class<?> split) {
+            super(split.getClassLoader());
+            this.split = split;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if (!split.getName().equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+
+            final Class<?> loaded = findLoadedClass(name);
+            if (loaded != null) {
+                return loaded;
+            }
+            try {
+                final InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try {
+                    IO.copy(in, bytes);
+                } finally {
+                    IO.close(in);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            } catch (final Exception e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
@@ -249,6 +249,62 @@ public class IvmContextTest extends TestCase {
         assertFalse("name should not appear in bindings list", map.containsKey("comp/env/rate/work/doc/lot/pop"));
     }
 
+    public void testCompiledLookups() throws Exception {
+        final Object bean = new Object();
+        final IvmContext context = new IvmContext();
+        context.bind("comp/env/number", 1);
+        context.bind("comp/env/bean", bean);
+        context.compile();
+
+        assertTrue(context.slots.containsKey("comp/env/number"));
+        assertTrue(context.slots.containsKey("comp/env"));
+        assertContextEntry(context, "comp/env/number", 1);
+        assertSame(bean, context.lookup("comp/env/bean"));
+        assertTrue(context.fastCache.isEmpty());
+
+        // the compiled names follow the later changes of the tree
+        final Context env = (Context) context.lookup("comp/env");
+        context.bind("comp/env/other", 2);
+        assertContextEntry(context, "comp/env/other", 2);
+        assertContextEntry(env, "other", 2);
+
+        context.unbind("comp/env/number");
+        try {
+            context.lookup("comp/env/number");
+            fail("name should be unbound");
+        } catch (final javax.naming.NameNotFoundException e) {
+            // pass
+        }
+
+        try {
+            env.lookup("number");
+            fail("name should be unbound");
+        } catch (final javax.naming.NameNotFoundException e) {
+            // pass
+        }
+
+        context.rebind("comp/env/bean", 3);
+        assertContextEntry(context, "comp/env/bean", 3);
+        assertContextEntry(env, "bean", 3);
+    }
+
+    public void testSlotsAreBounded() throws Exception {
+        final IvmContext context = new IvmContext();
+        for (int i = 0; i < 1100; i++) {
+            context.bind("comp/env/name" + i, i);
+        }
+        for (int i = 0; i < 1100; i++) {
+            assertContextEntry(context, "comp/env/name" + i, i);
+        }
+        assertEquals(1024, context.slots.size());
+
+        // a change of the tree drops the slots of the previous revision
+        context.bind("comp/env/other", -1);
+        assertContextEntry(context, "comp/env/other", -1);
+        assertEquals(1, context.slots.size());
+        assertTrue(context.slots.containsKey("comp/env/other"));
+    }
+
     private void assertContextEntry(final Context context, final String s, final Object expected) throws javax.naming.NamingException {
         assertLookup(context, s, expected);
     }
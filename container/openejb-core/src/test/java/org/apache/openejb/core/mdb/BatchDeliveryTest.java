@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BatchDeliveryTest extends TestCase {
+
+    private GeronimoTransactionManager transactionManager;
+    private ScheduledExecutorService flusher;
+    private RecordingXAResource xaResource;
+
+    @Override
+    protected void setUp() throws Exception {
+        transactionManager = new GeronimoTransactionManager();
+        flusher = Executors.newSingleThreadScheduledExecutor();
+        xaResource = new RecordingXAResource();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        flusher.shutdownNow();
+    }
+
+    public void testSettings() throws Exception {
+        final Map<String, String> properties = new HashMap<String, String>();
+        assertEquals(1, BatchDelivery.size(properties));
+        assertEquals(1000, BatchDelivery.timeout(properties));
+
+        properties.put(BatchDelivery.BATCH_SIZE, "50");
+        properties.put(BatchDelivery.BATCH_TIMEOUT, "2 seconds");
+        assertEquals(50, BatchDelivery.size(properties));
+        assertEquals(2000, BatchDelivery.timeout(properties));
+
+        assertFalse(new BatchDelivery(1, 1000, transactionManager, flusher).isEnabled());
+        assertFalse(new BatchDelivery(10, 1000, null, flusher).isEnabled());
+        assertTrue(new BatchDelivery(10, 1000, transactionManager, flusher).isEnabled());
+    }
+
+    public void testOneCommitPerBatch() throws Exception {
+        final BatchDelivery delivery = new BatchDelivery(3, 60000, transactionManager, flusher);
+
+        final BatchDelivery.Batch batch = delivery.begin(xaResource);
+        assertNotNull(batch);
+        assertTrue(delivery.suspend(batch, false));
+        assertNull(transactionManager.getTransaction());
+
+        delivery.resume(batch);
+        assertTrue(delivery.suspend(batch, false));
+        delivery.resume(batch);
+        assertFalse("the batch is full", delivery.suspend(batch, false));
+        assertEquals(0, xaResource.commits);
+
+        assertTrue(delivery.complete(batch));
+        assertEquals(1, xaResource.commits);
+        assertEquals(3, delivery.getMessages());
+        assertEquals(1, delivery.getCommittedBatches());
+        assertEquals(3.0, delivery.getAverageBatchSize());
+    }
+
+    public void testRollback() throws Exception {
+        final BatchDelivery delivery = new BatchDelivery(10, 60000, transactionManager, flusher);
+
+        final BatchDelivery.Batch batch = delivery.begin(xaResource);
+        transactionManager.setRollbackOnly();
+        assertFalse(delivery.suspend(batch, true));
+
+        assertFalse(delivery.complete(batch));
+        assertEquals(0, xaResource.commits);
+        assertEquals(1, xaResource.rollbacks);
+        assertEquals(1, delivery.getRolledBackBatches());
+        assertEquals(1, delivery.getFailedMessages());
+    }
+
+    public void testImportedTransaction() throws Exception {
+        final BatchDelivery delivery = new BatchDelivery(10, 60000, transactionManager, flusher);
+
+        transactionManager.begin();
+        try {
+            assertNull(delivery.begin(xaResource));
+        } finally {
+            transactionManager.rollback();
+        }
+    }
+
+    public void testFlushOnTimeout() throws Exception {
+        final BatchDelivery delivery = new BatchDelivery(10, 50, transactionManager, flusher);
+        final CountDownLatch flushed = new CountDownLatch(1);
+
+        final BatchDelivery.Batch batch = delivery.begin(xaResource);
+        assertTrue(delivery.suspend(batch, false));
+        delivery.scheduleFlush(batch, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    delivery.complete(batch);
+                } catch (final Exception e) {
+                    // no-op
+                } finally {
+                    flushed.countDown();
+                }
+            }
+        });
+
+        assertTrue(flushed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, xaResource.commits);
+        assertEquals(1, delivery.getCommittedBatches());
+    }
+
+    static class RecordingXAResource implements XAResource {
+        volatile int commits;
+        volatile int rollbacks;
+
+        @Override
+        public void commit(final Xid xid, final boolean onePhase) throws XAException {
+            commits++;
+        }
+
+        @Override
+        public void rollback(final Xid xid) throws XAException {
+            rollbacks++;
+        }
+
+        @Override
+        public void end(final Xid xid, final int flags) throws XAException {
+            // no-op
+        }
+
+        @Override
+        public void forget(final Xid xid) throws XAException {
+            // no-op
+        }
+
+        @Override
+        public int getTransactionTimeout() throws XAException {
+            return 0;
+        }
+
+        @Override
+        public boolean isSameRM(final XAResource xaResource) throws XAException {
+            return xaResource == this;
+        }
+
+        @Override
+        public int prepare(final Xid xid) throws XAException {
+            return XA_OK;
+        }
+
+        @Override
+        public Xid[] recover(final int flag) throws XAException {
+            return new Xid[0];
+        }
+
+        @Override
+        public boolean setTransactionTimeout(final int seconds) throws XAException {
+            return false;
+        }
+
+        @Override
+        public void start(final Xid xid, final int flags) throws XAException {
+            // no-op
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.SecurityServiceInfo;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.ConnectorModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.InboundResourceadapter;
+import org.apache.openejb.jee.MessageAdapter;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.MessageListener;
+import org.apache.openejb.jee.ResourceAdapter;
+
+import javax.annotation.Resource;
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.ejb.MessageDrivenContext;
+import javax.naming.InitialContext;
+import javax.resource.ResourceException;
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.xa.XAResource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Delivers the messages like a resource adapter, with beforeDelivery and afterDelivery,
+ * to a bean consuming them by batches of three.
+ *
+ * @version $Rev$ $Date$
+ */
+public class EndpointHandlerTest extends TestCase {
+
+    private OrderResourceAdapter ra;
+
+    @Override
+    protected void setUp() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final Assembler assembler = new Assembler();
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+
+        OrderBean.received.clear();
+
+        final AppModule app = new AppModule(this.getClass().getClassLoader(), "testapp");
+
+        final Connector connector = new Connector("order-ra");
+        final ResourceAdapter adapter = new ResourceAdapter(OrderResourceAdapter.class);
+        connector.setResourceAdapter(adapter);
+        final InboundResourceadapter inbound = adapter.setInboundResourceAdapter(new InboundResourceadapter());
+        final MessageAdapter messageAdapter = inbound.setMessageAdapter(new MessageAdapter());
+        messageAdapter.addMessageListener(new MessageListener(OrderListener.class, OrderSpec.class));
+        app.getConnectorModules().add(new ConnectorModule(connector));
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new MessageDrivenBean(OrderBean.class));
+        app.getEjbModules().add(new EjbModule(ejbJar));
+
+        assembler.createApplication(config.configureApplication(app));
+
+        ra = (OrderResourceAdapter) new InitialContext().lookup("java:openejb/Resource/order-raRA");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        OpenEJB.destroy();
+    }
+
+    public void testRolledBackBatchIsRedeliveredOnePerTransaction() throws Exception {
+        ra.deliver("a");
+        ra.deliver("rollback");
+        assertEquals(0, ra.xaResource.commits);
+        assertEquals(1, ra.xaResource.rollbacks);
+
+        // the redelivered messages each have their own transaction
+        ra.deliver("a");
+        assertEquals(1, ra.xaResource.commits);
+        ra.deliver("rollback");
+        assertEquals(2, ra.xaResource.rollbacks);
+        ra.deliver("b");
+        assertEquals(2, ra.xaResource.commits);
+
+        // then batched again
+        ra.deliver("c");
+        ra.deliver("d");
+        assertEquals(2, ra.xaResource.commits);
+        ra.deliver("e");
+        assertEquals(3, ra.xaResource.commits);
+        assertEquals(2, ra.xaResource.rollbacks);
+
+        assertEquals(Arrays.asList("a", "rollback", "a", "rollback", "b", "c", "d", "e"), OrderBean.received);
+    }
+
+    public void testReleaseCompletesThePendingBatch() throws Exception {
+        ra.deliver("a");
+        ra.deliver("b");
+        assertEquals(0, ra.xaResource.commits);
+
+        ra.release();
+        assertEquals(1, ra.xaResource.commits);
+        assertEquals(0, ra.xaResource.rollbacks);
+        assertEquals(Arrays.asList("a", "b"), OrderBean.received);
+
+        try {
+            ra.deliver("c");
+            fail("the endpoint is released");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public static interface OrderListener {
+        public void onOrder(String order);
+    }
+
+    @MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "queue", propertyValue = "orders"),
+        @ActivationConfigProperty(propertyName = BatchDelivery.BATCH_SIZE, propertyValue = "3"),
+        @ActivationConfigProperty(propertyName = BatchDelivery.BATCH_TIMEOUT, propertyValue = "1 hour")})
+    public static class OrderBean implements OrderListener {
+
+        private static final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        @Resource
+        private MessageDrivenContext context;
+
+        public void onOrder(final String order) {
+            received.add(order);
+            if (order.startsWith("rollback")) {
+                context.setRollbackOnly();
+            }
+        }
+    }
+
+    public static class OrderResourceAdapter implements javax.resource.spi.ResourceAdapter {
+
+        private final BatchDeliveryTest.RecordingXAResource xaResource = new BatchDeliveryTest.RecordingXAResource();
+        private MessageEndpoint endpoint;
+
+        public void start(final BootstrapContext bootstrapContext) {
+        }
+
+        public void stop() {
+        }
+
+        public void endpointActivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) throws ResourceException {
+            endpoint = messageEndpointFactory.createEndpoint(xaResource);
+        }
+
+        public void endpointDeactivation(final MessageEndpointFactory messageEndpointFactory, final ActivationSpec activationSpec) {
+            endpoint.release();
+        }
+
+        public XAResource[] getXAResources(final ActivationSpec[] activationSpecs) throws ResourceException {
+            return new XAResource[0];
+        }
+
+        public void deliver(final String order) throws Exception {
+            endpoint.beforeDelivery(OrderListener.class.getMethod("onOrder", String.class));
+            try {
+                ((OrderListener) endpoint).onOrder(order);
+            } finally {
+                endpoint.afterDelivery();
+            }
+        }
+
+        public void release() {
+            endpoint.release();
+        }
+    }
+
+    public static class OrderSpec implements ActivationSpec {
+        private javax.resource.spi.ResourceAdapter resourceAdapter;
+        private String queue;
+
+        public void validate() throws InvalidPropertyException {
+        }
+
+        public String getQueue() {
+            return queue;
+        }
+
+        public void setQueue(final String queue) {
+            this.queue = queue;
+        }
+
+        public javax.resource.spi.ResourceAdapter getResourceAdapter() {
+            return resourceAdapter;
+        }
+
+        public void setResourceAdapter(final javax.resource.spi.ResourceAdapter resourceAdapter) {
+            this.resourceAdapter = resourceAdapter;
+        }
+    }
+}
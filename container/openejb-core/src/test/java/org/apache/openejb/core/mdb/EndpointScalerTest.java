@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+
+import javax.jms.Queue;
+import javax.jms.Topic;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class EndpointScalerTest extends TestCase {
+
+    private ScheduledExecutorService scheduler;
+    private Map<String, String> properties;
+    private RecordingActivator activator;
+    private BatchDelivery stats;
+    private long backlog;
+
+    @Override
+    protected void setUp() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        properties = new HashMap<String, String>();
+        properties.put("destination", "orders");
+        properties.put("destinationType", Queue.class.getName());
+        properties.put(EndpointScaler.SCALE_INTERVAL, "1 hour");
+        activator = new RecordingActivator();
+        stats = new BatchDelivery(1, 1000, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        final EndpointScaler scaler = newScaler();
+        assertFalse(scaler.isEnabled());
+        assertEquals(1, scaler.getMinActivations());
+        assertEquals(1, scaler.getMaxActivations());
+        assertEquals(1, scaler.getActivations());
+    }
+
+    public void testNotScaledOnTopics() throws Exception {
+        properties.put("destinationType", Topic.class.getName());
+        properties.put(EndpointScaler.MIN_ACTIVATIONS, "2");
+        properties.put(EndpointScaler.MAX_ACTIVATIONS, "3");
+        assertFalse(newScaler().isEnabled());
+
+        properties.remove("destinationType");
+        assertFalse(newScaler().isEnabled());
+    }
+
+    public void testMinimumActivations() throws Exception {
+        properties.put(EndpointScaler.MIN_ACTIVATIONS, "3");
+        final EndpointScaler scaler = newScaler();
+        assertTrue(scaler.isEnabled());
+        assertEquals(3, scaler.getMaxActivations());
+
+        scaler.start(scheduler);
+        assertEquals(3, scaler.getActivations());
+        assertEquals(2, activator.active.size());
+
+        scaler.stop();
+        assertEquals(1, scaler.getActivations());
+        assertTrue(activator.active.isEmpty());
+    }
+
+    public void testScaleOnBacklog() throws Exception {
+        properties.put(EndpointScaler.MAX_ACTIVATIONS, "3");
+        properties.put(EndpointScaler.SCALE_UP_BACKLOG, "10");
+        final EndpointScaler scaler = newScaler();
+        scaler.start(scheduler);
+        assertEquals(1, scaler.getActivations());
+
+        backlog = 50;
+        scaler.evaluate();
+        scaler.evaluate();
+        scaler.evaluate();
+        assertEquals(3, scaler.getActivations());
+        assertEquals(2, scaler.getScaleUps());
+        assertEquals(50, scaler.getLastBacklog());
+
+        backlog = 0;
+        scaler.evaluate();
+        scaler.evaluate();
+        assertEquals(3, scaler.getActivations());
+        scaler.evaluate();
+        assertEquals(2, scaler.getActivations());
+        assertEquals(1, scaler.getScaleDowns());
+
+        // a busy interval resets the quiet ones
+        scaler.evaluate();
+        backlog = 5;
+        scaler.evaluate();
+        backlog = 0;
+        scaler.evaluate();
+        scaler.evaluate();
+        assertEquals(2, scaler.getActivations());
+        scaler.evaluate();
+        assertEquals(1, scaler.getActivations());
+
+        scaler.stop();
+    }
+
+    public void testScaleOnLag() throws Exception {
+        properties.put(EndpointScaler.MAX_ACTIVATIONS, "2");
+        properties.put(EndpointScaler.SCALE_UP_LAG, "200 milliseconds");
+        backlog = -1;
+        final EndpointScaler scaler = newScaler();
+        scaler.start(scheduler);
+
+        stats.lag(100);
+        stats.lag(500);
+        scaler.evaluate();
+        assertEquals(300, scaler.getLastLag());
+        assertEquals(2, scaler.getActivations());
+
+        // only the messages of the last interval count
+        stats.lag(50);
+        scaler.evaluate();
+        assertEquals(50, scaler.getLastLag());
+
+        scaler.evaluate();
+        assertEquals(-1, scaler.getLastLag());
+        assertEquals(2, scaler.getActivations());
+        scaler.evaluate();
+        assertEquals(1, scaler.getActivations());
+
+        scaler.stop();
+    }
+
+    private EndpointScaler newScaler() {
+        return new EndpointScaler("TestBean", properties, activator, new DestinationBacklog() {
+            @Override
+            public long getBacklog(final String destination, final String destinationType) {
+                assertEquals("orders", destination);
+                return backlog;
+            }
+        }, stats);
+    }
+
+    private static class RecordingActivator implements EndpointScaler.Activator {
+        private final List<Object> active = new ArrayList<Object>();
+
+        @Override
+        public Object activate() throws Exception {
+            final Object activation = new Object();
+            active.add(activation);
+            return activation;
+        }
+
+        @Override
+        public void deactivate(final Object activation) throws Exception {
+            assertTrue(active.remove(activation));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class MappedPassivaterTest extends TestCase {
+
+    private MappedPassivater passivater;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(MappedPassivater.SEGMENT_SIZE, "4096");
+        properties.setProperty(MappedPassivater.COMPACTION_INTERVAL, "0");
+        passivater = new MappedPassivater();
+        passivater.init(properties);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        passivater.close();
+    }
+
+    public void testCreatedOnFirstPassivation() throws Exception {
+        assertEquals(0, passivater.getSegments());
+
+        passivater.passivate("a", "bean");
+        assertEquals(1, passivater.getSegments());
+
+        passivater.close();
+        assertEquals(0, passivater.getSegments());
+        assertNull(passivater.activate("a"));
+    }
+
+    public void testPassivateActivate() throws Exception {
+        final Map<Object, Object> state = new HashMap<Object, Object>();
+        state.put("a", "first bean");
+        state.put("b", new ArrayList<String>(Arrays.asList("second", "bean")));
+        passivater.passivate(state);
+        assertEquals(2, passivater.size());
+
+        assertEquals("first bean", passivater.activate("a"));
+        assertEquals(state.get("b"), passivater.activate("b"));
+
+        // an activated bean is not in the store anymore
+        assertNull(passivater.activate("a"));
+        assertEquals(0, passivater.size());
+    }
+
+    public void testActivatedSegmentsAreDeleted() throws Exception {
+        final byte[] state = new byte[1000];
+        for (int i = 0; i < 20; i++) {
+            passivater.passivate(i, state);
+        }
+        assertTrue(passivater.getSegments() > 1);
+
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(passivater.activate(i));
+        }
+        assertEquals(1, passivater.getSegments());
+    }
+
+    public void testBigBean() throws Exception {
+        final byte[] state = new byte[10000];
+        state[9999] = 42;
+        passivater.passivate("big", state);
+        assertEquals(42, ((byte[]) passivater.activate("big"))[9999]);
+    }
+
+    public void testCompaction() throws Exception {
+        final byte[] state = new byte[500];
+        for (int i = 0; i < 20; i++) {
+            passivater.passivate(i, state);
+        }
+        final int segments = passivater.getSegments();
+
+        // keep one bean per segment
+        for (int i = 0; i < 20; i++) {
+            if (i % 7 != 0) {
+                passivater.activate(i);
+            }
+        }
+
+        passivater.compact();
+        assertTrue(passivater.getSegments() < segments);
+        for (int i = 0; i < 20; i += 7) {
+            assertEquals(500, ((byte[]) passivater.activate(i)).length);
+        }
+    }
+
+    public void testConcurrentPassivation() throws Exception {
+        final int threads = 8;
+        final int beans = 200;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < beans; i++) {
+                            passivater.passivate(thread + "-" + i, "state " + thread + "-" + i);
+                        }
+                    } catch (final Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(threads * beans, passivater.size());
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < beans; i++) {
+                assertEquals("state " + t + "-" + i, passivater.activate(t + "-" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+import org.apache.openejb.util.Duration;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SegmentedCacheTest extends TestCase {
+
+    private MapPassivater passivater;
+    private Listener listener;
+
+    @Override
+    protected void setUp() throws Exception {
+        passivater = new MapPassivater();
+        listener = new Listener();
+    }
+
+    public void testCheckOutCheckIn() throws Exception {
+        final SegmentedCache<String, String> cache = cache(10, 1, 4);
+        cache.add("a", "value");
+        cache.checkIn("a");
+        assertEquals(1, cache.getIdle());
+
+        assertEquals("value", cache.checkOut("a", true));
+        assertEquals(0, cache.getIdle());
+        assertEquals(1, cache.getHits());
+
+        assertNull(cache.checkOut("unknown", false));
+        assertEquals(1, cache.getMisses());
+
+        assertEquals("value", cache.remove("a"));
+        assertNull(cache.checkOut("a", true));
+    }
+
+    public void testPassivateLeastRecentlyUsed() throws Exception {
+        final SegmentedCache<String, String> cache = cache(2, 1, 1);
+        for (final String key : new String[]{"a", "b", "c"}) {
+            cache.add(key, key + "-value");
+            cache.checkIn(key);
+        }
+
+        assertEquals(1, cache.getPassivations());
+        assertEquals(2, cache.getIdle());
+        assertTrue(passivater.store.containsKey("a"));
+        assertEquals(Arrays.asList("a-value"), listener.stored);
+
+        // activating a passivated entry
+        assertEquals("a-value", cache.checkOut("a", true));
+        assertEquals(1, cache.getActivations());
+        assertEquals(Arrays.asList("a-value"), listener.loaded);
+    }
+
+    public void testSizeBudget() throws Exception {
+        final SegmentedCache<String, String> cache = cache(100, 1, 1);
+        cache.setMaxSize("3 kb");
+        cache.setEstimatedEntrySize("1 kb");
+
+        for (int i = 0; i < 5; i++) {
+            cache.add("k" + i, "v" + i);
+            cache.checkIn("k" + i);
+        }
+
+        // the capacity is not reached but the size budget is
+        assertEquals(3, cache.getIdle());
+        assertEquals(2, cache.getPassivations());
+
+        // once a String was passivated its measured size is used instead of the estimate
+        for (int i = 5; i < 20; i++) {
+            cache.add("k" + i, "v" + i);
+            cache.checkIn("k" + i);
+        }
+        assertTrue(cache.getIdle() > 3);
+        assertTrue(cache.getEstimatedIdleSize() <= 3 * 1024);
+    }
+
+    public void testSizesAreSampledOncePerBean() throws Exception {
+        final SegmentedCache<String, Object> cache = new SegmentedCache<String, Object>(null, passivater, 100, 1, new Duration(-1, TimeUnit.MILLISECONDS));
+        cache.setSegments(1);
+        cache.setFrequency("0");
+        cache.setMaxSize("1 kb");
+        cache.setEstimatedEntrySize("1 kb");
+        cache.init();
+
+        // every check in goes over the budget and passivates one value
+        Counted.written.set(0);
+        for (int i = 0; i < 5; i++) {
+            cache.add("k" + i, new Counted());
+            cache.checkIn("k" + i);
+        }
+        assertTrue(cache.getPassivations() > 1);
+        assertEquals(1, Counted.written.get());
+
+        // a sample older than the refresh period is measured again
+        cache.setSizeRefresh("0");
+        final long passivations = cache.getPassivations();
+        for (int i = 5; i < 10; i++) {
+            cache.add("k" + i, new Counted());
+            cache.checkIn("k" + i);
+        }
+        assertEquals(1 + cache.getPassivations() - passivations, Counted.written.get());
+    }
+
+    public void testTimeOut() throws Exception {
+        final SegmentedCache<String, String> cache = new SegmentedCache<String, String>(listener, passivater, 10, 1, new Duration(0, TimeUnit.MILLISECONDS));
+        cache.setFrequency("60 seconds");
+        cache.add("a", "value");
+        cache.checkIn("a");
+
+        cache.processLRU();
+        assertEquals(1, cache.getTimeOuts());
+        assertEquals(Arrays.asList("value"), listener.timedOut);
+        assertNull(cache.checkOut("a", true));
+    }
+
+    public void testDestroyStopsItsExecutor() throws Exception {
+        final SegmentedCache<String, String> cache = cache(10, 1, 4);
+        cache.setFrequency("60 seconds");
+        cache.init();
+
+        final ScheduledExecutorService executor = cache.getScheduledExecutorService();
+        assertNotNull(executor);
+        cache.destroy();
+        assertTrue(executor.isShutdown());
+        assertNull(cache.getScheduledExecutorService());
+    }
+
+    public void testDestroyKeepsAGivenExecutor() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final SegmentedCache<String, String> cache = cache(10, 1, 4);
+            cache.setScheduledExecutorService(executor);
+            cache.setFrequency("60 seconds");
+            cache.init();
+
+            cache.destroy();
+            assertFalse(executor.isShutdown());
+            assertSame(executor, cache.getScheduledExecutorService());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SegmentedCache<String, String> cache(final int capacity, final int bulkPassivate, final int segments) {
+        final SegmentedCache<String, String> cache = new SegmentedCache<String, String>(listener, passivater, capacity, bulkPassivate, new Duration(-1, TimeUnit.MILLISECONDS));
+        cache.setSegments(segments);
+        cache.setFrequency("0");
+        cache.init();
+        return cache;
+    }
+
+    public static class Counted implements Serializable {
+        private static final AtomicInteger written = new AtomicInteger();
+
+        private final byte[] state = new byte[2048];
+
+        private void writeObject(final ObjectOutputStream out) throws IOException {
+            written.incrementAndGet();
+            out.defaultWriteObject();
+        }
+    }
+
+    private static class MapPassivater implements PassivationStrategy {
+        private final Map<Object, Object> store = new HashMap<Object, Object>();
+
+        @Override
+        public void init(final Properties props) {
+            // no-op
+        }
+
+        @Override
+        public void passivate(final Map stateTable) {
+            store.putAll(stateTable);
+        }
+
+        @Override
+        public Object activate(final Object primaryKey) {
+            return store.remove(primaryKey);
+        }
+    }
+
+    private static class Listener implements Cache.CacheListener<String> {
+        private final List<String> loaded = new ArrayList<String>();
+        private final List<String> stored = new ArrayList<String>();
+        private final List<String> timedOut = new ArrayList<String>();
+
+        @Override
+        public void afterLoad(final String value) {
+            loaded.add(value);
+        }
+
+        @Override
+        public void beforeStore(final String value) {
+            stored.add(value);
+        }
+
+        @Override
+        public void timedOut(final String value) {
+            timedOut.add(value);
+        }
+    }
+}
@@ -140,6 +140,7 @@ public class StatelessPoolStatsTest extends TestCase {
         expectedAttributes.add(new MBeanAttributeInfo("Replaced.Latest", "java.lang.String", "", true, false, false));
         expectedAttributes.add(new MBeanAttributeInfo("Replaced.LatestTime", "long", "", true, false, false));
         expectedAttributes.add(new MBeanAttributeInfo("StrictPooling", "boolean", "", true, false, false));
+        expectedAttributes.add(new MBeanAttributeInfo("StripedPooling", "boolean", "", true, false, false));
         expectedAttributes.add(new MBeanAttributeInfo("SweepInterval", "long", "", true, false, false));
         expectedAttributes.add(new MBeanAttributeInfo("Sweeps", "long", "", true, false, false));
         expectedAttributes.add(new MBeanAttributeInfo("Sweeps.Latest", "java.lang.String", "", true, false, false));
@@ -171,6 +172,7 @@ public class StatelessPoolStatsTest extends TestCase {
         expectedAttributesValue.put("ReplaceAged", true);
         expectedAttributesValue.put("ReplaceFlushed", false);
         expectedAttributesValue.put("Replaced", (long) 0);
+        expectedAttributesValue.put("StripedPooling", false);
         expectedAttributesValue.put("SweepInterval", (long) 10);
         // expectedAttributesValue.put("Sweeps", (long) 1);
         expectedAttributesValue.put("StrictPooling", true);
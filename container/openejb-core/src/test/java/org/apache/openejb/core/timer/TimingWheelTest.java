@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class TimingWheelTest extends TestCase {
+
+    private final List<Object> expired = new ArrayList<Object>();
+    private final TimingWheel.Expiration recorder = new TimingWheel.Expiration() {
+        @Override
+        public void expired(final List<TimingWheel.Timeout> timeouts) {
+            for (final TimingWheel.Timeout timeout : timeouts) {
+                expired.add(timeout.getTask());
+            }
+        }
+    };
+
+    public void testNeverEarly() throws Exception {
+        final TimingWheel wheel = new TimingWheel(10, 8, recorder);
+        final long now = System.currentTimeMillis();
+
+        wheel.schedule(now + 25, "a");
+        wheel.schedule(now + 10, "b");
+        assertEquals(2, wheel.size());
+
+        wheel.advance(now + 9);
+        assertTrue(expired.isEmpty());
+
+        wheel.advance(now + 20);
+        assertEquals(Collections.<Object>singletonList("b"), expired);
+
+        wheel.advance(now + 24);
+        assertEquals(1, expired.size());
+
+        wheel.advance(now + 40);
+        assertEquals(2, expired.size());
+        assertEquals("a", expired.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCascade() throws Exception {
+        // 4 buckets of 10ms: 40ms, 160ms and 640ms per turn of the three first wheels
+        final TimingWheel wheel = new TimingWheel(10, 4, recorder);
+        final long now = System.currentTimeMillis();
+
+        final long[] delays = {5000, 35, 170, 650, 2600, 45, 160};
+        for (final long delay : delays) {
+            wheel.schedule(now + delay, delay);
+        }
+
+        for (long time = now; time <= now + 6000; time += 7) {
+            final int before = expired.size();
+            wheel.advance(time);
+            for (int i = before; i < expired.size(); i++) {
+                final long delay = (Long) expired.get(i);
+                assertTrue(delay + " expired early", now + delay <= time);
+                assertTrue(delay + " expired late", now + delay + 20 + 7 >= time);
+            }
+        }
+
+        assertEquals(delays.length, expired.size());
+        assertEquals(35L, expired.get(0));
+        assertEquals(5000L, expired.get(delays.length - 1));
+    }
+
+    public void testCancel() throws Exception {
+        final TimingWheel wheel = new TimingWheel(10, 4, recorder);
+        final long now = System.currentTimeMillis();
+
+        final TimingWheel.Timeout near = wheel.schedule(now + 20, "near");
+        final TimingWheel.Timeout far = wheel.schedule(now + 1000, "far");
+        wheel.schedule(now + 30, "kept");
+
+        assertTrue(wheel.cancel(near));
+        assertFalse(wheel.cancel(near));
+        assertTrue(wheel.cancel(far));
+        assertEquals(1, wheel.size());
+
+        wheel.advance(now + 2000);
+        assertEquals(Collections.<Object>singletonList("kept"), expired);
+    }
+
+    public void testPassedDeadline() throws Exception {
+        final TimingWheel wheel = new TimingWheel(10, 4, recorder);
+        final long now = System.currentTimeMillis();
+
+        wheel.schedule(now - 1000, "late");
+        assertTrue("expired by the wheel thread only", expired.isEmpty());
+
+        wheel.advance(now + 10);
+        assertEquals(Collections.<Object>singletonList("late"), expired);
+    }
+
+    public void testThread() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final TimingWheel wheel = new TimingWheel(5, 16, new TimingWheel.Expiration() {
+            @Override
+            public void expired(final List<TimingWheel.Timeout> timeouts) {
+                for (int i = 0; i < timeouts.size(); i++) {
+                    latch.countDown();
+                }
+            }
+        });
+
+        wheel.start("TimingWheelTest");
+        try {
+            final long now = System.currentTimeMillis();
+            wheel.schedule(now + 20, 1);
+            wheel.schedule(now + 50, 2);
+            wheel.schedule(now + 200, 3);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.timer;
+
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.timer.JdbcTimerStore;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class JdbcTimerStoreTest {
+
+    @EJB
+    private StoredTimers bean;
+
+    @Module
+    public AppModule application() {
+        final EjbModule ejbModule = new EjbModule(new EjbJar());
+        ejbModule.getEjbJar().addEnterpriseBean(new SingletonBean(StoredTimers.class).localBean());
+
+        final AppModule appModule = new AppModule(Thread.currentThread().getContextClassLoader(), null);
+        appModule.getEjbModules().add(ejbModule);
+        appModule.getProperties().setProperty(Assembler.TIMER_STORE_CLASS, JdbcTimerStore.class.getName());
+        appModule.getProperties().setProperty(JdbcTimerStore.OPENEJB_TIMER_STORE_DATASOURCE, "JdbcTimerStoreDB");
+        appModule.getProperties().setProperty(JdbcTimerStore.OPENEJB_TIMER_STORE_LEASE, "3 seconds");
+        return appModule;
+    }
+
+    @Configuration
+    public Properties configuration() {
+        return new PropertiesBuilder()
+            .p("JdbcTimerStoreDB", "new://Resource?type=DataSource")
+            .p("JdbcTimerStoreDB.JtaManaged", "true")
+            .p("JdbcTimerStoreDB.JdbcUrl", "jdbc:hsqldb:mem:JdbcTimerStoreDB")
+            .p("JdbcTimerStoreDB.UserName", "SA")
+            .p("JdbcTimerStoreDB.Password", "")
+            .build();
+    }
+
+    @Test
+    public void storedAndFiredOnce() throws Exception {
+        bean.schedule(20, 5);
+        assertEquals("only the persistent timers are stored", 15, bean.rows());
+
+        assertTrue(bean.await());
+        Thread.sleep(500);
+        assertEquals(20, bean.fired().size());
+        for (final AtomicInteger count : bean.fired().values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(0, bean.rows());
+    }
+
+    @Test
+    public void cancelled() throws Exception {
+        bean.scheduleAndCancel();
+        assertEquals(0, bean.rows());
+        assertEquals(0, bean.timers());
+    }
+
+    @Test
+    public void failedTimeoutFiresAgain() throws Exception {
+        // two attempts per delivery (one retry), both fail the first time
+        bean.scheduleFailing(2);
+
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (StoredTimers.FAILING_ATTEMPTS.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, StoredTimers.FAILING_ATTEMPTS.get());
+        assertEquals("the timer survives the rolled back timeouts", 1, bean.rows());
+
+        assertTrue("fired again once the claim expired", bean.await());
+        assertEquals(3, StoredTimers.FAILING_ATTEMPTS.get());
+        Thread.sleep(500);
+        assertEquals(0, bean.rows());
+    }
+
+    @Singleton
+    @Lock(LockType.READ)
+    public static class StoredTimers {
+        @Resource
+        private TimerService timerService;
+
+        @Resource(name = "JdbcTimerStoreDB")
+        private DataSource dataSource;
+
+        private static final AtomicInteger FAILING_ATTEMPTS = new AtomicInteger();
+
+        private final Map<Object, AtomicInteger> fired = new ConcurrentHashMap<Object, AtomicInteger>();
+        private volatile int failures;
+        private volatile CountDownLatch latch;
+
+        public void schedule(final int count, final int transients) {
+            latch = new CountDownLatch(count);
+            for (int i = 0; i < count; i++) {
+                fired.put(i, new AtomicInteger());
+                timerService.createSingleActionTimer(1000 + i * 10, new TimerConfig(i, i >= transients));
+            }
+        }
+
+        public void scheduleFailing(final int failures) {
+            this.failures = failures;
+            FAILING_ATTEMPTS.set(0);
+            latch = new CountDownLatch(1);
+            timerService.createSingleActionTimer(500, new TimerConfig("failing", true));
+        }
+
+        public void scheduleAndCancel() {
+            timerService.createSingleActionTimer(60000, new TimerConfig("cancelled", true)).cancel();
+        }
+
+        public boolean await() throws InterruptedException {
+            return latch.await(1, TimeUnit.MINUTES);
+        }
+
+        public Map<Object, AtomicInteger> fired() {
+            return fired;
+        }
+
+        public int timers() {
+            return timerService.getTimers().size();
+        }
+
+        public int rows() throws SQLException {
+            final Connection connection = dataSource.getConnection();
+            try {
+                final Statement statement = connection.createStatement();
+                try {
+                    final ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM OPENEJB_TIMERS");
+                    try {
+                        result.next();
+                        return result.getInt(1);
+                    } finally {
+                        result.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        }
+
+        @Timeout
+        public void timeout(final Timer timer) {
+            if ("failing".equals(timer.getInfo())) {
+                if (FAILING_ATTEMPTS.incrementAndGet() <= failures) {
+                    throw new IllegalStateException("failing on purpose");
+                }
+                latch.countDown();
+                return;
+            }
+
+            fired.get(timer.getInfo()).incrementAndGet();
+            latch.countDown();
+        }
+    }
+}
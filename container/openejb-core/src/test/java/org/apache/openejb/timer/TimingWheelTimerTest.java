@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.timer;
+
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.timer.EjbTimerServiceImpl;
+import org.apache.openejb.core.timer.TimingWheelScheduler;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class TimingWheelTimerTest {
+
+    @EJB
+    private WheelTimers bean;
+
+    @Module
+    public AppModule application() {
+        final EjbModule ejbModule = new EjbModule(new EjbJar());
+        ejbModule.getEjbJar().addEnterpriseBean(new SingletonBean(WheelTimers.class).localBean());
+
+        final AppModule appModule = new AppModule(Thread.currentThread().getContextClassLoader(), null);
+        appModule.getEjbModules().add(ejbModule);
+        appModule.getProperties().setProperty(EjbTimerServiceImpl.OPENEJB_TIMER_ENGINE, TimingWheelScheduler.ENGINE);
+        appModule.getProperties().setProperty(TimingWheelScheduler.OPENEJB_TIMER_WHEEL_TICK, "10");
+        return appModule;
+    }
+
+    @Test
+    public void singleActions() throws Exception {
+        bean.schedule(100, 10);
+        assertTrue(bean.awaitSingleActions(90));
+        assertNotNull(SystemInstance.get().getComponent(TimingWheelScheduler.class));
+
+        Thread.sleep(200);
+        assertEquals(90, bean.singleActions());
+        assertEquals(0, bean.timers());
+    }
+
+    @Test
+    public void interval() throws Exception {
+        assertTrue(bean.awaitIntervals());
+        bean.cancelInterval();
+        assertEquals(0, bean.timers());
+    }
+
+    @Singleton
+    @Lock(LockType.READ)
+    public static class WheelTimers {
+        private static final String INTERVAL = "interval";
+
+        @Resource
+        private TimerService timerService;
+
+        private final AtomicInteger singleActions = new AtomicInteger();
+        private volatile CountDownLatch singleActionLatch;
+        private final CountDownLatch intervalLatch = new CountDownLatch(3);
+
+        public void schedule(final int count, final int cancelled) {
+            singleActionLatch = new CountDownLatch(count - cancelled);
+            for (int i = 0; i < count; i++) {
+                final Timer timer = timerService.createSingleActionTimer(50 + i, new TimerConfig(i, false));
+                if (i < cancelled) {
+                    timer.cancel();
+                }
+            }
+        }
+
+        public boolean awaitSingleActions(final int count) throws InterruptedException {
+            return singleActionLatch.await(1, TimeUnit.MINUTES) && singleActions.get() == count;
+        }
+
+        public int singleActions() {
+            return singleActions.get();
+        }
+
+        public boolean awaitIntervals() throws InterruptedException {
+            timerService.createIntervalTimer(10, 20, new TimerConfig(INTERVAL, false));
+            return intervalLatch.await(1, TimeUnit.MINUTES);
+        }
+
+        public void cancelInterval() {
+            for (final Timer timer : timerService.getTimers()) {
+                timer.cancel();
+            }
+        }
+
+        public int timers() {
+            return timerService.getTimers().size();
+        }
+
+        @Timeout
+        public void timeout(final Timer timer) {
+            if (INTERVAL.equals(timer.getInfo())) {
+                intervalLatch.countDown();
+            } else {
+                singleActions.incrementAndGet();
+                singleActionLatch.countDown();
+            }
+        }
+    }
+}
@@ -213,9 +213,22 @@ public class PoolTest extends TestCase {
 
     public void testStrictMultiThreaded() throws Exception {
         System.out.println("PoolTest.testStrictMultiThreaded");
+        exerciseMultiThreaded(new Pool(10, 5, true));
+    }
+
+    public void testStripedMultiThreaded() throws Exception {
+        System.out.println("PoolTest.testStripedMultiThreaded");
+        final Pool.Builder builder = new Pool.Builder();
+        builder.setPoolSize(10);
+        builder.setMinSize(5);
+        builder.setStrictPooling(true);
+        builder.setStripedPooling(true);
+        exerciseMultiThreaded(builder.build());
+    }
+
+    private void exerciseMultiThreaded(final Pool pool) throws InterruptedException {
         final int threadCount = 200;
 
-        final Pool pool = new Pool(10, 5, true);
         final CountDownLatch startPistol = new CountDownLatch(1);
         final CountDownLatch startingLine = new CountDownLatch(10);
         final CountDownLatch finishingLine = new CountDownLatch(threadCount);
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StripedReadWriteLockTest extends TestCase {
+
+    public void testStripes() throws Exception {
+        assertEquals(1, new StripedReadWriteLock(0).getStripes());
+        assertEquals(4, new StripedReadWriteLock(3).getStripes());
+        assertEquals(8, new StripedReadWriteLock(8).getStripes());
+    }
+
+    public void testReentrancy() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+
+        lock.writeLock().lock();
+        lock.writeLock().lock();
+        assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        lock.writeLock().unlock();
+        assertTrue(lock.isWriteLocked());
+        lock.writeLock().unlock();
+        assertFalse(lock.isWriteLocked());
+
+        lock.readLock().lock();
+        assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        lock.readLock().unlock();
+        assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+    }
+
+    public void testReadersShareWriterExcludes() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(8);
+        final int readers = 16;
+        final CountDownLatch locked = new CountDownLatch(readers);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(readers);
+
+        for (int i = 0; i < readers; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    lock.readLock().lock();
+                    try {
+                        locked.countDown();
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        // no-op
+                    } finally {
+                        lock.readLock().unlock();
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        // all readers hold the lock at the same time
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        assertFalse(lock.writeLock().tryLock());
+        assertFalse(lock.writeLock().tryLock(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, lock.getWriteContentions());
+        assertEquals(1, lock.getTimeouts());
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // a failed write attempt didn't keep any stripe locked
+        assertTrue(lock.writeLock().tryLock(1, TimeUnit.SECONDS));
+        lock.writeLock().unlock();
+    }
+
+    public void testWriterBlocksReaders() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+
+        lock.writeLock().lock();
+        final Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    final Lock readLock = lock.readLock();
+                    acquired.set(readLock.tryLock(50, TimeUnit.MILLISECONDS));
+                } catch (final InterruptedException e) {
+                    // no-op
+                }
+            }
+        };
+        reader.start();
+        reader.join(10000);
+        lock.writeLock().unlock();
+
+        assertFalse(acquired.get());
+        assertEquals(1, lock.getReadContentions());
+        assertEquals(1, lock.getTimeouts());
+    }
+
+    public void testWritersAreExclusive() throws Exception {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(4);
+        final int threads = 8;
+        final int[] counter = {0};
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        lock.writeLock().lock();
+                        try {
+                            counter[0]++;
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * 1000, counter[0]);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class StripedStackTest extends TestCase {
+
+    public void testStripes() throws Exception {
+        assertEquals(1, new StripedStack<String>(1, 64).getStripes());
+        assertEquals(4, new StripedStack<String>(10, 3).getStripes());
+        assertEquals(8, new StripedStack<String>(10, 8).getStripes());
+    }
+
+    public void testLastPushedFirst() throws Exception {
+        final StripedStack<String> stack = new StripedStack<String>(10, 4);
+        stack.push("a");
+        stack.push("b");
+
+        assertEquals("b", stack.pop());
+        assertEquals("a", stack.pop());
+        assertNull(stack.pop());
+    }
+
+    public void testOverflow() throws Exception {
+        final StripedStack<Integer> stack = new StripedStack<Integer>(4, 4);
+        for (int i = 0; i < 4; i++) {
+            stack.push(i);
+        }
+        assertEquals(4, stack.size());
+
+        final Set<Integer> popped = new HashSet<Integer>();
+        Integer i;
+        while ((i = stack.pop()) != null) {
+            popped.add(i);
+        }
+        assertEquals(4, popped.size());
+        assertEquals(0, stack.size());
+    }
+
+    public void testSteal() throws Exception {
+        final StripedStack<String> stack = new StripedStack<String>(16, 16);
+
+        final Thread pusher = new Thread() {
+            @Override
+            public void run() {
+                stack.push("stolen");
+            }
+        };
+        pusher.start();
+        pusher.join();
+
+        assertEquals("stolen", stack.pop());
+        assertNull(stack.pop());
+    }
+
+    public void testConcurrent() throws Exception {
+        final int threads = 16;
+        final int items = 32;
+        final StripedStack<Integer> stack = new StripedStack<Integer>(items, threads);
+        for (int i = 0; i < items; i++) {
+            stack.push(i);
+        }
+
+        final Set<Integer> found = Collections.synchronizedSet(new HashSet<Integer>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 1000; i++) {
+                            final Integer item = stack.pop();
+                            if (item != null) {
+                                stack.push(item);
+                            }
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.interrupted();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        Integer i;
+        while ((i = stack.pop()) != null) {
+            assertTrue(found.add(i));
+        }
+        assertEquals(items, found.size());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.apache.openejb.maven.plugin;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.openejb.config.AnnotationIndex;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Write the annotation index of the compiled classes, read instead of the
+ * classes at deployment time when openejb.finder.index is enabled.
+ */
+@Mojo(name = "index", defaultPhase = LifecyclePhase.PROCESS_CLASSES)
+public class AnnotationIndexMojo extends AbstractMojo {
+    @Parameter(property = "tomee-plugin.index.classes", defaultValue = "${project.build.outputDirectory}")
+    protected File classes;
+
+    @Parameter(property = "tomee-plugin.index.skip", defaultValue = "false")
+    protected boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || !classes.isDirectory()) {
+            getLog().info("Skipping annotation index");
+            return;
+        }
+
+        try {
+            final int indexed = AnnotationIndex.generate(classes);
+            getLog().info("Indexed " + indexed + " classes in " + new File(classes, AnnotationIndex.RESOURCE));
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Can't index " + classes, e);
+        }
+    }
+}
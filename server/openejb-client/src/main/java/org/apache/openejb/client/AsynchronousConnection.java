@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+
+/**
+ * A connection able to send its request without waiting for the response,
+ * like the logical connections of a {@link MultiplexedSocket}.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface AsynchronousConnection extends Connection {
+
+    /**
+     * Sends what was written to the output stream and returns immediately.
+     * The callback is run by the thread reading the responses once {@link #getInputStream()}
+     * returns the response without blocking, or fails, but only if the request was sent.
+     *
+     * @param callback run when the response is there
+     * @throws IOException if the request can't be sent
+     */
+    void send(Runnable callback) throws IOException;
+}
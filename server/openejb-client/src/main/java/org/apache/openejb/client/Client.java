@@ -144,6 +144,153 @@ public class Client {
         }
     }
 
+    /**
+     * Sends the request without waiting for its response when the connection allows it,
+     * see {@link AsynchronousConnection}.  The response is read by the thread reading the
+     * responses of the connection which then calls the callback, so the callback should be quick.
+     * <p/>
+     * Only tried when the server is known to be multiplexed, a plain connection would be opened for nothing.
+     * Unlike {@link #request(Request, Response, ServerMetaData)} a request failing once sent
+     * is not retried on another server, the callback gets the failure.  The
+     * {@link #addRetryCondition(Class) retry conditions} are not applied either: the response is
+     * read by a thread which can't send the request again, so the callback gets the exception
+     * of the bean as it is.
+     *
+     * @return false if the request was not sent because the connection can only be used synchronously
+     * or the server could not be reached, the caller then falls back on a blocking request
+     * @throws RemoteException if the request could not be sent
+     */
+    public static boolean requestAsynchronously(final Request req, final Response res, final ServerMetaData server, final ResponseCallback callback) throws RemoteException {
+        try {
+            return client.processAsynchronousRequest(req, res, server, callback);
+        } finally {
+            failed.remove();
+        }
+    }
+
+    protected boolean processAsynchronousRequest(final Request req, final Response res, final ServerMetaData server, final ResponseCallback callback) throws RemoteException {
+
+        if (server == null) {
+            throw new IllegalArgumentException("Server instance cannot be null");
+        }
+
+        if (!isMultiplexed(server)) {
+            return false;
+        }
+
+        final long start = System.nanoTime();
+        final ClusterMetaData cluster = getClusterMetaData(server);
+        final ProtocolMetaData protocolRequest = (null != COMPATIBLE_META_DATA ? COMPATIBLE_META_DATA : PROTOCOL_META_DATA);
+
+        final Connection conn;
+        try {
+            conn = ConnectionManager.getConnection(cluster, server, req);
+        } catch (final IOException e) {
+            // the blocking request fails over to the other servers
+            if (FINEST) {
+                logger.log(Level.FINEST, "Cannot connect for an asynchronous request, falling back on a blocking one", e);
+            }
+            return false;
+        }
+
+        if (!(conn instanceof AsynchronousConnection)) {
+            close(conn);
+            return false;
+        }
+
+        final ServerScore score = LatencyAwareConnectionStrategy.begin(conn.getURI());
+
+        // the response is deserialized by another thread, with the classes of the caller
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+        try {
+            writeRequest(conn.getOutputStream(), req, server, cluster, protocolRequest);
+
+            AsynchronousConnection.class.cast(conn).send(new Runnable() {
+                @Override
+                public void run() {
+                    final Thread thread = Thread.currentThread();
+                    final ClassLoader oldLoader = thread.getContextClassLoader();
+                    thread.setContextClassLoader(loader);
+
+                    Throwable error = null;
+                    try {
+                        readResponse(conn.getInputStream(), res, server);
+                        LatencyAwareConnectionStrategy.succeeded(score, System.nanoTime() - start);
+
+                        if (FINEST) {
+                            final long time = System.nanoTime() - start;
+                            logger.log(Level.FINEST, String.format("Asynchronous invocation %sns - %s - Request(%s) - Response(%s)", time, conn.getURI(), req, res));
+                        }
+                    } catch (final RemoteException e) {
+                        error = e;
+                    } catch (final IOException e) {
+                        requestFailed(conn, req, score, e);
+                        error = new RemoteException("Cannot complete the asynchronous request", e);
+                    } catch (final Throwable e) {
+                        error = new RemoteException("Error while communicating with server: ", e);
+                    } finally {
+                        LatencyAwareConnectionStrategy.end(score);
+                        close(conn);
+                    }
+
+                    try {
+                        if (error == null) {
+                            callback.completed(res);
+                        } else {
+                            callback.failed(error);
+                        }
+                    } finally {
+                        thread.setContextClassLoader(oldLoader);
+                    }
+                }
+            });
+            return true;
+
+        } catch (final RemoteException e) {
+            LatencyAwareConnectionStrategy.end(score);
+            close(conn);
+            throw e;
+        } catch (final IOException e) {
+            requestFailed(conn, req, score, e);
+            LatencyAwareConnectionStrategy.end(score);
+            close(conn);
+            throw new RemoteException("Cannot send the asynchronous request", e);
+        } catch (final Throwable e) {
+            LatencyAwareConnectionStrategy.end(score);
+            close(conn);
+            throw new RemoteException("Error while communicating with server: ", e);
+        }
+    }
+
+    private static boolean isMultiplexed(final ServerMetaData server) {
+        final URI[] locations = server.getLocations();
+        if (locations == null || locations.length == 0) {
+            return false;
+        }
+
+        for (final URI location : locations) {
+            if (!ConnectionManager.isMultiplexed(location)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void requestFailed(final Connection conn, final Request req, final ServerScore score, final IOException e) {
+        Client.fireEvent(new RequestFailed(conn.getURI(), req, e));
+        LatencyAwareConnectionStrategy.failed(score);
+        conn.discard();
+    }
+
+    private static void close(final Connection conn) {
+        try {
+            conn.close();
+        } catch (final Throwable t) {
+            logger.log(Level.WARNING, "Error closing connection with server: " + t.getMessage(), t);
+        }
+    }
+
     protected Response processRequest(final Request req, final Response res, final ServerMetaData server) throws RemoteException {
 
         if (server == null) {
@@ -169,6 +316,7 @@ public class Client {
 
         OutputStream out = null;
         InputStream in = null;
+        final ServerScore score = LatencyAwareConnectionStrategy.begin(conn.getURI());
 
         try {
 
@@ -184,76 +332,7 @@ public class Client {
                 throw newIOException("Cannot open output stream to server: ", e);
             }
 
-            /*----------------------------------*/
-            /* Write the protocol magic         */
-            /*----------------------------------*/
-            try {
-                protocolRequest.writeExternal(out);
-                out.flush();
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the protocol metadata to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Get output streams */
-            /*----------------------------------*/
-            final ObjectOutput objectOut;
-            try {
-                objectOut = new ObjectOutputStream(out);
-            } catch (final IOException e) {
-                throw newIOException("Cannot open object output stream to server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write ServerMetaData */
-            /*----------------------------------*/
-            try {
-                server.setMetaData(protocolRequest);
-                server.writeExternal(objectOut);
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the ServerMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write ClusterMetaData */
-            /*----------------------------------*/
-            try {
-
-                final ClusterRequest clusterRequest = new ClusterRequest(cluster);
-                clusterRequest.setMetaData(protocolRequest);
-                objectOut.write(clusterRequest.getRequestType().getCode());
-                clusterRequest.writeExternal(objectOut);
-            } catch (final Throwable e) {
-                throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request type */
-            /*----------------------------------*/
-            try {
-                objectOut.write(req.getRequestType().getCode());
-            } catch (final IOException e) {
-                throw newIOException("Cannot write the request type to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request */
-            /*----------------------------------*/
-            try {
-
-                req.setMetaData(protocolRequest);
-                req.writeExternal(objectOut);
-                objectOut.flush();
-                out.flush();
-
-            } catch (final java.io.NotSerializableException e) {
-
-                throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
-
-            } catch (final IOException e) {
-
-                throw newIOException("Cannot write the request to the server: " + e.getMessage(), e);
-            }
+            writeRequest(out, req, server, cluster, protocolRequest);
 
             /*----------------------------------*/
             /* Get input streams               */
@@ -267,71 +346,7 @@ public class Client {
                 throw newIOException("Cannot open input stream to server: ", e);
             }
 
-            //Determine the server response protocol for reading
-            final ProtocolMetaData protocolResponse = new ProtocolMetaData();
-            try {
-
-                protocolResponse.readExternal(in);
-
-            } catch (final EOFException e) {
-
-                throw newIOException("Prematurely reached the end of the stream.  " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
-
-            } catch (final IOException e) {
-
-                throw newIOException("Cannot determine server protocol version: Received " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
-            }
-
-            final ObjectInput objectIn;
-            try {
-
-                objectIn = new EjbObjectInputStream(in);
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot open object input stream to server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            /*----------------------------------*/
-            /* Read cluster response */
-            /*----------------------------------*/
-            try {
-                final ClusterResponse clusterResponse = new ClusterResponse();
-                clusterResponse.setMetaData(protocolResponse);
-                clusterResponse.readExternal(objectIn);
-                switch (clusterResponse.getResponseCode()) {
-                    case UPDATE: {
-                        setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
-                    }
-                    break;
-                    case FAILURE: {
-                        throw clusterResponse.getFailure();
-                    }
-                }
-            } catch (final ClassNotFoundException e) {
-                throw new RemoteException("Cannot read the cluster response from the server.  The class for an object being returned is not located in this system:", e);
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot read the cluster response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-
-            } catch (final Throwable e) {
-                throw new RemoteException("Error reading cluster response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            /*----------------------------------*/
-            /* Read response */
-            /*----------------------------------*/
-            try {
-                res.setMetaData(protocolResponse);
-                res.readExternal(objectIn);
-            } catch (final ClassNotFoundException e) {
-                throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
-
-            } catch (final IOException e) {
-                throw newIOException("Cannot read the response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-
-            } catch (final Throwable e) {
-                throw new RemoteException("Error reading response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
-            }
+            readResponse(in, res, server);
 
             if (retryConditions.size() > 0) {
                 if (res instanceof EJBResponse) {
@@ -355,6 +370,8 @@ public class Client {
                 }
             }
 
+            LatencyAwareConnectionStrategy.succeeded(score, System.nanoTime() - start);
+
             if (FINEST) {
                 final long time = System.nanoTime() - start;
                 final String message = String.format("Invocation %sns - %s - Request(%s) - Response(%s)", time, conn.getURI(), req, res);
@@ -368,6 +385,7 @@ public class Client {
             final Set<URI> failed = getFailed();
 
             Client.fireEvent(new RequestFailed(uri, req, e));
+            LatencyAwareConnectionStrategy.failed(score);
 
             if (FINER) {
                 logger.log(Level.FINER, "Add Failed " + uri.toString());
@@ -395,6 +413,7 @@ public class Client {
             throw new RemoteException("Error while communicating with server: ", error);
 
         } finally {
+            LatencyAwareConnectionStrategy.end(score);
 
             if (null != out) {
                 try {
@@ -424,6 +443,157 @@ public class Client {
         return res;
     }
 
+    private void writeRequest(final OutputStream out, final Request req, final ServerMetaData server, final ClusterMetaData cluster, final ProtocolMetaData protocolRequest) throws IOException {
+        /*----------------------------------*/
+        /* Write the protocol magic         */
+        /*----------------------------------*/
+        try {
+            protocolRequest.writeExternal(out);
+            out.flush();
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the protocol metadata to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Get output streams */
+        /*----------------------------------*/
+        final ObjectOutput objectOut;
+        try {
+            objectOut = new ObjectOutputStream(out);
+        } catch (final IOException e) {
+            throw newIOException("Cannot open object output stream to server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ServerMetaData */
+        /*----------------------------------*/
+        try {
+            server.setMetaData(protocolRequest);
+            server.writeExternal(objectOut);
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the ServerMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ClusterMetaData */
+        /*----------------------------------*/
+        try {
+
+            final ClusterRequest clusterRequest = new ClusterRequest(cluster);
+            clusterRequest.setMetaData(protocolRequest);
+            objectOut.write(clusterRequest.getRequestType().getCode());
+            clusterRequest.writeExternal(objectOut);
+        } catch (final Throwable e) {
+            throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request type */
+        /*----------------------------------*/
+        try {
+            objectOut.write(req.getRequestType().getCode());
+        } catch (final IOException e) {
+            throw newIOException("Cannot write the request type to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request */
+        /*----------------------------------*/
+        try {
+
+            req.setMetaData(protocolRequest);
+            req.writeExternal(objectOut);
+            objectOut.flush();
+            out.flush();
+
+        } catch (final java.io.NotSerializableException e) {
+
+            throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
+
+        } catch (final IOException e) {
+
+            throw newIOException("Cannot write the request to the server: " + e.getMessage(), e);
+        }
+    }
+
+    private void readResponse(final InputStream in, final Response res, final ServerMetaData server) throws IOException {
+        //Determine the server response protocol for reading
+        final ProtocolMetaData protocolResponse = new ProtocolMetaData();
+        try {
+
+            protocolResponse.readExternal(in);
+
+        } catch (final EOFException e) {
+
+            throw newIOException("Prematurely reached the end of the stream.  " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
+
+        } catch (final IOException e) {
+
+            throw newIOException("Cannot determine server protocol version: Received " + protocolResponse.getSpec() + " : " + e.getMessage(), e);
+        }
+
+        final ObjectInput objectIn;
+        try {
+
+            objectIn = new EjbObjectInputStream(in);
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot open object input stream to server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+        }
+
+        /*----------------------------------*/
+        /* Read cluster response */
+        /*----------------------------------*/
+        try {
+            final ClusterResponse clusterResponse = new ClusterResponse();
+            clusterResponse.setMetaData(protocolResponse);
+            clusterResponse.readExternal(objectIn);
+            switch (clusterResponse.getResponseCode()) {
+                case UPDATE: {
+                    setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
+                }
+                break;
+                case FAILURE: {
+                    throw clusterResponse.getFailure();
+                }
+            }
+        } catch (final ClassNotFoundException e) {
+            throw new RemoteException("Cannot read the cluster response from the server.  The class for an object being returned is not located in this system:", e);
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot read the cluster response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+
+        } catch (final Throwable e) {
+            throw new RemoteException("Error reading cluster response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+        }
+
+        /*----------------------------------*/
+        /* Read response */
+        /*----------------------------------*/
+        try {
+            res.setMetaData(protocolResponse);
+            res.readExternal(objectIn);
+        } catch (final ClassNotFoundException e) {
+            throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
+
+        } catch (final IOException e) {
+            throw newIOException("Cannot read the response from the server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+
+        } catch (final Throwable e) {
+            throw new RemoteException("Error reading response from server (" + protocolResponse.getSpec() + ") : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Receives the outcome of {@link #requestAsynchronously}.
+     */
+    public interface ResponseCallback {
+
+        void completed(Response response);
+
+        void failed(Throwable error);
+    }
+
     public static Set<URI> getFailed() {
         Set<URI> set = failed.get();
         if (set == null) {
@@ -0,0 +1,657 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact tagged encoding of the values of an ejbd message (OEJP 4.8+).
+ * <p/>
+ * Primitive wrappers, Strings, enums, classes, arrays and the common java.util
+ * lists, sets and maps are written as a one byte tag followed by their content,
+ * integers as variable length numbers.  Each class is written by name the first
+ * time it appears in the message and then as an index in the class table, arrays
+ * and collections met twice are written as a reference so shared and cyclic
+ * structures survive.  Anything else falls back on {@link ObjectOutput#writeObject(Object)}.
+ * <p/>
+ * The compact containers are not in the handle table of the serialization stream, so a message
+ * mixing containers and serialized values, which could share them, serializes its containers
+ * too, see {@link #scan(Object)}.
+ * <p/>
+ * The classes are resolved like the serialized ones by {@link EjbObjectInputStream}.  The lengths
+ * read are bounded by openejb.client.compact.max-length (16M) and the primitive arrays and strings
+ * are allocated as their bytes arrive, so a forged length can't reserve much more memory than sent.
+ * <p/>
+ * An instance holds the class and reference tables of one message so the same
+ * instance has to be used for all the values of a message, in the same order on
+ * both sides.  Instances are not thread safe.
+ *
+ * @version $Rev$ $Date$
+ */
+class CompactFormat {
+
+    public static final String MAX_LENGTH = "openejb.client.compact.max-length";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int maxLength = Integer.getInteger(MAX_LENGTH, 16 * 1024 * 1024);
+
+    // initial allocation of the primitive arrays and strings, grown with the data read
+    private static final int CHUNK = 8192;
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int BYTE = 3;
+    private static final int SHORT = 4;
+    private static final int CHAR = 5;
+    private static final int INT = 6;
+    private static final int LONG = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int STRING = 10;
+    private static final int CLASS = 11;
+    private static final int ENUM = 12;
+    private static final int ARRAY = 13;
+    private static final int COLLECTION = 14;
+    private static final int MAP = 15;
+    private static final int REFERENCE = 16;
+    private static final int SERIALIZED = 17;
+
+    // only these are instantiated by the reader, others are serialized
+    private static final List<Class<?>> COLLECTIONS = Arrays.<Class<?>>asList(ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class);
+    private static final List<Class<?>> MAPS = Arrays.<Class<?>>asList(HashMap.class, LinkedHashMap.class);
+
+    // written by value, they can't be shared with a serialized value
+    private static final List<Class<?>> SCALARS = Arrays.<Class<?>>asList(String.class, Integer.class, Long.class, Boolean.class,
+        Byte.class, Short.class, Character.class, Float.class, Double.class, Class.class);
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (final Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    private final Map<Class<?>, Integer> writtenClasses = new HashMap<Class<?>, Integer>();
+    private final Map<Object, Integer> writtenReferences = new IdentityHashMap<Object, Integer>();
+    private final List<Class<?>> readClasses = new ArrayList<Class<?>>();
+    private final List<String> readClassNames = new ArrayList<String>();
+    private final List<Object> readReferences = new ArrayList<Object>();
+    private ClassNotFoundException missing;
+
+    private final Map<Object, Boolean> scanned = new IdentityHashMap<Object, Boolean>();
+    private boolean containers;
+    private boolean serialized;
+    private boolean serializeContainers;
+
+    /**
+     * Called with each value of a message before they are written.  If the message has both
+     * compact containers and serialized values a container could be referenced by both sides,
+     * the containers are then serialized so the serialization stream keeps their identity.
+     */
+    public void scan(final Object value) {
+        if (value == null || serializeContainers) {
+            return;
+        }
+
+        final Class<?> type = value.getClass();
+        if (SCALARS.contains(type) || value instanceof Enum) {
+            return;
+        }
+
+        if (type.isArray() || COLLECTIONS.contains(type) || MAPS.contains(type)) {
+            if (scanned.put(value, Boolean.TRUE) != null) {
+                return;
+            }
+            containers = true;
+
+            if (value instanceof Object[]) {
+                for (final Object item : (Object[]) value) {
+                    scan(item);
+                }
+            } else if (value instanceof Collection) {
+                for (final Object item : (Collection<?>) value) {
+                    scan(item);
+                }
+            } else if (value instanceof Map) {
+                for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    scan(entry.getKey());
+                    scan(entry.getValue());
+                }
+            }
+        } else {
+            serialized = true;
+        }
+
+        serializeContainers = containers && serialized;
+    }
+
+    public void writeClass(final ObjectOutput out, final Class<?> type) throws IOException {
+        if (type == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        final Integer index = writtenClasses.get(type);
+        if (index != null) {
+            writeVarInt(out, index);
+            return;
+        }
+
+        // 0 is null, a new class takes the next index and is followed by its name
+        final int next = writtenClasses.size() + 1;
+        writtenClasses.put(type, next);
+        writeVarInt(out, next);
+        writeString(out, type.getName());
+    }
+
+    /**
+     * @throws ClassNotFoundException once the class entry is fully read, if the class is not visible
+     */
+    public Class<?> readClass(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final Class<?> type = readClassEntry(in);
+        throwMissing();
+        return type;
+    }
+
+    public void writeObject(final ObjectOutput out, final Object value) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+            return;
+        }
+
+        final Class<?> type = value.getClass();
+
+        if (type == String.class) {
+            out.write(STRING);
+            writeString(out, (String) value);
+        } else if (type == Integer.class) {
+            out.write(INT);
+            writeVarInt(out, zigZag((Integer) value));
+        } else if (type == Long.class) {
+            out.write(LONG);
+            writeVarLong(out, zigZag((Long) value));
+        } else if (type == Boolean.class) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (type == Byte.class) {
+            out.write(BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Short.class) {
+            out.write(SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Character.class) {
+            out.write(CHAR);
+            out.writeChar((Character) value);
+        } else if (type == Float.class) {
+            out.write(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Double.class) {
+            out.write(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Class.class) {
+            out.write(CLASS);
+            writeClass(out, (Class<?>) value);
+        } else if (value instanceof Enum) {
+            out.write(ENUM);
+            writeClass(out, ((Enum<?>) value).getDeclaringClass());
+            writeString(out, ((Enum<?>) value).name());
+        } else if (!serializeContainers && (type.isArray() || COLLECTIONS.contains(type) || MAPS.contains(type))) {
+            writeContainer(out, type, value);
+        } else {
+            out.write(SERIALIZED);
+            out.writeObject(value);
+        }
+    }
+
+    /**
+     * @throws ClassNotFoundException once the value is fully read, if one of its classes is not visible
+     */
+    public Object readObject(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final Object value = readValue(in);
+        throwMissing();
+        return value;
+    }
+
+    private void writeContainer(final ObjectOutput out, final Class<?> type, final Object value) throws IOException {
+        final Integer reference = writtenReferences.get(value);
+        if (reference != null) {
+            out.write(REFERENCE);
+            writeVarInt(out, reference);
+            return;
+        }
+        writtenReferences.put(value, writtenReferences.size());
+
+        if (type.isArray()) {
+            out.write(ARRAY);
+            final Class<?> component = type.getComponentType();
+            writeClass(out, component);
+
+            final int length = Array.getLength(value);
+            writeVarInt(out, length);
+
+            if (component.isPrimitive()) {
+                writePrimitives(out, component, value, length);
+            } else {
+                for (final Object item : (Object[]) value) {
+                    writeObject(out, item);
+                }
+            }
+        } else if (value instanceof Collection) {
+            out.write(COLLECTION);
+            writeClass(out, type);
+
+            final Collection<?> collection = (Collection<?>) value;
+            writeVarInt(out, collection.size());
+            for (final Object item : collection) {
+                writeObject(out, item);
+            }
+        } else {
+            out.write(MAP);
+            writeClass(out, type);
+
+            final Map<?, ?> map = (Map<?, ?>) value;
+            writeVarInt(out, map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                writeObject(out, entry.getKey());
+                writeObject(out, entry.getValue());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readValue(final ObjectInput in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case CHAR:
+                return in.readChar();
+            case INT:
+                return unZigZag(readVarInt(in));
+            case LONG:
+                return unZigZag(readVarLong(in));
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case CLASS:
+                return readClassEntry(in);
+            case ENUM: {
+                final Class<?> type = readClassEntry(in);
+                final String name = readString(in);
+                if (type == null) {
+                    return null;
+                }
+                if (!type.isEnum()) {
+                    throw new IOException("Not an enum " + type.getName());
+                }
+                try {
+                    return Enum.valueOf(type.asSubclass(Enum.class), name);
+                } catch (final IllegalArgumentException e) {
+                    throw new IOException("Unknown constant " + type.getName() + "." + name, e);
+                }
+            }
+            case ARRAY:
+                return readArray(in);
+            case COLLECTION: {
+                final Collection<Object> collection = (Collection<Object>) newContainer(readClassEntry(in), COLLECTIONS);
+                readReferences.add(collection);
+                final int size = readSize(in);
+                for (int i = 0; i < size; i++) {
+                    collection.add(readValue(in));
+                }
+                return collection;
+            }
+            case MAP: {
+                final Map<Object, Object> map = (Map<Object, Object>) newContainer(readClassEntry(in), MAPS);
+                readReferences.add(map);
+                final int size = readSize(in);
+                for (int i = 0; i < size; i++) {
+                    final Object key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            case REFERENCE: {
+                final int index = readVarInt(in);
+                if (index < 0 || index >= readReferences.size()) {
+                    throw new IOException("Invalid reference " + index);
+                }
+                return readReferences.get(index);
+            }
+            case SERIALIZED:
+                try {
+                    return in.readObject();
+                } catch (final ClassNotFoundException e) {
+                    // the serialization stream consumed the object anyway
+                    missing(e);
+                    return null;
+                }
+            default:
+                throw new IOException("Unknown compact data type: " + tag);
+        }
+    }
+
+    private Object readArray(final ObjectInput in) throws IOException {
+        Class<?> component = readClassEntry(in);
+        if (component == null) {
+            // keep on reading the elements even if the class is not visible
+            component = Object.class;
+        }
+
+        final int length = readSize(in);
+
+        if (component.isPrimitive()) {
+            // nothing read in between can reference the array, its slot is filled once complete
+            final int reference = readReferences.size();
+            readReferences.add(null);
+            final Object array = readPrimitives(in, component, length);
+            readReferences.set(reference, array);
+            return array;
+        }
+
+        final Object[] objects = (Object[]) Array.newInstance(component, length);
+        readReferences.add(objects);
+        for (int i = 0; i < length; i++) {
+            final Object item = readValue(in);
+            if (item != null && !component.isInstance(item)) {
+                throw new IOException("Cannot store " + item.getClass().getName() + " in " + component.getName() + "[]");
+            }
+            objects[i] = item;
+        }
+        return objects;
+    }
+
+    private static Object newContainer(final Class<?> type, final List<Class<?>> allowed) throws IOException {
+        if (!allowed.contains(type)) {
+            throw new IOException("Unsupported compact container " + type);
+        }
+        try {
+            return type.newInstance();
+        } catch (final Exception e) {
+            throw new IOException("Cannot create " + type.getName(), e);
+        }
+    }
+
+    private static void writePrimitives(final ObjectOutput out, final Class<?> component, final Object array, final int length) throws IOException {
+        if (component == byte.class) {
+            out.write((byte[]) array);
+        } else if (component == int.class) {
+            for (final int i : (int[]) array) {
+                writeVarInt(out, zigZag(i));
+            }
+        } else if (component == long.class) {
+            for (final long l : (long[]) array) {
+                writeVarLong(out, zigZag(l));
+            }
+        } else if (component == boolean.class) {
+            for (final boolean b : (boolean[]) array) {
+                out.writeBoolean(b);
+            }
+        } else if (component == char.class) {
+            for (final char c : (char[]) array) {
+                out.writeChar(c);
+            }
+        } else if (component == short.class) {
+            for (final short s : (short[]) array) {
+                out.writeShort(s);
+            }
+        } else if (component == float.class) {
+            for (final float f : (float[]) array) {
+                out.writeFloat(f);
+            }
+        } else if (component == double.class) {
+            for (final double d : (double[]) array) {
+                out.writeDouble(d);
+            }
+        } else {
+            throw new IOException("Unkown primitive type: " + component + "[" + length + "]");
+        }
+    }
+
+    /**
+     * Allocated as the elements arrive, up to the given length.
+     */
+    private static Object readPrimitives(final ObjectInput in, final Class<?> component, final int length) throws IOException {
+        Object array = Array.newInstance(component, Math.min(length, CHUNK));
+        int read = 0;
+        while (read < length) {
+            final int capacity = Array.getLength(array);
+            if (read == capacity) {
+                final Object grown = Array.newInstance(component, (int) Math.min(length, 2L * capacity));
+                System.arraycopy(array, 0, grown, 0, read);
+                array = grown;
+            }
+
+            final int count = Array.getLength(array) - read;
+            readPrimitives(in, component, array, read, count);
+            read += count;
+        }
+        return array;
+    }
+
+    private static void readPrimitives(final ObjectInput in, final Class<?> component, final Object array, final int offset, final int count) throws IOException {
+        final int end = offset + count;
+        if (component == byte.class) {
+            in.readFully((byte[]) array, offset, count);
+        } else if (component == int.class) {
+            final int[] ints = (int[]) array;
+            for (int i = offset; i < end; i++) {
+                ints[i] = unZigZag(readVarInt(in));
+            }
+        } else if (component == long.class) {
+            final long[] longs = (long[]) array;
+            for (int i = offset; i < end; i++) {
+                longs[i] = unZigZag(readVarLong(in));
+            }
+        } else if (component == boolean.class) {
+            final boolean[] booleans = (boolean[]) array;
+            for (int i = offset; i < end; i++) {
+                booleans[i] = in.readBoolean();
+            }
+        } else if (component == char.class) {
+            final char[] chars = (char[]) array;
+            for (int i = offset; i < end; i++) {
+                chars[i] = in.readChar();
+            }
+        } else if (component == short.class) {
+            final short[] shorts = (short[]) array;
+            for (int i = offset; i < end; i++) {
+                shorts[i] = in.readShort();
+            }
+        } else if (component == float.class) {
+            final float[] floats = (float[]) array;
+            for (int i = offset; i < end; i++) {
+                floats[i] = in.readFloat();
+            }
+        } else if (component == double.class) {
+            final double[] doubles = (double[]) array;
+            for (int i = offset; i < end; i++) {
+                doubles[i] = in.readDouble();
+            }
+        } else {
+            throw new IOException("Unkown primitive type: " + component);
+        }
+    }
+
+    /**
+     * @return the class or null if it can't be loaded, the failure is kept until the end of the value
+     */
+    private Class<?> readClassEntry(final ObjectInput in) throws IOException {
+        final int index = readVarInt(in);
+        if (index == 0) {
+            return null;
+        }
+
+        if (index == readClasses.size() + 1) {
+            final String name = readString(in);
+            Class<?> type;
+            try {
+                type = loadClass(name);
+            } catch (final ClassNotFoundException e) {
+                missing(e);
+                type = null;
+            }
+            readClasses.add(type);
+            readClassNames.add(name);
+            return type;
+        }
+
+        if (index < 1 || index > readClasses.size()) {
+            throw new IOException("Invalid class index " + index);
+        }
+
+        final Class<?> type = readClasses.get(index - 1);
+        if (type == null) {
+            missing(new ClassNotFoundException(readClassNames.get(index - 1)));
+        }
+        return type;
+    }
+
+    private static Class<?> loadClass(final String name) throws IOException, ClassNotFoundException {
+        final Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null) {
+            return primitive;
+        }
+
+        // same checks as the serialized values
+        return EjbObjectInputStream.resolve(name, Thread.currentThread().getContextClassLoader());
+    }
+
+    private void missing(final ClassNotFoundException e) {
+        if (missing == null) {
+            missing = e;
+        }
+    }
+
+    private void throwMissing() throws ClassNotFoundException {
+        final ClassNotFoundException e = missing;
+        if (e != null) {
+            missing = null;
+            throw e;
+        }
+    }
+
+    private static void writeString(final ObjectOutput out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ObjectInput in) throws IOException {
+        final int size = readSize(in);
+        final byte[] bytes;
+        if (size <= CHUNK) {
+            bytes = new byte[size];
+            in.readFully(bytes);
+        } else {
+            bytes = (byte[]) readPrimitives(in, byte.class, size);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private static int readSize(final ObjectInput in) throws IOException {
+        final int size = readVarInt(in);
+        if (size < 0 || size > maxLength) {
+            throw new IOException("Invalid size " + size + ", the maximum is " + maxLength + " (" + MAX_LENGTH + ")");
+        }
+        return size;
+    }
+
+    private static int zigZag(final int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(final int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(final ObjectOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(final ObjectInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length int");
+    }
+
+    private static void writeVarLong(final ObjectOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(final ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length long");
+    }
+}
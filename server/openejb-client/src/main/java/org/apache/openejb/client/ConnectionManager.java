@@ -55,6 +55,8 @@ public class ConnectionManager {
         registerStrategy("sticky+round", new StickyConnectionStrategy(new RoundRobinConnectionStrategy()));
         registerStrategy("random", new RandomConnectionStrategy());
         registerStrategy("roundrobin", new RoundRobinConnectionStrategy());
+        registerStrategy("latency", new LatencyAwareConnectionStrategy());
+        registerStrategy("sticky+latency", new StickyConnectionStrategy(new LatencyAwareConnectionStrategy()));
         registerStrategy("round-robin", strategies.get("roundrobin"));
         registerStrategy("default", strategies.get("sticky"));
     }
@@ -121,6 +123,14 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * @return true if the connections to this uri are multiplexed, as far as is known before connecting
+     */
+    static boolean isMultiplexed(final URI uri) {
+        final ConnectionFactory factory = factories.get(uri.getScheme());
+        return factory instanceof SocketConnectionFactory && ((SocketConnectionFactory) factory).isMultiplexed(uri);
+    }
+
     public static void registerFactory(final String scheme, final ConnectionFactory factory) {
         factories.register(scheme, factory);
         Client.fireEvent(new ConnectionFactoryAdded(scheme, factory));
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
@@ -204,7 +205,7 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
             }
 
         } catch (SystemException e) {
-            invalidateAllHandlers(getRegistryId());
+            invalidate(e);
             throw convertException(getCause(e), m);
             /*
             * Application exceptions must be reported dirctly to the client. They
@@ -217,7 +218,7 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
             * problem with the container system.
             */
         } catch (SystemError se) {
-            invalidateReference();
+            invalidate(se);
             if (remote) {
                 throw new RemoteException("Container has suffered a SystemException", getCause(se));
             } else {
@@ -238,6 +239,26 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
         }
     }
 
+    /**
+     * Forgets what a failure of the container makes stale, for the synchronous
+     * and the asynchronous invocations alike.
+     *
+     * @param e the failure of an invocation
+     */
+    private void invalidate(final Throwable e) {
+        if (e instanceof SystemException) {
+            invalidateAllHandlers(getRegistryId());
+        } else if (e instanceof SystemError) {
+            invalidateReference();
+
+            // the bean may be gone or redeployed, don't hand out its cached lookups
+            final LookupCache cache = LookupCache.getDefault();
+            if (cache != null) {
+                cache.invalidate(ejb.deploymentID);
+            }
+        }
+    }
+
     protected Object getEJBHome(final Method method, final Object[] args, final Object proxy) throws Throwable {
         if (ejbHome == null) {
             ejbHome = EJBHomeHandler.createEJBHomeHandler(executor, ejb, server, client, authenticationInfo).createEJBHomeProxy();
@@ -261,9 +282,16 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
     protected Object businessMethod(final Method method, final Object[] args, final Object proxy) throws Throwable {
 
         if (ejb.isAsynchronousMethod(method)) {
+            final String requestId = UUID.randomUUID().toString();
+            final EJBResponse response = new EJBResponse();
+
+            // on a multiplexed connection no thread waits for the response
+            final Future<Object> future = _asynchronousBusinessMethod(method, args, requestId, response);
+            if (future != null) {
+                return future;
+            }
+
             try {
-                final String requestId = UUID.randomUUID().toString();
-                final EJBResponse response = new EJBResponse();
                 final AsynchronousCall asynchronousCall = new AsynchronousCall(method, args, proxy, requestId, response);
                 if (executor == null) {
                     executor = JNDIContext.newExecutor(-1, null);
@@ -297,6 +325,42 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
         return _handleBusinessMethodResponse(res);
     }
 
+    private Future<Object> _asynchronousBusinessMethod(final Method method, final Object[] args, final String requestId, final EJBResponse response) throws Throwable {
+        final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey, client.getSerializer());
+
+        final EJBRequest.Body body = req.getBody();
+        body.setRequestId(requestId);
+        body.setAuthentication(this.authenticationInfo);
+        req.setClientIdentity(getClientIdentity());
+        req.setServerHash(server.buildHash());
+
+        final ResponseFuture future = new ResponseFuture(requestId);
+        if (!Client.requestAsynchronously(req, response, server, future)) {
+            return null;
+        }
+        return future;
+    }
+
+    private void cancel(final String requestId, final boolean mayInterruptIfRunning) {
+        final EJBRequest req = new EJBRequest(RequestMethodCode.FUTURE_CANCEL,
+            ejb,
+            CANCEL,
+            new Object[]{Boolean.valueOf(mayInterruptIfRunning)},
+            primaryKey,
+            client.getSerializer());
+        req.getBody().setRequestId(requestId);
+        try {
+            final EJBResponse res = request(req);
+            if (res.getResponseCode() != ResponseCodes.EJB_OK) {
+                //TODO how do we notify the user that we fail to configure the value ?
+                Logger.getLogger(this.getClass().getName()).info("Unexpected response on cancel: " + res);
+            }
+        } catch (Exception e) {
+            //TODO how to handle
+            Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Unexpected error on cancel", e);
+        }
+    }
+
     private Object _handleBusinessMethodResponse(final EJBResponse res) throws Throwable {
         switch (res.getResponseCode()) {
             case ResponseCodes.EJB_ERROR:
@@ -346,8 +410,10 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
             try {
                 return _businessMethod(method, args, proxy, requestId, response);
             } catch (Exception e) {
+                invalidate(e);
                 throw e;
             } catch (Throwable error) {
+                invalidate(error);
                 throw new SystemException(error);
             }
         }
@@ -406,24 +472,7 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
                     if (lastMayInterruptIfRunningValue.getAndSet(mayInterruptIfRunning) == mayInterruptIfRunning) {
                         return false;
                     }
-                    final EJBRequest req = new EJBRequest(RequestMethodCode.FUTURE_CANCEL,
-                        ejb,
-                        CANCEL,
-                        new Object[]{Boolean.valueOf(mayInterruptIfRunning)},
-                        primaryKey,
-                        client.getSerializer());
-                    req.getBody().setRequestId(requestId);
-                    try {
-                        final EJBResponse res = request(req);
-                        if (res.getResponseCode() != ResponseCodes.EJB_OK) {
-                            //TODO how do we notify the user that we fail to configure the value ?
-                            Logger.getLogger(this.getClass().getName()).info("Unexpected response on cancel: " + res);
-                        }
-                    } catch (Exception e) {
-                        //TODO how to handle
-                        Logger.getLogger(this.getClass().getName()).log(Level.INFO, "Unexpected error on cancel", e);
-                        return false;
-                    }
+                    EJBObjectHandler.this.cancel(requestId, mayInterruptIfRunning);
                 }
                 return false;
             }
@@ -458,4 +507,92 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
             return target.isDone();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Result of an asynchronous method sent on a multiplexed connection,
+     * completed by the thread reading the responses.
+     */
+    private class ResponseFuture implements Future<Object>, Client.ResponseCallback {
+
+        private final String requestId;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Object value;
+
+        private volatile Throwable error;
+
+        private final AtomicBoolean lastMayInterruptIfRunningValue = new AtomicBoolean(false);
+
+        public ResponseFuture(final String requestId) {
+            this.requestId = requestId;
+        }
+
+        @Override
+        public void completed(final Response response) {
+            final EJBResponse res = (EJBResponse) response;
+            try {
+                if (null != res.getServer()) {
+                    server.merge(res.getServer());
+                }
+                value = _handleBusinessMethodResponse(res);
+            } catch (Exception e) {
+                invalidate(e);
+                error = e;
+            } catch (Throwable e) {
+                invalidate(e);
+                error = new SystemException(e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void failed(final Throwable e) {
+            error = e;
+            done.countDown();
+        }
+
+        @SuppressWarnings("UnnecessaryBoxing")
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            // the invocation is already dispatched, see FutureAdapter
+            if (!isDone() && lastMayInterruptIfRunningValue.getAndSet(mayInterruptIfRunning) != mayInterruptIfRunning) {
+                EJBObjectHandler.this.cancel(requestId, mayInterruptIfRunning);
+            }
+            return false;
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            done.await();
+            return result();
+        }
+
+        @Override
+        public Object get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Object result() throws ExecutionException {
+            final Throwable e = error;
+            if (e != null) {
+                throw new ExecutionException(e);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+    }
+}
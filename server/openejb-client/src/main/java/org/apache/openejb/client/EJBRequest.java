@@ -435,10 +435,17 @@ public class EJBRequest implements ClusterableRequest {
             primaryKey = null;
             methodName = null;
             methodInstance = null;
+            final CompactFormat format = isCompact() ? new CompactFormat() : null;
             try {
-                requestId = (String) in.readObject();
-                primaryKey = in.readObject();
-                interfaceClass = (Class) in.readObject();
+                if (format != null) {
+                    requestId = (String) format.readObject(in);
+                    primaryKey = format.readObject(in);
+                    interfaceClass = format.readClass(in);
+                } else {
+                    requestId = (String) in.readObject();
+                    primaryKey = in.readObject();
+                    interfaceClass = (Class) in.readObject();
+                }
             } catch (ClassNotFoundException cnfe) {
                 result = cnfe;
             }
@@ -446,7 +453,7 @@ public class EJBRequest implements ClusterableRequest {
             methodName = in.readUTF();
 
             try {
-                readMethodParameters(in);
+                readMethodParameters(in, format);
             } catch (ClassNotFoundException cnfe) {
                 if (result == null) {
                     result = cnfe;
@@ -483,15 +490,27 @@ public class EJBRequest implements ClusterableRequest {
 
             out.writeByte(this.version);
 
-            out.writeObject(requestId);
-
-            out.writeObject(primaryKey);
+            final CompactFormat format = isCompact() ? new CompactFormat() : null;
+            if (format != null) {
+                format.scan(primaryKey);
+                if (methodParameters != null) {
+                    for (final Object parameter : methodParameters) {
+                        format.scan(parameter);
+                    }
+                }
 
-            out.writeObject(interfaceClass);
+                format.writeObject(out, requestId);
+                format.writeObject(out, primaryKey);
+                format.writeClass(out, interfaceClass);
+            } else {
+                out.writeObject(requestId);
+                out.writeObject(primaryKey);
+                out.writeObject(interfaceClass);
+            }
 
             out.writeUTF(methodName);
 
-            writeMethodParameters(out, methodParamTypes, methodParameters);
+            writeMethodParameters(out, methodParamTypes, methodParameters, format);
 
             if (null == metaData || metaData.isAtLeast(4, 6)) {
                 out.writeObject(authentication);
@@ -500,10 +519,27 @@ public class EJBRequest implements ClusterableRequest {
             out.flush();
         }
 
+        /**
+         * Since OEJP 4.8 the values are written with the {@link CompactFormat}
+         */
+        private boolean isCompact() {
+            return null == metaData || metaData.isAtLeast(4, 8);
+        }
+
         /**
          * Changes to this method must observe the optional {@link #metaData} version
          */
         protected void writeMethodParameters(final ObjectOutput out, final Class[] types, final Object[] args) throws IOException {
+            final CompactFormat format = isCompact() ? new CompactFormat() : null;
+            if (format != null && args != null) {
+                for (final Object arg : args) {
+                    format.scan(arg);
+                }
+            }
+            writeMethodParameters(out, types, args, format);
+        }
+
+        private void writeMethodParameters(final ObjectOutput out, final Class[] types, final Object[] args, final CompactFormat format) throws IOException {
 
             out.writeByte(types.length);
 
@@ -565,9 +601,15 @@ public class EJBRequest implements ClusterableRequest {
                         tie.orb(orb);
                         obj = PortableRemoteObject.toStub((Remote) obj);
                     }
-                    out.write(OBJECT);
-                    out.writeObject(clazz);
-                    out.writeObject(obj);
+                    if (format != null) {
+                        out.write(COMPACT);
+                        format.writeClass(out, clazz);
+                        format.writeObject(out, obj);
+                    } else {
+                        out.write(OBJECT);
+                        out.writeObject(clazz);
+                        out.writeObject(obj);
+                    }
                 }
             }
         }
@@ -604,6 +646,10 @@ public class EJBRequest implements ClusterableRequest {
          * Changes to this method must observe the optional {@link #metaData} version
          */
         protected void readMethodParameters(final ObjectInput in) throws IOException, ClassNotFoundException {
+            readMethodParameters(in, isCompact() ? new CompactFormat() : null);
+        }
+
+        private void readMethodParameters(final ObjectInput in, final CompactFormat format) throws IOException, ClassNotFoundException {
             final int length = in.read();
 
             if (length < 1) {
@@ -671,6 +717,19 @@ public class EJBRequest implements ClusterableRequest {
                             stub.connect(orb);
                         }
                         break;
+
+                    case COMPACT:
+                        if (format == null) {
+                            throw new IOException("Compact data type sent with protocol " + metaData.getSpec());
+                        }
+                        clazz = format.readClass(in);
+                        obj = format.readObject(in);
+                        if (obj instanceof Stub) {
+                            final Stub stub = (Stub) obj;
+                            final ORB orb = getORB();
+                            stub.connect(orb);
+                        }
+                        break;
                     default:
                         throw new IOException("Unkown data type: " + type);
                 }
@@ -692,6 +751,7 @@ public class EJBRequest implements ClusterableRequest {
         private static final int CHAR = 6;
         private static final int BOOLEAN = 7;
         private static final int OBJECT = 8;
+        private static final int COMPACT = 9;
 
         @Override
         public String toString() {
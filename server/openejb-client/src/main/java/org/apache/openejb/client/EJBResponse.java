@@ -143,7 +143,11 @@ public class EJBResponse implements ClusterableResponse {
 
         responseCode = in.readByte();
 
-        result = in.readObject();
+        if (isCompact()) {
+            result = new CompactFormat().readObject(in);
+        } else {
+            result = in.readObject();
+        }
 
         if (version >= 2) {
 
@@ -183,7 +187,13 @@ public class EJBResponse implements ClusterableResponse {
         }
 
         start(Time.SERIALIZATION);
-        out.writeObject(result);
+        if (isCompact()) {
+            final CompactFormat format = new CompactFormat();
+            format.scan(result);
+            format.writeObject(out, result);
+        } else {
+            out.writeObject(result);
+        }
         stop(Time.SERIALIZATION);
         stop(Time.TOTAL);
 
@@ -197,6 +207,13 @@ public class EJBResponse implements ClusterableResponse {
         }
     }
 
+    /**
+     * Since OEJP 4.8 the result is written with the {@link CompactFormat}
+     */
+    private boolean isCompact() {
+        return null == metaData || metaData.isAtLeast(4, 8);
+    }
+
     public static enum Time {
         TOTAL,
         CONTAINER,
@@ -18,23 +18,44 @@ package org.apache.openejb.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
 import java.lang.reflect.Proxy;
 
 /**
+ * Classes sent by the other side are checked against the comma separated package or class
+ * name prefixes of tomee.serialization.class.blacklist (a few known gadget packages by default,
+ * "-" for none) and, if set, tomee.serialization.class.whitelist before being loaded.
+ *
  * @version $Rev$ $Date$
  */
 public class EjbObjectInputStream extends ObjectInputStream {
 
+    public static final String WHITELIST = "tomee.serialization.class.whitelist";
+    public static final String BLACKLIST = "tomee.serialization.class.blacklist";
+
+    private static final String[] whitelist = prefixes(System.getProperty(WHITELIST));
+    private static final String[] blacklist = prefixes(System.getProperty(BLACKLIST,
+        "org.codehaus.groovy.runtime.,org.apache.commons.collections.functors.,org.apache.commons.collections4.functors.,"
+            + "org.apache.xalan,com.sun.org.apache.xalan,org.springframework.beans.factory.,java.lang.Process,java.lang.Runtime"));
+
     public EjbObjectInputStream(final InputStream in) throws IOException {
         super(in);
     }
 
     @Override
     protected Class<?> resolveClass(final ObjectStreamClass classDesc) throws IOException, ClassNotFoundException {
-        final String n = classDesc.getName();
-        final ClassLoader classloader = getClassloader();
+        return resolve(classDesc.getName(), getClassloader());
+    }
+
+    /**
+     * The resolution of the serialized classes, shared with the compact format of the requests.
+     *
+     * @throws InvalidClassException if the class is not allowed
+     */
+    static Class<?> resolve(final String n, final ClassLoader classloader) throws InvalidClassException, ClassNotFoundException {
+        check(n);
         try {
             return Class.forName(n, false, classloader);
         } catch (ClassNotFoundException e) {
@@ -73,6 +94,7 @@ public class EjbObjectInputStream extends ObjectInputStream {
     protected Class resolveProxyClass(final String[] interfaces) throws IOException, ClassNotFoundException {
         final Class[] cinterfaces = new Class[interfaces.length];
         for (int i = 0; i < interfaces.length; i++) {
+            check(interfaces[i]);
             cinterfaces[i] = getClassloader().loadClass(interfaces[i]);
         }
 
@@ -87,4 +109,41 @@ public class EjbObjectInputStream extends ObjectInputStream {
         return Thread.currentThread().getContextClassLoader();
     }
 
+    private static void check(final String name) throws InvalidClassException {
+        // arrays are checked on their element class
+        String className = name;
+        int dimensions = 0;
+        while (dimensions < className.length() && className.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions > 0) {
+            className = className.endsWith(";") ? className.substring(dimensions + 1, className.length() - 1) : "";
+        }
+
+        if (matches(className, blacklist) || whitelist.length > 0 && !className.isEmpty() && !matches(className, whitelist)) {
+            throw new InvalidClassException(name, "class not allowed, see " + BLACKLIST + " and " + WHITELIST);
+        }
+    }
+
+    private static boolean matches(final String name, final String[] prefixes) {
+        for (final String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] prefixes(final String value) {
+        if (value == null || value.trim().isEmpty() || "-".equals(value.trim())) {
+            return new String[0];
+        }
+
+        final String[] prefixes = value.split(" *, *");
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = prefixes[i].trim();
+        }
+        return prefixes;
+    }
+
 }
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the frames of a multiplexed connection, used when both sides speak OEJP 4.9.
+ * <p/>
+ * Frame = request-id (int) length (int) codec (byte) [uncompressed-length (int)] data
+ * <p/>
+ * The length covers everything after it.  Each side picks the codec of the frames it sends
+ * and reads whatever codec the other side used, so nothing else has to be negotiated.
+ * Payloads under the threshold are sent as they are, and a connection which keeps sending
+ * payloads that don't compress stops trying for a while.
+ * <p/>
+ * The lengths read, compressed or not, are bounded by openejb.client.max-frame (64M), a frame
+ * over it fails the connection before anything is allocated.
+ * <p/>
+ * One instance per connection: writes and close are done under the write lock of the
+ * connection and reads by its reading thread.
+ *
+ * @version $Rev$ $Date$
+ */
+public class FrameCompression {
+
+    public static final byte NONE = 0;
+    public static final byte DEFLATE = 1;
+    public static final byte LZF = 2;
+
+    public static final String CODEC = "openejb.client.compression";
+    public static final String LEVEL = "openejb.client.compression.level";
+    public static final String THRESHOLD = "openejb.client.compression.threshold";
+    public static final String MAX_FRAME = "openejb.client.max-frame";
+
+    private static final int maxFrame = Integer.getInteger(MAX_FRAME, 64 * 1024 * 1024);
+
+    // after that many frames compressed by less than 10% the next ones are sent as they are
+    private static final int MAX_MISSES = 8;
+    private static final int BACK_OFF = 64;
+
+    private final byte codec;
+    private final int level;
+    private final int threshold;
+    private final Statistics statistics;
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private Lzf lzf;
+    private byte[] buffer = new byte[0];
+    private int misses;
+    private int skip;
+    private boolean closed;
+
+    public FrameCompression(final String codec, final int level, final int threshold, final Statistics statistics) {
+        this.codec = codec(codec);
+        this.level = level;
+        this.threshold = threshold;
+        this.statistics = statistics;
+    }
+
+    public static FrameCompression fromSystemProperties(final Statistics statistics) {
+        return new FrameCompression(
+            System.getProperty(CODEC, "none"),
+            Integer.parseInt(System.getProperty(LEVEL, Integer.toString(Deflater.BEST_SPEED))),
+            Integer.parseInt(System.getProperty(THRESHOLD, "1024")),
+            statistics);
+    }
+
+    public static byte codec(final String name) {
+        if (name == null || "none".equalsIgnoreCase(name) || "false".equalsIgnoreCase(name)) {
+            return NONE;
+        }
+        if ("deflate".equalsIgnoreCase(name) || "true".equalsIgnoreCase(name)) {
+            return DEFLATE;
+        }
+        if ("lzf".equalsIgnoreCase(name) || "lz".equalsIgnoreCase(name)) {
+            return LZF;
+        }
+        throw new IllegalArgumentException("Unknown compression " + name + ", use none, deflate or lzf");
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    public void write(final DataOutputStream out, final int id, final byte[] payload, final int length) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+
+        final int compressed = compress(payload, length);
+        statistics.sent(length, compressed < 0 ? length : compressed + 4);
+
+        out.writeInt(id);
+        if (compressed < 0) {
+            out.writeInt(length + 1);
+            out.writeByte(NONE);
+            out.write(payload, 0, length);
+        } else {
+            out.writeInt(compressed + 5);
+            out.writeByte(codec);
+            out.writeInt(length);
+            out.write(buffer, 0, compressed);
+        }
+    }
+
+    /**
+     * Reads what follows the request id of a frame.
+     */
+    public byte[] read(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 1 || length - 1 > maxFrame) {
+            throw new IOException("Invalid frame length " + length + ", the maximum is " + maxFrame + " (" + MAX_FRAME + ")");
+        }
+
+        final byte frameCodec = in.readByte();
+        if (frameCodec == NONE) {
+            final byte[] payload = new byte[length - 1];
+            in.readFully(payload);
+            statistics.received(payload.length, payload.length);
+            return payload;
+        }
+
+        final int size = in.readInt();
+        if (size < 0 || size > maxFrame || length < 5) {
+            throw new IOException("Invalid compressed frame " + length + "/" + size + ", the maximum is " + maxFrame + " (" + MAX_FRAME + ")");
+        }
+        final byte[] data = new byte[length - 5];
+        in.readFully(data);
+
+        final byte[] payload = new byte[size];
+        if (frameCodec == DEFLATE) {
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            inflater.reset();
+            inflater.setInput(data);
+            try {
+                int read = 0;
+                while (read < size && !inflater.finished()) {
+                    final int n = inflater.inflate(payload, read, size - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != size) {
+                    throw new IOException("Expected " + size + " bytes but inflated " + read);
+                }
+            } catch (final DataFormatException e) {
+                throw new IOException("Corrupted compressed frame", e);
+            }
+        } else if (frameCodec == LZF) {
+            Lzf.decompress(data, 0, data.length, payload);
+        } else {
+            throw new IOException("Unknown frame codec " + frameCodec);
+        }
+
+        statistics.received(size, length - 1);
+        return payload;
+    }
+
+    /**
+     * Reads what follows the request id of a frame of a connection without compression (before OEJP 4.9).
+     */
+    public static byte[] readUncompressed(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > maxFrame) {
+            throw new IOException("Invalid frame length " + length + ", the maximum is " + maxFrame + " (" + MAX_FRAME + ")");
+        }
+
+        final byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * @return the size of the compressed payload in the buffer or -1 to send it as it is
+     */
+    private int compress(final byte[] payload, final int length) {
+        if (codec == NONE || length < threshold) {
+            return -1;
+        }
+        if (skip > 0) {
+            skip--;
+            return -1;
+        }
+
+        // not worth it if it doesn't save at least 10%
+        final int max = length - length / 10;
+        if (buffer.length < length) {
+            buffer = new byte[length];
+        }
+
+        final int compressed;
+        if (codec == DEFLATE) {
+            compressed = deflate(payload, length, max);
+        } else {
+            if (lzf == null) {
+                lzf = new Lzf();
+            }
+            compressed = lzf.compress(payload, length, buffer, max);
+        }
+
+        if (compressed < 0) {
+            if (++misses >= MAX_MISSES) {
+                misses = 0;
+                skip = BACK_OFF;
+            }
+            return -1;
+        }
+        misses = 0;
+        return compressed;
+    }
+
+    private int deflate(final byte[] payload, final int length, final int max) {
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        deflater.reset();
+        deflater.setInput(payload, 0, length);
+        deflater.finish();
+
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size >= max) {
+                return -1;
+            }
+            size += deflater.deflate(buffer, size, max - size);
+        }
+        return size;
+    }
+
+    public void close() {
+        closed = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    public static class Statistics {
+
+        private final AtomicLong sentFrames = new AtomicLong();
+        private final AtomicLong sentBytes = new AtomicLong();
+        private final AtomicLong sentWireBytes = new AtomicLong();
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicLong receivedWireBytes = new AtomicLong();
+
+        void sent(final long bytes, final long wire) {
+            sentFrames.incrementAndGet();
+            sentBytes.addAndGet(bytes);
+            sentWireBytes.addAndGet(wire);
+        }
+
+        void received(final long bytes, final long wire) {
+            receivedBytes.addAndGet(bytes);
+            receivedWireBytes.addAndGet(wire);
+        }
+
+        public long getSentFrames() {
+            return sentFrames.get();
+        }
+
+        public long getSentBytes() {
+            return sentBytes.get();
+        }
+
+        public long getSentWireBytes() {
+            return sentWireBytes.get();
+        }
+
+        public long getReceivedBytes() {
+            return receivedBytes.get();
+        }
+
+        public long getReceivedWireBytes() {
+            return receivedWireBytes.get();
+        }
+
+        /**
+         * @return the bytes the compression kept off the network, both ways
+         */
+        public long getSavedBytes() {
+            return sentBytes.get() - sentWireBytes.get() + receivedBytes.get() - receivedWireBytes.get();
+        }
+
+        @Override
+        public String toString() {
+            return "sent=" + sentBytes.get() + "/" + sentWireBytes.get() +
+                ", received=" + receivedBytes.get() + "/" + receivedWireBytes.get() +
+                ", saved=" + getSavedBytes();
+        }
+    }
+}
@@ -389,6 +389,15 @@ public class JNDIContext implements InitialContextFactory, Context {
             return getDefaultOrb();
         }
 
+        final LookupCache cache = LookupCache.getDefault();
+        final String cacheKey = cache != null ? LookupCache.key(server.getLocation(), moduleId, name) : null;
+        if (cache != null) {
+            final EJBMetaDataImpl cached = cache.get(cacheKey, Client.getContext(server).getClusterMetaData().getVersion());
+            if (cached != null) {
+                return createBusinessObject(cached);
+            }
+        }
+
         final JNDIRequest req = new JNDIRequest();
         req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
         req.setRequestString(name);
@@ -410,6 +419,9 @@ public class JNDIContext implements InitialContextFactory, Context {
                 return createEJBHomeProxy((EJBMetaDataImpl) res.getResult());
 
             case ResponseCodes.JNDI_BUSINESS_OBJECT:
+                if (cache != null) {
+                    cache.put(cacheKey, Client.getContext(server).getClusterMetaData().getVersion(), (EJBMetaDataImpl) res.getResult());
+                }
                 return createBusinessObject(res.getResult());
 
             case ResponseCodes.JNDI_OK:
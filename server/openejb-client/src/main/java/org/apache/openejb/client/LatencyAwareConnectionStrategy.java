@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.LatencyAwareFailoverSelection;
+import org.apache.openejb.client.event.ServerEjected;
+import org.apache.openejb.client.event.ServerRecovered;
+import org.apache.openejb.client.event.ServerScores;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selects the server with the best expected response time, the moving average of its
+ * response time multiplied by the number of requests in flight plus one.
+ * <p/>
+ * By default two servers are picked at random and the best one is used (power of two choices),
+ * which avoids sending all the clients to the same server.  With
+ * openejb.client.latency.mode=least-outstanding the server with the fewest requests in flight
+ * is always used.  The other servers come next in the order of their score if the connection fails.
+ * <p/>
+ * A server failing openejb.client.latency.eject-after times in a row (3) is not selected for
+ * openejb.client.latency.eject-time milliseconds (30000), unless no other server is left.
+ * <p/>
+ * The scores are fed by every request of the client and fired in a {@link ServerScores} event
+ * every openejb.client.latency.report-interval milliseconds (10000, 0 to disable).
+ *
+ * @version $Rev$ $Date$
+ */
+public class LatencyAwareConnectionStrategy extends AbstractConnectionStrategy {
+
+    public static final String MODE = "openejb.client.latency.mode";
+    public static final String ALPHA = "openejb.client.latency.alpha";
+    public static final String EJECT_AFTER = "openejb.client.latency.eject-after";
+    public static final String EJECT_TIME = "openejb.client.latency.eject-time";
+    public static final String REPORT_INTERVAL = "openejb.client.latency.report-interval";
+
+    private static final ConcurrentMap<URI, ServerScore> scores = new ConcurrentHashMap<URI, ServerScore>();
+    private static final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+
+    private static final double alpha = Double.parseDouble(System.getProperty(ALPHA, "0.3"));
+    private static final int ejectAfter = Integer.parseInt(System.getProperty(EJECT_AFTER, "3"));
+    private static final long ejectTime = Long.parseLong(System.getProperty(EJECT_TIME, "30000"));
+    private static final long reportInterval = Long.parseLong(System.getProperty(REPORT_INTERVAL, "10000"));
+
+    private final boolean leastOutstanding;
+
+    public LatencyAwareConnectionStrategy() {
+        this("least-outstanding".equalsIgnoreCase(System.getProperty(MODE, "p2c")));
+    }
+
+    public LatencyAwareConnectionStrategy(final boolean leastOutstanding) {
+        this.leastOutstanding = leastOutstanding;
+    }
+
+    public static ServerScore getScore(final URI server) {
+        final ServerScore score = scores.get(server);
+        if (score != null) {
+            return score;
+        }
+
+        final ServerScore created = new ServerScore(server);
+        final ServerScore existing = scores.putIfAbsent(server, created);
+        return existing != null ? existing : created;
+    }
+
+    public static Map<URI, ServerScore> getScores() {
+        return Collections.unmodifiableMap(scores);
+    }
+
+    static ServerScore begin(final URI server) {
+        final ServerScore score = getScore(server);
+        score.begin();
+        return score;
+    }
+
+    static void succeeded(final ServerScore score, final long nanos) {
+        if (score.success(nanos, alpha)) {
+            Client.fireEvent(new ServerRecovered(score));
+        }
+        report();
+    }
+
+    static void failed(final ServerScore score) {
+        if (score.failure(ejectAfter, ejectTime)) {
+            Client.fireEvent(new ServerEjected(score, ejectTime));
+        }
+        report();
+    }
+
+    static void end(final ServerScore score) {
+        score.end();
+    }
+
+    private static void report() {
+        if (reportInterval <= 0) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long last = lastReport.get();
+        if (now - last >= reportInterval && lastReport.compareAndSet(last, now)) {
+            Client.fireEvent(new ServerScores(new ArrayList<ServerScore>(scores.values())));
+        }
+    }
+
+    @Override
+    protected FailoverSelection createFailureEvent(final Set<URI> remaining, final Set<URI> failed, final URI uri) {
+        return new LatencyAwareFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected Iterable<URI> createIterable(final ClusterMetaData cluster) {
+        return new LatencyAwareIterable(cluster, leastOutstanding);
+    }
+
+    @Override
+    protected Connection connect(final ClusterMetaData cluster, final URI uri) throws IOException {
+        try {
+            return super.connect(cluster, uri);
+        } catch (final IOException e) {
+            failed(getScore(uri));
+            throw e;
+        }
+    }
+
+    public static class LatencyAwareIterable implements Iterable<URI> {
+
+        private final Random random = new Random();
+        private final ClusterMetaData cluster;
+        private final boolean leastOutstanding;
+
+        public LatencyAwareIterable(final ClusterMetaData cluster, final boolean leastOutstanding) {
+            this.cluster = cluster;
+            this.leastOutstanding = leastOutstanding;
+        }
+
+        @Override
+        public Iterator<URI> iterator() {
+            final URI[] locations = cluster.getLocations();
+            final List<URI> available = new ArrayList<URI>(locations.length);
+            final List<URI> ejected = new ArrayList<URI>();
+
+            // snapshot of the scores so the order is consistent while they change
+            final Map<URI, double[]> costs = new HashMap<URI, double[]>();
+            for (final URI location : locations) {
+                final ServerScore score = getScore(location);
+                if (score.isEjected()) {
+                    ejected.add(location);
+                } else {
+                    available.add(location);
+                }
+                costs.put(location, new double[]{score.getInFlight(), score.getCost()});
+            }
+
+            final Comparator<URI> comparator = new Comparator<URI>() {
+                @Override
+                public int compare(final URI o1, final URI o2) {
+                    final double[] c1 = costs.get(o1);
+                    final double[] c2 = costs.get(o2);
+                    if (leastOutstanding && c1[0] != c2[0]) {
+                        return Double.compare(c1[0], c2[0]);
+                    }
+                    return Double.compare(c1[1], c2[1]);
+                }
+            };
+
+            final List<URI> ordered = new ArrayList<URI>(locations.length);
+            if (!leastOutstanding && available.size() > 1) {
+                final int first = random.nextInt(available.size());
+                int second = random.nextInt(available.size() - 1);
+                if (second >= first) {
+                    second++;
+                }
+
+                final URI a = available.get(first);
+                final URI b = available.get(second);
+                final URI selected = comparator.compare(a, b) <= 0 ? a : b;
+                ordered.add(selected);
+                available.remove(selected);
+            }
+
+            Collections.sort(available, comparator);
+            ordered.addAll(available);
+
+            // last resort
+            Collections.sort(ejected, comparator);
+            ordered.addAll(ejected);
+
+            return Collections.unmodifiableList(ordered).iterator();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.LookupCacheStatistics;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side cache of the remote business interfaces looked up through a {@link JNDIContext},
+ * so a lookup of a stateless or singleton bean done over and over doesn't go to the server each time.
+ * Stateful beans are never cached, their lookup creates a session.
+ * <p/>
+ * Disabled unless openejb.client.lookup.cache=true.  The entries are keyed by server uri, module
+ * and name, the openejb.client.lookup.cache.size (1000) most recently used are kept for
+ * openejb.client.lookup.cache.ttl milliseconds (60000).  An entry is dropped when the version of
+ * the cluster of its server changed and all the entries of a deployment are dropped when an
+ * invocation gets a system error, which is how an undeployed or redeployed bean shows up.
+ * <p/>
+ * The hits and misses are fired in a {@link LookupCacheStatistics} event every
+ * openejb.client.lookup.cache.report-interval milliseconds (60000, 0 to disable).
+ *
+ * @version $Rev$ $Date$
+ */
+public class LookupCache {
+
+    public static final String ENABLED = "openejb.client.lookup.cache";
+    public static final String SIZE = "openejb.client.lookup.cache.size";
+    public static final String TTL = "openejb.client.lookup.cache.ttl";
+    public static final String REPORT_INTERVAL = "openejb.client.lookup.cache.report-interval";
+
+    private static final LookupCache DEFAULT = Boolean.getBoolean(ENABLED)
+        ? new LookupCache(
+        Integer.parseInt(System.getProperty(SIZE, "1000")),
+        Long.parseLong(System.getProperty(TTL, "60000")),
+        Long.parseLong(System.getProperty(REPORT_INTERVAL, "60000")))
+        : null;
+
+    private final Map<String, Entry> entries;
+    private final long ttl;
+    private final long reportInterval;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+
+    public LookupCache(final int size, final long ttl, final long reportInterval) {
+        this.ttl = ttl;
+        this.reportInterval = reportInterval;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * @return the cache of the client or null if disabled
+     */
+    public static LookupCache getDefault() {
+        return DEFAULT;
+    }
+
+    public static String key(final URI server, final String moduleId, final String name) {
+        return server + "|" + moduleId + "|" + name;
+    }
+
+    /**
+     * @param clusterVersion the current version of the cluster of the server
+     * @return the cached meta data or null
+     */
+    public EJBMetaDataImpl get(final String key, final long clusterVersion) {
+        final EJBMetaDataImpl ejb;
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                ejb = null;
+            } else if (entry.clusterVersion != clusterVersion || entry.expires <= System.currentTimeMillis()) {
+                entries.remove(key);
+                ejb = null;
+            } else {
+                ejb = entry.ejb;
+            }
+        }
+
+        if (ejb == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        report();
+        return ejb;
+    }
+
+    /**
+     * Caches the meta data of a lookup if it can be reused by the next ones.
+     */
+    public void put(final String key, final long clusterVersion, final EJBMetaDataImpl ejb) {
+        if (!(ejb.isStatelessSession() || ejb.isSingletonSession()) || ejb.getPrimaryKey() != null) {
+            return;
+        }
+
+        synchronized (entries) {
+            entries.put(key, new Entry(ejb, clusterVersion, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    public void invalidate(final String deploymentId) {
+        synchronized (entries) {
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().ejb.getDeploymentID().equals(deploymentId)) {
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private void report() {
+        if (reportInterval <= 0) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long last = lastReport.get();
+        if (now - last >= reportInterval && lastReport.compareAndSet(last, now)) {
+            Client.fireEvent(new LookupCacheStatistics(size(), hits.get(), misses.get(), invalidations.get()));
+        }
+    }
+
+    private static class Entry {
+
+        private final EJBMetaDataImpl ejb;
+        private final long clusterVersion;
+        private final long expires;
+
+        private Entry(final EJBMetaDataImpl ejb, final long clusterVersion, final long expires) {
+            this.ejb = ejb;
+            this.clusterVersion = clusterVersion;
+            this.expires = expires;
+        }
+    }
+}
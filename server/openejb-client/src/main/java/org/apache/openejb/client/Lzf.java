@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 compression using the LZF format: a control byte below 32 is followed by
+ * that many plus one literal bytes, otherwise its three high bits are the length of a
+ * back reference (7 meaning an extra length byte follows) and its five low bits with the
+ * next byte the distance.  Much faster than deflate for a lower ratio.
+ * <p/>
+ * Instances keep their hash table and are not thread safe.
+ *
+ * @version $Rev$ $Date$
+ */
+public class Lzf {
+
+    private static final int HASH_LOG = 14;
+    private static final int MAX_LITERAL = 1 << 5;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * @return the number of bytes written in out or -1 if the data doesn't fit in maxLength bytes
+     */
+    public int compress(final byte[] in, final int length, final byte[] out, final int maxLength) {
+        if (length == 0) {
+            return 0;
+        }
+
+        Arrays.fill(hashTable, -1);
+
+        final int limit = maxLength - 3; // a reference takes 3 bytes, leave room for the last control byte
+        int ip = 0;
+        int op = 1; // control byte of the first literal run
+        int literals = 0;
+
+        while (ip < length - 2) {
+            if (op >= limit) {
+                return -1;
+            }
+
+            final int hash = hash(in, ip);
+            final int ref = hashTable[hash];
+            hashTable[hash] = ip;
+
+            final int off = ip - ref - 1;
+            if (ref >= 0 && off < MAX_OFFSET
+                && in[ref] == in[ip] && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2]) {
+
+                int len = 2;
+                final int maxLen = Math.min(length - ip - len, MAX_REFERENCE);
+
+                // close the literal run
+                out[op - literals - 1] = (byte) (literals - 1);
+                if (literals == 0) {
+                    op--;
+                }
+
+                do {
+                    len++;
+                } while (len < maxLen && in[ref + len] == in[ip + len]);
+
+                len -= 2;
+                ip++;
+
+                if (len < 7) {
+                    out[op++] = (byte) ((off >> 8) + (len << 5));
+                } else {
+                    out[op++] = (byte) ((off >> 8) + (7 << 5));
+                    out[op++] = (byte) (len - 7);
+                }
+                out[op++] = (byte) off;
+
+                literals = 0;
+                op++; // control byte of the next literal run
+
+                ip += len + 1;
+                continue;
+            }
+
+            literals++;
+            out[op++] = in[ip++];
+            if (literals == MAX_LITERAL) {
+                out[op - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                op++;
+            }
+        }
+
+        while (ip < length) {
+            if (op >= limit) {
+                return -1;
+            }
+
+            literals++;
+            out[op++] = in[ip++];
+            if (literals == MAX_LITERAL) {
+                out[op - literals - 1] = (byte) (literals - 1);
+                literals = 0;
+                op++;
+            }
+        }
+
+        out[op - literals - 1] = (byte) (literals - 1);
+        if (literals == 0) {
+            op--;
+        }
+        return op;
+    }
+
+    public static void decompress(final byte[] in, final int offset, final int length, final byte[] out) throws IOException {
+        final int end = offset + length;
+        int ip = offset;
+        int op = 0;
+
+        try {
+            while (ip < end) {
+                int ctrl = in[ip++] & 0xff;
+
+                if (ctrl < MAX_LITERAL) {
+                    ctrl++;
+                    System.arraycopy(in, ip, out, op, ctrl);
+                    ip += ctrl;
+                    op += ctrl;
+                } else {
+                    int len = ctrl >> 5;
+                    int ref = op - ((ctrl & 0x1f) << 8) - 1;
+                    if (len == 7) {
+                        len += in[ip++] & 0xff;
+                    }
+                    ref -= in[ip++] & 0xff;
+                    len += 2;
+
+                    if (ref < 0) {
+                        throw new IOException("Invalid LZF back reference");
+                    }
+                    for (int i = 0; i < len; i++) {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        } catch (final IndexOutOfBoundsException e) {
+            throw new IOException("Corrupted LZF data", e);
+        }
+
+        if (op != out.length) {
+            throw new IOException("Expected " + out.length + " bytes but got " + op);
+        }
+    }
+
+    private static int hash(final byte[] in, final int ip) {
+        final int v = (in[ip] & 0xff) << 16 | (in[ip + 1] & 0xff) << 8 | in[ip + 2] & 0xff;
+        return (v * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FramesCompressed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single socket shared by many concurrent requests (OEJP 4.7+).
+ * <p/>
+ * The connection starts with the {@link KeepAliveStyle#MULTIPLEX} byte followed by the
+ * protocol version of the client, the server answers with its own version.
+ * After that both sides only exchange frames:
+ * <p/>
+ * Frame = request-id (int) length (int) payload (length bytes)
+ * <p/>
+ * The payload of a request frame is exactly what a non multiplexed client writes for a request
+ * (protocol version, ServerMetaData, ClusterRequest, request type and request) and the payload
+ * of a response frame what the server writes back, so requests and responses keep their
+ * usual serialization.  Responses carry the id of their request and can come in any order.
+ * An empty response payload means the server failed to process the request.
+ * <p/>
+ * When both sides speak OEJP 4.9 the frames carry a codec and can be compressed,
+ * see {@link FrameCompression} and the openejb.client.compression properties.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MultiplexedSocket {
+
+    private static final Logger logger = Logger.getLogger("OpenEJB.client");
+
+    private final URI uri;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final long timeout;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final ConcurrentMap<Integer, Call> calls = new ConcurrentHashMap<Integer, Call>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Listener listener;
+    private volatile IOException failure;
+    private FrameCompression compression;
+
+    /**
+     * @param uri     the server uri
+     * @param socket  a connected socket
+     * @param in      input stream of the socket (possibly buffered and/or compressed)
+     * @param out     output stream of the socket (possibly buffered and/or compressed)
+     * @param timeout max time in milliseconds a call waits for its response
+     * @param listener notified once the socket is not usable anymore, can be null
+     * @throws IOException                   if the handshake failed because of the network
+     * @throws UnsupportedOperationException if the server does not support multiplexing
+     */
+    public MultiplexedSocket(final URI uri, final Socket socket, final InputStream in, final OutputStream out, final long timeout, final Listener listener) throws IOException {
+        this.uri = uri;
+        this.socket = socket;
+        this.in = new DataInputStream(in);
+        this.out = new DataOutputStream(out);
+        this.timeout = timeout;
+        this.listener = listener;
+
+        handshake();
+
+        final Thread reader = new Thread(new Reader(), "OpenEJB.client.multiplex " + uri);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void handshake() throws IOException {
+        out.write(KeepAliveStyle.MULTIPLEX.ordinal());
+        new ProtocolMetaData().writeExternal(out);
+        out.flush();
+
+        final ProtocolMetaData server = new ProtocolMetaData();
+        try {
+            server.readExternal(in);
+        } catch (final IOException e) {
+            // older servers close the socket on the unknown keep alive style
+            close();
+            throw new UnsupportedOperationException("Server does not support multiplexing: " + uri, e);
+        }
+
+        if (!server.isAtLeast(4, 7)) {
+            close();
+            throw new UnsupportedOperationException("Server protocol " + server.getSpec() + " does not support multiplexing: " + uri);
+        }
+
+        if (server.isAtLeast(4, 9)) {
+            compression = FrameCompression.fromSystemProperties(new FrameCompression.Statistics());
+        }
+    }
+
+    public URI getURI() {
+        return uri;
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    public int getPendingCalls() {
+        return calls.size();
+    }
+
+    /**
+     * @return a new logical connection to use for one request
+     * @throws IOException if the socket is closed
+     */
+    public Connection newConnection() throws IOException {
+        final IOException e = failure;
+        if (e != null || closed.get()) {
+            throw new IOException("Multiplexed connection to " + uri + " is closed", e);
+        }
+        return new Call(ids.incrementAndGet());
+    }
+
+    private void send(final Call call, final byte[] payload) throws IOException {
+        calls.put(call.id, call);
+        try {
+            synchronized (out) {
+                if (compression != null) {
+                    compression.write(out, call.id, payload, payload.length);
+                } else {
+                    out.writeInt(call.id);
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
+                out.flush();
+            }
+        } catch (final IOException e) {
+            calls.remove(call.id);
+            fail(e);
+            throw e;
+        }
+    }
+
+    private void fail(final IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        close();
+    }
+
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            socket.close();
+        } catch (final Throwable e) {
+            //Ignore
+        }
+
+        final IOException cause = failure != null ? failure : new IOException("Multiplexed connection to " + uri + " closed");
+        for (final Call call : new ArrayList<Call>(calls.values())) {
+            call.fail(cause);
+        }
+        calls.clear();
+
+        if (compression != null) {
+            synchronized (out) {
+                compression.close();
+            }
+            if (compression.getStatistics().getSentFrames() > 0) {
+                Client.fireEvent(new FramesCompressed(uri, compression.getStatistics()));
+            }
+        }
+
+        if (listener != null) {
+            listener.closed(this);
+        }
+    }
+
+    public interface Listener {
+        void closed(MultiplexedSocket socket);
+    }
+
+    private class Reader implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (!closed.get()) {
+                    final int id = in.readInt();
+                    final byte[] payload = compression != null ? compression.read(in) : FrameCompression.readUncompressed(in);
+
+                    final Call call = calls.remove(id);
+                    if (call != null) {
+                        call.complete(payload);
+                    } else if (logger.isLoggable(Level.FINE)) {
+                        // the caller gave up (timeout) or discarded the call
+                        logger.fine("Dropping response " + id + " from " + uri);
+                    }
+                }
+            } catch (final IOException e) {
+                fail(e);
+            } catch (final Throwable e) {
+                fail(new IOException(e));
+            }
+        }
+    }
+
+    /**
+     * One request/response exchange, what the client writes is buffered
+     * and sent as one frame when it asks for the response.
+     */
+    private class Call implements AsynchronousConnection {
+
+        private final int id;
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream(512);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile byte[] response;
+        private volatile IOException error;
+        private final AtomicReference<Runnable> callback = new AtomicReference<Runnable>();
+        private boolean sent;
+
+        private Call(final int id) {
+            this.id = id;
+        }
+
+        private void complete(final byte[] payload) {
+            response = payload;
+            done.countDown();
+            notifyCallback();
+        }
+
+        private void fail(final IOException e) {
+            error = e;
+            done.countDown();
+            notifyCallback();
+        }
+
+        private void notifyCallback() {
+            final Runnable runnable = callback.getAndSet(null);
+            if (runnable == null) {
+                return;
+            }
+
+            try {
+                runnable.run();
+            } catch (final Throwable e) {
+                logger.log(Level.WARNING, "Response callback of request " + id + " to " + uri + " failed", e);
+            }
+        }
+
+        @Override
+        public void send(final Runnable callback) throws IOException {
+            if (sent) {
+                throw new IllegalStateException("Request " + id + " already sent");
+            }
+
+            // before sending, the response can come before send returns
+            this.callback.set(callback);
+            sent = true;
+            try {
+                MultiplexedSocket.this.send(this, request.toByteArray());
+            } catch (final IOException e) {
+                this.callback.set(null);
+                throw e;
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return request;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (!sent) {
+                sent = true;
+                MultiplexedSocket.this.send(this, request.toByteArray());
+            }
+
+            try {
+                if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+                    calls.remove(id);
+                    throw new IOException("No response from " + uri + " after " + timeout + "ms");
+                }
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+                calls.remove(id);
+                throw new IOException("Interrupted while waiting for a response from " + uri, e);
+            }
+
+            if (error != null) {
+                throw new IOException(error.getMessage(), error);
+            }
+            return new ByteArrayInputStream(response);
+        }
+
+        @Override
+        public void discard() {
+            calls.remove(id);
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        public void close() throws IOException {
+            calls.remove(id);
+        }
+    }
+}
@@ -31,13 +31,19 @@ import java.util.Arrays;
  * Protocol-Version   = "OEJP" "/" 1*DIGIT "." 1*DIGIT
  * <p/>
  * Some compatability is guaranteed with the major part of the version number.
+ * <p/>
+ * Since 4.7 a connection can be multiplexed, see {@link MultiplexedSocket}.
+ * <p/>
+ * Since 4.8 the values of the ejb requests and responses use the {@link CompactFormat}.
+ * <p/>
+ * Since 4.9 the frames of a multiplexed connection can be compressed, see {@link FrameCompression}.
  *
  * @version $Revision$ $Date$
  */
 @SuppressWarnings("UnusedDeclaration")
 public class ProtocolMetaData {
 
-    public static final String VERSION = "4.6";
+    public static final String VERSION = "4.9";
 
     private static final String OEJB = "OEJP";
     private transient String id;
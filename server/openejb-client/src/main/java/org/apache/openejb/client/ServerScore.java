@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Response time and health of a server as seen by this client, used by the
+ * {@link LatencyAwareConnectionStrategy}.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ServerScore {
+
+    private final URI server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private double latency;
+    private long requests;
+    private long failures;
+    private int consecutiveFailures;
+    private long ejectedUntil;
+
+    public ServerScore(final URI server) {
+        this.server = server;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the exponentially weighted moving average of the response time in nanoseconds
+     */
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized boolean isEjected() {
+        return ejectedUntil > System.currentTimeMillis();
+    }
+
+    /**
+     * @return the expected wait of a new request, the servers never used come first
+     */
+    public synchronized double getCost() {
+        return latency * (inFlight.get() + 1);
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void end() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return true if the server was ejected and is back
+     */
+    synchronized boolean success(final long nanos, final double alpha) {
+        requests++;
+        latency = requests == 1 ? nanos : alpha * nanos + (1 - alpha) * latency;
+        consecutiveFailures = 0;
+
+        final boolean recovered = ejectedUntil != 0;
+        ejectedUntil = 0;
+        return recovered;
+    }
+
+    /**
+     * @return true if the server is ejected by this failure
+     */
+    synchronized boolean failure(final int ejectAfter, final long ejectTime) {
+        failures++;
+        consecutiveFailures++;
+
+        final long now = System.currentTimeMillis();
+        if (ejectAfter > 0 && consecutiveFailures >= ejectAfter && ejectedUntil <= now) {
+            ejectedUntil = now + ejectTime;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ServerScore{" +
+            "server=" + server +
+            ", latency=" + TimeUnit.NANOSECONDS.toMicros((long) latency) + "us" +
+            ", inFlight=" + inFlight.get() +
+            ", requests=" + requests +
+            ", failures=" + failures +
+            ", ejected=" + (ejectedUntil > System.currentTimeMillis()) +
+            '}';
+    }
+}
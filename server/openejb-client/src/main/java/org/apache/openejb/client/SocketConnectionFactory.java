@@ -19,6 +19,7 @@ package org.apache.openejb.client;
 import org.apache.openejb.client.event.ConnectionOpened;
 import org.apache.openejb.client.event.ConnectionPoolCreated;
 import org.apache.openejb.client.event.ConnectionPoolTimeout;
+import org.apache.openejb.client.event.MultiplexingUnsupported;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -32,10 +33,13 @@ import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -54,14 +58,18 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private static final String PROPERTY_POOL_SIZE2 = "openejb.client.connectionpool.size";
     public static final String PROPERTY_KEEPALIVE = "openejb.client.keepalive";
     public static final String ENABLED_CIPHER_SUITES = "openejb.client.enabledCipherSuites";
+    public static final String PROPERTY_MULTIPLEX = "openejb.client.connection.multiplex";
 
     private static final Map<URI, Pool> connections = new ConcurrentHashMap<URI, Pool>();
+    private static final Map<URI, MultiplexedSocket> multiplexed = new ConcurrentHashMap<URI, MultiplexedSocket>();
+    private static final Set<URI> multiplexUnsupported = new CopyOnWriteArraySet<URI>();
     private int size = 5;
     private long timeoutPool = 1000;
     private int timeoutConnect = 1000;
     private int timeoutRead = 14400000;
     private int timeoutLinger;
     private String[] enabledCipherSuites;
+    private boolean multiplex;
 
     public SocketConnectionFactory() {
 
@@ -71,6 +79,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
         this.timeoutLinger = this.getTimeoutLinger();
         this.timeoutRead = this.getTimeoutRead();
         this.enabledCipherSuites = this.getEnabledCipherSuites();
+        this.multiplex = Boolean.parseBoolean(System.getProperty(PROPERTY_MULTIPLEX, "false"));
 
         try {
             String property = System.getProperty(PROPERTY_KEEPALIVE);
@@ -153,6 +162,13 @@ public class SocketConnectionFactory implements ConnectionFactory {
     @Override
     public Connection getConnection(final URI uri) throws java.io.IOException {
 
+        if (this.isMultiplexed(uri)) {
+            final Connection connection = this.getMultiplexedConnection(uri);
+            if (connection != null) {
+                return connection;
+            }
+        }
+
         final Pool pool = this.getPool(uri);
 
         SocketConnection conn = pool.get();
@@ -209,6 +225,117 @@ public class SocketConnectionFactory implements ConnectionFactory {
         return conn;
     }
 
+    boolean isMultiplexed(final URI uri) {
+        if (multiplexUnsupported.contains(uri)) {
+            return false;
+        }
+
+        try {
+            final String value = MulticastConnectionFactory.URIs.parseParamters(uri).get("multiplex");
+            if (value != null) {
+                return Boolean.parseBoolean(value);
+            }
+        } catch (URISyntaxException e) {
+            //Ignore
+        }
+        return this.multiplex;
+    }
+
+    /**
+     * @param uri server uri
+     * @return a connection sharing the socket of the other requests to this server or null if the server does not support multiplexing
+     * @throws IOException if the server can't be reached
+     */
+    private Connection getMultiplexedConnection(final URI uri) throws IOException {
+        MultiplexedSocket socket = multiplexed.get(uri);
+        if (socket == null || !socket.isOpen()) {
+            synchronized (multiplexed) {
+                socket = multiplexed.get(uri);
+                if (socket == null || !socket.isOpen()) {
+                    socket = this.openMultiplexed(uri);
+                    if (socket == null) {
+                        return null;
+                    }
+                    multiplexed.put(uri, socket);
+                }
+            }
+        }
+        return socket.newConnection();
+    }
+
+    private MultiplexedSocket openMultiplexed(final URI uri) throws IOException {
+        final Socket socket;
+        try {
+            socket = this.connect(uri);
+        } catch (IOException e) {
+            throw new IOException("Cannot connect to server '" + uri.toString() + "'.  Check that the server is started and that the specified serverURL is correct.", e);
+        }
+
+        try {
+            final InputStream in;
+            final OutputStream out;
+            if (uri.getScheme().startsWith("z")) {
+                in = new GZIPInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new BufferedOutputStream(new FlushableGZIPOutputStream(socket.getOutputStream()));
+            } else {
+                in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+            }
+
+            return new MultiplexedSocket(uri, socket, in, out, this.timeoutRead, new MultiplexedSocket.Listener() {
+                @Override
+                public void closed(final MultiplexedSocket closed) {
+                    multiplexed.remove(closed.getURI());
+                }
+            });
+        } catch (UnsupportedOperationException e) {
+            multiplexUnsupported.add(uri);
+            Client.fireEvent(new MultiplexingUnsupported(uri, e));
+            return null;
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (Throwable t) {
+                //Ignore
+            }
+            throw e;
+        }
+    }
+
+    private Socket connect(final URI uri) throws IOException {
+        final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
+        final String scheme = uri.getScheme();
+
+        final Socket socket;
+        if (scheme.equalsIgnoreCase("ejbds") || scheme.equalsIgnoreCase("zejbds")) {
+            final SSLSocket sslSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket();
+            sslSocket.setEnabledCipherSuites(this.enabledCipherSuites);
+            socket = sslSocket;
+        } else {
+            socket = new Socket();
+        }
+
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoLinger(true, this.timeoutLinger);
+            socket.connect(address, this.timeoutConnect);
+
+            //Four hours default
+            socket.setSoTimeout(this.timeoutRead);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (Throwable t) {
+                //Ignore
+            }
+            throw e;
+        }
+
+        Client.fireEvent(new ConnectionOpened(uri));
+
+        return socket;
+    }
+
     private Pool getPool(final URI uri) {
         Pool pool = connections.get(uri);
         if (pool == null) {
@@ -278,31 +405,12 @@ public class SocketConnectionFactory implements ConnectionFactory {
             /*-----------------------*/
             /* Open socket to server */
             /*-----------------------*/
-            final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
-
             try {
-                final String scheme = uri.getScheme();
-                if (scheme.equalsIgnoreCase("ejbds") || scheme.equalsIgnoreCase("zejbds")) {
-                    final SSLSocket sslSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket();
-                    this.socket = sslSocket;
-                    sslSocket.setEnabledCipherSuites(SocketConnectionFactory.this.enabledCipherSuites);
-
-                } else {
-                    this.socket = new Socket();
-                }
-
-                if (scheme.startsWith("z")) {
+                if (uri.getScheme().startsWith("z")) {
                     this.gzip = true;
                 }
 
-                this.socket.setTcpNoDelay(true);
-                this.socket.setSoLinger(true, SocketConnectionFactory.this.timeoutLinger);
-                this.socket.connect(address, SocketConnectionFactory.this.timeoutConnect);
-
-                //Four hours default
-                this.socket.setSoTimeout(SocketConnectionFactory.this.timeoutRead);
-
-                Client.fireEvent(new ConnectionOpened(uri));
+                this.socket = SocketConnectionFactory.this.connect(uri);
 
             } catch (ConnectException e) {
                 throw this.failure("Cannot connect to server '" + uri.toString() + "'.  Check that the server is started and that the specified serverURL is correct.", e);
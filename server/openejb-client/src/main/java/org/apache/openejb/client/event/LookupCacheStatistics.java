@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+/**
+ * Fired periodically by the client side cache of the jndi lookups.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.FINE)
+public class LookupCacheStatistics {
+
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long invalidations;
+
+    public LookupCacheStatistics(final int size, final long hits, final long misses, final long invalidations) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.invalidations = invalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public String toString() {
+        return "LookupCacheStatistics{" +
+            "size=" + size +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            ", invalidations=" + invalidations +
+            '}';
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+
+/**
+ * The server did not accept a multiplexed connection,
+ * the client falls back on pooled connections for this uri.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.WARNING)
+public class MultiplexingUnsupported {
+
+    private final URI uri;
+    private final Throwable cause;
+
+    public MultiplexingUnsupported(final URI uri, final Throwable cause) {
+        this.uri = uri;
+        this.cause = cause;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiplexingUnsupported{" +
+            "uri=" + uri +
+            ", cause=" + cause +
+            '}';
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+public class CompactFormatTest extends TestCase {
+
+    public void testValues() throws Exception {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("one", 1);
+        map.put("list", new LinkedList<Object>(Arrays.asList("a", 'b', (byte) 3)));
+        map.put(null, new LinkedHashSet<Object>(Arrays.asList(Long.MIN_VALUE, -1L, 0L)));
+
+        final Object[] values = {
+            null, true, false, (byte) -7, (short) 1234, 'x', 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Long.MAX_VALUE, 1.5f, -2.25d, "", "h\u00e9llo \u4e16\u754c", String.class, int.class,
+            RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, new BigDecimal("12.34"), map
+        };
+
+        final Object[] actual = (Object[]) roundTrip(values);
+        assertEquals(Arrays.asList(values), Arrays.asList(actual));
+    }
+
+    public void testArrays() throws Exception {
+        final Object[] values = {
+            new byte[]{1, 2, 3}, new int[]{-1, 0, 300000}, new long[]{Long.MIN_VALUE, 42}, new boolean[]{true, false},
+            new char[]{'a', 'z'}, new short[]{-1, 2}, new float[]{0.5f}, new double[]{Math.PI}, new String[][]{{"a"}, {"b", null}}
+        };
+
+        final Object[] actual = (Object[]) roundTrip(values);
+        assertEquals(values.length, actual.length);
+        for (int i = 0; i < values.length; i++) {
+            assertSame(values[i].getClass(), actual[i].getClass());
+            assertTrue(Arrays.deepEquals(new Object[]{values[i]}, new Object[]{actual[i]}));
+        }
+    }
+
+    public void testSharedAndCyclicContainers() throws Exception {
+        final List<Object> shared = new ArrayList<Object>();
+        shared.add("shared");
+        final List<Object> cyclic = new ArrayList<Object>();
+        cyclic.add(shared);
+        cyclic.add(shared);
+        cyclic.add(cyclic);
+
+        final List<?> actual = (List<?>) roundTrip(cyclic);
+        assertEquals(3, actual.size());
+        assertEquals(shared, actual.get(0));
+        assertSame(actual.get(0), actual.get(1));
+        assertSame(actual, actual.get(2));
+    }
+
+    public void testMissingClass() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        final CompactFormat writer = new CompactFormat();
+        writer.writeObject(out, RequestMethodCode.EJB_OBJECT_REMOVE);
+        writer.writeObject(out, "after");
+        out.close();
+
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new ClassLoader(null) {
+            @Override
+            protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+                if (name.equals(RequestMethodCode.class.getName())) {
+                    throw new ClassNotFoundException(name);
+                }
+                return super.loadClass(name, resolve);
+            }
+        });
+        try {
+            final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+            final CompactFormat reader = new CompactFormat();
+            try {
+                reader.readObject(in);
+                fail("class should not be found");
+            } catch (final ClassNotFoundException e) {
+                // expected
+            }
+
+            // the stream is still aligned on the next value
+            assertEquals("after", reader.readObject(in));
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+    }
+
+    /**
+     * A container passed directly and inside a serialized value is still one instance once read.
+     */
+    public void testAliasedArgument() throws Exception {
+        final EJBMetaDataImpl ejb = new EJBMetaDataImpl(null, Aliasing.class, null, "STATELESS", "AliasingBean", InterfaceType.BUSINESS_REMOTE, null, null);
+        final Method method = Aliasing.class.getMethod("call", List.class, Holder.class);
+
+        final List<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+        final EJBRequest.Body body = new EJBRequest.Body(ejb);
+        body.setMethodInstance(method);
+        body.setMethodParameters(new Object[]{list, new Holder(list)});
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        body.writeExternal(out);
+        out.close();
+
+        final EJBRequest.Body actual = new EJBRequest.Body(ejb);
+        actual.readExternal(new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+        final Object[] parameters = actual.getMethodParameters();
+        assertEquals(list, parameters[0]);
+        assertSame(parameters[0], ((Holder) parameters[1]).list);
+    }
+
+    public void testLargeArrays() throws Exception {
+        final int[] ints = new int[100000];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = i * 31;
+        }
+        final char[] chars = new char[20000];
+        Arrays.fill(chars, '\u00e9');
+
+        final Object[] actual = (Object[]) roundTrip(new Object[]{ints, new String(chars)});
+        assertTrue(Arrays.equals(ints, (int[]) actual[0]));
+        assertEquals(new String(chars), actual[1]);
+    }
+
+    public void testForgedLength() throws Exception {
+        // a string tag (10) announcing 2^28 - 1 bytes
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.write(new byte[]{10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F});
+        out.close();
+
+        try {
+            new CompactFormat().readObject(new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())));
+            fail("length should be refused");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    public void testFilteredClass() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        new CompactFormat().writeObject(out, Runtime.class);
+        out.close();
+
+        try {
+            new CompactFormat().readObject(new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())));
+            fail("class should be refused");
+        } catch (final InvalidClassException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares the size of a request body with the compact values and with java serialization.
+     */
+    public void testSmallerThanSerialization() throws Exception {
+        final EJBMetaDataImpl ejb = new EJBMetaDataImpl(EJBRequestTest.FooHome.class, EJBRequestTest.FooObject.class, Integer.class, "BMP_ENTITY", "FooBeanID", InterfaceType.BUSINESS_REMOTE, null, null);
+        final Method method = EJBRequestTest.FooObject.class.getMethod("businessMethod", String.class);
+
+        final int compact = bodySize(ejb, method, null);
+        final int serialized = bodySize(ejb, method, new ProtocolMetaData("4.7"));
+
+        assertTrue("compact " + compact + " serialized " + serialized, compact < serialized);
+    }
+
+    private static int bodySize(final EJBMetaDataImpl ejb, final Method method, final ProtocolMetaData metaData) throws IOException {
+        final EJBRequest.Body body = new EJBRequest.Body(ejb);
+        body.setMetaData(metaData);
+        body.setMethodInstance(method);
+        body.setMethodParameters(new Object[]{"hola mundo"});
+        body.setPrimaryKey(42);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        body.writeExternal(out);
+        out.close();
+        return baos.size();
+    }
+
+    private static Object roundTrip(final Object value) throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        new CompactFormat().writeObject(out, value);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        return new CompactFormat().readObject(in);
+    }
+
+    public interface Aliasing {
+        void call(List<String> list, Holder holder);
+    }
+
+    public static class Holder implements Serializable {
+        private final List<String> list;
+
+        public Holder(final List<String> list) {
+            this.list = list;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class FrameCompressionTest {
+
+    @Test
+    public void lzf() throws Exception {
+        final Lzf lzf = new Lzf();
+        for (final byte[] data : new byte[][]{text(0), text(1), text(5), text(100000), random(1), random(3), random(70000)}) {
+            final byte[] compressed = new byte[data.length + data.length / 16 + 16];
+            final int length = lzf.compress(data, data.length, compressed, compressed.length);
+            Assert.assertTrue(length >= 0);
+
+            final byte[] decompressed = new byte[data.length];
+            Lzf.decompress(compressed, 0, length, decompressed);
+            Assert.assertArrayEquals(data, decompressed);
+        }
+
+        final byte[] text = text(100000);
+        Assert.assertTrue(lzf.compress(text, text.length, new byte[text.length], text.length) < text.length / 2);
+        Assert.assertEquals(-1, lzf.compress(random(1000), 1000, new byte[1000], 900));
+    }
+
+    @Test
+    public void deflate() throws Exception {
+        roundTrip("deflate");
+    }
+
+    @Test
+    public void lzfFrames() throws Exception {
+        roundTrip("lzf");
+    }
+
+    @Test
+    public void threshold() throws Exception {
+        final FrameCompression.Statistics statistics = new FrameCompression.Statistics();
+        final FrameCompression compression = new FrameCompression("deflate", 1, 1024, statistics);
+
+        final byte[] small = text(1000);
+        Assert.assertArrayEquals(small, read(write(compression, 1, small)));
+        Assert.assertEquals(0, statistics.getSavedBytes());
+    }
+
+    @Test
+    public void incompressible() throws Exception {
+        final FrameCompression.Statistics statistics = new FrameCompression.Statistics();
+        final FrameCompression compression = new FrameCompression("deflate", 1, 16, statistics);
+
+        final byte[] data = random(4096);
+        final byte[] frame = write(compression, 1, data);
+        Assert.assertEquals("sent as it is", 4 + 4 + 1 + data.length, frame.length);
+        Assert.assertArrayEquals(data, read(frame));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownCodec() {
+        FrameCompression.codec("snappy");
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedCompressedFrame() throws Exception {
+        // a few bytes of deflate announcing 1G once inflated
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1);
+        out.writeInt(5 + 2);
+        out.writeByte(FrameCompression.DEFLATE);
+        out.writeInt(1024 * 1024 * 1024);
+        out.write(new byte[]{0x78, 0x01});
+        out.flush();
+
+        read(bytes.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedUncompressedFrame() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Integer.MAX_VALUE);
+        out.flush();
+
+        FrameCompression.readUncompressed(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static void roundTrip(final String codec) throws IOException {
+        final FrameCompression.Statistics statistics = new FrameCompression.Statistics();
+        final FrameCompression compression = new FrameCompression(codec, 6, 512, statistics);
+        try {
+            for (int i = 0; i < 5; i++) {
+                final byte[] data = text(20000 + i);
+                final byte[] frame = write(compression, i, data);
+                Assert.assertTrue(frame.length < data.length / 2);
+                Assert.assertArrayEquals(data, read(frame));
+            }
+            Assert.assertEquals(5, statistics.getSentFrames());
+            Assert.assertTrue(statistics.getSavedBytes() > 50000);
+        } finally {
+            compression.close();
+        }
+    }
+
+    private static byte[] write(final FrameCompression compression, final int id, final byte[] data) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        compression.write(out, id, data, data.length);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] read(final byte[] frame) throws IOException {
+        final FrameCompression compression = new FrameCompression("none", 1, 0, new FrameCompression.Statistics());
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+            in.readInt();
+            final byte[] payload = compression.read(in);
+            Assert.assertEquals(-1, in.read());
+            return payload;
+        } finally {
+            compression.close();
+        }
+    }
+
+    private static byte[] text(final int length) {
+        final StringBuilder builder = new StringBuilder();
+        int i = 0;
+        while (builder.length() < length) {
+            builder.append("org.apache.openejb.client.EJBResponse#").append(i++ % 37).append(' ');
+        }
+        final byte[] text = new byte[length];
+        System.arraycopy(builder.toString().getBytes(), 0, text, 0, length);
+        return text;
+    }
+
+    private static byte[] random(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
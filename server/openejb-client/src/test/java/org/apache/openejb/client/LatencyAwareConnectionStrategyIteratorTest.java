@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LatencyAwareConnectionStrategyIteratorTest {
+
+    @Test
+    public void leastOutstanding() throws Exception {
+        final URI[] uris = uris(
+            "one://latency-least:1243",
+            "two://latency-least:1243",
+            "three://latency-least:1243");
+
+        score(uris[0], 5);
+        score(uris[1], 1);
+        score(uris[2], 10);
+        final ServerScore busy = LatencyAwareConnectionStrategy.begin(uris[1]);
+
+        final ClusterMetaData cluster = new ClusterMetaData(System.currentTimeMillis(), uris);
+        final Iterable<URI> iterable = new LatencyAwareConnectionStrategy(true).createIterable(cluster);
+        try {
+            Assert.assertEquals(Arrays.asList(uris[0], uris[2], uris[1]), list(iterable.iterator()));
+        } finally {
+            LatencyAwareConnectionStrategy.end(busy);
+        }
+
+        Assert.assertEquals(Arrays.asList(uris[1], uris[0], uris[2]), list(iterable.iterator()));
+    }
+
+    @Test
+    public void powerOfTwoChoices() throws Exception {
+        final URI[] uris = uris(
+            "one://latency-p2c:1243",
+            "two://latency-p2c:1243");
+
+        score(uris[0], 50);
+        score(uris[1], 1);
+
+        final ClusterMetaData cluster = new ClusterMetaData(System.currentTimeMillis(), uris);
+        final Iterable<URI> iterable = new LatencyAwareConnectionStrategy(false).createIterable(cluster);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Arrays.asList(uris[1], uris[0]), list(iterable.iterator()));
+        }
+    }
+
+    @Test
+    public void ejection() throws Exception {
+        final URI[] uris = uris(
+            "one://latency-eject:1243",
+            "two://latency-eject:1243");
+
+        score(uris[0], 1);
+        score(uris[1], 50);
+
+        final ServerScore failing = LatencyAwareConnectionStrategy.getScore(uris[0]);
+        for (int i = 0; i < 3; i++) {
+            LatencyAwareConnectionStrategy.failed(failing);
+        }
+        Assert.assertTrue(failing.isEjected());
+
+        final ClusterMetaData cluster = new ClusterMetaData(System.currentTimeMillis(), uris);
+        final Iterable<URI> iterable = new LatencyAwareConnectionStrategy(true).createIterable(cluster);
+        Assert.assertEquals("ejected servers come last", Arrays.asList(uris[1], uris[0]), list(iterable.iterator()));
+
+        LatencyAwareConnectionStrategy.succeeded(failing, TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertFalse(failing.isEjected());
+        Assert.assertEquals(Arrays.asList(uris[0], uris[1]), list(iterable.iterator()));
+        Assert.assertEquals(new HashSet<URI>(Arrays.asList(uris)), new HashSet<URI>(list(iterable.iterator())));
+    }
+
+    private static void score(final URI uri, final long millis) {
+        final ServerScore score = LatencyAwareConnectionStrategy.begin(uri);
+        LatencyAwareConnectionStrategy.succeeded(score, TimeUnit.MILLISECONDS.toNanos(millis));
+        LatencyAwareConnectionStrategy.end(score);
+    }
+
+    private static List<URI> list(final Iterator<URI> iterator) {
+        final List<URI> list = new ArrayList<URI>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+
+    private URI[] uris(final String... strings) {
+        final URI[] uris = new URI[strings.length];
+
+        for (int i = 0; i < strings.length; i++) {
+            uris[i] = URI.create(strings[i]);
+        }
+
+        return uris;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LookupCacheTest {
+
+    private static final URI SERVER = URI.create("ejbd://localhost:4201");
+
+    @Test
+    public void hitAndMiss() {
+        final LookupCache cache = new LookupCache(10, 60000, 0);
+        final String key = LookupCache.key(SERVER, null, "/OrangeRemote");
+
+        Assert.assertNull(cache.get(key, 1));
+        final EJBMetaDataImpl ejb = ejb("STATELESS", "Orange");
+        cache.put(key, 1, ejb);
+        Assert.assertSame(ejb, cache.get(key, 1));
+        Assert.assertNull("other server", cache.get(LookupCache.key(URI.create("ejbd://other:4201"), null, "/OrangeRemote"), 1));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void statefulIsNotCached() {
+        final LookupCache cache = new LookupCache(10, 60000, 0);
+        final String key = LookupCache.key(SERVER, null, "/CartRemote");
+
+        cache.put(key, 1, ejb("STATEFUL", "Cart"));
+        Assert.assertNull(cache.get(key, 1));
+    }
+
+    @Test
+    public void clusterVersionChange() {
+        final LookupCache cache = new LookupCache(10, 60000, 0);
+        final String key = LookupCache.key(SERVER, null, "/OrangeRemote");
+
+        cache.put(key, 1, ejb("SINGLETON", "Orange"));
+        Assert.assertNull(cache.get(key, 2));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void expiration() throws Exception {
+        final LookupCache cache = new LookupCache(10, 0, 0);
+        final String key = LookupCache.key(SERVER, null, "/OrangeRemote");
+
+        cache.put(key, 1, ejb("STATELESS", "Orange"));
+        Thread.sleep(5);
+        Assert.assertNull(cache.get(key, 1));
+    }
+
+    @Test
+    public void invalidateDeployment() {
+        final LookupCache cache = new LookupCache(10, 60000, 0);
+        cache.put(LookupCache.key(SERVER, null, "/OrangeRemote"), 1, ejb("STATELESS", "Orange"));
+        cache.put(LookupCache.key(SERVER, null, "global/app/Orange"), 1, ejb("STATELESS", "Orange"));
+        cache.put(LookupCache.key(SERVER, null, "/LemonRemote"), 1, ejb("STATELESS", "Lemon"));
+
+        cache.invalidate("Orange");
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(2, cache.getInvalidations());
+        Assert.assertNotNull(cache.get(LookupCache.key(SERVER, null, "/LemonRemote"), 1));
+    }
+
+    @Test
+    public void bounded() {
+        final LookupCache cache = new LookupCache(2, 60000, 0);
+        cache.put(LookupCache.key(SERVER, null, "a"), 1, ejb("STATELESS", "A"));
+        cache.put(LookupCache.key(SERVER, null, "b"), 1, ejb("STATELESS", "B"));
+        Assert.assertNotNull(cache.get(LookupCache.key(SERVER, null, "a"), 1));
+        cache.put(LookupCache.key(SERVER, null, "c"), 1, ejb("STATELESS", "C"));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull("least recently used", cache.get(LookupCache.key(SERVER, null, "b"), 1));
+        Assert.assertNotNull(cache.get(LookupCache.key(SERVER, null, "a"), 1));
+    }
+
+    private static EJBMetaDataImpl ejb(final String type, final String deploymentId) {
+        return new EJBMetaDataImpl(null, null, null, type, deploymentId, InterfaceType.BUSINESS_REMOTE, null, null);
+    }
+}
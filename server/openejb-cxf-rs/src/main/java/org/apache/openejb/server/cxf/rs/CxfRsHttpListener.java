@@ -144,6 +144,7 @@ public class CxfRsHttpListener implements RsHttpListener {
     private String context = "";
     private String servlet = "";
     private final Collection<Pattern> staticResourcesList = new CopyOnWriteArrayList<>();
+    private final StaticResourceCache staticResourceCache = new StaticResourceCache();
     private final List<ObjectName> jmxNames = new ArrayList<>();
     private final Collection<CreationalContext<?>> toRelease = new LinkedHashSet<>();
     private final Collection<CdiSingletonResourceProvider> singletons = new LinkedHashSet<>();
@@ -157,6 +158,9 @@ public class CxfRsHttpListener implements RsHttpListener {
         STATIC_CONTENT_TYPES.put("xhtml", "text/html");
         STATIC_CONTENT_TYPES.put("txt", "text/plain");
         STATIC_CONTENT_TYPES.put("css", "text/css");
+        STATIC_CONTENT_TYPES.put("js", "application/javascript");
+        STATIC_CONTENT_TYPES.put("json", "application/json");
+        STATIC_CONTENT_TYPES.put("svg", "image/svg+xml");
         STATIC_CONTENT_TYPES.put("jpg", "image/jpg");
         STATIC_CONTENT_TYPES.put("png", "image/png");
         STATIC_CONTENT_TYPES.put("ico", "image/ico");
@@ -238,13 +242,7 @@ public class CxfRsHttpListener implements RsHttpListener {
     }
 
     public InputStream findStaticContent(final HttpServletRequest request, final String[] welcomeFiles) throws ServletException {
-        String pathInfo = request.getRequestURI().substring(request.getContextPath().length());
-        for (final char c : URL_SEP) {
-            final int indexOf = pathInfo.indexOf(c);
-            if (indexOf > 0) {
-                pathInfo = pathInfo.substring(0, indexOf);
-            }
-        }
+        final String pathInfo = staticPath(request);
         InputStream is = request.getServletContext().getResourceAsStream(pathInfo);
         if (is == null && ("/".equals(pathInfo) || pathInfo.isEmpty())) {
             for (final String n : welcomeFiles) {
@@ -257,20 +255,59 @@ public class CxfRsHttpListener implements RsHttpListener {
         return is;
     }
 
+    private static String staticPath(final HttpServletRequest request) {
+        String pathInfo = request.getRequestURI().substring(request.getContextPath().length());
+        for (final char c : URL_SEP) {
+            final int indexOf = pathInfo.indexOf(c);
+            if (indexOf > 0) {
+                pathInfo = pathInfo.substring(0, indexOf);
+            }
+        }
+        return pathInfo;
+    }
+
+    private static String staticContentType(final String path) {
+        final int ind = path.lastIndexOf(".");
+        if (ind != -1 && ind < path.length()) {
+            return STATIC_CONTENT_TYPES.get(path.substring(ind + 1));
+        }
+        return null;
+    }
+
     public boolean serveStaticContent(final HttpServletRequest request,
                                       final HttpServletResponse response,
                                       final String pathInfo) throws ServletException {
+        if (staticResourceCache.isActive()) {
+            try {
+                final String path = staticPath(request);
+                StaticResourceCache.Resource resource = staticResourceCache.find(request.getServletContext(), path, staticContentType(path));
+                if (resource == null && ("/".equals(path) || path.isEmpty())) {
+                    for (final String n : DEFAULT_WELCOME_FILES) {
+                        resource = staticResourceCache.find(request.getServletContext(), n, staticContentType(n));
+                        if (resource != null) {
+                            break;
+                        }
+                    }
+                }
+                if (resource == null) {
+                    return false;
+                }
+
+                staticResourceCache.serve(request, response, resource);
+            } catch (final IOException ex) {
+                throw new ServletException("Static resource " + pathInfo + " can not be written to the output stream");
+            }
+            return true;
+        }
+
         final InputStream is = findStaticContent(request, DEFAULT_WELCOME_FILES);
         if (is == null) {
             return false;
         }
         try {
-            final int ind = pathInfo.lastIndexOf(".");
-            if (ind != -1 && ind < pathInfo.length()) {
-                final String type = STATIC_CONTENT_TYPES.get(pathInfo.substring(ind + 1));
-                if (type != null) {
-                    response.setContentType(type);
-                }
+            final String type = staticContentType(pathInfo);
+            if (type != null) {
+                response.setContentType(type);
             }
 
             final ServletOutputStream os = response.getOutputStream();
@@ -279,6 +316,8 @@ public class CxfRsHttpListener implements RsHttpListener {
             response.setStatus(HttpURLConnection.HTTP_OK);
         } catch (final IOException ex) {
             throw new ServletException("Static resource " + pathInfo + " can not be written to the output stream");
+        } finally {
+            IO.close(is);
         }
         return true;
     }
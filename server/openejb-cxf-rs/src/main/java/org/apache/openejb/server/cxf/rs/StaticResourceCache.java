@@ -0,0 +1,357 @@
+/*
+ *     Licensed to the Apache Software Foundation (ASF) under one or more
+ *     contributor license agreements.  See the NOTICE file distributed with
+ *     this work for additional information regarding copyright ownership.
+ *     The ASF licenses this file to You under the Apache License, Version 2.0
+ *     (the "License"); you may not use this file except in compliance with
+ *     the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package org.apache.openejb.server.cxf.rs;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * LRU cache of the static resources served by the JAX-RS endpoints of a web application.
+ * <p/>
+ * Resources up to openejb.jaxrs.static-cache.max-entry-size bytes are kept in memory with
+ * their gzip and deflate encodings when they are text, the cache holding at most
+ * openejb.jaxrs.static-cache.size bytes.  Bigger files are sent with the Tomcat sendfile
+ * support when the connector has it, with FileChannel.transferTo otherwise.
+ * <p/>
+ * ETag and Last-Modified are sent with every resource so If-None-Match and If-Modified-Since
+ * requests get a 304 response.
+ */
+public class StaticResourceCache {
+    public static final String ACTIVE = "openejb.jaxrs.static-cache";
+    public static final String SIZE = "openejb.jaxrs.static-cache.size";
+    public static final String MAX_ENTRY_SIZE = "openejb.jaxrs.static-cache.max-entry-size";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final int MIN_COMPRESSED_SIZE = 256;
+
+    private final boolean active;
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final Map<String, Resource> resources = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public StaticResourceCache() {
+        final Options options = SystemInstance.get().getOptions();
+        active = options.get(ACTIVE, true);
+        maxSize = options.get(SIZE, 16L * 1024 * 1024);
+        maxEntrySize = Math.min(options.get(MAX_ENTRY_SIZE, 512L * 1024), maxSize);
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return the resource at this path of the web application or null if there is none
+     */
+    public Resource find(final ServletContext servletContext, final String path, final String contentType) throws IOException {
+        final URL url = servletContext.getResource(path);
+        if (url == null) {
+            return null;
+        }
+
+        final String key = url.toExternalForm();
+        if (key.endsWith("/")) { // a folder, welcome files are looked up by the caller
+            return null;
+        }
+        synchronized (resources) {
+            final Resource cached = resources.get(key);
+            if (cached != null) {
+                if (cached.isFresh()) {
+                    return cached;
+                }
+                resources.remove(key);
+                size -= cached.weight();
+            }
+        }
+
+        final Resource resource = load(url, contentType);
+        if (resource == null) {
+            return null;
+        }
+        if (resource.content != null) {
+            synchronized (resources) {
+                final Resource previous = resources.put(key, resource);
+                if (previous != null) {
+                    size -= previous.weight();
+                }
+                size += resource.weight();
+
+                final Iterator<Resource> eldest = resources.values().iterator();
+                while (size > maxSize && eldest.hasNext()) {
+                    size -= eldest.next().weight();
+                    eldest.remove();
+                }
+            }
+        }
+        return resource;
+    }
+
+    public void clear() {
+        synchronized (resources) {
+            resources.clear();
+            size = 0;
+        }
+    }
+
+    private Resource load(final URL url, final String contentType) throws IOException {
+        final File file = "file".equals(url.getProtocol()) ? Files.toFile(url) : null;
+
+        final long length;
+        final long lastModified;
+        if (file != null) {
+            if (!file.isFile()) {
+                return null;
+            }
+            length = file.length();
+            lastModified = file.lastModified();
+        } else {
+            final URLConnection connection = url.openConnection();
+            connection.setUseCaches(false);
+            length = connection.getContentLengthLong();
+            lastModified = connection.getLastModified();
+            IO.close(connection.getInputStream());
+        }
+
+        final Resource resource = new Resource(url, file, contentType, length, lastModified);
+        if (length >= 0 && length <= maxEntrySize) {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream((int) length);
+            final InputStream is = resource.open();
+            try {
+                IO.copy(is, baos);
+            } finally {
+                IO.close(is);
+            }
+            resource.content = baos.toByteArray();
+
+            if (resource.content.length >= MIN_COMPRESSED_SIZE && isCompressible(contentType)) {
+                resource.gzip = smaller(resource.content, compress(resource.content, true));
+                resource.deflate = smaller(resource.content, compress(resource.content, false));
+            }
+        }
+        return resource;
+    }
+
+    public void serve(final HttpServletRequest request, final HttpServletResponse response, final Resource resource) throws IOException {
+        if (resource.contentType != null) {
+            response.setContentType(resource.contentType);
+        }
+        response.setHeader("ETag", resource.etag);
+        if (resource.lastModified > 0) {
+            response.setDateHeader("Last-Modified", resource.lastModified);
+        }
+
+        if (isNotModified(request, resource)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        if (resource.content != null) {
+            byte[] body = resource.content;
+            if (resource.gzip != null || resource.deflate != null) {
+                response.addHeader("Vary", "Accept-Encoding");
+
+                final String acceptEncoding = request.getHeader("Accept-Encoding");
+                if (resource.gzip != null && accepts(acceptEncoding, "gzip")) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    body = resource.gzip;
+                } else if (resource.deflate != null && accepts(acceptEncoding, "deflate")) {
+                    response.setHeader("Content-Encoding", "deflate");
+                    body = resource.deflate;
+                }
+            }
+
+            response.setHeader("Content-Length", Integer.toString(body.length));
+            final OutputStream os = response.getOutputStream();
+            os.write(body);
+            os.flush();
+            return;
+        }
+
+        if (resource.length >= 0) {
+            response.setHeader("Content-Length", Long.toString(resource.length));
+        }
+
+        if (resource.file != null) {
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, resource.file.getAbsolutePath());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, resource.length);
+                return;
+            }
+
+            final OutputStream os = response.getOutputStream();
+            final FileInputStream in = new FileInputStream(resource.file);
+            try {
+                final FileChannel channel = in.getChannel();
+                final WritableByteChannel out = Channels.newChannel(os);
+                long position = 0;
+                final long end = channel.size();
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, out);
+                }
+            } finally {
+                IO.close(in);
+            }
+            os.flush();
+            return;
+        }
+
+        final OutputStream os = response.getOutputStream();
+        final InputStream is = resource.open();
+        try {
+            IO.copy(is, os);
+        } finally {
+            IO.close(is);
+        }
+        os.flush();
+    }
+
+    private static boolean isNotModified(final HttpServletRequest request, final Resource resource) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (final String tag : ifNoneMatch.split(",")) {
+                final String trimmed = tag.trim();
+                if ("*".equals(trimmed) || resource.etag.equals(trimmed) || resource.etag.equals("W/" + trimmed)) {
+                    return true;
+                }
+            }
+            return false; // If-Modified-Since is ignored when If-None-Match is there
+        }
+
+        if (resource.lastModified <= 0) {
+            return false;
+        }
+        try {
+            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && resource.lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean accepts(final String acceptEncoding, final String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String value : acceptEncoding.split(",")) {
+            final String[] parts = value.trim().split(";");
+            if (encoding.equalsIgnoreCase(parts[0].trim())) {
+                for (int i = 1; i < parts.length; i++) {
+                    final String param = parts[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(param.substring(2)) > 0;
+                        } catch (final NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCompressible(final String contentType) {
+        return contentType != null
+            && (contentType.startsWith("text/") || contentType.endsWith("xml") || contentType.endsWith("json") || contentType.endsWith("javascript"));
+    }
+
+    private static byte[] compress(final byte[] content, final boolean gzip) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2);
+        final DeflaterOutputStream out = gzip ? new GZIPOutputStream(baos) : new DeflaterOutputStream(baos);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] smaller(final byte[] content, final byte[] compressed) {
+        return compressed.length < content.length ? compressed : null;
+    }
+
+    public static class Resource {
+        private final URL url;
+        private final File file;
+        private final String contentType;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+        private byte[] content;
+        private byte[] gzip;
+        private byte[] deflate;
+
+        private Resource(final URL url, final File file, final String contentType, final long length, final long lastModified) {
+            this.url = url;
+            this.file = file;
+            this.contentType = contentType;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = "W/\"" + length + '-' + lastModified + '"';
+        }
+
+        private InputStream open() throws IOException {
+            return file != null ? new FileInputStream(file) : url.openStream();
+        }
+
+        private boolean isFresh() {
+            return file == null || file.lastModified() == lastModified && file.length() == length;
+        }
+
+        private long weight() {
+            return content.length + (gzip != null ? gzip.length : 0) + (deflate != null ? deflate.length : 0);
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public boolean isCached() {
+            return content != null;
+        }
+    }
+}
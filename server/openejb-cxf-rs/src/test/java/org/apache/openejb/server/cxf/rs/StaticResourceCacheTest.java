@@ -0,0 +1,166 @@
+/*
+ *     Licensed to the Apache Software Foundation (ASF) under one or more
+ *     contributor license agreements.  See the NOTICE file distributed with
+ *     this work for additional information regarding copyright ownership.
+ *     The ASF licenses this file to You under the Apache License, Version 2.0
+ *     (the "License"); you may not use this file except in compliance with
+ *     the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package org.apache.openejb.server.cxf.rs;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StaticResourceCacheTest {
+    private File base;
+
+    @Before
+    public void createResources() throws Exception {
+        base = Files.mkdirs(new File("target/StaticResourceCacheTest"));
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            css.append("body { color: black; }\n");
+        }
+        IO.copy(css.toString().getBytes("UTF-8"), new File(base, "style.css"));
+    }
+
+    @After
+    public void deleteResources() {
+        Files.delete(base);
+    }
+
+    @Test
+    public void serve() throws Exception {
+        final StaticResourceCache cache = new StaticResourceCache();
+        final ServletContext context = servletContext();
+
+        assertNull(cache.find(context, "/missing.css", "text/css"));
+
+        final StaticResourceCache.Resource resource = cache.find(context, "/style.css", "text/css");
+        assertNotNull(resource);
+        assertSame("cached", resource, cache.find(context, "/style.css", "text/css"));
+
+        final Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put("Accept-Encoding", "gzip, deflate");
+        final Response gzip = new Response();
+        cache.serve(request(requestHeaders), gzip.proxy(), resource);
+        assertEquals(HttpServletResponse.SC_OK, gzip.status);
+        assertEquals("gzip", gzip.headers.get("Content-Encoding"));
+        final ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        IO.copy(new GZIPInputStream(new ByteArrayInputStream(gzip.body.toByteArray())), uncompressed);
+        assertEquals(new File(base, "style.css").length(), uncompressed.size());
+
+        final Response identity = new Response();
+        cache.serve(request(new HashMap<String, String>()), identity.proxy(), resource);
+        assertNull(identity.headers.get("Content-Encoding"));
+        assertEquals(new File(base, "style.css").length(), identity.body.size());
+
+        requestHeaders.put("If-None-Match", resource.getEtag());
+        final Response notModified = new Response();
+        cache.serve(request(requestHeaders), notModified.proxy(), resource);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.status);
+        assertEquals(0, notModified.body.size());
+    }
+
+    private ServletContext servletContext() {
+        return (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ServletContext.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getResource".equals(method.getName())) {
+                    final File file = new File(base, String.class.cast(args[0]).substring(1));
+                    return file.exists() ? file.toURI().toURL() : null;
+                }
+                return null;
+            }
+        });
+    }
+
+    private static HttpServletRequest request(final Map<String, String> headers) {
+        return (HttpServletRequest) Proxy.newProxyInstance(StaticResourceCacheTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getHeader":
+                        return headers.get(String.class.cast(args[0]));
+                    case "getDateHeader":
+                        return -1L;
+                    default:
+                        return null;
+                }
+            }
+        });
+    }
+
+    private static class Response implements InvocationHandler {
+        private final Map<String, String> headers = new HashMap<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int status;
+
+        private HttpServletResponse proxy() {
+            return (HttpServletResponse) Proxy.newProxyInstance(StaticResourceCacheTest.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "setHeader":
+                case "addHeader":
+                    headers.put(String.class.cast(args[0]), String.valueOf(args[1]));
+                    return null;
+                case "setStatus":
+                    status = Integer.class.cast(args[0]);
+                    return null;
+                case "getOutputStream":
+                    return new ServletOutputStream() {
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setWriteListener(final WriteListener writeListener) {
+                            // no-op
+                        }
+
+                        @Override
+                        public void write(final int b) {
+                            body.write(b);
+                        }
+                    };
+                default:
+                    return null;
+            }
+        }
+    }
+}
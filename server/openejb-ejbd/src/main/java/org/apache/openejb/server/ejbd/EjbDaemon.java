@@ -23,6 +23,7 @@ import org.apache.openejb.client.ClusterResponse;
 import org.apache.openejb.client.EJBRequest;
 import org.apache.openejb.client.EjbObjectInputStream;
 import org.apache.openejb.client.FlushableGZIPOutputStream;
+import org.apache.openejb.client.FrameCompression;
 import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.client.RequestType;
 import org.apache.openejb.client.Response;
@@ -64,6 +65,9 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
     private ContainerSystem containerSystem;
     private boolean gzip;
+    private String compression = "none";
+    private int compressionLevel = 1;
+    private int compressionThreshold = 1024;
     private EJBDSerializer serializer = null;
 
     //Four hours
@@ -81,6 +85,15 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         clusterHandler = new ClusterRequestHandler(this);
         gzip = "true".equalsIgnoreCase(props.getProperty("gzip", "false"));
 
+        compression = props.getProperty("compression", compression);
+        FrameCompression.codec(compression);
+        try {
+            compressionLevel = Integer.parseInt(props.getProperty("compression.level", Integer.toString(compressionLevel)));
+            compressionThreshold = Integer.parseInt(props.getProperty("compression.threshold", Integer.toString(compressionThreshold)));
+        } catch (Exception e) {
+            //Ignore
+        }
+
         try {
             this.timeout = Integer.parseInt(props.getProperty("timeout", "14400000"));
         } catch (Exception e) {
@@ -396,6 +409,18 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         return gzip;
     }
 
+    public String getCompression() {
+        return compression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
     public EJBDSerializer getSerializer() {
         return serializer;
     }
@@ -18,6 +18,7 @@ package org.apache.openejb.server.ejbd;
 
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.monitoring.Managed;
 import org.apache.openejb.server.ServiceException;
 
 import javax.ejb.EJBHome;
@@ -48,6 +49,44 @@ public class EjbServer implements org.apache.openejb.server.ServerService, org.a
         }
         server.init(props);
         keepAlive = new KeepAliveServer(this, server.isGzip());
+        keepAlive.setFrameCompression(server.getCompression(), server.getCompressionLevel(), server.getCompressionThreshold());
+    }
+
+    @Managed
+    private final Compression compression = new Compression();
+
+    @Managed(append = true)
+    public class Compression {
+
+        @Managed
+        public String getCodec() {
+            return server.getCompression();
+        }
+
+        @Managed
+        public long getSentBytes() {
+            return keepAlive.getCompressionStatistics().getSentBytes();
+        }
+
+        @Managed
+        public long getSentWireBytes() {
+            return keepAlive.getCompressionStatistics().getSentWireBytes();
+        }
+
+        @Managed
+        public long getReceivedBytes() {
+            return keepAlive.getCompressionStatistics().getReceivedBytes();
+        }
+
+        @Managed
+        public long getReceivedWireBytes() {
+            return keepAlive.getCompressionStatistics().getReceivedWireBytes();
+        }
+
+        @Managed
+        public long getSavedBytes() {
+            return keepAlive.getCompressionStatistics().getSavedBytes();
+        }
     }
 
     @Override
@@ -17,17 +17,25 @@
 package org.apache.openejb.server.ejbd;
 
 import org.apache.openejb.client.FlushableGZIPOutputStream;
+import org.apache.openejb.client.FrameCompression;
 import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.ProtocolMetaData;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.server.ServerService;
 import org.apache.openejb.server.ServiceException;
 import org.apache.openejb.server.ServicePool;
+import org.apache.openejb.server.SocketSelector;
 import org.apache.openejb.server.context.RequestInfos;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
@@ -41,7 +49,10 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -61,6 +72,10 @@ public class KeepAliveServer implements ServerService {
     private BlockingQueue<Runnable> threadQueue;
     private Timer timer;
     private final boolean gzip;
+    private final FrameCompression.Statistics compressionStatistics = new FrameCompression.Statistics();
+    private String compression = "none";
+    private int compressionLevel = 1;
+    private int compressionThreshold = 1024;
 
     @SuppressWarnings("deprecation")
     public KeepAliveServer() {
@@ -77,6 +92,24 @@ public class KeepAliveServer implements ServerService {
         this.gzip = gzip;
     }
 
+    /**
+     * Compression of the frames sent on the multiplexed connections of OEJP 4.9 clients.
+     *
+     * @param codec     none, deflate or lzf
+     * @param level     the Deflater level
+     * @param threshold the minimum size of a compressed payload
+     */
+    public void setFrameCompression(final String codec, final int level, final int threshold) {
+        FrameCompression.codec(codec);
+        this.compression = codec;
+        this.compressionLevel = level;
+        this.compressionThreshold = threshold;
+    }
+
+    public FrameCompression.Statistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
     private void closeInactiveSessions() {
 
         if (!this.running.get()) {
@@ -104,7 +137,7 @@ public class KeepAliveServer implements ServerService {
 
             if (l.tryLock()) {
                 try {
-                    if (now - session.lastRequest.get() > this.timeout) {
+                    if (now - session.lastRequest.get() > this.timeout && session.inFlight.get() == 0) {
 
                         backlog--;
 
@@ -171,6 +204,14 @@ public class KeepAliveServer implements ServerService {
         return this.threadQueue;
     }
 
+    private Executor getExecutor() {
+        final ServicePool incoming = SystemInstance.get().getComponent(ServicePool.class);
+        if (incoming == null) {
+            return null;
+        }
+        return incoming.getThreadPool();
+    }
+
     public Session addSession(final Session session) {
         return this.sessions.put(session.thread, session);
     }
@@ -201,9 +242,14 @@ public class KeepAliveServer implements ServerService {
 
         // only used inside the Lock
         private final AtomicLong lastRequest;
+        // multiplexed requests being processed
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // set once the multiplexed responses can no longer be written, guarded by their stream
+        private boolean responsesClosed;
         private final Socket socket;
         private InputStream in = null;
         private OutputStream out = null;
+        private boolean parked;
 
         private Session(final KeepAliveServer kas, final Socket socket) {
             this.kas = kas;
@@ -226,24 +272,34 @@ public class KeepAliveServer implements ServerService {
 
             int i = -1;
 
+            // the selector dispatches a socket at EOF as readable, only a read tells it apart
+            boolean served = false;
+
             try {
 
                 final Lock l1 = this.lock;
                 l1.lock();
 
                 try {
+                    // multiplexed responses are written while another thread is blocked reading the socket
                     if (!KeepAliveServer.this.gzip) {
                         in = new BufferedInputStream(socket.getInputStream());
-                        out = new BufferedOutputStream(socket.getOutputStream());
+                        out = new BufferedOutputStream(SocketSelector.getOutputStream(socket));
                     } else {
                         in = new GZIPInputStream(new BufferedInputStream(socket.getInputStream()));
-                        out = new BufferedOutputStream(new FlushableGZIPOutputStream(socket.getOutputStream()));
+                        out = new BufferedOutputStream(new FlushableGZIPOutputStream(SocketSelector.getOutputStream(socket)));
                     }
                 } finally {
                     l1.unlock();
                 }
 
                 while (KeepAliveServer.this.running.get()) {
+                    if (served && this.canPark() && SocketSelector.park(socket)) {
+                        // the selector will give the socket back to the pool with the next request
+                        this.parked = true;
+                        break;
+                    }
+
                     try {
                         i = in.read();
                     } catch (SocketException e) {
@@ -256,6 +312,12 @@ public class KeepAliveServer implements ServerService {
                     }
                     final KeepAliveStyle style = KeepAliveStyle.values()[i];
 
+                    if (style == KeepAliveStyle.MULTIPLEX) {
+                        // the connection is multiplexed until the client hangs up
+                        this.multiplex();
+                        break;
+                    }
+
                     final Lock l2 = this.lock;
                     l2.lock();
 
@@ -276,6 +338,7 @@ public class KeepAliveServer implements ServerService {
                         try {
                             KeepAliveServer.this.service.service(new Input(in), new Output(out));
                             out.flush();
+                            served = true;
                         } catch (SocketException e) {
                             // Socket closed.
                             break;
@@ -291,12 +354,96 @@ public class KeepAliveServer implements ServerService {
                 Thread.interrupted();
             } finally {
 
-                close();
+                if (!this.parked) {
+                    close();
+                }
 
                 this.kas.removeSession(this);
             }
         }
 
+        /**
+         * A session can give its thread back only if nothing is buffered yet,
+         * compressed streams always keep some state so they are never parked.
+         * It must have served a request since its dispatch, otherwise a client
+         * which hung up would keep coming back from the selector.
+         */
+        private boolean canPark() throws IOException {
+            return !KeepAliveServer.this.gzip
+                && this.socket.getChannel() != null
+                && KeepAliveServer.this.getExecutor() != null
+                && this.in.available() == 0;
+        }
+
+        /**
+         * Reads request frames and hands each of them to the service pool,
+         * responses are written back with the id of their request as soon as they are ready.
+         *
+         * @see org.apache.openejb.client.MultiplexedSocket
+         */
+        private void multiplex() throws ServiceException, IOException {
+            final ProtocolMetaData clientProtocol = new ProtocolMetaData();
+            clientProtocol.readExternal(in);
+
+            new ProtocolMetaData().writeExternal(out);
+            out.flush();
+
+            if (!clientProtocol.isAtLeast(4, 7)) {
+                logger.warning("Client protocol " + clientProtocol.getSpec() + " does not support multiplexing");
+                return;
+            }
+
+            final DataInputStream frames = new DataInputStream(in);
+            final DataOutputStream responses = new DataOutputStream(out);
+            final Executor executor = KeepAliveServer.this.getExecutor();
+
+            // the client decodes any codec, it only needs to speak 4.9
+            final FrameCompression compression = clientProtocol.isAtLeast(4, 9)
+                ? new FrameCompression(KeepAliveServer.this.compression, KeepAliveServer.this.compressionLevel,
+                KeepAliveServer.this.compressionThreshold, KeepAliveServer.this.compressionStatistics)
+                : null;
+
+            try {
+                while (KeepAliveServer.this.running.get()) {
+                    final int id;
+                    try {
+                        id = frames.readInt();
+                    } catch (EOFException e) {
+                        // client hung up
+                        break;
+                    } catch (SocketException e) {
+                        // Socket closed.
+                        break;
+                    }
+
+                    // both bounded by openejb.client.max-frame, an invalid frame ends the session
+                    final byte[] payload = compression != null ? compression.read(frames) : FrameCompression.readUncompressed(frames);
+
+                    this.lastRequest.set(System.currentTimeMillis());
+                    this.inFlight.incrementAndGet();
+
+                    final Runnable request = new MultiplexedRequest(this, id, payload, responses, compression);
+                    if (executor == null) {
+                        request.run();
+                    } else {
+                        try {
+                            executor.execute(request);
+                        } catch (RejectedExecutionException e) {
+                            request.run();
+                        }
+                    }
+                }
+            } finally {
+                // the requests still running drop their responses, the client is gone
+                synchronized (responses) {
+                    this.responsesClosed = true;
+                    if (compression != null) {
+                        compression.close();
+                    }
+                }
+            }
+        }
+
         private void close() {
             if (null != in) {
                 try {
@@ -324,6 +471,71 @@ public class KeepAliveServer implements ServerService {
         }
     }
 
+    private class MultiplexedRequest implements Runnable {
+
+        private final Session session;
+        private final int id;
+        private final byte[] payload;
+        private final DataOutputStream responses;
+        private final FrameCompression compression;
+
+        private MultiplexedRequest(final Session session, final int id, final byte[] payload, final DataOutputStream responses, final FrameCompression compression) {
+            this.session = session;
+            this.id = id;
+            this.payload = payload;
+            this.responses = responses;
+            this.compression = compression;
+        }
+
+        @Override
+        public void run() {
+            final ByteArrayOutputStream response = new ByteArrayOutputStream(512);
+
+            RequestInfos.initRequestInfo(session.socket);
+            try {
+                KeepAliveServer.this.service.service(new ByteArrayInputStream(payload), response);
+            } catch (Throwable e) {
+                logger.debug("Failed to process multiplexed request " + id, e);
+
+                // an empty response tells the client the request failed
+                response.reset();
+            } finally {
+                RequestInfos.clearRequestInfo();
+            }
+
+            try {
+                synchronized (responses) {
+                    if (session.responsesClosed) {
+                        logger.debug("Dropped the response of multiplexed request " + id + ", the session is closed");
+                        return;
+                    }
+                    if (compression != null) {
+                        compression.write(responses, id, response.toByteArray(), response.size());
+                    } else {
+                        responses.writeInt(id);
+                        responses.writeInt(response.size());
+                        response.writeTo(responses);
+                    }
+                    responses.flush();
+                }
+            } catch (IOException e) {
+                // the reading thread will see the socket is closed
+                session.close();
+            } catch (RuntimeException e) {
+                logger.warning("Dropped the response of multiplexed request " + id, e);
+                session.close();
+            } finally {
+                session.lastRequest.set(System.currentTimeMillis());
+                session.inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "KeepAliveServer.MultiplexedRequest:" + id;
+        }
+    }
+
     @Override
     public void service(final Socket socket) throws ServiceException, IOException {
         RequestInfos.initRequestInfo(socket);
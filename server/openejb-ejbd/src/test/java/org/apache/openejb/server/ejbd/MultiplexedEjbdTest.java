@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.Client;
+import org.apache.openejb.client.JNDIRequest;
+import org.apache.openejb.client.JNDIResponse;
+import org.apache.openejb.client.RemoteInitialContextFactory;
+import org.apache.openejb.client.RequestMethodCode;
+import org.apache.openejb.client.Response;
+import org.apache.openejb.client.ServerMetaData;
+import org.apache.openejb.client.event.ConnectionOpened;
+import org.apache.openejb.client.event.Observes;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.testing.EnableServices;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@EnableServices("ejbd")
+@RunWith(ApplicationComposer.class)
+public class MultiplexedEjbdTest {
+
+    @Module
+    public EjbJar beans() {
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(AppClientTest.Orange.class).localBean());
+        ejbJar.addEnterpriseBean(new StatelessBean(Lemon.class));
+        return ejbJar;
+    }
+
+    @Test
+    public void concurrentCallsShareOneSocket() throws Exception {
+        final ConnectionCounter counter = new ConnectionCounter();
+        Client.addEventObserver(counter);
+
+        try {
+            final int port = SystemInstance.get().getOptions().get("ejbd.port", 4201);
+            final Context ctx = new InitialContext(new Properties() {{
+                setProperty(Context.INITIAL_CONTEXT_FACTORY, RemoteInitialContextFactory.class.getName());
+                setProperty(Context.PROVIDER_URL, "ejbd://localhost:" + port + "?multiplex=true");
+            }});
+            final AppClientTest.OrangeBusinessRemote orange = (AppClientTest.OrangeBusinessRemote) ctx.lookup("OrangeRemote");
+
+            final ExecutorService es = Executors.newFixedThreadPool(20);
+            try {
+                final List<Future<String>> results = new ArrayList<Future<String>>();
+                for (int i = 0; i < 100; i++) {
+                    final String value = Integer.toString(i);
+                    results.add(es.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return orange.echo(value);
+                        }
+                    }));
+                }
+
+                for (int i = 0; i < results.size(); i++) {
+                    assertEquals(new StringBuilder(Integer.toString(i)).reverse().toString(), results.get(i).get(1, TimeUnit.MINUTES));
+                }
+            } finally {
+                es.shutdownNow();
+            }
+
+            assertEquals(1, counter.opened.get());
+        } finally {
+            Client.removeEventObserver(counter);
+        }
+    }
+
+    @Test
+    public void asynchronousCallsDoNotBlock() throws Exception {
+        // not the uri of the other test so the sockets are not shared between the two containers
+        final int port = SystemInstance.get().getOptions().get("ejbd.port", 4201);
+        final Context ctx = new InitialContext(new Properties() {{
+            setProperty(Context.INITIAL_CONTEXT_FACTORY, RemoteInitialContextFactory.class.getName());
+            setProperty(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + port + "?multiplex=true");
+        }});
+        final LemonRemote lemon = (LemonRemote) ctx.lookup("LemonRemote");
+
+        Lemon.latch = new CountDownLatch(1);
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            // more calls than the 10 threads and 2 queued tasks of the client executor, all held by the bean:
+            // a blocking call would stall the caller once the executor is full
+            final Future<List<Future<String>>> fired = caller.submit(new Callable<List<Future<String>>>() {
+                @Override
+                public List<Future<String>> call() throws Exception {
+                    final List<Future<String>> results = new ArrayList<Future<String>>();
+                    for (int i = 0; i < 15; i++) {
+                        final Future<String> result = lemon.echo(Integer.toString(i));
+                        assertFalse("call " + i + " is done before the bean was released", result.isDone());
+                        results.add(result);
+                    }
+                    return results;
+                }
+            });
+
+            final List<Future<String>> results = fired.get(5, TimeUnit.SECONDS);
+            Lemon.latch.countDown();
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(new StringBuilder(Integer.toString(i)).reverse().toString(), results.get(i).get(1, TimeUnit.MINUTES));
+                assertTrue(results.get(i).isDone());
+            }
+        } finally {
+            Lemon.latch.countDown();
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void plainServerIsNotTriedAsynchronously() throws Exception {
+        final ConnectionCounter counter = new ConnectionCounter();
+        Client.addEventObserver(counter);
+
+        try {
+            final int port = SystemInstance.get().getOptions().get("ejbd.port", 4201);
+            final ServerMetaData server = new ServerMetaData(new URI("ejbd://localhost:" + port));
+            assertFalse(Client.requestAsynchronously(lookup(), new JNDIResponse(), server, new IgnoredCallback()));
+            assertEquals(0, counter.opened.get());
+        } finally {
+            Client.removeEventObserver(counter);
+        }
+    }
+
+    @Test
+    public void unreachableServerFallsBackOnBlockingRequest() throws Exception {
+        final ServerSocket socket = new ServerSocket(0);
+        final int port = socket.getLocalPort();
+        socket.close();
+
+        // the blocking request is the one failing over or reporting the failure
+        final ServerMetaData server = new ServerMetaData(new URI("ejbd://127.0.0.1:" + port + "?multiplex=true"));
+        assertFalse(Client.requestAsynchronously(lookup(), new JNDIResponse(), server, new IgnoredCallback()));
+    }
+
+    private static JNDIRequest lookup() {
+        return new JNDIRequest(RequestMethodCode.JNDI_LOOKUP, "LemonRemote");
+    }
+
+    public static class IgnoredCallback implements Client.ResponseCallback {
+        @Override
+        public void completed(final Response response) {
+        }
+
+        @Override
+        public void failed(final Throwable error) {
+        }
+    }
+
+    @Remote
+    public static interface LemonRemote {
+
+        Future<String> echo(String string);
+    }
+
+    public static class Lemon implements LemonRemote {
+
+        // holds the calls until the test releases it
+        private static volatile CountDownLatch latch = new CountDownLatch(0);
+
+        @Asynchronous
+        @Override
+        public Future<String> echo(final String string) {
+            try {
+                latch.await(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new AsyncResult<String>(new StringBuilder(string).reverse().toString());
+        }
+    }
+
+    public static class ConnectionCounter {
+        private final AtomicInteger opened = new AtomicInteger();
+
+        public void onOpen(@Observes final ConnectionOpened event) {
+            opened.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.RemoteInitialContextFactory;
+import org.apache.openejb.jee.EnterpriseBean;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServiceManager;
+import org.apache.openejb.server.SimpleServiceManager;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.EnableServices;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.util.reflection.Reflections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@EnableServices("ejbd")
+@RunWith(ApplicationComposer.class)
+public class NioEjbdTest {
+
+    @Configuration
+    public Properties configuration() {
+        final Properties configuration = new Properties();
+        configuration.setProperty("ejbd.nio", "true");
+        return configuration;
+    }
+
+    @Module
+    public EnterpriseBean bean() {
+        return new SingletonBean(AppClientTest.Orange.class).localBean();
+    }
+
+    @Test
+    public void keepAliveConnectionsAreParked() throws Exception {
+        final int port = SystemInstance.get().getOptions().get("ejbd.port", 4201);
+        final Context ctx = new InitialContext(new Properties() {{
+            setProperty(Context.INITIAL_CONTEXT_FACTORY, RemoteInitialContextFactory.class.getName());
+            setProperty(Context.PROVIDER_URL, "ejbd://localhost:" + port);
+        }});
+
+        final AppClientTest.OrangeBusinessRemote orange = (AppClientTest.OrangeBusinessRemote) ctx.lookup("OrangeRemote");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("olleh", orange.echo("hello"));
+        }
+
+        int checked = 0;
+        for (final ServerService daemon : SimpleServiceManager.class.cast(ServiceManager.get()).getDaemons()) {
+            if (ServiceDaemon.class.isInstance(daemon) && daemon.getName().equals("ejbd")) {
+                final Object selector = Reflections.get(daemon, "selector");
+                assertNotNull(selector);
+
+                // the lookup and each call come back through the selector once parked
+                assertTrue(Long.class.cast(Reflections.get(selector, "dispatched")) > 1);
+                checked++;
+            }
+        }
+        assertEquals(1, checked);
+    }
+
+    @Test
+    public void multiplexedConnectionsWriteWhileReading() throws Exception {
+        final int port = SystemInstance.get().getOptions().get("ejbd.port", 4201);
+        // not the uri of the other tests, the multiplexed socket is only used here
+        final Context ctx = new InitialContext(new Properties() {{
+            setProperty(Context.INITIAL_CONTEXT_FACTORY, RemoteInitialContextFactory.class.getName());
+            setProperty(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + port + "?multiplex=true");
+        }});
+        final AppClientTest.OrangeBusinessRemote orange = (AppClientTest.OrangeBusinessRemote) ctx.lookup("OrangeRemote");
+
+        // the session thread is blocked reading the next request while the responses are written
+        final ExecutorService es = Executors.newFixedThreadPool(10);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 50; i++) {
+                final String value = Integer.toString(i);
+                results.add(es.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return orange.echo(value);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(new StringBuilder(Integer.toString(i)).reverse().toString(), results.get(i).get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    @Test
+    public void halfClosedConnectionsAreClosed() throws Exception {
+        final int port = SystemInstance.get().getOptions().get("ejbd.port", 4201);
+
+        final Socket socket = new Socket("localhost", port);
+        try {
+            socket.setSoTimeout(10000);
+            // readable for the selector but nothing to read for the session
+            socket.shutdownOutput();
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+    }
+}
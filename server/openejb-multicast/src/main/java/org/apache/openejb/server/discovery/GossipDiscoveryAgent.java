@@ -0,0 +1,900 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.server.DiscoveryAgent;
+import org.apache.openejb.server.DiscoveryListener;
+import org.apache.openejb.server.SelfManaging;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OptionsLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Discovery over unicast UDP for the networks where multicast is not available,
+ * with a failure detector and membership protocol in the style of SWIM.
+ * <p/>
+ * Every protocol period a member pings the next member of its shuffled member list.
+ * Without an answer in probe_timeout it asks indirect_probes other members to ping it,
+ * and if none of them gets an answer either the member becomes suspect.  A suspect can refute
+ * with a higher incarnation number, otherwise it is declared dead after
+ * suspicion_multiplier * log2(members) protocol periods.
+ * <p/>
+ * There is no message dedicated to membership: every ping and ack carries the sender
+ * (address, incarnation and registered services) and the latest membership changes, each change
+ * being sent retransmit_multiplier * log2(members) times so it reaches everyone in O(log n) periods.
+ * New members only need the address of one member in initialServers.
+ * <p/>
+ * The services of the members not dead are fed to the {@link Tracker} every period,
+ * like the heartbeats of the other agents.
+ *
+ * @version $Rev$ $Date$
+ */
+public class GossipDiscoveryAgent implements DiscoveryAgent, ServerService, SelfManaging {
+
+    private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SERVER.createChild("discovery").createChild("gossip"), GossipDiscoveryAgent.class);
+
+    private static final int MAGIC = 0x4F454A47;
+
+    private static final byte PING = 1;
+    private static final byte ACK = 2;
+    private static final byte PING_REQ = 3;
+
+    private static final byte ALIVE = 0;
+    private static final byte SUSPECT = 1;
+    private static final byte DEAD = 2;
+
+    private static final int MAX_PACKET = 65507;
+    // room for the piggybacked updates, keeps the datagrams under the usual MTU
+    private static final int PIGGYBACK_SIZE = 1200;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Managed
+    private String host = "127.0.0.1";
+
+    @Managed
+    private int port = 4214;
+
+    private String discoveryHost;
+    private String group = "default";
+    private String initialServers = "";
+
+    @Managed
+    private long protocolPeriod = 500;
+
+    @Managed
+    private long probeTimeout = 200;
+
+    @Managed
+    private int indirectProbes = 3;
+
+    @Managed
+    private int suspicionMultiplier = 4;
+
+    @Managed
+    private int retransmitMultiplier = 3;
+
+    private long deadRetention = 60000;
+
+    @Managed(append = false)
+    private Tracker tracker;
+
+    // membership and updates are guarded by this lock, the network is used outside of it
+    private final Object lock = new Object();
+    private final Map<String, Member> members = new HashMap<String, Member>();
+    private final Map<String, Update> updates = new HashMap<String, Update>();
+    private final List<String> probeOrder = new ArrayList<String>();
+    private int probeIndex;
+
+    private final Map<Long, CountDownLatch> pendingAcks = new ConcurrentHashMap<Long, CountDownLatch>();
+    private final Map<Long, Forward> forwards = new ConcurrentHashMap<Long, Forward>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Random random = new Random();
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong indirectProbesSent = new AtomicLong();
+    private final AtomicLong suspicions = new AtomicLong();
+    private final AtomicLong deaths = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+
+    private Set<InetSocketAddress> seeds;
+    private String self;
+    private long incarnation;
+    private Set<String> advertised = new TreeSet<String>();
+
+    private DatagramSocket socket;
+    private Thread receiver;
+    private Thread prober;
+
+    @Override
+    public void init(final Properties props) {
+
+        final Options options = new Options(props);
+        options.setLogger(new OptionsLog(log));
+
+        host = props.getProperty("bind", host);
+        port = options.get("port", port);
+        discoveryHost = options.get("discoveryHost", host);
+        group = props.getProperty("group", group);
+        initialServers = options.get("initialServers", initialServers);
+        protocolPeriod = options.get("protocol_period", protocolPeriod);
+        probeTimeout = options.get("probe_timeout", probeTimeout);
+        indirectProbes = options.get("indirect_probes", indirectProbes);
+        suspicionMultiplier = options.get("suspicion_multiplier", suspicionMultiplier);
+        retransmitMultiplier = options.get("retransmit_multiplier", retransmitMultiplier);
+        deadRetention = options.get("dead_retention", deadRetention);
+
+        if (probeTimeout >= protocolPeriod) {
+            throw new IllegalArgumentException("probe_timeout (" + probeTimeout + ") must be shorter than protocol_period (" + protocolPeriod + ")");
+        }
+
+        seeds = new LinkedHashSet<InetSocketAddress>();
+        final StringTokenizer st = new StringTokenizer(initialServers, ",");
+        while (st.hasMoreTokens()) {
+            String string = st.nextToken().trim();
+            if (string.contains("://")) {
+                string = string.substring(string.indexOf("://") + 3);
+            }
+            seeds.add(address(string));
+        }
+
+        final Tracker.Builder builder = new Tracker.Builder();
+        builder.setHeartRate(protocolPeriod);
+        builder.setGroup(group);
+        builder.setMaxMissedHeartbeats(options.get("max_missed_heartbeats", builder.getMaxMissedHeartbeats()));
+        builder.setMaxReconnectDelay(options.get("max_reconnect_delay", builder.getMaxReconnectDelay()));
+        builder.setReconnectDelay(options.get("reconnect_delay", builder.getReconnectDelay()));
+        builder.setExponentialBackoff(options.get("exponential_backoff", builder.getExponentialBackoff()));
+        builder.setMaxReconnectAttempts(options.get("max_reconnect_attempts", builder.getMaxReconnectAttempts()));
+
+        tracker = builder.build();
+    }
+
+    @Override
+    public String getIP() {
+        return host;
+    }
+
+    @Override
+    public String getName() {
+        return "gossip";
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    public String getInitialServers() {
+        return initialServers;
+    }
+
+    @Override
+    public void setDiscoveryListener(final DiscoveryListener listener) {
+        this.tracker.setDiscoveryListener(listener);
+    }
+
+    @Override
+    public void registerService(final URI serviceUri) throws IOException {
+        tracker.registerService(serviceUri);
+    }
+
+    @Override
+    public void unregisterService(final URI serviceUri) throws IOException {
+        tracker.unregisterService(serviceUri);
+    }
+
+    @Override
+    public void reportFailed(final URI serviceUri) {
+        tracker.reportFailed(serviceUri);
+    }
+
+    /**
+     * start the discovery agent
+     *
+     * @throws ServiceException On error
+     */
+    @Override
+    @Managed
+    public void start() throws ServiceException {
+        try {
+            if (running.compareAndSet(false, true)) {
+                log.info("GossipDiscoveryAgent Starting");
+
+                socket = new DatagramSocket(new InetSocketAddress(host, port));
+                socket.setSoTimeout((int) protocolPeriod);
+                port = socket.getLocalPort();
+                self = discoveryHost + ":" + port;
+
+                synchronized (lock) {
+                    // a restarted member must win over what the others remember of it
+                    incarnation = System.currentTimeMillis();
+                    advertised = new TreeSet<String>(tracker.getRegisteredServices());
+                }
+
+                receiver = new Thread(new Receiver(), "GossipDiscovery: Receiver " + self);
+                receiver.setDaemon(true);
+                receiver.start();
+
+                prober = new Thread(new Prober(), "GossipDiscovery: Prober " + self);
+                prober.setDaemon(true);
+                prober.start();
+
+                log.info("GossipDiscoveryAgent Started " + self);
+            }
+        } catch (Exception e) {
+            running.set(false);
+            throw new ServiceException(port + "", e);
+        }
+    }
+
+    /**
+     * stop the agent, the other members will find out it is gone
+     *
+     * @throws ServiceException On error
+     */
+    @Override
+    @Managed
+    public void stop() throws ServiceException {
+        if (running.compareAndSet(true, false)) {
+            log.info("GossipDiscoveryAgent Stopping");
+            prober.interrupt();
+            socket.close();
+
+            synchronized (lock) {
+                members.clear();
+                updates.clear();
+                probeOrder.clear();
+            }
+            pendingAcks.clear();
+            forwards.clear();
+        }
+    }
+
+    @Override
+    public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+    }
+
+    @Override
+    public void service(final Socket socket) throws ServiceException, IOException {
+    }
+
+    private class Prober implements Runnable {
+        @Override
+        public void run() {
+            while (running.get()) {
+                final long start = System.currentTimeMillis();
+                try {
+                    advertise();
+                    join();
+                    probe();
+                    expire();
+                    heartbeat();
+                } catch (InterruptedException e) {
+                    Thread.interrupted();
+                    break;
+                } catch (Throwable e) {
+                    log.error("Gossip protocol period failed", e);
+                }
+
+                final long wait = protocolPeriod - (System.currentTimeMillis() - start);
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait);
+                    } catch (InterruptedException e) {
+                        Thread.interrupted();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private class Receiver implements Runnable {
+        @Override
+        public void run() {
+            final byte[] buffer = new byte[MAX_PACKET];
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (running.get()) {
+                try {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    receive(packet);
+                } catch (SocketTimeoutException e) {
+                    // check running
+                } catch (IOException e) {
+                    if (running.get()) {
+                        log.error("Failed to read a gossip message: " + e);
+                    }
+                } catch (Throwable e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Invalid gossip message from " + packet.getSocketAddress(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A member changing its services is a new incarnation of that member.
+     */
+    private void advertise() {
+        final Set<String> services = new TreeSet<String>(tracker.getRegisteredServices());
+        synchronized (lock) {
+            if (!services.equals(advertised)) {
+                advertised = services;
+                incarnation++;
+                enqueue(self, ALIVE, incarnation, advertised);
+            }
+        }
+    }
+
+    /**
+     * Keeps pinging the initial servers not yet known, the first answer joins the cluster.
+     */
+    private void join() {
+        final List<InetSocketAddress> unknown = new ArrayList<InetSocketAddress>(seeds);
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                if (member.state != DEAD) {
+                    unknown.remove(member.address);
+                }
+            }
+        }
+
+        for (final InetSocketAddress seed : unknown) {
+            if (!seed.equals(socket.getLocalSocketAddress()) && !(seed.getAddress() != null && self.equals(seed.getAddress().getHostAddress() + ":" + seed.getPort()))) {
+                send(PING, sequence.incrementAndGet(), "", seed);
+            }
+        }
+    }
+
+    private void probe() throws InterruptedException {
+        final Member target = nextTarget();
+        if (target == null) {
+            return;
+        }
+
+        probes.incrementAndGet();
+        final long seq = sequence.incrementAndGet();
+        final CountDownLatch ack = new CountDownLatch(1);
+        pendingAcks.put(seq, ack);
+        try {
+            send(PING, seq, "", target.address);
+            if (ack.await(probeTimeout, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+
+            for (final Member helper : randomMembers(indirectProbes, target.id)) {
+                indirectProbesSent.incrementAndGet();
+                send(PING_REQ, seq, target.id, helper.address);
+            }
+
+            if (!ack.await(protocolPeriod - probeTimeout, TimeUnit.MILLISECONDS)) {
+                suspect(target);
+            }
+        } finally {
+            pendingAcks.remove(seq);
+        }
+    }
+
+    /**
+     * Randomized round robin, every member is probed once per round.
+     */
+    private Member nextTarget() {
+        synchronized (lock) {
+            for (int attempts = 0; attempts < 2; attempts++) {
+                while (probeIndex < probeOrder.size()) {
+                    final Member member = members.get(probeOrder.get(probeIndex++));
+                    if (member != null && member.state != DEAD) {
+                        return member;
+                    }
+                }
+
+                probeOrder.clear();
+                probeIndex = 0;
+                for (final Member member : members.values()) {
+                    if (member.state != DEAD) {
+                        probeOrder.add(member.id);
+                    }
+                }
+                Collections.shuffle(probeOrder, random);
+            }
+            return null;
+        }
+    }
+
+    private List<Member> randomMembers(final int count, final String exclude) {
+        final List<Member> candidates = new ArrayList<Member>();
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                if (member.state == ALIVE && !member.id.equals(exclude)) {
+                    candidates.add(member);
+                }
+            }
+        }
+
+        Collections.shuffle(candidates, random);
+        return candidates.size() > count ? candidates.subList(0, count) : candidates;
+    }
+
+    private void suspect(final Member target) {
+        synchronized (lock) {
+            final Member member = members.get(target.id);
+            if (member != null && member.state == ALIVE) {
+                suspicions.incrementAndGet();
+                member.update(SUSPECT, member.incarnation, member.services);
+                enqueue(member.id, SUSPECT, member.incarnation, member.services);
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Suspecting " + member.id);
+                }
+            }
+        }
+    }
+
+    private void expire() {
+        final long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            final long suspicionTimeout = suspicionMultiplier * log2(members.size() + 1) * protocolPeriod;
+
+            final Iterator<Member> iterator = members.values().iterator();
+            while (iterator.hasNext()) {
+                final Member member = iterator.next();
+                if (member.state == SUSPECT && now - member.since > suspicionTimeout) {
+                    deaths.incrementAndGet();
+                    member.update(DEAD, member.incarnation, member.services);
+                    enqueue(member.id, DEAD, member.incarnation, member.services);
+                    log.info("Member " + member.id + " is dead");
+                } else if (member.state == DEAD && now - member.since > deadRetention) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        // indirect pings never answered
+        final long oldest = now - 10 * protocolPeriod;
+        final Iterator<Forward> iterator = forwards.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().created < oldest) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The services of the live members are heartbeats for the tracker,
+     * those of the dead ones expire.
+     */
+    private void heartbeat() {
+        final List<String> services = new ArrayList<String>();
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                if (member.state != DEAD) {
+                    services.addAll(member.services);
+                }
+            }
+        }
+
+        for (final String service : services) {
+            tracker.processData(service);
+        }
+        tracker.checkServices();
+    }
+
+    private void receive(final DatagramPacket packet) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (in.readInt() != MAGIC || !group.equals(in.readUTF())) {
+            return;
+        }
+        messagesReceived.incrementAndGet();
+
+        final byte type = in.readByte();
+        final long seq = in.readLong();
+        final String target = in.readUTF();
+
+        apply(Record.read(in));
+        final int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            apply(Record.read(in));
+        }
+
+        final SocketAddress from = packet.getSocketAddress();
+        switch (type) {
+            case PING: {
+                send(ACK, seq, "", from);
+                break;
+            }
+            case ACK: {
+                final CountDownLatch ack = pendingAcks.get(seq);
+                if (ack != null) {
+                    ack.countDown();
+                } else {
+                    final Forward forward = forwards.remove(seq);
+                    if (forward != null) {
+                        send(ACK, forward.seq, "", forward.origin);
+                    }
+                }
+                break;
+            }
+            case PING_REQ: {
+                final long forwarded = sequence.incrementAndGet();
+                forwards.put(forwarded, new Forward(from, seq));
+                send(PING, forwarded, "", address(target));
+                break;
+            }
+            default:
+                // unknown message from a newer version
+        }
+    }
+
+    private void apply(final Record record) {
+        synchronized (lock) {
+            if (record.id.equals(self)) {
+                // someone thinks we are gone, we know better
+                if (record.state != ALIVE && record.incarnation >= incarnation) {
+                    incarnation = record.incarnation + 1;
+                    enqueue(self, ALIVE, incarnation, advertised);
+                }
+                return;
+            }
+
+            final Member member = members.get(record.id);
+            if (member == null) {
+                if (record.state != DEAD) {
+                    final Member joined = new Member(record.id, address(record.id));
+                    joined.update(record.state, record.incarnation, record.services);
+                    members.put(joined.id, joined);
+                    enqueue(record.id, record.state, record.incarnation, record.services);
+                    log.info("Member " + record.id + " joined");
+                }
+                return;
+            }
+
+            final boolean newer = record.incarnation > member.incarnation;
+            switch (record.state) {
+                case ALIVE: {
+                    if (newer) {
+                        if (member.state == DEAD) {
+                            log.info("Member " + record.id + " is back");
+                        }
+                        member.update(ALIVE, record.incarnation, record.services);
+                        enqueue(record.id, ALIVE, record.incarnation, record.services);
+                    }
+                    break;
+                }
+                case SUSPECT: {
+                    if (member.state != DEAD && (newer || record.incarnation == member.incarnation && member.state == ALIVE)) {
+                        member.update(SUSPECT, record.incarnation, newer ? record.services : member.services);
+                        enqueue(record.id, SUSPECT, record.incarnation, member.services);
+                    }
+                    break;
+                }
+                case DEAD: {
+                    if (member.state != DEAD && record.incarnation >= member.incarnation) {
+                        member.update(DEAD, record.incarnation, member.services);
+                        enqueue(record.id, DEAD, record.incarnation, member.services);
+                        log.info("Member " + record.id + " is dead");
+                    }
+                    break;
+                }
+                default:
+            }
+        }
+    }
+
+    /**
+     * Must be called with the lock.
+     */
+    private void enqueue(final String id, final byte state, final long incarnation, final Set<String> services) {
+        updates.put(id, new Update(new Record(id, state, incarnation, services).toBytes()));
+    }
+
+    private void send(final byte type, final long seq, final String target, final SocketAddress to) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeUTF(group);
+            out.writeByte(type);
+            out.writeLong(seq);
+            out.writeUTF(target);
+
+            final List<byte[]> piggyback;
+            synchronized (lock) {
+                out.write(new Record(self, ALIVE, incarnation, advertised).toBytes());
+                piggyback = piggyback();
+            }
+
+            out.writeShort(piggyback.size());
+            for (final byte[] update : piggyback) {
+                out.write(update);
+            }
+            out.flush();
+
+            final byte[] data = bytes.toByteArray();
+            socket.send(new DatagramPacket(data, data.length, to));
+            messagesSent.incrementAndGet();
+        } catch (IOException e) {
+            if (running.get() && log.isDebugEnabled()) {
+                log.debug("Failed to send a gossip message to " + to + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * The least sent updates first, each one is sent retransmit_multiplier * log2(members) times.
+     * Must be called with the lock.
+     */
+    private List<byte[]> piggyback() {
+        final List<byte[]> selected = new ArrayList<byte[]>();
+        if (updates.isEmpty()) {
+            return selected;
+        }
+
+        final List<Map.Entry<String, Update>> entries = new ArrayList<Map.Entry<String, Update>>(updates.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Update>>() {
+            @Override
+            public int compare(final Map.Entry<String, Update> o1, final Map.Entry<String, Update> o2) {
+                return o1.getValue().transmits - o2.getValue().transmits;
+            }
+        });
+
+        final int limit = retransmitMultiplier * log2(members.size() + 1);
+        int size = 0;
+        for (final Map.Entry<String, Update> entry : entries) {
+            final Update update = entry.getValue();
+            if (size + update.data.length > PIGGYBACK_SIZE && !selected.isEmpty()) {
+                break;
+            }
+
+            selected.add(update.data);
+            size += update.data.length;
+            if (++update.transmits >= limit) {
+                updates.remove(entry.getKey());
+            }
+        }
+        return selected;
+    }
+
+    private static int log2(final int n) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static InetSocketAddress address(final String hostPort) {
+        final int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + hostPort);
+        }
+        return new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(final String host) {
+        this.host = host;
+    }
+
+    @Managed
+    public String getURI() {
+        return self;
+    }
+
+    @Managed
+    public List<String> getMembers() {
+        final List<String> list = new ArrayList<String>();
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                list.add(member.toString());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the number of members not dead, this one excluded
+     */
+    @Managed
+    public int getLiveMembers() {
+        int live = 0;
+        synchronized (lock) {
+            for (final Member member : members.values()) {
+                if (member.state != DEAD) {
+                    live++;
+                }
+            }
+        }
+        return live;
+    }
+
+    @Managed
+    public long getIncarnation() {
+        synchronized (lock) {
+            return incarnation;
+        }
+    }
+
+    @Managed
+    public long getProbes() {
+        return probes.get();
+    }
+
+    @Managed
+    public long getIndirectProbes() {
+        return indirectProbesSent.get();
+    }
+
+    @Managed
+    public long getSuspicions() {
+        return suspicions.get();
+    }
+
+    @Managed
+    public long getDeaths() {
+        return deaths.get();
+    }
+
+    @Managed
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    @Managed
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    private static class Member {
+
+        private final String id;
+        private final InetSocketAddress address;
+        private byte state;
+        private long incarnation;
+        private Set<String> services;
+        private long since;
+
+        private Member(final String id, final InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        private void update(final byte state, final long incarnation, final Set<String> services) {
+            if (this.state != state) {
+                this.since = System.currentTimeMillis();
+            }
+            this.state = state;
+            this.incarnation = incarnation;
+            this.services = services;
+        }
+
+        @Override
+        public String toString() {
+            return id + " " + (state == ALIVE ? "alive" : state == SUSPECT ? "suspect" : "dead") + " " + incarnation + " " + services;
+        }
+    }
+
+    /**
+     * What a member says about another one: id (host:port) state incarnation services
+     */
+    private static class Record {
+
+        private final String id;
+        private final byte state;
+        private final long incarnation;
+        private final Set<String> services;
+
+        private Record(final String id, final byte state, final long incarnation, final Set<String> services) {
+            this.id = id;
+            this.state = state;
+            this.incarnation = incarnation;
+            this.services = services;
+        }
+
+        private static Record read(final DataInputStream in) throws IOException {
+            final String id = in.readUTF();
+            final byte state = in.readByte();
+            final long incarnation = in.readLong();
+            final int count = in.readUnsignedShort();
+            final Set<String> services = new TreeSet<String>();
+            for (int i = 0; i < count; i++) {
+                services.add(in.readUTF());
+            }
+            return new Record(id, state, incarnation, services);
+        }
+
+        private byte[] toBytes() {
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+                final DataOutputStream out = new DataOutputStream(bytes);
+                out.writeUTF(id);
+                out.writeByte(state);
+                out.writeLong(incarnation);
+                out.writeShort(services.size());
+                for (final String service : services) {
+                    out.writeUTF(service);
+                }
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class Update {
+
+        private final byte[] data;
+        private int transmits;
+
+        private Update(final byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static class Forward {
+
+        private final SocketAddress origin;
+        private final long seq;
+        private final long created = System.currentTimeMillis();
+
+        private Forward(final SocketAddress origin, final long seq) {
+            this.origin = origin;
+            this.seq = seq;
+        }
+    }
+}
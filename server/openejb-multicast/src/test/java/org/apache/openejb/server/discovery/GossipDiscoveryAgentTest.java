@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.discovery;
+
+import junit.framework.TestCase;
+import org.apache.openejb.server.DiscoveryListener;
+import org.apache.openejb.server.DiscoveryRegistry;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class GossipDiscoveryAgentTest extends TestCase {
+
+    public void test() throws Exception {
+
+        final URI testService = new URI("green://localhost:0");
+        final URI failingService = new URI("blue://localhost:0");
+
+        final String[] names = {"red", "yellow", "orange", "purple"};
+        final int PEERS = names.length;
+
+        final CountDownLatch[] latches = {
+            new CountDownLatch(PEERS + 1),
+            new CountDownLatch(PEERS + 1),
+            new CountDownLatch(PEERS),
+        };
+
+        final DiscoveryListener listener = new DiscoveryListener() {
+            public void serviceAdded(final URI service) {
+                if (testService.equals(service)) {
+                    latches[0].countDown();
+                }
+            }
+
+            public void serviceRemoved(final URI service) {
+                if (testService.equals(service)) {
+                    latches[1].countDown();
+                } else if (failingService.equals(service)) {
+                    latches[2].countDown();
+                }
+            }
+        };
+
+        final List<Node> nodes = new ArrayList<Node>();
+        try {
+            // everyone only knows the root, the others are found by gossip
+            final Node root = new Node(listener, null);
+            nodes.add(root);
+
+            for (int i = 0; i < names.length; i++) {
+                nodes.add(new Node(listener, root.getAgent().getURI()));
+            }
+
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            for (final Node node : nodes) {
+                while (node.getAgent().getLiveMembers() < PEERS && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                assertEquals("members of " + node.getAgent().getURI(), PEERS, node.getAgent().getLiveMembers());
+            }
+
+            final Node owner = nodes.get(nodes.size() / 2);
+            for (int i = 0; i < 2; i++) {
+                latches[0] = new CountDownLatch(PEERS + 1);
+                latches[1] = new CountDownLatch(PEERS + 1);
+
+                owner.getRegistry().registerService(testService);
+                assertTrue("round=" + i + ". Add failed", latches[0].await(30, TimeUnit.SECONDS));
+
+                owner.getRegistry().unregisterService(testService);
+                assertTrue("round=" + i + ". Remove failed", latches[1].await(30, TimeUnit.SECONDS));
+            }
+
+            // a member going away without a word is detected by the others
+            final Node failing = nodes.remove(nodes.size() - 1);
+            failing.getRegistry().registerService(failingService);
+            Thread.sleep(1000);
+            failing.getAgent().stop();
+
+            assertTrue("Failure not detected", latches[2].await(30, TimeUnit.SECONDS));
+            for (final Node node : nodes) {
+                assertEquals("members of " + node.getAgent().getURI(), PEERS - 1, node.getAgent().getLiveMembers());
+                assertFalse(node.getRegistry().getServices().contains(failingService));
+            }
+
+            long suspicions = 0;
+            for (final Node node : nodes) {
+                suspicions += node.getAgent().getSuspicions();
+            }
+            assertTrue(suspicions > 0);
+        } finally {
+            for (final Node node : nodes) {
+                node.getAgent().stop();
+            }
+        }
+    }
+
+    public static class Node {
+        private final GossipDiscoveryAgent agent;
+        private final DiscoveryRegistry registry;
+
+        public Node(final DiscoveryListener listener, final String seed) throws Exception {
+            this.agent = new GossipDiscoveryAgent();
+            final Properties props = new Properties();
+            props.put("port", "0");
+            props.put("initialServers", seed == null ? "" : seed);
+            props.put("protocol_period", "100");
+            props.put("probe_timeout", "40");
+            props.put("max_missed_heartbeats", "5");
+            agent.init(props);
+
+            this.registry = new DiscoveryRegistry(agent);
+            this.registry.addDiscoveryListener(listener);
+
+            agent.start();
+        }
+
+        public GossipDiscoveryAgent getAgent() {
+            return agent;
+        }
+
+        public DiscoveryRegistry getRegistry() {
+            return registry;
+        }
+    }
+}
@@ -38,6 +38,7 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -73,6 +74,13 @@ public class ServiceDaemon implements ServerService {
     private Properties props;
     private String[] enabledCipherSuites;
 
+    private boolean nio;
+    private long idleTimeout;
+    private int threads = 100;
+
+    @Managed
+    private SocketSelector selector;
+
     public ServiceDaemon(final ServerService next) {
         this.next = next;
     }
@@ -118,9 +126,9 @@ public class ServiceDaemon implements ServerService {
 
         this.port = options.get("port", 0);
 
-        final int threads = options.get("threads", 100);
+        this.threads = options.get("threads", this.threads);
 
-        this.backlog = options.get("backlog", threads);
+        this.backlog = options.get("backlog", this.threads);
 
         this.secure = options.get("secure", false);
 
@@ -128,6 +136,15 @@ public class ServiceDaemon implements ServerService {
 
         this.enabledCipherSuites = options.get("enabledCipherSuites", "SSL_DH_anon_WITH_RC4_128_MD5").split(",");
 
+        this.nio = options.get("nio", false);
+
+        this.idleTimeout = options.get("idleTimeout", 600000L);
+
+        if (this.nio && this.secure) {
+            log.warning("Service '" + this.next.getName() + "' is secure, nio is not supported and will be ignored");
+            this.nio = false;
+        }
+
         this.next.init(props);
     }
 
@@ -148,7 +165,8 @@ public class ServiceDaemon implements ServerService {
                     serverSocket = factory.createServerSocket(this.port, this.backlog, this.inetAddress);
                     ((SSLServerSocket) serverSocket).setEnabledCipherSuites(this.enabledCipherSuites);
                 } else {
-                    serverSocket = new ServerSocket();
+                    // sockets accepted through a channel can be watched by a selector
+                    serverSocket = this.nio ? ServerSocketChannel.open().socket() : new ServerSocket();
                     serverSocket.setReuseAddress(true);
 
                     try {
@@ -172,7 +190,16 @@ public class ServiceDaemon implements ServerService {
                 throw new ServiceException("Service failed to open socket", e);
             }
 
-            this.socketListener = new SocketListener(this.next, serverSocket);
+            if (this.nio) {
+                try {
+                    this.selector = new SocketSelector(this.next, this.idleTimeout, this.threads);
+                } catch (IOException e) {
+                    throw new ServiceException("Service failed to open selector", e);
+                }
+                this.selector.start(this.getName());
+            }
+
+            this.socketListener = new SocketListener(this.next, serverSocket, this.selector);
             final Thread thread = new Thread(this.socketListener);
             thread.setName("Service." + this.getName() + "@" + this.socketListener.hashCode());
             thread.setDaemon(true);
@@ -231,6 +258,10 @@ public class ServiceDaemon implements ServerService {
                 this.socketListener.stop();
                 this.socketListener = null;
             }
+            if (this.selector != null) {
+                this.selector.stop();
+                this.selector = null;
+            }
         }
     }
 
@@ -270,12 +301,14 @@ public class ServiceDaemon implements ServerService {
     private static class SocketListener implements Runnable {
         private final ServerService serverService;
         private final ServerSocket serverSocket;
+        private final SocketSelector selector;
         private final AtomicBoolean stop = new AtomicBoolean();
         private final Lock lock = new ReentrantLock();
 
-        public SocketListener(final ServerService serverService, final ServerSocket serverSocket) {
+        public SocketListener(final ServerService serverService, final ServerSocket serverSocket, final SocketSelector selector) {
             this.serverService = serverService;
             this.serverSocket = serverSocket;
+            this.selector = selector;
         }
 
         public void stop() {
@@ -320,7 +353,12 @@ public class ServiceDaemon implements ServerService {
                         final Lock l = this.lock;
                         l.lock();
                         try {
-                            this.serverService.service(socket);
+                            if (this.selector != null && socket.getChannel() != null) {
+                                // only use a thread once the client sent something
+                                this.selector.accept(socket);
+                            } else {
+                                this.serverService.service(socket);
+                            }
                         } finally {
                             l.unlock();
                         }
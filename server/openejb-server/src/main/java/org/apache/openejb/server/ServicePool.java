@@ -234,7 +234,9 @@ public class ServicePool extends ServerServiceFilter {
                     //Ensure delegated socket is closed here
 
                     try {
-                        if (forceSocketClose && socket != null) {
+                        // a parked socket goes back to its selector
+                        final boolean parked = socket != null && SocketSelector.release(socket);
+                        if (forceSocketClose && socket != null && !parked) {
                             socket.close();
                         }
                     } catch (Throwable t) {
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server;
+
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches idle connections with a single selector thread so that they do not hold
+ * a thread of the {@link ServicePool} while the client does not send anything.
+ * <p/>
+ * A socket accepted by a {@link ServiceDaemon} in nio mode is registered here and is only
+ * handed to the service chain once it is readable, from a dispatch thread so the access
+ * checks of the chain never hold the selector.  There are at most as many dispatch threads
+ * as the service has threads, the sockets readable beyond that wait for one.  Once a service is done with the bytes
+ * available it can ask to {@link #park(Socket)} the socket instead of blocking on a read:
+ * the {@link ServicePool} thread then gives it back to the selector through
+ * {@link #release(Socket)} rather than closing it.
+ * <p/>
+ * Sockets parked longer than the idle timeout are closed.
+ *
+ * @version $Rev$ $Date$
+ */
+@Managed
+public class SocketSelector implements Runnable {
+
+    private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SERVER, SocketSelector.class);
+
+    // sockets accepted by a selector and not closed yet
+    private static final ConcurrentMap<Socket, SocketSelector> owners = new ConcurrentHashMap<Socket, SocketSelector>();
+
+    // sockets a service asked to park, registered once the service thread releases them
+    private static final Set<Socket> parking = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private final ServerService next;
+    private final long idleTimeout;
+    private final int threads;
+    private final Selector selector;
+    private ThreadPoolExecutor dispatcher;
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<SocketChannel>();
+    private final AtomicBoolean stop = new AtomicBoolean();
+
+    @Managed
+    private volatile int parked;
+
+    @Managed
+    private volatile long dispatched;
+
+    @Managed
+    private volatile long timedOut;
+
+    /**
+     * @param next        service receiving the sockets once readable
+     * @param idleTimeout time in milliseconds a socket can stay parked, 0 means forever
+     * @param threads     maximum number of threads dispatching the readable sockets
+     * @throws IOException if the selector can't be opened
+     */
+    public SocketSelector(final ServerService next, final long idleTimeout, final int threads) throws IOException {
+        this.next = next;
+        this.idleTimeout = idleTimeout;
+        this.threads = Math.max(1, threads);
+        this.selector = Selector.open();
+    }
+
+    public void start(final String name) {
+        this.dispatcher = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new DaemonThreadFactory("Selector." + name + ".dispatch"));
+        this.dispatcher.allowCoreThreadTimeOut(true);
+
+        final Thread thread = new Thread(this, "Selector." + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (!stop.getAndSet(true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Takes a freshly accepted socket, it will be given to the service chain
+     * when the client sends its request.
+     *
+     * @param socket an accepted socket having a channel
+     */
+    public void accept(final Socket socket) {
+        owners.put(socket, this);
+        register(socket);
+    }
+
+    /**
+     * Called by a service instead of blocking on a read once it processed the available bytes.
+     *
+     * @param socket the socket to park
+     * @return true if the socket will be parked when the current thread releases it, false if the
+     * socket was not accepted by a selector and the caller has to keep on reading it
+     */
+    public static boolean park(final Socket socket) {
+        if (!owners.containsKey(socket)) {
+            return false;
+        }
+        parking.add(socket);
+        return true;
+    }
+
+    /**
+     * Called by the thread which serviced the socket once it is done with it.
+     *
+     * @param socket the serviced socket
+     * @return true if the socket is now parked and must not be closed
+     */
+    public static boolean release(final Socket socket) {
+        if (parking.remove(socket)) {
+            final SocketSelector selector = owners.get(socket);
+            if (selector != null && !socket.isClosed()) {
+                selector.register(socket);
+                return true;
+            }
+        }
+        owners.remove(socket);
+        return false;
+    }
+
+    /**
+     * The streams of a socket accepted through a channel share one lock, a thread blocked
+     * reading it holds back every write.  The stream returned here writes to the channel
+     * directly, so a service can write responses while another thread reads the socket.
+     *
+     * @param socket a serviced socket, switched back to blocking mode
+     * @return the output stream to write to the socket
+     * @throws IOException if the socket is closed
+     */
+    public static OutputStream getOutputStream(final Socket socket) throws IOException {
+        final SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            return socket.getOutputStream();
+        }
+        if (socket.isClosed() || socket.isOutputShutdown()) {
+            throw new IOException("Socket output is closed");
+        }
+        return new ChannelOutputStream(channel);
+    }
+
+    private void register(final Socket socket) {
+        if (stop.get()) {
+            close(socket);
+            return;
+        }
+
+        try {
+            final SocketChannel channel = socket.getChannel();
+            channel.configureBlocking(false);
+            registrations.add(channel);
+            selector.wakeup();
+        } catch (IOException e) {
+            close(socket);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stop.get()) {
+                selector.select(idleTimeout > 0 ? Math.min(idleTimeout, 1000) : 0);
+
+                registerPending();
+
+                final List<SelectionKey> ready = new ArrayList<SelectionKey>(selector.selectedKeys());
+                selector.selectedKeys().clear();
+
+                final List<SelectionKey> expired = expired();
+
+                if (ready.isEmpty() && expired.isEmpty()) {
+                    continue;
+                }
+
+                // a channel can only be switched back to blocking once its key is deregistered
+                for (final SelectionKey key : ready) {
+                    key.cancel();
+                }
+                for (final SelectionKey key : expired) {
+                    key.cancel();
+                }
+                selector.selectNow();
+                selector.selectedKeys().clear();
+
+                for (final SelectionKey key : expired) {
+                    timedOut++;
+                    close(((SocketChannel) key.channel()).socket());
+                }
+
+                for (final SelectionKey key : ready) {
+                    dispatch((SocketChannel) key.channel());
+                }
+
+                parked = selector.keys().size();
+            }
+        } catch (ClosedSelectorException e) {
+            // stopped
+        } catch (Throwable e) {
+            log.error("Socket selector stopped unexpectedly", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = registrations.poll()) != null) {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, System.currentTimeMillis());
+            } catch (Exception e) {
+                close(channel.socket());
+            }
+        }
+    }
+
+    private List<SelectionKey> expired() {
+        if (idleTimeout <= 0) {
+            return Collections.emptyList();
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<SelectionKey> expired = new ArrayList<SelectionKey>();
+        for (final SelectionKey key : selector.keys()) {
+            if (key.isValid() && !key.isReadable() && now - (Long) key.attachment() > idleTimeout) {
+                expired.add(key);
+            }
+        }
+        return expired;
+    }
+
+    private void dispatch(final SocketChannel channel) {
+        final Socket socket = channel.socket();
+        try {
+            channel.configureBlocking(true);
+            dispatched++;
+
+            dispatcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // the server service is responsible
+                        // for closing the socket.
+                        next.service(socket);
+                    } catch (Throwable e) {
+                        log.debug("Cannot dispatch socket " + socket, e);
+                        close(socket);
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            log.debug("Cannot dispatch socket " + socket, e);
+            close(socket);
+        }
+    }
+
+    private void closeAll() {
+        for (final SelectionKey key : selector.keys()) {
+            close(((SocketChannel) key.channel()).socket());
+        }
+        SocketChannel channel;
+        while ((channel = registrations.poll()) != null) {
+            close(channel.socket());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            //Ignore
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+
+        final Iterator<Map.Entry<Socket, SocketSelector>> owned = owners.entrySet().iterator();
+        while (owned.hasNext()) {
+            if (owned.next().getValue() == this) {
+                owned.remove();
+            }
+        }
+    }
+
+    private static void close(final Socket socket) {
+        owners.remove(socket);
+        parking.remove(socket);
+        try {
+            socket.close();
+        } catch (Throwable e) {
+            //Ignore
+        }
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+
+        private final SocketChannel channel;
+
+        private ChannelOutputStream(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                // a blocking channel writes everything, only a parked one can refuse bytes
+                if (channel.write(buffer) == 0 && !channel.isBlocking()) {
+                    throw new IOException("Socket is parked");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Managed
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    @Managed
+    public int getDispatchThreads() {
+        return threads;
+    }
+}